@@ -0,0 +1,130 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Random;
+
+import javax.jms.JMSException;
+
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.AttributeChangeData;
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.DpsAttributeChangedEvent;
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification;
+import com.ericsson.oss.mediation.notifications.ComEcimNodeNotification;
+
+/**
+ * Builds the events and messages used by the benchmarks, shaped like the notifications seen on CmDataChangeDivertedQueue.
+ */
+public final class BenchmarkEvents {
+
+    /**
+     * Event types carried by the generated messages.
+     */
+    public enum PayloadMix {
+        /** Only CPP NodeNotifications. */
+        CPP,
+        /** Only ComEcimNodeNotifications. */
+        COM_ECIM,
+        /** Only DpsAttributeChangedEvents. */
+        DPS,
+        /** 40% DPS, 30% CPP and 30% COM/ECIM events. */
+        MIXED
+    }
+
+    static final int NODE_COUNT = 1000;
+    private static final long RANDOM_SEED = 20230101L;
+
+    private BenchmarkEvents() {
+    }
+
+    /**
+     * Creates messages with bodies kept serialized, so that each delivery pays for the deserialization as with a broker.
+     *
+     * @param payloadMix
+     *     the event types to generate
+     * @param count
+     *     number of messages
+     * @return the messages, in delivery order; the same arguments always give the same messages
+     * @throws JMSException
+     *     if an event cannot be serialized
+     */
+    public static SerializedObjectMessage[] createMessages(final PayloadMix payloadMix, final int count) throws JMSException {
+        final Random random = new Random(RANDOM_SEED);
+        final SerializedObjectMessage[] messages = new SerializedObjectMessage[count];
+        for (int i = 0; i < count; i++) {
+            final String fdn = createFdn(random.nextInt(NODE_COUNT));
+            messages[i] = new SerializedObjectMessage(createEvent(selectEventType(payloadMix, random), fdn));
+        }
+        return messages;
+    }
+
+    /**
+     * Creates a single event of the given type.
+     *
+     * @param payloadMix
+     *     the type of the event, {@link PayloadMix#MIXED} gives a DPS event
+     * @param fdn
+     *     FDN of the MO the event refers to
+     * @return the event
+     */
+    public static Serializable createEvent(final PayloadMix payloadMix, final String fdn) {
+        switch (payloadMix) {
+            case CPP:
+                final NodeNotification nodeNotification = new NodeNotification();
+                nodeNotification.setFdn(fdn);
+                nodeNotification.setCreationTimestamp(new Date());
+                return nodeNotification;
+            case COM_ECIM:
+                final ComEcimNodeNotification comEcimNodeNotification = new ComEcimNodeNotification(fdn, 3L, "2023-01-01T00:00:00.000", 1L,
+                    false);
+                comEcimNodeNotification.setDn(fdn);
+                return comEcimNodeNotification;
+            default:
+                final Collection<AttributeChangeData> changedAttributes = new ArrayList<>();
+                changedAttributes.add(new AttributeChangeData("administrativeState", "LOCKED", "UNLOCKED", null, null));
+                changedAttributes.add(new AttributeChangeData("userLabel", "cell-1", "cell-2", null, null));
+                final DpsAttributeChangedEvent dpsAttributeChangedEvent = new DpsAttributeChangedEvent();
+                dpsAttributeChangedEvent.setFdn(fdn);
+                dpsAttributeChangedEvent.setNamespace("ERBS_NODE_MODEL");
+                dpsAttributeChangedEvent.setType("EUtranCellFDD");
+                dpsAttributeChangedEvent.setVersion("10.3.100");
+                dpsAttributeChangedEvent.setPoId(fdn.hashCode() & Integer.MAX_VALUE);
+                dpsAttributeChangedEvent.setBucketName("Live");
+                dpsAttributeChangedEvent.setChangedAttributes(changedAttributes);
+                return dpsAttributeChangedEvent;
+        }
+    }
+
+    /**
+     * @param node
+     *     index of the node
+     * @return the FDN of a cell of the node
+     */
+    public static String createFdn(final int node) {
+        return String.format("SubNetwork=ONRM_ROOT_MO,MeContext=LTE%05dERBS,ManagedElement=1,ENodeBFunction=1,EUtranCellFDD=1", node);
+    }
+
+    static PayloadMix selectEventType(final PayloadMix payloadMix, final Random random) {
+        if (payloadMix != PayloadMix.MIXED) {
+            return payloadMix;
+        }
+        final int percentile = random.nextInt(100);
+        if (percentile < 40) {
+            return PayloadMix.DPS;
+        }
+        return percentile < 70 ? PayloadMix.CPP : PayloadMix.COM_ECIM;
+    }
+}
@@ -0,0 +1,147 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ericsson.oss.services.cmsubscribedevents.api.SubscribedEventsProcessor;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.CmDataChangeDivertedQueueListener;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.EventDispatcherType;
+
+/**
+ * Creates {@link CmDataChangeDivertedQueueListener} instances outside of a container, wired to a stub {@link SubscribedEventsProcessor}
+ * which only counts the events it receives, one per event for the bulk methods.
+ */
+public final class BenchmarkListenerFactory {
+
+    /**
+     * The ways the listener can process the messages delivered by the sessions, selected through JVM properties.
+     */
+    public enum DispatchMode {
+        /** Events processed on the session threads. */
+        SYNCHRONOUS(EventDispatcherType.SYNCHRONOUS),
+        /** Events handed over to the bounded pipeline. */
+        PIPELINE(EventDispatcherType.PIPELINE),
+        /** Events dispatched to lanes by FDN. */
+        PARTITIONED(EventDispatcherType.PARTITIONED),
+        /** Events delivered to the processor in micro batches. */
+        BATCHING(EventDispatcherType.BATCHING),
+        /** Attribute changes of the same MO merged within a window. */
+        COALESCING(EventDispatcherType.COALESCING),
+        /** Node notifications drained ahead of the bulk events. */
+        PRIORITY(EventDispatcherType.PRIORITY),
+        /** Events processed on virtual threads, in order per FDN. */
+        VIRTUAL_THREADS(EventDispatcherType.VIRTUAL_THREADS),
+        /** Events acknowledged once written to the local spool, and replayed to the processor. */
+        SPOOLING(EventDispatcherType.SPOOLING);
+
+        private final EventDispatcherType dispatcherType;
+
+        DispatchMode(final EventDispatcherType dispatcherType) {
+            this.dispatcherType = dispatcherType;
+        }
+
+        void apply() {
+            System.setProperty(DISPATCHER_PROPERTY, dispatcherType.name());
+        }
+    }
+
+    private static final String DISPATCHER_PROPERTY = "cmsubscribedevents.dclistener.dispatcher";
+
+    private BenchmarkListenerFactory() {
+    }
+
+    /**
+     * Creates and initializes a listener using the given dispatch mode.
+     *
+     * @param dispatchMode
+     *     how the listener processes the messages
+     * @param processedEvents
+     *     incremented for every event received by the stub {@link SubscribedEventsProcessor}
+     * @return the initialized listener
+     */
+    public static CmDataChangeDivertedQueueListener createListener(final DispatchMode dispatchMode, final LongAdder processedEvents) {
+        dispatchMode.apply();
+        return createListener(processedEvents);
+    }
+
+    /**
+     * Creates and initializes a listener. The dispatcher used by the listener is selected from the JVM properties, as in the deployed
+     * service.
+     *
+     * @param processedEvents
+     *     incremented for every event received by the stub {@link SubscribedEventsProcessor}
+     * @return the initialized listener
+     */
+    public static CmDataChangeDivertedQueueListener createListener(final LongAdder processedEvents) {
+        final CmDataChangeDivertedQueueListener listener = new CmDataChangeDivertedQueueListener();
+        setField(listener, "eventsProcessor", createProcessor(processedEvents));
+        listener.init();
+        return listener;
+    }
+
+    private static SubscribedEventsProcessor createProcessor(final LongAdder processedEvents) {
+        return createProcessor(processedEvents, 0L);
+    }
+
+    /**
+     * Creates a stub {@link SubscribedEventsProcessor} which counts the events it receives and optionally blocks for each call, as the
+     * remote call made by the deployed service does.
+     *
+     * @param processedEvents
+     *     incremented for every event received, one per event for the bulk methods
+     * @param callDurationMicros
+     *     time each call blocks for, 0 to return immediately
+     * @return the stub processor
+     */
+    static SubscribedEventsProcessor createProcessor(final LongAdder processedEvents, final long callDurationMicros) {
+        return (SubscribedEventsProcessor) Proxy.newProxyInstance(SubscribedEventsProcessor.class.getClassLoader(),
+            new Class<?>[] { SubscribedEventsProcessor.class }, (proxy, method, arguments) -> {
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.invoke(processedEvents, arguments);
+                }
+                if (callDurationMicros > 0) {
+                    TimeUnit.MICROSECONDS.sleep(callDurationMicros);
+                }
+                if (arguments != null && arguments.length == 1 && arguments[0] instanceof Collection) {
+                    processedEvents.add(((Collection<?>) arguments[0]).size());
+                } else {
+                    processedEvents.increment();
+                }
+                return null;
+            });
+    }
+
+    /**
+     * Sets a field normally injected by the container, declared by the class of the target or by one of its superclasses.
+     */
+    static void setField(final Object target, final String fieldName, final Object value) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                final Field field = type.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (final NoSuchFieldException exception) {
+                // declared by a superclass
+            } catch (final ReflectiveOperationException exception) {
+                throw new IllegalStateException("Cannot set " + fieldName + " on " + target.getClass().getName(), exception);
+            }
+        }
+        throw new IllegalStateException("No field " + fieldName + " on " + target.getClass().getName());
+    }
+}
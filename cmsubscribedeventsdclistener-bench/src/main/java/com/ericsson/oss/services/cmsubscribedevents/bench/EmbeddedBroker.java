@@ -0,0 +1,100 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Queue;
+
+import org.apache.activemq.artemis.api.core.QueueConfiguration;
+import org.apache.activemq.artemis.api.core.RoutingType;
+import org.apache.activemq.artemis.api.core.SimpleString;
+import org.apache.activemq.artemis.api.jms.ActiveMQJMSClient;
+import org.apache.activemq.artemis.core.config.Configuration;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+
+/**
+ * ActiveMQ Artemis broker started in the current JVM, reachable through the in-VM transport only, with a non persistent anycast queue.
+ */
+public class EmbeddedBroker implements AutoCloseable {
+
+    private static final String IN_VM_URL = "vm://0";
+
+    private final String queueName;
+    private final EmbeddedActiveMQ server = new EmbeddedActiveMQ();
+    private final ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(IN_VM_URL);
+    private final Queue queue;
+
+    /**
+     * Starts the broker.
+     *
+     * @param queueName
+     *     name of the queue to create
+     * @throws Exception
+     *     if the broker cannot be started
+     */
+    public EmbeddedBroker(final String queueName) throws Exception {
+        this.queueName = queueName;
+        final Configuration configuration = new ConfigurationImpl()
+            .setPersistenceEnabled(false)
+            .setSecurityEnabled(false)
+            .setJMXManagementEnabled(false)
+            .addAcceptorConfiguration("in-vm", IN_VM_URL)
+            .addQueueConfiguration(new QueueConfiguration(queueName).setAddress(queueName).setRoutingType(RoutingType.ANYCAST));
+        server.setConfiguration(configuration);
+        server.start();
+        queue = ActiveMQJMSClient.createQueue(queueName);
+    }
+
+    /**
+     * @return a connection factory connected to the broker through the in-VM transport
+     */
+    public ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    /**
+     * @return the queue created on start
+     */
+    public Queue getQueue() {
+        return queue;
+    }
+
+    /**
+     * @return the number of messages in the queue, delivered or not
+     */
+    public long getQueueDepth() {
+        return server.getActiveMQServer().locateQueue(SimpleString.toSimpleString(queueName)).getMessageCount();
+    }
+
+    /**
+     * @return the number of messages delivered to a consumer and not yet acknowledged
+     */
+    public int getDeliveringCount() {
+        return server.getActiveMQServer().locateQueue(SimpleString.toSimpleString(queueName)).getDeliveringCount();
+    }
+
+    /**
+     * @return the number of messages acknowledged since the broker was started
+     */
+    public long getAcknowledgedCount() {
+        return server.getActiveMQServer().locateQueue(SimpleString.toSimpleString(queueName)).getMessagesAcknowledged();
+    }
+
+    @Override
+    public void close() throws Exception {
+        connectionFactory.close();
+        server.stop();
+    }
+}
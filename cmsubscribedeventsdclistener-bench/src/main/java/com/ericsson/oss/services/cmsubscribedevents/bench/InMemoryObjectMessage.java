@@ -0,0 +1,332 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
+import javax.jms.ObjectMessage;
+
+/**
+ * {@link ObjectMessage} held in memory, used to drive the listener without a broker. Only the body, the properties and the acknowledgement
+ * are meaningful, the JMS headers are stored but never interpreted.
+ */
+public class InMemoryObjectMessage implements ObjectMessage {
+
+    private final Map<String, Object> properties = new HashMap<>();
+    private Serializable object;
+    private long acknowledgements;
+
+    private String messageId;
+    private long timestamp;
+    private String correlationId;
+    private Destination replyTo;
+    private Destination destination;
+    private int deliveryMode = DEFAULT_DELIVERY_MODE;
+    private boolean redelivered;
+    private String type;
+    private long expiration;
+    private long deliveryTime;
+    private int priority = DEFAULT_PRIORITY;
+
+    public InMemoryObjectMessage(final Serializable object) {
+        this.object = object;
+    }
+
+    /**
+     * @return the number of times this message was acknowledged
+     */
+    public long getAcknowledgements() {
+        return acknowledgements;
+    }
+
+    @Override
+    public Serializable getObject() throws JMSException {
+        return object;
+    }
+
+    @Override
+    public void setObject(final Serializable object) throws JMSException {
+        this.object = object;
+    }
+
+    @Override
+    public void acknowledge() {
+        acknowledgements++;
+    }
+
+    @Override
+    public void clearBody() {
+        object = null;
+    }
+
+    @Override
+    public <T> T getBody(final Class<T> bodyType) throws JMSException {
+        if (object != null && !bodyType.isInstance(object)) {
+            throw new MessageFormatException("Body of type " + object.getClass() + " is not assignable to " + bodyType);
+        }
+        return bodyType.cast(object);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isBodyAssignableTo(final Class bodyType) {
+        return object == null || bodyType.isInstance(object);
+    }
+
+    @Override
+    public void clearProperties() {
+        properties.clear();
+    }
+
+    @Override
+    public boolean propertyExists(final String name) {
+        return properties.containsKey(name);
+    }
+
+    @Override
+    public boolean getBooleanProperty(final String name) {
+        final Object value = properties.get(name);
+        return value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(String.valueOf(value));
+    }
+
+    @Override
+    public byte getByteProperty(final String name) throws JMSException {
+        return getNumberProperty(name).byteValue();
+    }
+
+    @Override
+    public short getShortProperty(final String name) throws JMSException {
+        return getNumberProperty(name).shortValue();
+    }
+
+    @Override
+    public int getIntProperty(final String name) throws JMSException {
+        return getNumberProperty(name).intValue();
+    }
+
+    @Override
+    public long getLongProperty(final String name) throws JMSException {
+        return getNumberProperty(name).longValue();
+    }
+
+    @Override
+    public float getFloatProperty(final String name) throws JMSException {
+        return getNumberProperty(name).floatValue();
+    }
+
+    @Override
+    public double getDoubleProperty(final String name) throws JMSException {
+        return getNumberProperty(name).doubleValue();
+    }
+
+    @Override
+    public String getStringProperty(final String name) {
+        final Object value = properties.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public Object getObjectProperty(final String name) {
+        return properties.get(name);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Enumeration getPropertyNames() {
+        return Collections.enumeration(properties.keySet());
+    }
+
+    @Override
+    public void setBooleanProperty(final String name, final boolean value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public void setByteProperty(final String name, final byte value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public void setShortProperty(final String name, final short value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public void setIntProperty(final String name, final int value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public void setLongProperty(final String name, final long value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public void setFloatProperty(final String name, final float value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public void setDoubleProperty(final String name, final double value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public void setStringProperty(final String name, final String value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public void setObjectProperty(final String name, final Object value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public String getJMSMessageID() {
+        return messageId;
+    }
+
+    @Override
+    public void setJMSMessageID(final String messageId) {
+        this.messageId = messageId;
+    }
+
+    @Override
+    public long getJMSTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public void setJMSTimestamp(final long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public byte[] getJMSCorrelationIDAsBytes() {
+        return correlationId == null ? null : correlationId.getBytes();
+    }
+
+    @Override
+    public void setJMSCorrelationIDAsBytes(final byte[] correlationId) {
+        this.correlationId = correlationId == null ? null : new String(correlationId);
+    }
+
+    @Override
+    public void setJMSCorrelationID(final String correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    @Override
+    public String getJMSCorrelationID() {
+        return correlationId;
+    }
+
+    @Override
+    public Destination getJMSReplyTo() {
+        return replyTo;
+    }
+
+    @Override
+    public void setJMSReplyTo(final Destination replyTo) {
+        this.replyTo = replyTo;
+    }
+
+    @Override
+    public Destination getJMSDestination() {
+        return destination;
+    }
+
+    @Override
+    public void setJMSDestination(final Destination destination) {
+        this.destination = destination;
+    }
+
+    @Override
+    public int getJMSDeliveryMode() {
+        return deliveryMode;
+    }
+
+    @Override
+    public void setJMSDeliveryMode(final int deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
+
+    @Override
+    public boolean getJMSRedelivered() {
+        return redelivered;
+    }
+
+    @Override
+    public void setJMSRedelivered(final boolean redelivered) {
+        this.redelivered = redelivered;
+    }
+
+    @Override
+    public String getJMSType() {
+        return type;
+    }
+
+    @Override
+    public void setJMSType(final String type) {
+        this.type = type;
+    }
+
+    @Override
+    public long getJMSExpiration() {
+        return expiration;
+    }
+
+    @Override
+    public void setJMSExpiration(final long expiration) {
+        this.expiration = expiration;
+    }
+
+    @Override
+    public long getJMSDeliveryTime() {
+        return deliveryTime;
+    }
+
+    @Override
+    public void setJMSDeliveryTime(final long deliveryTime) {
+        this.deliveryTime = deliveryTime;
+    }
+
+    @Override
+    public int getJMSPriority() {
+        return priority;
+    }
+
+    @Override
+    public void setJMSPriority(final int priority) {
+        this.priority = priority;
+    }
+
+    private Number getNumberProperty(final String name) throws JMSException {
+        final Object value = properties.get(name);
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        try {
+            return Double.valueOf(String.valueOf(value));
+        } catch (final NumberFormatException exception) {
+            throw new MessageFormatException("Property " + name + " with value " + value + " is not numeric");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.oss.services.cmsubscribedevents.bench.BenchmarkEvents.PayloadMix;
+import com.ericsson.oss.services.cmsubscribedevents.bench.BenchmarkListenerFactory.DispatchMode;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.CmDataChangeDivertedQueueListener;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.SessionAcknowledgementTracker;
+
+/**
+ * Measures the cost of {@link CmDataChangeDivertedQueueListener#onMessage} on the session thread, with events processed synchronously and
+ * logging at INFO level. Run with the GC profiler to get the bytes allocated per message:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar ListenerAllocationBenchmark -prof gc
+ * </pre>
+ *
+ * The gc.alloc.rate.norm result includes the argument array allocated by the proxy used as stub processor, which is the same for every
+ * build, so the difference between the results of two builds is the difference in allocations of the listener itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerAllocationBenchmark {
+
+    @Param({ "CPP", "COM_ECIM", "DPS" })
+    private PayloadMix eventType;
+
+    private final LongAdder processedEvents = new LongAdder();
+    private CmDataChangeDivertedQueueListener listener;
+    private SessionAcknowledgementTracker acknowledgementTracker;
+    private InMemoryObjectMessage message;
+
+    @Setup
+    public void setUp() {
+        listener = BenchmarkListenerFactory.createListener(DispatchMode.SYNCHRONOUS, processedEvents);
+        acknowledgementTracker = SessionAcknowledgementTracker.create("benchmark");
+        message = new InMemoryObjectMessage(BenchmarkEvents.createEvent(eventType, BenchmarkEvents.createFdn(0)));
+    }
+
+    @Benchmark
+    public long onMessage() {
+        listener.onMessage(message, acknowledgementTracker);
+        return processedEvents.sum();
+    }
+}
@@ -0,0 +1,95 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.jms.JMSException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.oss.services.cmsubscribedevents.bench.BenchmarkEvents.PayloadMix;
+import com.ericsson.oss.services.cmsubscribedevents.bench.BenchmarkListenerFactory.DispatchMode;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.CmDataChangeDivertedQueueListener;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.SessionAcknowledgementTracker;
+
+/**
+ * Samples the time between the delivery of a message to the listener and the call made on the stub processor for its event, and reports
+ * its percentiles. A single session delivers the messages one at a time, so with the batching dispatcher the result is dominated by the
+ * linger time; the behaviour under concurrency is covered by {@link ListenerThroughputBenchmark}.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar ListenerLatencyBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(1)
+@Fork(1)
+public class ListenerLatencyBenchmark {
+
+    private static final int MESSAGE_COUNT = 4096;
+
+    @Param({ "CPP", "COM_ECIM", "DPS", "MIXED" })
+    private PayloadMix payloadMix;
+
+    @Param({ "SYNCHRONOUS", "PIPELINE", "PARTITIONED", "BATCHING" })
+    private DispatchMode dispatchMode;
+
+    private final LongAdder processedEvents = new LongAdder();
+    private CmDataChangeDivertedQueueListener listener;
+    private SessionAcknowledgementTracker acknowledgementTracker;
+    private SerializedObjectMessage[] messages;
+    private int nextMessage;
+
+    @Setup
+    public void setUp() throws JMSException {
+        listener = BenchmarkListenerFactory.createListener(dispatchMode, processedEvents);
+        acknowledgementTracker = SessionAcknowledgementTracker.create("benchmark-session");
+        messages = BenchmarkEvents.createMessages(payloadMix, MESSAGE_COUNT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        listener.destroy();
+    }
+
+    @Benchmark
+    public long deliverMessage() {
+        final long expectedEvents = processedEvents.sum() + 1;
+        listener.onMessage(messages[nextMessage], acknowledgementTracker);
+        nextMessage = (nextMessage + 1) % MESSAGE_COUNT;
+        long events = processedEvents.sum();
+        while (events < expectedEvents) {
+            Thread.yield();
+            events = processedEvents.sum();
+        }
+        return events;
+    }
+}
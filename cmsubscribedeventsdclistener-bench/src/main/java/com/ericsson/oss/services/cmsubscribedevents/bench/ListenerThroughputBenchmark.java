@@ -0,0 +1,127 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.jms.JMSException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.oss.services.cmsubscribedevents.bench.BenchmarkEvents.PayloadMix;
+import com.ericsson.oss.services.cmsubscribedevents.bench.BenchmarkListenerFactory.DispatchMode;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.CmDataChangeDivertedQueueListener;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.SessionAcknowledgementTracker;
+
+/**
+ * Measures the throughput of the listener with several consumer sessions delivering messages concurrently, each session with its own
+ * {@link SessionAcknowledgementTracker} as when the sessions are created by the JmsQueueConnector. An operation is one message: every
+ * invocation delivers {@link #MESSAGES_PER_INVOCATION} messages split between the sessions and completes once all of them have reached the
+ * stub processor, so the time spent in the dispatchers and in the acknowledgements is included.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar ListenerThroughputBenchmark -prof gc
+ * java -jar target/benchmarks.jar ListenerThroughputBenchmark -p consumers=16 -p dispatchMode=PARTITIONED
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListenerThroughputBenchmark {
+
+    static final int MESSAGES_PER_INVOCATION = 8192;
+    private static final long COMPLETION_TIMEOUT_MILLIS = 60000L;
+
+    @Param({ "1", "4", "16" })
+    private int consumers;
+
+    @Param({ "CPP", "DPS", "MIXED" })
+    private PayloadMix payloadMix;
+
+    @Param({ "SYNCHRONOUS", "PIPELINE", "PARTITIONED", "BATCHING" })
+    private DispatchMode dispatchMode;
+
+    private final LongAdder processedEvents = new LongAdder();
+    private CmDataChangeDivertedQueueListener listener;
+    private ExecutorService sessionExecutor;
+    private List<Callable<Void>> sessions;
+
+    @Setup
+    public void setUp() throws JMSException {
+        listener = BenchmarkListenerFactory.createListener(dispatchMode, processedEvents);
+        sessionExecutor = Executors.newFixedThreadPool(consumers);
+        final SerializedObjectMessage[] messages = BenchmarkEvents.createMessages(payloadMix, MESSAGES_PER_INVOCATION);
+        sessions = new ArrayList<>(consumers);
+        for (int i = 0; i < consumers; i++) {
+            final SessionAcknowledgementTracker acknowledgementTracker = SessionAcknowledgementTracker.create("benchmark-session-" + i);
+            final SerializedObjectMessage[] sessionMessages = Arrays.copyOfRange(messages, i * MESSAGES_PER_INVOCATION / consumers,
+                (i + 1) * MESSAGES_PER_INVOCATION / consumers);
+            sessions.add(() -> {
+                for (final SerializedObjectMessage message : sessionMessages) {
+                    listener.onMessage(message, acknowledgementTracker);
+                }
+                return null;
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionExecutor.shutdownNow();
+        listener.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_INVOCATION)
+    public long deliverMessages() throws InterruptedException, ExecutionException, TimeoutException {
+        final long expectedEvents = processedEvents.sum() + MESSAGES_PER_INVOCATION;
+        for (final Future<Void> session : sessionExecutor.invokeAll(sessions)) {
+            session.get();
+        }
+        final long deadline = System.currentTimeMillis() + COMPLETION_TIMEOUT_MILLIS;
+        long events = processedEvents.sum();
+        while (events < expectedEvents) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new TimeoutException((expectedEvents - events) + " events were not processed in " + COMPLETION_TIMEOUT_MILLIS + " ms");
+            }
+            Thread.yield();
+            events = processedEvents.sum();
+        }
+        return events;
+    }
+}
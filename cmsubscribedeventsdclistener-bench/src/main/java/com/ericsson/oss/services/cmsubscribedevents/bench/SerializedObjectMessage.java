@@ -0,0 +1,96 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
+
+/**
+ * {@link InMemoryObjectMessage} which keeps its body serialized and deserializes it on every {@link #getObject()}, as a JMS client does
+ * with the body of a message received from the broker.
+ */
+public class SerializedObjectMessage extends InMemoryObjectMessage {
+
+    private byte[] serializedObject;
+
+    public SerializedObjectMessage(final Serializable object) throws JMSException {
+        super(null);
+        setObject(object);
+    }
+
+    @Override
+    public Serializable getObject() throws JMSException {
+        if (serializedObject == null) {
+            return null;
+        }
+        try (final ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(serializedObject))) {
+            return (Serializable) inputStream.readObject();
+        } catch (final IOException | ClassNotFoundException exception) {
+            throw new MessageFormatException("Cannot deserialize the message body: " + exception.getMessage());
+        }
+    }
+
+    @Override
+    public void setObject(final Serializable object) throws JMSException {
+        if (object == null) {
+            serializedObject = null;
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream outputStream = new ObjectOutputStream(bytes)) {
+            outputStream.writeObject(object);
+        } catch (final IOException exception) {
+            throw new MessageFormatException("Cannot serialize the message body: " + exception.getMessage());
+        }
+        serializedObject = bytes.toByteArray();
+    }
+
+    @Override
+    public void clearBody() {
+        serializedObject = null;
+    }
+
+    @Override
+    public <T> T getBody(final Class<T> bodyType) throws JMSException {
+        final Serializable object = getObject();
+        if (object != null && !bodyType.isInstance(object)) {
+            throw new MessageFormatException("Body of type " + object.getClass() + " is not assignable to " + bodyType);
+        }
+        return bodyType.cast(object);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isBodyAssignableTo(final Class bodyType) {
+        try {
+            final Serializable object = getObject();
+            return object == null || bodyType.isInstance(object);
+        } catch (final JMSException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the size in bytes of the serialized body
+     */
+    public int getSerializedSize() {
+        return serializedObject == null ? 0 : serializedObject.length;
+    }
+}
@@ -0,0 +1,131 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import com.ericsson.oss.services.cmsubscribedevents.bench.BenchmarkEvents.PayloadMix;
+
+/**
+ * Publishes serialized notifications to a queue at a steady rate, from a thread of its own, until it is stopped.
+ */
+public class SoakLoadGenerator implements Runnable, AutoCloseable {
+
+    private static final long PACING_SLEEP_MILLIS = 1L;
+
+    private final PayloadMix payloadMix;
+    private final int ratePerSecond;
+    private final Connection connection;
+    private final Session session;
+    private final MessageProducer producer;
+    private final Random random = new Random();
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder failedSends = new LongAdder();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Connects to the queue and starts publishing.
+     *
+     * @param connectionFactory
+     *     factory of the broker
+     * @param queue
+     *     the queue to publish to
+     * @param payloadMix
+     *     the event types to publish
+     * @param ratePerSecond
+     *     messages published per second, 0 to publish as fast as the broker accepts them
+     * @throws JMSException
+     *     if the producer cannot be created
+     */
+    public SoakLoadGenerator(final ConnectionFactory connectionFactory, final Queue queue, final PayloadMix payloadMix, final int ratePerSecond)
+        throws JMSException {
+        this.payloadMix = payloadMix;
+        this.ratePerSecond = ratePerSecond;
+        this.connection = connectionFactory.createConnection();
+        this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        this.producer = session.createProducer(queue);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        thread = new Thread(this, "soak-load-generator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        final long startNanos = System.nanoTime();
+        while (running) {
+            if (ratePerSecond > 0) {
+                final long dueMessages = (System.nanoTime() - startNanos) * ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+                if (sentMessages.sum() + failedSends.sum() >= dueMessages) {
+                    pause();
+                    continue;
+                }
+            }
+            send();
+        }
+    }
+
+    /**
+     * @return the number of messages published
+     */
+    public long getSentMessageCount() {
+        return sentMessages.sum();
+    }
+
+    /**
+     * @return the number of messages which could not be published
+     */
+    public long getFailedSendCount() {
+        return failedSends.sum();
+    }
+
+    /**
+     * Stops publishing and closes the connection.
+     */
+    @Override
+    public void close() throws JMSException, InterruptedException {
+        running = false;
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        connection.close();
+    }
+
+    private void send() {
+        final String fdn = BenchmarkEvents.createFdn(random.nextInt(BenchmarkEvents.NODE_COUNT));
+        try {
+            producer.send(session.createObjectMessage(BenchmarkEvents.createEvent(BenchmarkEvents.selectEventType(payloadMix, random), fdn)));
+            sentMessages.increment();
+        } catch (final JMSException exception) {
+            failedSends.increment();
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(PACING_SLEEP_MILLIS);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
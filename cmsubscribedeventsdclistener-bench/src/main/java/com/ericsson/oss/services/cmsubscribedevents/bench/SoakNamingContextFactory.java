@@ -0,0 +1,70 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import java.lang.reflect.Proxy;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.spi.InitialContextFactory;
+
+/**
+ * {@link InitialContextFactory} serving the objects bound by the soak test, so that the JNDI lookups made by JmsQueueConnector resolve to
+ * the embedded broker. Selected by setting the {@link Context#INITIAL_CONTEXT_FACTORY} JVM property to this class.
+ */
+public class SoakNamingContextFactory implements InitialContextFactory {
+
+    private static final Map<String, Object> BINDINGS = new ConcurrentHashMap<>();
+
+    /**
+     * Binds an object for the lookups made through any context created by this factory.
+     *
+     * @param name
+     *     the JNDI name, as passed to the lookup
+     * @param object
+     *     the bound object
+     */
+    public static void bind(final String name, final Object object) {
+        BINDINGS.put(name, object);
+    }
+
+    @Override
+    public Context getInitialContext(final Hashtable<?, ?> environment) {
+        return (Context) Proxy.newProxyInstance(Context.class.getClassLoader(), new Class<?>[] { Context.class }, (proxy, method, arguments) -> {
+            switch (method.getName()) {
+                case "lookup":
+                    final Object bound = BINDINGS.get(String.valueOf(arguments[0]));
+                    if (bound == null) {
+                        throw new NameNotFoundException(String.valueOf(arguments[0]));
+                    }
+                    return bound;
+                case "close":
+                    return null;
+                case "getEnvironment":
+                    return new Hashtable<>(environment);
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == arguments[0];
+                case "toString":
+                    return "SoakNamingContext" + BINDINGS.keySet();
+                default:
+                    throw new OperationNotSupportedException(method.getName() + " is not supported by the soak test context");
+            }
+        });
+    }
+}
@@ -0,0 +1,212 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.naming.Context;
+
+import com.ericsson.oss.itpf.sdk.eventbus.Channel;
+import com.ericsson.oss.itpf.sdk.eventbus.ChannelLocator;
+import com.ericsson.oss.services.cmsubscribedevents.bench.BenchmarkEvents.PayloadMix;
+import com.ericsson.oss.services.cmsubscribedevents.bench.BenchmarkListenerFactory.DispatchMode;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.CmDataChangeDivertedQueueListener;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.HistogramSnapshot;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.JmsQueueConnector;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.RedeliveredMessageFilter;
+import com.ericsson.oss.services.cmsubscribedevents.ejb.service.SessionAcknowledgementTracker;
+
+/**
+ * End to end soak test: starts an embedded ActiveMQ Artemis broker, publishes serialized notifications to CmDataChangeDivertedQueue, and
+ * consumes them with {@link JmsQueueConnector} and {@link CmDataChangeDivertedQueueListener} wired to a stub SubscribedEventsProcessor,
+ * as deployed but without the container.
+ * <p>
+ * Every report interval, and once more at the end, it prints the sustained throughput, the percentiles of the end to end latency from the
+ * send to the call made on the processor, the redelivered messages, the broker queue depth and the heap usage, and the errors met while
+ * reading the redelivery flag of the messages, if any. The run is configured through JVM properties, the listener itself through its
+ * usual cmsubscribedevents.dclistener properties:
+ * <ul>
+ * <li>soak.duration.seconds: length of the run, 300 by default</li>
+ * <li>soak.rate.per.second: messages published per second, 0 for as fast as possible, 2000 by default</li>
+ * <li>soak.payload.mix: CPP, COM_ECIM, DPS or MIXED, MIXED by default</li>
+ * <li>soak.dispatch.mode: one of {@link DispatchMode}, SYNCHRONOUS by default</li>
+ * <li>soak.processor.call.micros: time each processor call blocks for, 0 by default</li>
+ * <li>soak.report.interval.seconds: 10 by default</li>
+ * <li>sdk.eventbus.jms.concurrent.queue.listeners.number.CmDataChangeDivertedQueue: number of consumers, 1 by default</li>
+ * </ul>
+ *
+ * <pre>
+ * java -Dsoak.duration.seconds=3600 -Dsoak.rate.per.second=5000 -cp target/benchmarks.jar com.ericsson.oss.services.cmsubscribedevents.bench.SoakTest
+ * </pre>
+ */
+public final class SoakTest {
+
+    private static final String QUEUE_NAME = "CmDataChangeDivertedQueue";
+    private static final String QUEUE_JNDI_NAME = "java:/queue/" + QUEUE_NAME;
+    private static final String CONNECTION_FACTORY_JNDI_NAME = "java:/ConnectionFactory";
+    private static final long DRAIN_TIMEOUT_MILLIS = 30000L;
+    private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+
+    private final long durationSeconds = Long.getLong("soak.duration.seconds", 300L);
+    private final int ratePerSecond = Integer.getInteger("soak.rate.per.second", 2000);
+    private final PayloadMix payloadMix = PayloadMix.valueOf(System.getProperty("soak.payload.mix", PayloadMix.MIXED.name()));
+    private final DispatchMode dispatchMode = DispatchMode.valueOf(System.getProperty("soak.dispatch.mode", DispatchMode.SYNCHRONOUS.name()));
+    private final long processorCallMicros = Long.getLong("soak.processor.call.micros", 0L);
+    private final long reportIntervalSeconds = Long.getLong("soak.report.interval.seconds", 10L);
+
+    private final LongAdder processedEvents = new LongAdder();
+    private final LongAdder redeliveredMessages = new LongAdder();
+    private final LongAdder unreadableRedeliveryFlags = new LongAdder();
+    private volatile String lastRedeliveryFlagError;
+    private final long startNanos = System.nanoTime();
+    private long previousReportNanos = startNanos;
+    private long previousProcessedEvents;
+    private long maxHeapUsedBytes;
+
+    private SoakTest() {
+    }
+
+    public static void main(final String[] arguments) throws Exception {
+        new SoakTest().run();
+    }
+
+    private void run() throws Exception {
+        System.out.printf("Soak test of %d s at %s messages/s, %s payloads, %s dispatch, %d us per processor call%n", durationSeconds,
+            ratePerSecond == 0 ? "unlimited" : String.valueOf(ratePerSecond), payloadMix, dispatchMode, processorCallMicros);
+        try (EmbeddedBroker broker = new EmbeddedBroker(QUEUE_NAME)) {
+            System.setProperty(Context.INITIAL_CONTEXT_FACTORY, SoakNamingContextFactory.class.getName());
+            SoakNamingContextFactory.bind(CONNECTION_FACTORY_JNDI_NAME, broker.getConnectionFactory());
+            SoakNamingContextFactory.bind(QUEUE_JNDI_NAME, broker.getQueue());
+
+            final CmDataChangeDivertedQueueListener listener = createListener();
+            final JmsQueueConnector connector = createConnector(listener);
+            if (!connector.startListening()) {
+                throw new IllegalStateException("The connector could not start listening to the embedded broker");
+            }
+            final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleAtFixedRate(connector::acknowledgeExpiredMessages, 1L, 1L, TimeUnit.SECONDS);
+            scheduler.scheduleAtFixedRate(() -> report(listener, broker, null), reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+
+            final SoakLoadGenerator loadGenerator = new SoakLoadGenerator(broker.getConnectionFactory(), broker.getQueue(), payloadMix,
+                ratePerSecond);
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            loadGenerator.close();
+            awaitDrain(loadGenerator.getSentMessageCount());
+            scheduler.shutdownNow();
+
+            System.out.println("Final report:");
+            report(listener, broker, loadGenerator);
+            connector.stopListening();
+            listener.destroy();
+        }
+    }
+
+    private CmDataChangeDivertedQueueListener createListener() {
+        dispatchMode.apply();
+        final CmDataChangeDivertedQueueListener listener = new CmDataChangeDivertedQueueListener() {
+            @Override
+            public void onMessage(final Message message, final SessionAcknowledgementTracker acknowledgementTracker) {
+                try {
+                    if (message != null && message.getJMSRedelivered()) {
+                        redeliveredMessages.increment();
+                    }
+                } catch (final JMSException exception) {
+                    unreadableRedeliveryFlags.increment();
+                    lastRedeliveryFlagError = exception.getMessage();
+                }
+                super.onMessage(message, acknowledgementTracker);
+            }
+        };
+        BenchmarkListenerFactory.setField(listener, "eventsProcessor", BenchmarkListenerFactory.createProcessor(processedEvents,
+            processorCallMicros));
+        BenchmarkListenerFactory.setField(listener, "redeliveredMessageFilter", new RedeliveredMessageFilter());
+        listener.init();
+        return listener;
+    }
+
+    private static JmsQueueConnector createConnector(final CmDataChangeDivertedQueueListener listener) {
+        final Channel channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] { Channel.class },
+            (proxy, method, arguments) -> {
+                if ("getChannelURI".equals(method.getName())) {
+                    return QUEUE_JNDI_NAME;
+                }
+                throw new UnsupportedOperationException(method.getName() + " is not supported by the soak test channel");
+            });
+        final ChannelLocator channelLocator = (ChannelLocator) Proxy.newProxyInstance(ChannelLocator.class.getClassLoader(),
+            new Class<?>[] { ChannelLocator.class }, (proxy, method, arguments) -> {
+                if ("lookupChannel".equals(method.getName())) {
+                    return channel;
+                }
+                throw new UnsupportedOperationException(method.getName() + " is not supported by the soak test channel locator");
+            });
+        final JmsQueueConnector connector = new JmsQueueConnector();
+        BenchmarkListenerFactory.setField(connector, "channelLocator", channelLocator);
+        BenchmarkListenerFactory.setField(connector, "cmDataChangeDivertedQueueListener", listener);
+        return connector;
+    }
+
+    private void awaitDrain(final long sentMessages) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        while (processedEvents.sum() < sentMessages && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100L);
+        }
+    }
+
+    private synchronized void report(final CmDataChangeDivertedQueueListener listener, final EmbeddedBroker broker,
+                                     final SoakLoadGenerator loadGenerator) {
+        final long nowNanos = System.nanoTime();
+        final long processed = processedEvents.sum();
+        final double intervalSeconds = Math.max(1L, nowNanos - previousReportNanos) / 1e9;
+        final double elapsedSeconds = Math.max(1L, nowNanos - startNanos) / 1e9;
+        final double intervalThroughput = (processed - previousProcessedEvents) / intervalSeconds;
+        previousReportNanos = nowNanos;
+        previousProcessedEvents = processed;
+
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        maxHeapUsedBytes = Math.max(maxHeapUsedBytes, heap.getUsed());
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (final GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0L, garbageCollector.getCollectionCount());
+            gcMillis += Math.max(0L, garbageCollector.getCollectionTime());
+        }
+        final HistogramSnapshot latency = listener.getEventMetrics().getMessageAgeMillis();
+
+        System.out.println(String.format(Locale.ROOT,
+            "[%6.0f s] processed %d (%.0f/s, %.0f/s overall), latency ms p50 %d p99 %d max %d, redelivered %d, duplicates suppressed %d, "
+                + "queue depth %d, delivering %d, heap used %d MB (max %d MB), gc %d in %d ms",
+            elapsedSeconds, processed, intervalThroughput, processed / elapsedSeconds, latency.getMedian(), latency.getPercentile99(),
+            latency.getMax(), redeliveredMessages.sum(), listener.getSuppressedDuplicateCount(), broker.getQueueDepth(),
+            broker.getDeliveringCount(), heap.getUsed() / BYTES_PER_MEGABYTE, maxHeapUsedBytes / BYTES_PER_MEGABYTE, gcCount, gcMillis));
+        if (loadGenerator != null) {
+            System.out.println(String.format(Locale.ROOT, "sent %d, failed sends %d, processed %d, acknowledged by the broker %d, "
+                    + "processing errors %d, deserialization errors %d", loadGenerator.getSentMessageCount(), loadGenerator.getFailedSendCount(),
+                processed, broker.getAcknowledgedCount(), listener.getEventMetrics().getProcessingErrorCount(),
+                listener.getEventMetrics().getDeserializationErrorCount()));
+        }
+        if (unreadableRedeliveryFlags.sum() > 0) {
+            System.out.println(String.format(Locale.ROOT, "unreadable redelivery flags %d, last error: %s", unreadableRedeliveryFlags.sum(),
+                lastRedeliveryFlagError));
+        }
+    }
+}
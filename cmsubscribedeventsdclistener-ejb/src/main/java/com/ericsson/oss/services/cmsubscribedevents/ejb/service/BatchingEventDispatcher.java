@@ -0,0 +1,318 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the events received from CmDataChangeDivertedQueue into batches, delivered to SubscribedEventsProcessor in one call when
+ * the batch size is reached or when the oldest event of the batch has lingered for the configured time.
+ * <p>
+ * The batches are delivered one at a time, in the order they were filled, whichever session or linger thread delivers them, and the events
+ * of a batch are delivered in the order they were received: consecutive events eligible for the bulk entry point (see
+ * {@link BulkEventsProcessorInvoker}) go in one bulk call, and the other events are delivered on their own between these calls. The
+ * events of an MO are therefore never delivered out of order. The messages of a batch are reported to their
+ * {@link SessionAcknowledgementTracker} only once the batch has been delivered.
+ * <p>
+ * The bulk processing is expected to apply the same failure handling, duplicate detection and metrics as the processing of a single event:
+ * a failed bulk call is not delivered again event by event, which could deliver some events twice. When the processor API has no bulk
+ * entry point, or the processor reports that it does not support it and so has delivered none of the events, the per-event fallback
+ * delivers the events one by one, for this batch and the later ones. With the fallback disabled, a batching dispatcher cannot be created
+ * without a bulk entry point, and the messages of the batches the processor rejects are handed to the rejected message handler, which
+ * dead-letters them.
+ */
+public class BatchingEventDispatcher implements EventDispatcher {
+
+    static final String BATCHING_SIZE_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "batching.size";
+    static final String BATCHING_LINGER_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "batching.linger.millis";
+    static final String BATCHING_FALLBACK_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "batching.fallback.per.event";
+    static final int DEFAULT_BATCH_SIZE = 100;
+    static final long DEFAULT_LINGER_MILLIS = 50L;
+
+    private static Logger logger = LoggerFactory.getLogger(BatchingEventDispatcher.class);
+
+    private final int batchSize;
+    private final long lingerMillis;
+    private final boolean fallbackPerEvent;
+    private final BiPredicate<List<Message>, List<Serializable>> bulkProcessor;
+    private final Function<Message, Serializable> deserializer;
+    private final Predicate<Serializable> bulkEligible;
+    private final BiConsumer<Message, Serializable> eventProcessor;
+    private final Consumer<Message> rejectedMessageHandler;
+    private final Histogram batchSizeHistogram;
+    private final ScheduledExecutorService lingerScheduler;
+    private final Deque<List<BatchEntry>> readyBatches = new ArrayDeque<>();
+    private final Object deliveryLock = new Object();
+    private volatile boolean bulkSupported = true;
+
+    private List<BatchEntry> currentBatch;
+    private long currentBatchStartMillis;
+
+    /**
+     * Creates the dispatcher and starts the linger timer.
+     *
+     * @param batchSize
+     *     maximum number of events in a batch
+     * @param lingerMillis
+     *     maximum time the first event of a batch waits for the batch to fill up
+     * @param fallbackPerEvent
+     *     true to deliver the events one by one when the bulk entry point is missing or not supported, false to reject them
+     * @param bulkProcessor
+     *     delivers the messages and events of a batch in one call, returning false if the bulk entry point is not supported, or null if
+     *     the processor API has no bulk entry point
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param bulkEligible
+     *     selects the events which can be delivered through the bulk entry point
+     * @param eventProcessor
+     *     delivers a single event
+     * @param rejectedMessageHandler
+     *     handles the messages of the batches the processor rejects when the per-event fallback is disabled
+     * @throws IllegalStateException
+     *     if the processor API has no bulk entry point and the per-event fallback is disabled
+     */
+    public BatchingEventDispatcher(final int batchSize, final long lingerMillis, final boolean fallbackPerEvent,
+                                   final BiPredicate<List<Message>, List<Serializable>> bulkProcessor,
+                                   final Function<Message, Serializable> deserializer, final Predicate<Serializable> bulkEligible,
+                                   final BiConsumer<Message, Serializable> eventProcessor, final Consumer<Message> rejectedMessageHandler) {
+        if (bulkProcessor == null && !fallbackPerEvent) {
+            throw new IllegalStateException("Batching without the per-event fallback requires the bulk entry point of SubscribedEventsProcessor");
+        }
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMillis = Math.max(1L, lingerMillis);
+        this.fallbackPerEvent = fallbackPerEvent;
+        this.bulkProcessor = bulkProcessor;
+        this.deserializer = deserializer;
+        this.bulkEligible = bulkEligible;
+        this.eventProcessor = eventProcessor;
+        this.rejectedMessageHandler = rejectedMessageHandler;
+        this.batchSizeHistogram = Histogram.withPowerOfTwoBuckets(this.batchSize);
+        this.currentBatch = new ArrayList<>(this.batchSize);
+        this.lingerScheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("CmDataChangeDivertedQueue-batch-linger"));
+        final long checkPeriodMillis = Math.max(1L, this.lingerMillis / 2);
+        lingerScheduler.scheduleAtFixedRate(this::flushIfLingerExpired, checkPeriodMillis, checkPeriodMillis, TimeUnit.MILLISECONDS);
+        logger.info("Started batching event dispatcher with batch size {}, linger {} ms, bulk delivery {}, per-event fallback {}", this.batchSize,
+            this.lingerMillis, bulkProcessor != null, fallbackPerEvent);
+    }
+
+    /**
+     * Creates a dispatcher using the batch size, linger time and fallback behaviour configured through JVM properties.
+     *
+     * @param bulkProcessor
+     *     delivers the messages and events of a batch in one call, returning false if the bulk entry point is not supported, or null if
+     *     the processor API has no bulk entry point
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param bulkEligible
+     *     selects the events which can be delivered through the bulk entry point
+     * @param eventProcessor
+     *     delivers a single event
+     * @param rejectedMessageHandler
+     *     handles the messages of the batches the processor rejects when the per-event fallback is disabled
+     * @return the started dispatcher
+     */
+    public static BatchingEventDispatcher create(final BiPredicate<List<Message>, List<Serializable>> bulkProcessor,
+                                                 final Function<Message, Serializable> deserializer, final Predicate<Serializable> bulkEligible,
+                                                 final BiConsumer<Message, Serializable> eventProcessor,
+                                                 final Consumer<Message> rejectedMessageHandler) {
+        return new BatchingEventDispatcher(ConfigurationPropertyReader.getIntProperty(BATCHING_SIZE_PROPERTY, DEFAULT_BATCH_SIZE),
+            ConfigurationPropertyReader.getLongProperty(BATCHING_LINGER_PROPERTY, DEFAULT_LINGER_MILLIS),
+            ConfigurationPropertyReader.getBooleanProperty(BATCHING_FALLBACK_PROPERTY, true), bulkProcessor, deserializer, bulkEligible,
+            eventProcessor, rejectedMessageHandler);
+    }
+
+    @Override
+    public void dispatch(final Message message, final SessionAcknowledgementTracker acknowledgementTracker) {
+        final BatchEntry entry = new BatchEntry(message, deserializer.apply(message), acknowledgementTracker);
+        final boolean batchFull;
+        synchronized (this) {
+            if (currentBatch.isEmpty()) {
+                currentBatchStartMillis = System.currentTimeMillis();
+            }
+            currentBatch.add(entry);
+            batchFull = currentBatch.size() >= batchSize;
+            if (batchFull) {
+                readyBatches.add(takeCurrentBatch());
+            }
+        }
+        if (batchFull) {
+            deliverReadyBatches();
+        }
+    }
+
+    @Override
+    public void stop(final long timeoutMillis) {
+        lingerScheduler.shutdownNow();
+        synchronized (this) {
+            if (!currentBatch.isEmpty()) {
+                readyBatches.add(takeCurrentBatch());
+            }
+        }
+        deliverReadyBatches();
+        logger.info("Stopped batching event dispatcher");
+    }
+
+    /**
+     * @return the histogram of the number of events per delivered batch
+     */
+    public Histogram getBatchSizeHistogram() {
+        return batchSizeHistogram;
+    }
+
+    void flushIfLingerExpired() {
+        synchronized (this) {
+            if (currentBatch.isEmpty() || System.currentTimeMillis() - currentBatchStartMillis < lingerMillis) {
+                return;
+            }
+            readyBatches.add(takeCurrentBatch());
+        }
+        deliverReadyBatches();
+    }
+
+    private List<BatchEntry> takeCurrentBatch() {
+        final List<BatchEntry> batch = currentBatch;
+        currentBatch = new ArrayList<>(batchSize);
+        return batch;
+    }
+
+    /**
+     * Delivers the ready batches in the order they were filled. The batches are taken from the queue under the delivery lock, so a batch is
+     * never delivered while an earlier one is still being delivered by another thread.
+     */
+    private void deliverReadyBatches() {
+        synchronized (deliveryLock) {
+            while (true) {
+                final List<BatchEntry> batch;
+                synchronized (this) {
+                    batch = readyBatches.poll();
+                }
+                if (batch == null) {
+                    return;
+                }
+                deliver(batch);
+            }
+        }
+    }
+
+    private void deliver(final List<BatchEntry> batch) {
+        batchSizeHistogram.record(batch.size());
+        try {
+            final List<BatchEntry> bulkEntries = new ArrayList<>(batch.size());
+            for (final BatchEntry entry : batch) {
+                if (bulkEligible.test(entry.event)) {
+                    bulkEntries.add(entry);
+                } else {
+                    deliverInBulk(bulkEntries);
+                    bulkEntries.clear();
+                    deliverOne(entry);
+                }
+            }
+            deliverInBulk(bulkEntries);
+        } finally {
+            for (final BatchEntry entry : batch) {
+                if (entry.leftForRedelivery) {
+                    entry.acknowledgementTracker.messageLeftForRedelivery(entry.message);
+                } else {
+                    entry.acknowledgementTracker.messageProcessed(entry.message);
+                }
+            }
+        }
+    }
+
+    private void deliverInBulk(final List<BatchEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (bulkProcessor == null || !bulkSupported) {
+            deliverWithoutBulk(entries);
+            return;
+        }
+        final List<Message> bulkMessages = new ArrayList<>(entries.size());
+        final List<Serializable> bulkEvents = new ArrayList<>(entries.size());
+        for (final BatchEntry entry : entries) {
+            bulkMessages.add(entry.message);
+            bulkEvents.add(entry.event);
+        }
+        boolean delivered = true;
+        try {
+            delivered = bulkProcessor.test(bulkMessages, bulkEvents);
+            logger.debug("Delivered batch of {} events", bulkEvents.size());
+        } catch (final EventRedeliveryException exception) {
+            for (final BatchEntry entry : entries) {
+                entry.leftForRedelivery = true;
+            }
+        } catch (final Exception exception) {
+            logger.error("Exception :: {} while delivering batch of {} events", exception, bulkEvents.size());
+        }
+        if (!delivered) {
+            bulkSupported = false;
+            logger.warn("Bulk delivery is not supported by SubscribedEventsProcessor, events will be {}",
+                fallbackPerEvent ? "delivered one by one" : "rejected");
+            deliverWithoutBulk(entries);
+        }
+    }
+
+    private void deliverWithoutBulk(final List<BatchEntry> entries) {
+        for (final BatchEntry entry : entries) {
+            if (fallbackPerEvent) {
+                deliverOne(entry);
+                continue;
+            }
+            try {
+                rejectedMessageHandler.accept(entry.message);
+            } catch (final Exception exception) {
+                logger.error("Exception :: {} while rejecting message :: {} of a batch", exception, entry.message);
+            }
+        }
+    }
+
+    private void deliverOne(final BatchEntry entry) {
+        try {
+            eventProcessor.accept(entry.message, entry.event);
+        } catch (final EventRedeliveryException exception) {
+            entry.leftForRedelivery = true;
+        } catch (final Exception exception) {
+            logger.error("Exception :: {} while processing message :: {} of a batch", exception, entry.message);
+        }
+    }
+
+    private static final class BatchEntry {
+        private final Message message;
+        private final Serializable event;
+        private final SessionAcknowledgementTracker acknowledgementTracker;
+        private boolean leftForRedelivery;
+
+        private BatchEntry(final Message message, final Serializable event, final SessionAcknowledgementTracker acknowledgementTracker) {
+            this.message = message;
+            this.event = event;
+            this.acknowledgementTracker = acknowledgementTracker;
+        }
+    }
+}
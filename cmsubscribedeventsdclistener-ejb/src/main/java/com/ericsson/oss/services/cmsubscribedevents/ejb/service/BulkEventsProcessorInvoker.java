@@ -0,0 +1,109 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ericsson.oss.services.cmsubscribedevents.api.SubscribedEventsProcessor;
+
+/**
+ * Calls the bulk entry point of {@link SubscribedEventsProcessor}, a {@code processEvents} method taking a {@link List} of events, when the
+ * deployed version of the API provides it.
+ * <p>
+ * The method is looked up by reflection so that this service keeps working against versions of the API which only offer
+ * {@code processEvent}; in that case {@link #forProcessor(SubscribedEventsProcessor)} returns null and events are delivered one by one.
+ * A deployed processor which offers the method but rejects it, with an {@link UnsupportedOperationException} or a missing implementation,
+ * is reported by {@link #processEvents(List)} returning false.
+ */
+public class BulkEventsProcessorInvoker {
+
+    static final String BULK_METHOD_NAME = "processEvents";
+    private static final int MAX_CAUSE_DEPTH = 10;
+
+    private static Logger logger = LoggerFactory.getLogger(BulkEventsProcessorInvoker.class);
+
+    private final SubscribedEventsProcessor eventsProcessor;
+    private final Method bulkMethod;
+
+    BulkEventsProcessorInvoker(final SubscribedEventsProcessor eventsProcessor, final Method bulkMethod) {
+        this.eventsProcessor = eventsProcessor;
+        this.bulkMethod = bulkMethod;
+    }
+
+    /**
+     * Creates an invoker for the given processor.
+     *
+     * @param eventsProcessor
+     *     the processor
+     * @return the invoker, or null if the {@link SubscribedEventsProcessor} API has no bulk entry point
+     */
+    public static BulkEventsProcessorInvoker forProcessor(final SubscribedEventsProcessor eventsProcessor) {
+        final Method bulkMethod = findBulkMethod(SubscribedEventsProcessor.class);
+        if (bulkMethod == null) {
+            logger.warn("SubscribedEventsProcessor has no {} method, batched events cannot be delivered in bulk", BULK_METHOD_NAME);
+            return null;
+        }
+        return new BulkEventsProcessorInvoker(eventsProcessor, bulkMethod);
+    }
+
+    static Method findBulkMethod(final Class<?> processorInterface) {
+        for (final Method method : processorInterface.getMethods()) {
+            if (BULK_METHOD_NAME.equals(method.getName()) && method.getParameterTypes().length == 1
+                && method.getParameterTypes()[0].isAssignableFrom(ArrayList.class)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Delivers the events in a single call.
+     *
+     * @param events
+     *     the events to deliver
+     * @return false if the processor does not support the bulk entry point, in which case none of the events was delivered
+     */
+    public boolean processEvents(final List<Serializable> events) {
+        try {
+            bulkMethod.invoke(eventsProcessor, new ArrayList<>(events));
+            return true;
+        } catch (final InvocationTargetException exception) {
+            final Throwable cause = exception.getCause();
+            if (isUnsupportedOperation(cause)) {
+                logger.warn("SubscribedEventsProcessor does not support {}: {}", BULK_METHOD_NAME, cause.toString());
+                return false;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } catch (final IllegalAccessException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    static boolean isUnsupportedOperation(final Throwable failure) {
+        Throwable cause = failure;
+        for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (cause instanceof UnsupportedOperationException || cause instanceof AbstractMethodError || cause instanceof NoSuchMethodError) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,134 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker around a remote dependency.
+ * <p>
+ * The circuit opens after the configured number of consecutive failures. While it is open, callers are held in
+ * {@link #awaitPermission()} instead of failing, so that the threads consuming the queue stop pulling messages until the dependency
+ * recovers. Once the open period has elapsed a single trial call is let through: its success closes the circuit, its failure opens it
+ * again.
+ */
+public class CircuitBreaker {
+
+    private static Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * State of the circuit.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtMillis;
+    private boolean trialInProgress;
+    private boolean released;
+    private long openings;
+
+    /**
+     * Creates a closed circuit breaker.
+     *
+     * @param name
+     *     name of the protected dependency, used for logging
+     * @param failureThreshold
+     *     number of consecutive failures after which the circuit opens
+     * @param openMillis
+     *     time the circuit stays open before a trial call is let through
+     */
+    public CircuitBreaker(final String name, final int failureThreshold, final long openMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(1L, openMillis);
+    }
+
+    /**
+     * Waits until a call is permitted: immediately while the circuit is closed, otherwise until the open period has elapsed and no other
+     * trial call is in progress.
+     *
+     * @throws InterruptedException
+     *     if the thread is interrupted while waiting
+     */
+    public synchronized void awaitPermission() throws InterruptedException {
+        while (!released) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            final long remainingMillis = openedAtMillis + openMillis - System.currentTimeMillis();
+            if (!trialInProgress && remainingMillis <= 0) {
+                state = State.HALF_OPEN;
+                trialInProgress = true;
+                return;
+            }
+            wait(remainingMillis > 0 ? remainingMillis : openMillis);
+        }
+    }
+
+    /**
+     * Records a successful call, closing the circuit.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInProgress = false;
+        if (state != State.CLOSED) {
+            logger.info("Circuit breaker of {} closed", name);
+            state = State.CLOSED;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Records a failed call, opening the circuit once the failure threshold is reached or if the trial call failed.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            logger.warn("Circuit breaker of {} opened for {} ms after {} consecutive failures", name, openMillis, consecutiveFailures);
+            state = State.OPEN;
+            openedAtMillis = System.currentTimeMillis();
+            openings++;
+        }
+        trialInProgress = false;
+        notifyAll();
+    }
+
+    /**
+     * Lets every waiting and future caller through, whatever the state of the circuit. Used on shutdown.
+     */
+    public synchronized void release() {
+        released = true;
+        notifyAll();
+    }
+
+    /**
+     * @return the state of the circuit
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the number of times the circuit opened
+     */
+    public synchronized long getOpenCount() {
+        return openings;
+    }
+}
@@ -12,9 +12,17 @@
 package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
 
 import java.io.Serializable;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Predicate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -35,90 +43,462 @@ import com.ericsson.oss.services.cmsubscribedevents.api.SubscribedEventsProcesso
 @ApplicationScoped
 public class CmDataChangeDivertedQueueListener implements MessageListener {
 
-    private static final int ACKNOWLEDGEMENT_COUNT = 2000;
+    private static final long DISPATCHER_STOP_TIMEOUT_MILLIS = 10000L;
+    private static final long UNEXPECTED_EVENT_REPORT_INTERVAL_MILLIS = 60000L;
     private static Logger logger = LoggerFactory.getLogger(CmDataChangeDivertedQueueListener.class);
-    private AtomicLong eventCounterForAcknowledgement = new AtomicLong();
-    private AtomicLong totalEventCounter = new AtomicLong();
+    private final PerThreadCounter totalEventCounter = new PerThreadCounter();
+    private final EventMetrics eventMetrics = new EventMetrics();
+    private LogSampler eventLogSampler = LogSampler.create();
+    private SessionAcknowledgementTracker unboundAcknowledgementTracker = SessionAcknowledgementTracker.create("unbound");
+    private EventDispatcher eventDispatcher;
+    private EventLatencyTracer eventLatencyTracer;
+    private final NotificationHandlerRegistry notificationHandlerRegistry = new NotificationHandlerRegistry();
+    private final RateLimitedCounter unexpectedEventCounter = new RateLimitedCounter(UNEXPECTED_EVENT_REPORT_INTERVAL_MILLIS);
+    private final Predicate<Serializable> registryDispatch = notificationHandlerRegistry::dispatch;
 
     @EServiceRef
     private SubscribedEventsProcessor eventsProcessor;
 
+    @Inject
+    @Any
+    private Instance<NotificationHandler<?>> additionalNotificationHandlers;
+
+    @Inject
+    private RedeliveredMessageFilter redeliveredMessageFilter;
+
+    @Inject
+    private EventFailureHandler eventFailureHandler;
+
+    @Inject
+    private EventDeserializer eventDeserializer;
+
+    public CmDataChangeDivertedQueueListener() {
+        notificationHandlerRegistry.register(NodeNotification.class, this::processCppNotification);
+        notificationHandlerRegistry.register(ComEcimNodeNotification.class, this::processComEcimNotification);
+        notificationHandlerRegistry.register(DpsDataChangedEvent.class, this::processDpsNotification);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (additionalNotificationHandlers != null) {
+            for (final NotificationHandler<?> notificationHandler : additionalNotificationHandlers) {
+                notificationHandlerRegistry.register(notificationHandler);
+                logger.info("Registered notification handler {} for {}", notificationHandler, notificationHandler.getNotificationType());
+            }
+        }
+        final EventDispatcherType dispatcherType;
+        try {
+            dispatcherType = EventDispatcherType.fromConfiguration();
+        } catch (final IllegalStateException exception) {
+            logger.error(exception.getMessage());
+            throw exception;
+        }
+        switch (dispatcherType) {
+            case PARTITIONED:
+                eventDispatcher = PartitionedEventDispatcher.create(this::getMessageObject, this::processMessageObject);
+                break;
+            case PIPELINE:
+                eventDispatcher = EventProcessingPipeline.create(this::getMessageObject, this::processMessageObject);
+                break;
+            case BATCHING:
+                eventDispatcher = createBatchingDispatcher();
+                break;
+            case COALESCING:
+                eventDispatcher = CoalescingEventDispatcher.create(this::getMessageObject, this::processMessageObject);
+                break;
+            case PRIORITY:
+                eventDispatcher = PriorityLaneDispatcher.create(this::getMessageObject, this::processMessageObject);
+                break;
+            case VIRTUAL_THREADS:
+                eventDispatcher = VirtualThreadEventDispatcher.create(this::getMessageObject, this::processMessageObject);
+                break;
+            case SPOOLING:
+                eventDispatcher = SpoolingEventDispatcher.create(this::getMessageObject,
+                    eventDeserializer == null ? new EventDeserializer() : eventDeserializer, this::isSupportedEvent, this::processMessageObject,
+                    this::processSpooledEvent);
+                break;
+            default:
+                break;
+        }
+        if (eventDispatcher instanceof SpoolingEventDispatcher) {
+            logger.info("Latency tracing is not applied to the events replayed from the spool, which are no longer tied to their message");
+        } else if (EventLatencyTracer.isEnabled()) {
+            eventLatencyTracer = EventLatencyTracer.create();
+        }
+    }
+
+    private BatchingEventDispatcher createBatchingDispatcher() {
+        final BulkEventsProcessorInvoker bulkInvoker = BulkEventsProcessorInvoker.forProcessor(eventsProcessor);
+        return BatchingEventDispatcher.create(bulkInvoker == null ? null : (messages, events) -> processMessageObjects(messages, events, bulkInvoker),
+            this::getMessageObject, this::isSupportedEvent, this::processMessageObject, this::rejectBatchedMessage);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (eventDispatcher != null) {
+            eventDispatcher.stop(DISPATCHER_STOP_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * @return the registry of the handlers of each notification type
+     */
+    public NotificationHandlerRegistry getNotificationHandlerRegistry() {
+        return notificationHandlerRegistry;
+    }
+
+    /**
+     * @return the number of events extracted from the received messages
+     */
+    public long getTotalEventCount() {
+        return totalEventCounter.sum();
+    }
+
+    /**
+     * @return the processing metrics of the received events
+     */
+    public EventMetrics getEventMetrics() {
+        return eventMetrics;
+    }
+
+    /**
+     * @return the number of received events for which no handler is registered
+     */
+    public long getUnexpectedEventCount() {
+        return unexpectedEventCounter.getCount();
+    }
+
+    /**
+     * @return the number of redelivered messages which were not processed again since they had already been forwarded
+     */
+    public long getSuppressedDuplicateCount() {
+        return redeliveredMessageFilter == null ? 0 : redeliveredMessageFilter.getSuppressedDuplicateCount();
+    }
+
+    /**
+     * @return the number of message bodies rejected by the deserialization guardrails
+     */
+    public long getRejectedPayloadCount() {
+        return eventDeserializer == null ? 0 : eventDeserializer.getRejectedPayloadCount();
+    }
+
+    /**
+     * @return the dispatcher used to move processing off the session threads, or null if messages are processed on the session threads
+     */
+    public EventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    /**
+     * @return the tracer of the latency of the stages of the path of the events, or null if latency tracing is disabled
+     */
+    public EventLatencyTracer getEventLatencyTracer() {
+        return eventLatencyTracer;
+    }
+
+    /**
+     * Processes a message delivered by a consumer registered directly with this listener. Such messages are acknowledged through a tracker
+     * shared by all those consumers; consumers created by {@link JmsQueueConnector} go through a {@link SessionMessageListener} instead.
+     */
     @Override
     public void onMessage(final Message message) {
+        onMessage(message, unboundAcknowledgementTracker);
+    }
+
+    /**
+     * Processes a message delivered by the session tracked by the given {@link SessionAcknowledgementTracker}. Redeliveries of messages
+     * already forwarded are acknowledged without being deserialized. When an {@link EventDispatcher} is configured the message is handed
+     * over to it, and this call only blocks while the dispatcher is full or while the session waits for its in flight messages before an
+     * acknowledgement.
+     *
+     * @param message
+     *     the received message
+     * @param acknowledgementTracker
+     *     the acknowledgement tracker of the session which delivered the message
+     */
+    public void onMessage(final Message message, final SessionAcknowledgementTracker acknowledgementTracker) {
+        onMessage(message, acknowledgementTracker, registryDispatch);
+    }
+
+    /**
+     * Processes a message delivered by a session with its own dispatch to the notification handlers, such as a session of a
+     * {@link ConsumerGroup}. The dispatch is used when the message is processed on the session thread; an {@link EventDispatcher} processes
+     * the messages of every session alike.
+     *
+     * @param message
+     *     the received message
+     * @param acknowledgementTracker
+     *     the acknowledgement tracker of the session which delivered the message
+     * @param notificationDispatch
+     *     the dispatch of the event to its handler, returning false if no handler is registered for the event
+     */
+    public void onMessage(final Message message, final SessionAcknowledgementTracker acknowledgementTracker,
+                          final Predicate<Serializable> notificationDispatch) {
 
         if (message == null) {
             logger.error("Received null cm data change event");
         } else {
-            eventCounterForAcknowledgement.incrementAndGet();
-            processObject(message);
-            acknowledgeMessage(message);
+            acknowledgementTracker.messageReceived();
+            if (redeliveredMessageFilter != null && redeliveredMessageFilter.isDuplicate(message)) {
+                acknowledgementTracker.messageProcessed(message);
+            } else if (eventDispatcher != null) {
+                traceMessageReceived(message);
+                eventDispatcher.dispatch(message, acknowledgementTracker);
+            } else {
+                traceMessageReceived(message);
+                try {
+                    processMessageObject(message, getMessageObject(message), notificationDispatch);
+                    acknowledgementTracker.messageProcessed(message);
+                } catch (final EventRedeliveryException exception) {
+                    acknowledgementTracker.messageLeftForRedelivery(message);
+                }
+            }
+            acknowledgementTracker.acknowledgeIfDue(System.currentTimeMillis());
         }
     }
 
-    private void processObject(final Message message) {
+    private void processMessageObject(final Message message, final Serializable object) {
+        processMessageObject(message, object, registryDispatch);
+    }
+
+    private void processMessageObject(final Message message, final Serializable object, final Predicate<Serializable> notificationDispatch) {
+        final boolean diagnosticsLogged = isEventDiagnosticsLogged();
+        if (diagnosticsLogged) {
+            logger.debug("Object Message {} and totalEventCounter is {}", object, totalEventCounter.sum());
+        }
         try {
-            Serializable object = getMessageObject(message);
             if (object != null) {
-                if (object instanceof NodeNotification) {
-                    processCppNotification(object);
-                } else if (object instanceof ComEcimNodeNotification) {
-                    processComEcimNotification(object);
-                } else if (object instanceof DpsDataChangedEvent) {
-                    processDpsNotification(object);
+                if (redeliveredMessageFilter != null && redeliveredMessageFilter.isDuplicateEvent(message, object)) {
+                    return;
+                }
+                recordMessageAge(message, object);
+                final EventLatencyTracer.EventTrace trace = eventLatencyTracer == null ? null : eventLatencyTracer.deliveryStarted(message);
+                if (diagnosticsLogged) {
+                    logEventDiagnostics(object);
+                }
+                final long startNanos = System.nanoTime();
+                boolean handled = false;
+                EventTraceContext.set(message);
+                try {
+                    handled = eventFailureHandler == null ? notificationDispatch.test(object)
+                        : eventFailureHandler.process(message, object, notificationDispatch);
+                } finally {
+                    EventTraceContext.clear();
+                    if (trace != null) {
+                        eventLatencyTracer.deliveryEnded(trace, message, object, handled);
+                    }
+                }
+                if (redeliveredMessageFilter != null) {
+                    redeliveredMessageFilter.messageForwarded(message, object);
+                }
+                if (handled) {
+                    eventMetrics.eventProcessed(object.getClass(), System.nanoTime() - startNanos);
                 } else {
-                    logger.info("Unexpected event {} with properties {}", message, message.getPropertyNames());
+                    reportUnexpectedEvent(message);
                 }
             } else {
                 logger.error("MessageObject is null");
             }
+        } catch (final EventRedeliveryException exception) {
+            throw exception;
         } catch (final Exception exception) {
+            eventMetrics.processingFailed();
             logger.error("Exception :: {} while processing message :: {}", exception, message);
         }
     }
 
-    private void acknowledgeMessage(final Message message) {
+    /**
+     * Processes an event replayed from the spool of the {@link SpoolingEventDispatcher}. Its message is already acknowledged, so a failure
+     * is counted and rethrown for the dispatcher to keep the event in its dead-letter directory; an event given up is left in the spool.
+     */
+    private void processSpooledEvent(final String traceId, final Serializable object) {
+        if (isEventDiagnosticsLogged()) {
+            logger.debug("Object Message {} and totalEventCounter is {}", object, totalEventCounter.sum());
+            logEventDiagnostics(object);
+        }
+        final long startNanos = System.nanoTime();
+        EventTraceContext.set(traceId);
         try {
-            if (eventCounterForAcknowledgement.get() >= ACKNOWLEDGEMENT_COUNT) {
-                message.acknowledge();
-                logger.info("Acknowledgement sent at eventCounterForAcknowledgement size {}", eventCounterForAcknowledgement.shortValue());
-                eventCounterForAcknowledgement.set(0);
+            final boolean handled = eventFailureHandler == null ? registryDispatch.test(object)
+                : eventFailureHandler.process(object, registryDispatch);
+            if (handled) {
+                eventMetrics.eventProcessed(object.getClass(), System.nanoTime() - startNanos);
+            }
+        } catch (final EventRedeliveryException exception) {
+            throw exception;
+        } catch (final RuntimeException exception) {
+            eventMetrics.processingFailed();
+            throw exception;
+        } finally {
+            EventTraceContext.clear();
+        }
+    }
+
+    /**
+     * Processes a batch of events in a single call to the bulk entry point of the processor, with the duplicate detection, failure
+     * handling, metrics and tracing applied to a single event. A failure of the call is logged and counted for each event of the batch; a
+     * batch given up throws an {@link EventRedeliveryException}.
+     *
+     * @return false if the processor does not support the bulk entry point, in which case none of the events was delivered
+     */
+    private boolean processMessageObjects(final List<Message> messages, final List<Serializable> objects,
+                                          final BulkEventsProcessorInvoker bulkInvoker) {
+        final List<Message> batchMessages = new ArrayList<>(messages.size());
+        final List<Serializable> batchObjects = new ArrayList<>(objects.size());
+        for (int i = 0; i < messages.size(); i++) {
+            if (isEventDiagnosticsLogged()) {
+                logger.debug("Object Message {} and totalEventCounter is {}", objects.get(i), totalEventCounter.sum());
+                logEventDiagnostics(objects.get(i));
+            }
+            if (redeliveredMessageFilter == null || !redeliveredMessageFilter.isDuplicateEvent(messages.get(i), objects.get(i))) {
+                recordMessageAge(messages.get(i), objects.get(i));
+                batchMessages.add(messages.get(i));
+                batchObjects.add(objects.get(i));
+            }
+        }
+        if (batchObjects.isEmpty()) {
+            return true;
+        }
+        final List<EventLatencyTracer.EventTrace> traces = new ArrayList<>(batchMessages.size());
+        if (eventLatencyTracer != null) {
+            for (final Message message : batchMessages) {
+                traces.add(eventLatencyTracer.deliveryStarted(message));
             }
+        }
+        final long startNanos = System.nanoTime();
+        boolean delivered = false;
+        EventTraceContext.set(batchMessages);
+        try {
+            delivered = eventFailureHandler == null ? bulkInvoker.processEvents(batchObjects)
+                : eventFailureHandler.processBatch(batchMessages, batchObjects, bulkInvoker::processEvents);
+        } catch (final EventRedeliveryException exception) {
+            throw exception;
         } catch (final Exception exception) {
-            logger.error("Exception :: {} caught while sending acknowledgement", exception.getMessage());
+            for (int i = 0; i < batchObjects.size(); i++) {
+                eventMetrics.processingFailed();
+            }
+            logger.error("Exception :: {} while processing batch of messages :: {}", exception, batchMessages);
+            return true;
+        } finally {
+            EventTraceContext.clear();
+            for (int i = 0; i < traces.size(); i++) {
+                if (traces.get(i) != null) {
+                    eventLatencyTracer.deliveryEnded(traces.get(i), batchMessages.get(i), batchObjects.get(i), delivered);
+                }
+            }
+        }
+        if (!delivered) {
+            return false;
+        }
+        final long durationNanosPerEvent = (System.nanoTime() - startNanos) / batchObjects.size();
+        for (int i = 0; i < batchObjects.size(); i++) {
+            if (redeliveredMessageFilter != null) {
+                redeliveredMessageFilter.messageForwarded(batchMessages.get(i), batchObjects.get(i));
+            }
+            eventMetrics.eventProcessed(batchObjects.get(i).getClass(), durationNanosPerEvent);
+        }
+        return true;
+    }
+
+    /**
+     * Dead-letters a message of a batch whose bulk delivery the processor does not support, when the per-event fallback is disabled.
+     */
+    private void rejectBatchedMessage(final Message message) {
+        eventMetrics.processingFailed();
+        logger.error("Message :: {} rejected, SubscribedEventsProcessor does not support bulk delivery", message);
+        if (eventFailureHandler != null) {
+            eventFailureHandler.deliveryRejected(message,
+                new UnsupportedOperationException("Bulk delivery is not supported by SubscribedEventsProcessor"));
+        }
+    }
+
+    private void traceMessageReceived(final Message message) {
+        if (eventLatencyTracer != null) {
+            eventLatencyTracer.messageReceived(message);
+        }
+    }
+
+    private void recordMessageAge(final Message message, final Serializable object) {
+        long sentTimestamp = 0;
+        try {
+            sentTimestamp = message.getJMSTimestamp();
+        } catch (final JMSException exception) {
+            logger.debug("Could not read the JMS timestamp of message {}: {}", message, exception.getMessage());
+        }
+        if (sentTimestamp <= 0 && object instanceof NodeNotification) {
+            final Date creationTimestamp = ((NodeNotification) object).getCreationTimestamp();
+            sentTimestamp = creationTimestamp == null ? 0 : creationTimestamp.getTime();
+        }
+        if (sentTimestamp > 0) {
+            eventMetrics.messageAge(System.currentTimeMillis() - sentTimestamp);
+        }
+    }
 
+    private void reportUnexpectedEvent(final Message message) throws JMSException {
+        final long unexpectedEventsSinceLastReport = unexpectedEventCounter.increment();
+        if (unexpectedEventsSinceLastReport > 0) {
+            logger.info("Unexpected event {} with properties {}, {} unexpected events received since the last report", message,
+                message.getPropertyNames(), unexpectedEventsSinceLastReport);
         }
     }
 
+    /**
+     * Makes the sampling decision of a message, once per message, for all the diagnostics logged about it.
+     */
+    private boolean isEventDiagnosticsLogged() {
+        return logger.isDebugEnabled() && eventLogSampler.sample();
+    }
+
+    private void logEventDiagnostics(final Serializable object) {
+        if (object instanceof NodeNotification) {
+            final NodeNotification cppNotification = (NodeNotification) object;
+            logger.debug("CPP Notification Event received in CmDataChangeDivertedQueue for MO FDN {} at DateTime {}", cppNotification.getFdn(),
+                cppNotification.getCreationTimestamp());
+        } else if (object instanceof ComEcimNodeNotification) {
+            final ComEcimNodeNotification cEcimNotification = (ComEcimNodeNotification) object;
+            logger.debug("ComEcim Node Notification Event received in CmDataChangeDivertedQueue for MO FDN {} at DateTime {}",
+                cEcimNotification.getDn(), cEcimNotification.getTimestamp());
+        } else if (object instanceof DpsDataChangedEvent) {
+            logger.debug("DPS Data Change Event received in CmDataChangeDivertedQueue for MO FDN {}", ((DpsDataChangedEvent) object).getFdn());
+        }
+    }
+
+    private boolean isSupportedEvent(final Serializable object) {
+        return object != null && notificationHandlerRegistry.supports(object.getClass());
+    }
+
     private Serializable getMessageObject(final Message message) {
         Serializable object = null;
         try {
             if (message instanceof ObjectMessage) {
-                object = ((ObjectMessage) message).getObject();
-                logger.debug("Object Message {} and totalEventCounter is {}", object, totalEventCounter.incrementAndGet());
+                final long startNanos = System.nanoTime();
+                object = eventDeserializer == null ? ((ObjectMessage) message).getObject()
+                    : eventDeserializer.deserialize((ObjectMessage) message);
+                eventMetrics.eventDeserialized(object == null ? null : object.getClass(), System.nanoTime() - startNanos);
+                if (eventLatencyTracer != null) {
+                    eventLatencyTracer.eventDeserialized(message);
+                }
+                totalEventCounter.increment();
             }
-        } catch (final JMSException exc) {
+        } catch (final JMSException | RuntimeException exc) {
+            eventMetrics.deserializationFailed();
             logger.error("Exception while extracting JMS message {}. Details: {}", message, exc.getMessage());
+            if (eventFailureHandler != null) {
+                eventFailureHandler.deserializationFailed(message, exc);
+            }
         }
         return object;
     }
 
-    private void processCppNotification(Serializable object) {
-        final NodeNotification cppNotification = (NodeNotification) object;
-        logger.debug("CPP Notification Event received in CmDataChangeDivertedQueue for MO FDN {} at DateTime {}", cppNotification.getFdn(),
-            cppNotification.getCreationTimestamp());
+    private void processCppNotification(final NodeNotification cppNotification) {
         eventsProcessor.processEvent(cppNotification);
     }
 
-    private void processComEcimNotification(Serializable object) {
-        final ComEcimNodeNotification cEcimNotification = (ComEcimNodeNotification) object;
-        logger.debug("ComEcim Node Notification Event received in CmDataChangeDivertedQueue for MO FDN {} at DateTime {}", cEcimNotification.getDn(),
-            cEcimNotification.getTimestamp());
+    private void processComEcimNotification(final ComEcimNodeNotification cEcimNotification) {
         eventsProcessor.processEvent(cEcimNotification);
     }
 
-    private void processDpsNotification(Serializable object) {
-        final DpsDataChangedEvent dpsNotification = (DpsDataChangedEvent) object;
-        logger.debug("DPS Data Change Event received in CmDataChangeDivertedQueue for MO FDN {}", dpsNotification.getFdn());
+    private void processDpsNotification(final DpsDataChangedEvent dpsNotification) {
         eventsProcessor.processEvent(dpsNotification);
     }
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * {@link CmDataChangeDivertedQueueMetricsMXBean} reading the metrics of the listener, of the JMS sessions and of the pre-filter.
+ */
+public class CmDataChangeDivertedQueueMetrics implements CmDataChangeDivertedQueueMetricsMXBean {
+
+    static final String OBJECT_NAME = "com.ericsson.oss.services.cmsubscribedevents:type=CmDataChangeDivertedQueueMetrics";
+
+    private final CmDataChangeDivertedQueueListener cmDataChangeDivertedQueueListener;
+    private final JmsQueueConnector jmsQueueConnector;
+    private final JmsConnectorLifecycle jmsConnectorLifecycle;
+    private final EventFailureHandler eventFailureHandler;
+
+    public CmDataChangeDivertedQueueMetrics(final CmDataChangeDivertedQueueListener cmDataChangeDivertedQueueListener,
+                                            final JmsQueueConnector jmsQueueConnector, final JmsConnectorLifecycle jmsConnectorLifecycle,
+                                            final EventFailureHandler eventFailureHandler) {
+        this.cmDataChangeDivertedQueueListener = cmDataChangeDivertedQueueListener;
+        this.jmsQueueConnector = jmsQueueConnector;
+        this.jmsConnectorLifecycle = jmsConnectorLifecycle;
+        this.eventFailureHandler = eventFailureHandler;
+    }
+
+    @Override
+    public long getTotalEventCount() {
+        return cmDataChangeDivertedQueueListener.getTotalEventCount();
+    }
+
+    @Override
+    public Map<String, Long> getEventCounts() {
+        return cmDataChangeDivertedQueueListener.getEventMetrics().getEventCounts();
+    }
+
+    @Override
+    public Map<String, Double> getEventRatesPerSecond() {
+        return cmDataChangeDivertedQueueListener.getEventMetrics().getEventRates();
+    }
+
+    @Override
+    public Map<String, HistogramSnapshot> getProcessingLatencyMicros() {
+        return cmDataChangeDivertedQueueListener.getEventMetrics().getProcessingLatencyMicros();
+    }
+
+    @Override
+    public HistogramSnapshot getDeserializationMicros() {
+        return cmDataChangeDivertedQueueListener.getEventMetrics().getDeserializationMicros();
+    }
+
+    @Override
+    public Map<String, HistogramSnapshot> getDeserializationMicrosPerType() {
+        return cmDataChangeDivertedQueueListener.getEventMetrics().getDeserializationMicrosPerType();
+    }
+
+    @Override
+    public long getRejectedPayloadCount() {
+        return cmDataChangeDivertedQueueListener.getRejectedPayloadCount();
+    }
+
+    @Override
+    public HistogramSnapshot getMessageAgeMillis() {
+        return cmDataChangeDivertedQueueListener.getEventMetrics().getMessageAgeMillis();
+    }
+
+    @Override
+    public Map<String, HistogramSnapshot> getStageLatencyMicros() {
+        final EventLatencyTracer eventLatencyTracer = cmDataChangeDivertedQueueListener.getEventLatencyTracer();
+        return eventLatencyTracer == null ? Collections.emptyMap() : eventLatencyTracer.getStageLatencyMicros();
+    }
+
+    @Override
+    public Map<String, Map<String, HistogramSnapshot>> getStageLatencyMicrosPerType() {
+        final EventLatencyTracer eventLatencyTracer = cmDataChangeDivertedQueueListener.getEventLatencyTracer();
+        return eventLatencyTracer == null ? Collections.emptyMap() : eventLatencyTracer.getStageLatencyMicrosPerType();
+    }
+
+    @Override
+    public long getDeserializationErrorCount() {
+        return cmDataChangeDivertedQueueListener.getEventMetrics().getDeserializationErrorCount();
+    }
+
+    @Override
+    public long getProcessingErrorCount() {
+        return cmDataChangeDivertedQueueListener.getEventMetrics().getProcessingErrorCount();
+    }
+
+    @Override
+    public long getUnexpectedEventCount() {
+        return cmDataChangeDivertedQueueListener.getUnexpectedEventCount();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return eventFailureHandler.getRetryCount();
+    }
+
+    @Override
+    public long getDeadLetteredMessageCount() {
+        return eventFailureHandler.getDeadLetteredMessageCount();
+    }
+
+    @Override
+    public long getDiscardedMessageCount() {
+        return eventFailureHandler.getDiscardedMessageCount();
+    }
+
+    @Override
+    public String getCircuitBreakerState() {
+        return eventFailureHandler.getCircuitBreaker().getState().name();
+    }
+
+    @Override
+    public long getSuppressedDuplicateCount() {
+        return cmDataChangeDivertedQueueListener.getSuppressedDuplicateCount();
+    }
+
+    @Override
+    public double getCoalescingRatio() {
+        final EventDispatcher eventDispatcher = cmDataChangeDivertedQueueListener.getEventDispatcher();
+        return eventDispatcher instanceof CoalescingEventDispatcher ? ((CoalescingEventDispatcher) eventDispatcher).getCoalescingRatio() : 1.0;
+    }
+
+    @Override
+    public Map<String, HistogramSnapshot> getPriorityLaneLatencyMillis() {
+        final PriorityLaneDispatcher priorityLaneDispatcher = getPriorityLaneDispatcher();
+        return priorityLaneDispatcher == null ? Collections.emptyMap() : priorityLaneDispatcher.getLaneLatencyMillis();
+    }
+
+    @Override
+    public Map<String, Long> getPriorityLaneSloViolations() {
+        final PriorityLaneDispatcher priorityLaneDispatcher = getPriorityLaneDispatcher();
+        return priorityLaneDispatcher == null ? Collections.emptyMap() : priorityLaneDispatcher.getLaneSloViolations();
+    }
+
+    @Override
+    public Map<String, Integer> getPriorityLaneDepths() {
+        final PriorityLaneDispatcher priorityLaneDispatcher = getPriorityLaneDispatcher();
+        return priorityLaneDispatcher == null ? Collections.emptyMap() : priorityLaneDispatcher.getLaneDepths();
+    }
+
+    @Override
+    public Map<String, Long> getHotNodes() {
+        final NodeRateLimiter nodeRateLimiter = getNodeRateLimiter();
+        return nodeRateLimiter == null ? Collections.emptyMap() : nodeRateLimiter.getHotNodes();
+    }
+
+    @Override
+    public long getRateLimitedEventCount() {
+        final NodeRateLimiter nodeRateLimiter = getNodeRateLimiter();
+        return nodeRateLimiter == null ? 0L : nodeRateLimiter.getLimitedEventCount();
+    }
+
+    @Override
+    public int getVirtualThreadEventsInFlight() {
+        final EventDispatcher eventDispatcher = cmDataChangeDivertedQueueListener.getEventDispatcher();
+        return eventDispatcher instanceof VirtualThreadEventDispatcher ? ((VirtualThreadEventDispatcher) eventDispatcher).getInFlightEvents() : 0;
+    }
+
+    @Override
+    public long getSpoolBacklogEvents() {
+        final SpoolingEventDispatcher spoolingEventDispatcher = getSpoolingEventDispatcher();
+        return spoolingEventDispatcher == null ? 0L : spoolingEventDispatcher.getBacklogEvents();
+    }
+
+    @Override
+    public int getSpoolSegmentCount() {
+        final SpoolingEventDispatcher spoolingEventDispatcher = getSpoolingEventDispatcher();
+        return spoolingEventDispatcher == null ? 0 : spoolingEventDispatcher.getSegmentCount();
+    }
+
+    @Override
+    public long getSpoolDeadLetteredEvents() {
+        final SpoolingEventDispatcher spoolingEventDispatcher = getSpoolingEventDispatcher();
+        return spoolingEventDispatcher == null ? 0L : spoolingEventDispatcher.getDeadLetteredEvents();
+    }
+
+    @Override
+    public Map<String, Integer> getPendingAcknowledgements() {
+        return jmsQueueConnector.getPendingAcknowledgements();
+    }
+
+    @Override
+    public int getInFlightMessages() {
+        int inFlightMessages = 0;
+        for (final SessionAcknowledgementTracker acknowledgementTracker : jmsQueueConnector.getAcknowledgementTrackers()) {
+            inFlightMessages += acknowledgementTracker.getInFlightMessages();
+        }
+        return inFlightMessages;
+    }
+
+    @Override
+    public int getConsumerCount() {
+        return jmsQueueConnector.getConsumerCount();
+    }
+
+    @Override
+    public String getConnectorState() {
+        return jmsConnectorLifecycle.getState().name();
+    }
+
+    @Override
+    public int getFailedStartAttempts() {
+        return jmsConnectorLifecycle.getFailedStartAttempts();
+    }
+
+    @Override
+    public int getReconnectionCount() {
+        return jmsConnectorLifecycle.getReconnectionCount();
+    }
+
+    @Override
+    public void resetHistograms() {
+        cmDataChangeDivertedQueueListener.getEventMetrics().resetHistograms();
+        final EventLatencyTracer eventLatencyTracer = cmDataChangeDivertedQueueListener.getEventLatencyTracer();
+        if (eventLatencyTracer != null) {
+            eventLatencyTracer.resetHistograms();
+        }
+    }
+
+    private SpoolingEventDispatcher getSpoolingEventDispatcher() {
+        final EventDispatcher eventDispatcher = cmDataChangeDivertedQueueListener.getEventDispatcher();
+        return eventDispatcher instanceof SpoolingEventDispatcher ? (SpoolingEventDispatcher) eventDispatcher : null;
+    }
+
+    private PriorityLaneDispatcher getPriorityLaneDispatcher() {
+        final EventDispatcher eventDispatcher = cmDataChangeDivertedQueueListener.getEventDispatcher();
+        return eventDispatcher instanceof PriorityLaneDispatcher ? (PriorityLaneDispatcher) eventDispatcher : null;
+    }
+
+    private NodeRateLimiter getNodeRateLimiter() {
+        final PriorityLaneDispatcher priorityLaneDispatcher = getPriorityLaneDispatcher();
+        return priorityLaneDispatcher == null ? null : priorityLaneDispatcher.getNodeRateLimiter();
+    }
+}
@@ -0,0 +1,189 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.Map;
+
+/**
+ * JMX view of the runtime metrics of the CmDataChangeDivertedQueue listener.
+ */
+public interface CmDataChangeDivertedQueueMetricsMXBean {
+
+    /**
+     * @return the number of events extracted from the received messages
+     */
+    long getTotalEventCount();
+
+    /**
+     * @return the number of processed events keyed by notification type
+     */
+    Map<String, Long> getEventCounts();
+
+    /**
+     * @return the events processed per second over the last update interval, keyed by notification type
+     */
+    Map<String, Double> getEventRatesPerSecond();
+
+    /**
+     * @return the time spent in SubscribedEventsProcessor in microseconds, keyed by notification type
+     */
+    Map<String, HistogramSnapshot> getProcessingLatencyMicros();
+
+    /**
+     * @return the time spent deserializing the message bodies in microseconds
+     */
+    HistogramSnapshot getDeserializationMicros();
+
+    /**
+     * @return the time spent deserializing the message bodies in microseconds, keyed by notification type
+     */
+    Map<String, HistogramSnapshot> getDeserializationMicrosPerType();
+
+    /**
+     * @return the number of message bodies rejected by the size limit, the class allow-list or the object graph limits
+     */
+    long getRejectedPayloadCount();
+
+    /**
+     * @return the age of the messages when their event is processed, in milliseconds
+     */
+    HistogramSnapshot getMessageAgeMillis();
+
+    /**
+     * @return the latency of each stage from the creation of the traced events on the node to their delivery to SubscribedEventsProcessor
+     *     in microseconds, keyed by stage, empty if latency tracing is disabled
+     */
+    Map<String, HistogramSnapshot> getStageLatencyMicros();
+
+    /**
+     * @return the latency of each stage of the traced events in microseconds, keyed by notification type and then by stage, empty if
+     *     latency tracing is disabled
+     */
+    Map<String, Map<String, HistogramSnapshot>> getStageLatencyMicrosPerType();
+
+    long getDeserializationErrorCount();
+
+    long getProcessingErrorCount();
+
+    long getUnexpectedEventCount();
+
+    /**
+     * @return the number of processing attempts retried after a transient failure
+     */
+    long getRetryCount();
+
+    /**
+     * @return the number of failed messages sent to the dead-letter queue
+     */
+    long getDeadLetteredMessageCount();
+
+    /**
+     * @return the number of failed messages which could not be sent to a dead-letter queue
+     */
+    long getDiscardedMessageCount();
+
+    /**
+     * @return the state of the circuit breaker guarding SubscribedEventsProcessor: CLOSED, OPEN or HALF_OPEN
+     */
+    String getCircuitBreakerState();
+
+    /**
+     * @return the number of redelivered messages which were not processed again after a reconnection
+     */
+    long getSuppressedDuplicateCount();
+
+    /**
+     * @return the number of attribute change events received for each one delivered when coalescing is enabled, 1 otherwise
+     */
+    double getCoalescingRatio();
+
+    /**
+     * @return the latency from dispatch to the end of the processing of each priority lane in milliseconds, empty unless priority lanes are
+     *     enabled
+     */
+    Map<String, HistogramSnapshot> getPriorityLaneLatencyMillis();
+
+    /**
+     * @return the number of events which exceeded the latency objective of their priority lane, empty unless priority lanes are enabled
+     */
+    Map<String, Long> getPriorityLaneSloViolations();
+
+    /**
+     * @return the number of events waiting in each priority lane, empty unless priority lanes are enabled
+     */
+    Map<String, Integer> getPriorityLaneDepths();
+
+    /**
+     * @return the nodes with the most events over their rate limit, with their number of events over the limit, empty unless node rate
+     *     limiting is enabled
+     */
+    Map<String, Long> getHotNodes();
+
+    /**
+     * @return the number of events sent to the overflow lane because their node was over its rate limit
+     */
+    long getRateLimitedEventCount();
+
+    /**
+     * @return the number of events handed over to virtual threads and not yet processed, 0 unless the virtual thread mode is enabled
+     */
+    int getVirtualThreadEventsInFlight();
+
+    /**
+     * @return the number of events spooled since the service started and not yet replayed, 0 unless the local spool is enabled
+     */
+    long getSpoolBacklogEvents();
+
+    /**
+     * @return the number of segment files of the local spool, 0 unless the local spool is enabled
+     */
+    int getSpoolSegmentCount();
+
+    /**
+     * @return the number of spooled events which failed and were written to the dead-letter directory of the spool since the service
+     *     started, 0 unless the local spool is enabled
+     */
+    long getSpoolDeadLetteredEvents();
+
+    /**
+     * @return the processed messages waiting for acknowledgement, keyed by session
+     */
+    Map<String, Integer> getPendingAcknowledgements();
+
+    /**
+     * @return the messages received and not yet processed, over all sessions
+     */
+    int getInFlightMessages();
+
+    int getConsumerCount();
+
+    /**
+     * @return the readiness of the JMS connector: STOPPED, STARTING, RETRYING, LISTENING or DRAINING
+     */
+    String getConnectorState();
+
+    /**
+     * @return the number of failed start attempts of the JMS connector since it was last started
+     */
+    int getFailedStartAttempts();
+
+    /**
+     * @return the number of reconnections of the JMS connector after a connection failure
+     */
+    int getReconnectionCount();
+
+    /**
+     * Clears the latency, stage latency and age histograms.
+     */
+    void resetHistograms();
+}
@@ -11,27 +11,113 @@
  *----------------------------------------------------------------------------*/
 package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
 
+import java.lang.management.ManagementFactory;
+
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Schedule;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
 import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Starts the CmDataChangeDivertedQueue consumers on deployment and runs the periodic maintenance of the listener. The timers only delegate to
+ * thread safe components and take the read lock of the singleton, so that a slow evaluation of the consumer pool, which browses the queue,
+ * does not hold back the acknowledgement of quiet sessions.
+ */
 @Singleton
 @Startup
 public class CmSubscribedEventsStartupBean {
 
+    private static Logger logger = LoggerFactory.getLogger(CmSubscribedEventsStartupBean.class);
+
     @Inject
     private JmsQueueConnector jmsQueueConnector;
 
+    @Inject
+    private JmsConnectorLifecycle jmsConnectorLifecycle;
+
+    @Inject
+    private ConsumerPoolController consumerPoolController;
+
+    @Inject
+    private EventFailureHandler eventFailureHandler;
+
+    @Inject
+    private CmDataChangeDivertedQueueListener cmDataChangeDivertedQueueListener;
+
+    private MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    /**
+     * Starts the CmDataChangeDivertedQueue consumers in the background, so that deployment does not wait for the broker.
+     */
     @PostConstruct
     public void init() {
-        jmsQueueConnector.startListening();
+        jmsConnectorLifecycle.start();
+        registerMetrics();
     }
 
     @PreDestroy
     public void cleanup() {
-        jmsQueueConnector.stopListening();
+        unregisterMetrics();
+        jmsConnectorLifecycle.stop();
+    }
+
+    /**
+     * Acknowledges the processed messages of quiet sessions, which would otherwise wait for the next message delivered to the session.
+     */
+    @Lock(LockType.READ)
+    @Schedule(hour = "*", minute = "*", second = "*", persistent = false)
+    public void acknowledgeExpiredMessages() {
+        jmsQueueConnector.acknowledgeExpiredMessages();
+    }
+
+    /**
+     * Adds or removes CmDataChangeDivertedQueue consumers according to the observed load, when autoscaling is enabled.
+     */
+    @Lock(LockType.READ)
+    @Schedule(hour = "*", minute = "*", second = "*/10", persistent = false)
+    public void adjustConsumerCount() {
+        consumerPoolController.adjustConsumerCount(System.currentTimeMillis());
     }
 
+    /**
+     * Updates the event rates exposed through JMX.
+     */
+    @Lock(LockType.READ)
+    @Schedule(hour = "*", minute = "*", second = "*/10", persistent = false)
+    public void updateEventRates() {
+        cmDataChangeDivertedQueueListener.getEventMetrics().updateRates(System.currentTimeMillis());
+    }
+
+    private void registerMetrics() {
+        try {
+            final ObjectName objectName = new ObjectName(CmDataChangeDivertedQueueMetrics.OBJECT_NAME);
+            if (!mbeanServer.isRegistered(objectName)) {
+                mbeanServer.registerMBean(new CmDataChangeDivertedQueueMetrics(cmDataChangeDivertedQueueListener, jmsQueueConnector,
+                    jmsConnectorLifecycle, eventFailureHandler), objectName);
+            }
+        } catch (final JMException exception) {
+            logger.error("Could not register the CmDataChangeDivertedQueue metrics MBean due to: {}", exception.getMessage());
+        }
+    }
+
+    private void unregisterMetrics() {
+        try {
+            final ObjectName objectName = new ObjectName(CmDataChangeDivertedQueueMetrics.OBJECT_NAME);
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+        } catch (final JMException exception) {
+            logger.error("Could not unregister the CmDataChangeDivertedQueue metrics MBean due to: {}", exception.getMessage());
+        }
+    }
 }
@@ -0,0 +1,299 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.AttributeChangeData;
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.DpsAttributeChangedEvent;
+
+/**
+ * Merges the attribute changes received for the same MO within a time window into a single event, so that bursts of updates seen during
+ * node resyncs reach SubscribedEventsProcessor once.
+ * <p>
+ * Only {@link DpsAttributeChangedEvent}s are coalesced. The merged event is the first event received for the MO in the window; each
+ * attribute keeps the old value of its first change and takes the new value of its last one. Any other event for the MO, such as a create
+ * or a delete, first flushes the pending changes of the MO and is then processed on the session thread, so changes are never merged
+ * across it. The messages of a merged event are reported to their {@link SessionAcknowledgementTracker} once the event is delivered.
+ * <p>
+ * The pending changes of an MO are removed and delivered, and the other events of the MO processed, while holding the lock of the MO, one
+ * of a fixed set of locks chosen by hashing its FDN, so that the flush timer cannot deliver the changes of an MO after a later delete of
+ * the same MO.
+ */
+public class CoalescingEventDispatcher implements EventDispatcher {
+
+    static final String COALESCING_WINDOW_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "coalescing.window.millis";
+    static final String COALESCING_MAX_PENDING_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "coalescing.max.pending";
+    static final long DEFAULT_WINDOW_MILLIS = 100L;
+    static final int DEFAULT_MAX_PENDING = 10000;
+    private static final int FDN_LOCK_COUNT = 256;
+
+    private static Logger logger = LoggerFactory.getLogger(CoalescingEventDispatcher.class);
+
+    private final long windowMillis;
+    private final int maxPending;
+    private final Function<Message, Serializable> deserializer;
+    private final BiConsumer<Message, Serializable> eventProcessor;
+    private final Map<String, PendingChange> pendingChanges = new LinkedHashMap<>();
+    private final Object[] fdnLocks = new Object[FDN_LOCK_COUNT];
+    private final LongAdder receivedChanges = new LongAdder();
+    private final LongAdder deliveredChanges = new LongAdder();
+    private final ScheduledExecutorService flushScheduler;
+
+    /**
+     * Creates the dispatcher and starts the flush timer.
+     *
+     * @param windowMillis
+     *     time during which the changes of an MO are merged, counted from its first change
+     * @param maxPending
+     *     maximum number of MOs with pending changes; beyond it the oldest changes are delivered on the session thread
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     delivers a single event
+     */
+    public CoalescingEventDispatcher(final long windowMillis, final int maxPending, final Function<Message, Serializable> deserializer,
+                                     final BiConsumer<Message, Serializable> eventProcessor) {
+        this.windowMillis = Math.max(1L, windowMillis);
+        this.maxPending = Math.max(1, maxPending);
+        this.deserializer = deserializer;
+        this.eventProcessor = eventProcessor;
+        for (int i = 0; i < fdnLocks.length; i++) {
+            fdnLocks[i] = new Object();
+        }
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("CmDataChangeDivertedQueue-coalescing"));
+        final long checkPeriodMillis = Math.max(1L, this.windowMillis / 2);
+        flushScheduler.scheduleAtFixedRate(() -> flushExpired(System.currentTimeMillis()), checkPeriodMillis, checkPeriodMillis,
+            TimeUnit.MILLISECONDS);
+        logger.info("Started coalescing event dispatcher with window {} ms and at most {} pending MOs", this.windowMillis, this.maxPending);
+    }
+
+    /**
+     * Creates a dispatcher using the window and maximum pending MOs configured through JVM properties.
+     *
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     delivers a single event
+     * @return the started dispatcher
+     */
+    public static CoalescingEventDispatcher create(final Function<Message, Serializable> deserializer,
+                                                   final BiConsumer<Message, Serializable> eventProcessor) {
+        return new CoalescingEventDispatcher(ConfigurationPropertyReader.getLongProperty(COALESCING_WINDOW_PROPERTY, DEFAULT_WINDOW_MILLIS),
+            ConfigurationPropertyReader.getIntProperty(COALESCING_MAX_PENDING_PROPERTY, DEFAULT_MAX_PENDING), deserializer, eventProcessor);
+    }
+
+    @Override
+    public void dispatch(final Message message, final SessionAcknowledgementTracker acknowledgementTracker) {
+        final Serializable event = deserializer.apply(message);
+        final String fdn = EventFdnResolver.getFdn(event);
+        if (event instanceof DpsAttributeChangedEvent && fdn != null) {
+            receivedChanges.increment();
+            PendingChange overflow = null;
+            synchronized (this) {
+                final PendingChange pendingChange = pendingChanges.get(fdn);
+                if (pendingChange == null) {
+                    pendingChanges.put(fdn, new PendingChange(fdn, message, (DpsAttributeChangedEvent) event, acknowledgementTracker));
+                    overflow = pendingChanges.size() > maxPending ? pendingChanges.values().iterator().next() : null;
+                } else {
+                    pendingChange.merge(message, (DpsAttributeChangedEvent) event, acknowledgementTracker);
+                }
+            }
+            if (overflow != null) {
+                flush(overflow);
+            }
+            return;
+        }
+        if (fdn == null) {
+            process(message, event, acknowledgementTracker);
+            return;
+        }
+        synchronized (getFdnLock(fdn)) {
+            final PendingChange pendingChange;
+            synchronized (this) {
+                pendingChange = pendingChanges.remove(fdn);
+            }
+            if (pendingChange != null) {
+                deliver(pendingChange);
+            }
+            process(message, event, acknowledgementTracker);
+        }
+    }
+
+    @Override
+    public void stop(final long timeoutMillis) {
+        flushScheduler.shutdownNow();
+        flushExpired(Long.MAX_VALUE);
+        logger.info("Stopped coalescing event dispatcher");
+    }
+
+    /**
+     * @return the number of attribute change events received
+     */
+    public long getReceivedChangeCount() {
+        return receivedChanges.sum();
+    }
+
+    /**
+     * @return the number of merged attribute change events delivered
+     */
+    public long getDeliveredChangeCount() {
+        return deliveredChanges.sum();
+    }
+
+    /**
+     * @return the number of attribute change events received for each one delivered, 1 when nothing was merged
+     */
+    public double getCoalescingRatio() {
+        final long delivered = deliveredChanges.sum();
+        return delivered == 0 ? 1.0 : (double) receivedChanges.sum() / delivered;
+    }
+
+    /**
+     * @return the number of MOs with pending changes
+     */
+    public synchronized int getPendingMoCount() {
+        return pendingChanges.size();
+    }
+
+    void flushExpired(final long currentTimeMillis) {
+        final List<PendingChange> expiredChanges = new ArrayList<>();
+        synchronized (this) {
+            for (final PendingChange pendingChange : pendingChanges.values()) {
+                if (currentTimeMillis - pendingChange.firstChangeMillis < windowMillis) {
+                    break;
+                }
+                expiredChanges.add(pendingChange);
+            }
+        }
+        for (final PendingChange pendingChange : expiredChanges) {
+            flush(pendingChange);
+        }
+    }
+
+    /**
+     * Delivers the pending changes of an MO under the lock of the MO, unless another thread delivered them first.
+     */
+    private void flush(final PendingChange pendingChange) {
+        synchronized (getFdnLock(pendingChange.fdn)) {
+            final boolean removed;
+            synchronized (this) {
+                removed = pendingChanges.remove(pendingChange.fdn, pendingChange);
+            }
+            if (removed) {
+                deliver(pendingChange);
+            }
+        }
+    }
+
+    private Object getFdnLock(final String fdn) {
+        final int hash = fdn.hashCode();
+        return fdnLocks[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % fdnLocks.length];
+    }
+
+    private void process(final Message message, final Serializable event, final SessionAcknowledgementTracker acknowledgementTracker) {
+        boolean leftForRedelivery = false;
+        try {
+            eventProcessor.accept(message, event);
+        } catch (final EventRedeliveryException exception) {
+            leftForRedelivery = true;
+        } finally {
+            if (leftForRedelivery) {
+                acknowledgementTracker.messageLeftForRedelivery(message);
+            } else {
+                acknowledgementTracker.messageProcessed(message);
+            }
+        }
+    }
+
+    /**
+     * Delivers the merged event of an MO. If it is given up, every message merged into it is left for redelivery.
+     */
+    private void deliver(final PendingChange pendingChange) {
+        deliveredChanges.increment();
+        boolean leftForRedelivery = false;
+        try {
+            eventProcessor.accept(pendingChange.firstMessage, pendingChange.event);
+        } catch (final EventRedeliveryException exception) {
+            leftForRedelivery = true;
+        } catch (final Exception exception) {
+            logger.error("Exception :: {} while processing coalesced changes of MO {}", exception, pendingChange.event.getFdn());
+        } finally {
+            for (int i = 0; i < pendingChange.messages.size(); i++) {
+                if (leftForRedelivery) {
+                    pendingChange.acknowledgementTrackers.get(i).messageLeftForRedelivery(pendingChange.messages.get(i));
+                } else {
+                    pendingChange.acknowledgementTrackers.get(i).messageProcessed(pendingChange.messages.get(i));
+                }
+            }
+        }
+    }
+
+    private static final class PendingChange {
+        private final String fdn;
+        private final Message firstMessage;
+        private final DpsAttributeChangedEvent event;
+        private final long firstChangeMillis = System.currentTimeMillis();
+        private final Map<String, AttributeChangeData> changedAttributes = new LinkedHashMap<>();
+        private final List<Message> messages = new ArrayList<>(1);
+        private final List<SessionAcknowledgementTracker> acknowledgementTrackers = new ArrayList<>(1);
+
+        private PendingChange(final String fdn, final Message message, final DpsAttributeChangedEvent event,
+                              final SessionAcknowledgementTracker acknowledgementTracker) {
+            this.fdn = fdn;
+            this.firstMessage = message;
+            this.event = event;
+            addChangedAttributes(event.getChangedAttributes());
+            messages.add(message);
+            acknowledgementTrackers.add(acknowledgementTracker);
+        }
+
+        private void merge(final Message message, final DpsAttributeChangedEvent nextEvent,
+                           final SessionAcknowledgementTracker acknowledgementTracker) {
+            addChangedAttributes(nextEvent.getChangedAttributes());
+            event.setChangedAttributes(new ArrayList<>(changedAttributes.values()));
+            messages.add(message);
+            acknowledgementTrackers.add(acknowledgementTracker);
+        }
+
+        private void addChangedAttributes(final Collection<AttributeChangeData> attributes) {
+            if (attributes == null) {
+                return;
+            }
+            for (final AttributeChangeData attribute : attributes) {
+                final AttributeChangeData firstChange = changedAttributes.get(attribute.getName());
+                if (firstChange == null) {
+                    changedAttributes.put(attribute.getName(), attribute);
+                } else {
+                    firstChange.setNewValue(attribute.getNewValue());
+                }
+            }
+        }
+    }
+}
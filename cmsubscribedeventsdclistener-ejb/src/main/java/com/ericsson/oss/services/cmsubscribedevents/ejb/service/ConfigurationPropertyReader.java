@@ -0,0 +1,134 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the JVM properties used to tune the CmDataChangeDivertedQueue listener, falling back to a default value when a property is not
+ * defined or cannot be parsed.
+ */
+public final class ConfigurationPropertyReader {
+
+    static final String PROPERTY_PREFIX = "cmsubscribedevents.dclistener.";
+
+    private static Logger logger = LoggerFactory.getLogger(ConfigurationPropertyReader.class);
+
+    private ConfigurationPropertyReader() {
+    }
+
+    /**
+     * Reads an integer JVM property.
+     *
+     * @param propertyName
+     *     the name of the JVM property
+     * @param defaultValue
+     *     the value to use if the property is not defined or is not a valid integer
+     * @return the configured value or the default value
+     */
+    public static int getIntProperty(final String propertyName, final int defaultValue) {
+        final String value = findJvmProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (final NumberFormatException exception) {
+            logger.error("Invalid value [{}] for JVM property [{}]. Will use the default value [{}]", value, propertyName, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a long JVM property.
+     *
+     * @param propertyName
+     *     the name of the JVM property
+     * @param defaultValue
+     *     the value to use if the property is not defined or is not a valid long
+     * @return the configured value or the default value
+     */
+    public static long getLongProperty(final String propertyName, final long defaultValue) {
+        final String value = findJvmProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException exception) {
+            logger.error("Invalid value [{}] for JVM property [{}]. Will use the default value [{}]", value, propertyName, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a decimal JVM property.
+     *
+     * @param propertyName
+     *     the name of the JVM property
+     * @param defaultValue
+     *     the value to use if the property is not defined or is not a valid decimal number
+     * @return the configured value or the default value
+     */
+    public static double getDoubleProperty(final String propertyName, final double defaultValue) {
+        final String value = findJvmProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (final NumberFormatException exception) {
+            logger.error("Invalid value [{}] for JVM property [{}]. Will use the default value [{}]", value, propertyName, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a boolean JVM property.
+     *
+     * @param propertyName
+     *     the name of the JVM property
+     * @param defaultValue
+     *     the value to use if the property is not defined
+     * @return the configured value or the default value
+     */
+    public static boolean getBooleanProperty(final String propertyName, final boolean defaultValue) {
+        final String value = findJvmProperty(propertyName);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Reads a string JVM property.
+     *
+     * @param propertyName
+     *     the name of the JVM property
+     * @param defaultValue
+     *     the value to use if the property is not defined
+     * @return the configured value, trimmed, or the default value
+     */
+    public static String getStringProperty(final String propertyName, final String defaultValue) {
+        final String value = findJvmProperty(propertyName);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    private static String findJvmProperty(final String propertyName) {
+        final String value = System.getProperty(propertyName);
+        if (value == null || value.trim().isEmpty()) {
+            logger.debug("No JVM property {} found", propertyName);
+            return null;
+        }
+        logger.debug("Value {} found for JVM property {}", value, propertyName);
+        return value;
+    }
+}
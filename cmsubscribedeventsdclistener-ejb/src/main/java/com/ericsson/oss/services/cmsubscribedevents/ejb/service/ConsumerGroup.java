@@ -0,0 +1,152 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group of consumers of the first queue receiving only the messages matching a JMS message selector, for instance the messages of a single
+ * notification family, so that the broker routes each family to its own consumers instead of the listener sorting them.
+ * <p>
+ * The groups are listed by name in the {@value #CONSUMER_GROUPS_PROPERTY} JVM property, and each group is configured through the
+ * properties prefixed with {@value #CONSUMER_GROUP_PREFIX} and its name: a mandatory selector, a number of consumers and optionally the
+ * class of the notifications it receives, whose handler is then resolved once for the sessions of the group.
+ */
+public final class ConsumerGroup {
+
+    static final String CONSUMER_GROUPS_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "consumer.groups";
+    static final String CONSUMER_GROUP_PREFIX = ConfigurationPropertyReader.PROPERTY_PREFIX + "consumer.group.";
+    static final String SELECTOR_SUFFIX = ".selector";
+    static final String CONSUMERS_SUFFIX = ".consumers";
+    static final String NOTIFICATION_TYPE_SUFFIX = ".notification.type";
+
+    private static Logger logger = LoggerFactory.getLogger(ConsumerGroup.class);
+
+    private final String name;
+    private final String selector;
+    private final int consumerCount;
+    private final Class<? extends Serializable> notificationType;
+
+    /**
+     * @param name
+     *     name of the group, used in the identifiers of its sessions
+     * @param selector
+     *     JMS message selector of the consumers of the group
+     * @param consumerCount
+     *     number of consumers of the group
+     * @param notificationType
+     *     class of the notifications selected by the group, or null if the group receives several notification classes
+     */
+    public ConsumerGroup(final String name, final String selector, final int consumerCount, final Class<? extends Serializable> notificationType) {
+        this.name = name;
+        this.selector = selector;
+        this.consumerCount = Math.max(1, consumerCount);
+        this.notificationType = notificationType;
+    }
+
+    /**
+     * Reads the consumer groups configured through JVM properties. The groups without selector are ignored, as are the notification types
+     * which cannot be loaded.
+     *
+     * @return the configured groups, empty by default
+     */
+    public static List<ConsumerGroup> getConfiguredGroups() {
+        final Set<String> groupNames = new LinkedHashSet<>();
+        for (final String groupName : ConfigurationPropertyReader.getStringProperty(CONSUMER_GROUPS_PROPERTY, "").split(",")) {
+            if (!groupName.trim().isEmpty()) {
+                groupNames.add(groupName.trim());
+            }
+        }
+        if (groupNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<ConsumerGroup> consumerGroups = new ArrayList<>(groupNames.size());
+        for (final String groupName : groupNames) {
+            final String selector = ConfigurationPropertyReader.getStringProperty(CONSUMER_GROUP_PREFIX + groupName + SELECTOR_SUFFIX, null);
+            if (selector == null) {
+                logger.error("No selector configured for consumer group {}, the group is ignored", groupName);
+                continue;
+            }
+            consumerGroups.add(new ConsumerGroup(groupName, selector,
+                ConfigurationPropertyReader.getIntProperty(CONSUMER_GROUP_PREFIX + groupName + CONSUMERS_SUFFIX, 1),
+                loadNotificationType(groupName,
+                    ConfigurationPropertyReader.getStringProperty(CONSUMER_GROUP_PREFIX + groupName + NOTIFICATION_TYPE_SUFFIX, null))));
+        }
+        return consumerGroups;
+    }
+
+    /**
+     * Builds the selector of the consumers of the first queue outside any group, matching the messages selected by none of the groups, so
+     * that they do not compete with the consumers of the groups for their messages.
+     * <p>
+     * A message for which a group selector evaluates to unknown, because a property it tests is missing, matches neither that group nor the
+     * complementary selector: the selectors of the groups should therefore guard the properties they test, such as
+     * {@code eventType IS NOT NULL AND eventType = 'NodeNotification'}.
+     *
+     * @param consumerGroups
+     *     the configured groups
+     * @return the complementary selector, or null if there is no group
+     */
+    public static String getComplementarySelector(final List<ConsumerGroup> consumerGroups) {
+        if (consumerGroups.isEmpty()) {
+            return null;
+        }
+        final StringBuilder selector = new StringBuilder("NOT (");
+        for (int i = 0; i < consumerGroups.size(); i++) {
+            selector.append(i == 0 ? "(" : " OR (").append(consumerGroups.get(i).getSelector()).append(')');
+        }
+        return selector.append(')').toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    public int getConsumerCount() {
+        return consumerCount;
+    }
+
+    public Class<? extends Serializable> getNotificationType() {
+        return notificationType;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsumerGroup [name=" + name + ", selector=" + selector + ", consumerCount=" + consumerCount + ", notificationType="
+            + (notificationType == null ? null : notificationType.getName()) + "]";
+    }
+
+    private static Class<? extends Serializable> loadNotificationType(final String groupName, final String className) {
+        if (className == null) {
+            return null;
+        }
+        try {
+            return Class.forName(className, false, ConsumerGroup.class.getClassLoader()).asSubclass(Serializable.class);
+        } catch (final ClassNotFoundException | ClassCastException exception) {
+            logger.error("Notification type {} of consumer group {} cannot be used: {}", className, groupName, exception.toString());
+            return null;
+        }
+    }
+}
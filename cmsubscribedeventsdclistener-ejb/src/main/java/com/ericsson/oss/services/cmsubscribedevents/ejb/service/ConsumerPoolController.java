@@ -0,0 +1,165 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adds or removes CmDataChangeDivertedQueue consumers at runtime, between a configured minimum and maximum, according to the load
+ * observed on the sessions.
+ * <p>
+ * Only the consumers of the first queue outside the consumer groups are scaled: the consumers of the additional queues and of the
+ * consumer groups are fixed, so they are left out of the consumer count, of the utilization and of the backlog per consumer.
+ * <p>
+ * The utilization of the sessions, the share of time they have messages in flight, is compared with the scale up and scale down
+ * thresholds. When queue browsing is enabled the backlog per consumer is also taken into account: a backlog triggers a scale up, and
+ * prevents a scale down. A consumer is added or removed only after the same condition has been observed for the configured number of
+ * consecutive evaluations and once the cool down period since the previous change has elapsed, so that the pool does not flap.
+ */
+@ApplicationScoped
+public class ConsumerPoolController {
+
+    static final String AUTOSCALING_ENABLED_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "autoscaling.enabled";
+    static final String MIN_CONSUMERS_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "autoscaling.min.consumers";
+    static final String MAX_CONSUMERS_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "autoscaling.max.consumers";
+    static final String SCALE_UP_UTILIZATION_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "autoscaling.scale.up.utilization.percent";
+    static final String SCALE_DOWN_UTILIZATION_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX
+        + "autoscaling.scale.down.utilization.percent";
+    static final String SCALE_UP_QUEUE_DEPTH_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "autoscaling.scale.up.queue.depth.per.consumer";
+    static final String STABLE_EVALUATIONS_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "autoscaling.stable.evaluations";
+    static final String COOLDOWN_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "autoscaling.cooldown.millis";
+    static final String QUEUE_BROWSE_LIMIT_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "autoscaling.queue.browse.limit";
+
+    private static Logger logger = LoggerFactory.getLogger(ConsumerPoolController.class);
+
+    private final boolean enabled = ConfigurationPropertyReader.getBooleanProperty(AUTOSCALING_ENABLED_PROPERTY, false);
+    private final int minConsumers = Math.max(1, ConfigurationPropertyReader.getIntProperty(MIN_CONSUMERS_PROPERTY, 1));
+    private final int maxConsumers = Math.max(minConsumers, ConfigurationPropertyReader.getIntProperty(MAX_CONSUMERS_PROPERTY, 8));
+    private final int scaleUpUtilizationPercent = ConfigurationPropertyReader.getIntProperty(SCALE_UP_UTILIZATION_PROPERTY, 80);
+    private final int scaleDownUtilizationPercent = ConfigurationPropertyReader.getIntProperty(SCALE_DOWN_UTILIZATION_PROPERTY, 30);
+    private final int scaleUpQueueDepthPerConsumer = ConfigurationPropertyReader.getIntProperty(SCALE_UP_QUEUE_DEPTH_PROPERTY, 500);
+    private final int stableEvaluations = Math.max(1, ConfigurationPropertyReader.getIntProperty(STABLE_EVALUATIONS_PROPERTY, 3));
+    private final long cooldownMillis = ConfigurationPropertyReader.getLongProperty(COOLDOWN_PROPERTY, 60000L);
+    private final int queueBrowseLimit = ConfigurationPropertyReader.getIntProperty(QUEUE_BROWSE_LIMIT_PROPERTY, 10000);
+
+    private final Map<String, Long> previousBusyNanos = new HashMap<>();
+    private long previousEvaluationNanos;
+    private int consecutiveOverloadedEvaluations;
+    private int consecutiveIdleEvaluations;
+    private long lastScalingTimeMillis;
+
+    @Inject
+    private JmsQueueConnector jmsQueueConnector;
+
+    /**
+     * Evaluates the load of the sessions and adds or removes a consumer if needed. Does nothing while autoscaling is disabled or while the
+     * connector is not listening.
+     *
+     * @param currentTimeMillis
+     *     the current time
+     */
+    public synchronized void adjustConsumerCount(final long currentTimeMillis) {
+        if (!enabled) {
+            return;
+        }
+        final int consumers = jmsQueueConnector.getScalableConsumerCount();
+        if (consumers == 0) {
+            resetObservations();
+            return;
+        }
+        if (consumers < minConsumers) {
+            scale(true, consumers, currentTimeMillis, "below the minimum");
+            return;
+        }
+        if (consumers > maxConsumers) {
+            scale(false, consumers, currentTimeMillis, "above the maximum");
+            return;
+        }
+        final int utilizationPercent = measureUtilizationPercent();
+        if (utilizationPercent < 0) {
+            return;
+        }
+        final int queueDepth = queueBrowseLimit > 0 ? jmsQueueConnector.browseQueueDepth(queueBrowseLimit) : -1;
+        final boolean backlog = queueDepth >= 0 && queueDepth >= (long) consumers * scaleUpQueueDepthPerConsumer;
+        final boolean overloaded = consumers < maxConsumers && (utilizationPercent >= scaleUpUtilizationPercent || backlog);
+        final boolean idle = consumers > minConsumers && utilizationPercent <= scaleDownUtilizationPercent
+            && queueDepth < scaleUpQueueDepthPerConsumer;
+        consecutiveOverloadedEvaluations = overloaded ? consecutiveOverloadedEvaluations + 1 : 0;
+        consecutiveIdleEvaluations = idle ? consecutiveIdleEvaluations + 1 : 0;
+        logger.debug("{} consumers at {}% utilization with {} queued messages, overloaded for {} and idle for {} evaluations", consumers,
+            utilizationPercent, queueDepth, consecutiveOverloadedEvaluations, consecutiveIdleEvaluations);
+
+        if (currentTimeMillis - lastScalingTimeMillis < cooldownMillis) {
+            return;
+        }
+        if (consecutiveOverloadedEvaluations >= stableEvaluations) {
+            scale(true, consumers, currentTimeMillis, utilizationPercent + "% utilization and " + queueDepth + " queued messages");
+        } else if (consecutiveIdleEvaluations >= stableEvaluations) {
+            scale(false, consumers, currentTimeMillis, utilizationPercent + "% utilization and " + queueDepth + " queued messages");
+        }
+    }
+
+    /**
+     * @return true if the consumer count is adjusted at runtime
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private int measureUtilizationPercent() {
+        final long evaluationNanos = System.nanoTime();
+        final long elapsedNanos = evaluationNanos - previousEvaluationNanos;
+        long busyNanos = 0;
+        int measuredSessions = 0;
+        final Map<String, Long> currentBusyNanos = new HashMap<>();
+        for (final SessionAcknowledgementTracker acknowledgementTracker : jmsQueueConnector.getScalableAcknowledgementTrackers()) {
+            final long sessionBusyNanos = acknowledgementTracker.getBusyNanos();
+            currentBusyNanos.put(acknowledgementTracker.getSessionId(), sessionBusyNanos);
+            final Long previousSessionBusyNanos = previousBusyNanos.get(acknowledgementTracker.getSessionId());
+            if (previousSessionBusyNanos != null) {
+                busyNanos += Math.max(0L, sessionBusyNanos - previousSessionBusyNanos);
+                measuredSessions++;
+            }
+        }
+        previousBusyNanos.clear();
+        previousBusyNanos.putAll(currentBusyNanos);
+        previousEvaluationNanos = evaluationNanos;
+        if (measuredSessions == 0 || elapsedNanos <= 0) {
+            return -1;
+        }
+        return (int) Math.min(100L, busyNanos * 100L / (elapsedNanos * measuredSessions));
+    }
+
+    private void scale(final boolean up, final int consumers, final long currentTimeMillis, final String reason) {
+        final boolean scaled = up ? jmsQueueConnector.addConsumer() : jmsQueueConnector.removeConsumer();
+        if (scaled) {
+            logger.info("Scaled CmDataChangeDivertedQueue consumers {} from {} on {}", up ? "up" : "down", consumers, reason);
+            lastScalingTimeMillis = currentTimeMillis;
+        }
+        consecutiveOverloadedEvaluations = 0;
+        consecutiveIdleEvaluations = 0;
+    }
+
+    private void resetObservations() {
+        previousBusyNanos.clear();
+        consecutiveOverloadedEvaluations = 0;
+        consecutiveIdleEvaluations = 0;
+    }
+}
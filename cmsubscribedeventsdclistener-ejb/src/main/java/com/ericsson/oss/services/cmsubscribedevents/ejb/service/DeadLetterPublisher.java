@@ -0,0 +1,135 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the messages which could not be processed to the configured dead-letter queue, with properties describing the failure, so that
+ * they can be inspected and replayed instead of being lost. When no dead-letter queue is configured, or it cannot be reached, the failure
+ * is logged with the same details.
+ */
+@ApplicationScoped
+public class DeadLetterPublisher {
+
+    static final String DEAD_LETTER_QUEUE_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "dead.letter.queue";
+    static final String FAILURE_TYPE_PROPERTY = "CmSubscribedEventsFailureType";
+    static final String FAILURE_REASON_PROPERTY = "CmSubscribedEventsFailureReason";
+    static final String FAILURE_ATTEMPTS_PROPERTY = "CmSubscribedEventsFailureAttempts";
+    static final String FAILURE_TIMESTAMP_PROPERTY = "CmSubscribedEventsFailureTimestamp";
+    static final String ORIGINAL_MESSAGE_ID_PROPERTY = "CmSubscribedEventsOriginalMessageId";
+    private static final int MAX_REASON_LENGTH = 1000;
+
+    private static Logger logger = LoggerFactory.getLogger(DeadLetterPublisher.class);
+
+    private final String deadLetterQueue = ConfigurationPropertyReader.getStringProperty(DEAD_LETTER_QUEUE_PROPERTY, "");
+    private final LongAdder deadLetteredMessages = new LongAdder();
+    private final LongAdder discardedMessages = new LongAdder();
+
+    @Inject
+    private JmsQueueConnector jmsQueueConnector;
+
+    /**
+     * Sends a failed message to the dead-letter queue.
+     *
+     * @param message
+     *     the failed message
+     * @param failure
+     *     the last failure of the message
+     * @param failureType
+     *     the type of the failure
+     * @param attempts
+     *     the number of processing attempts
+     */
+    public void publish(final Message message, final Throwable failure, final FailureClassifier.FailureType failureType, final int attempts) {
+        final String reason = describe(failure);
+        if (!deadLetterQueue.isEmpty()) {
+            try {
+                addFailureProperties(message, reason, failureType, attempts);
+                if (jmsQueueConnector.sendToQueue(deadLetterQueue, message)) {
+                    deadLetteredMessages.increment();
+                    logger.warn("Sent message {} to dead-letter queue {} after {} failure in {} attempts: {}", message, deadLetterQueue,
+                        failureType, attempts, reason);
+                    return;
+                }
+            } catch (final JMSException exception) {
+                logger.error("Could not set the failure properties of message {} due to: {}", message, exception.getMessage());
+            }
+        }
+        discardedMessages.increment();
+        logger.error("Discarded message {} after {} failure in {} attempts: {}", message, failureType, attempts, reason);
+    }
+
+    /**
+     * @return the number of messages sent to the dead-letter queue
+     */
+    public long getDeadLetteredMessageCount() {
+        return deadLetteredMessages.sum();
+    }
+
+    /**
+     * @return the number of failed messages which could not be sent to a dead-letter queue
+     */
+    public long getDiscardedMessageCount() {
+        return discardedMessages.sum();
+    }
+
+    /**
+     * Adds the failure details to the properties of a received message. The properties of a received message are read-only, so they are
+     * copied, cleared and set again.
+     */
+    private static void addFailureProperties(final Message message, final String reason, final FailureClassifier.FailureType failureType,
+                                             final int attempts) throws JMSException {
+        final Map<String, Object> properties = new LinkedHashMap<>();
+        final Enumeration<?> propertyNames = message.getPropertyNames();
+        while (propertyNames != null && propertyNames.hasMoreElements()) {
+            final String propertyName = (String) propertyNames.nextElement();
+            properties.put(propertyName, message.getObjectProperty(propertyName));
+        }
+        message.clearProperties();
+        for (final Map.Entry<String, Object> property : properties.entrySet()) {
+            message.setObjectProperty(property.getKey(), property.getValue());
+        }
+        message.setStringProperty(FAILURE_TYPE_PROPERTY, failureType.name());
+        message.setStringProperty(FAILURE_REASON_PROPERTY, reason);
+        message.setIntProperty(FAILURE_ATTEMPTS_PROPERTY, attempts);
+        message.setLongProperty(FAILURE_TIMESTAMP_PROPERTY, System.currentTimeMillis());
+        if (message.getJMSMessageID() != null) {
+            message.setStringProperty(ORIGINAL_MESSAGE_ID_PROPERTY, message.getJMSMessageID());
+        }
+    }
+
+    private static String describe(final Throwable failure) {
+        final StringBuilder reason = new StringBuilder();
+        for (Throwable cause = failure; cause != null && reason.length() < MAX_REASON_LENGTH; cause = cause.getCause()) {
+            if (reason.length() > 0) {
+                reason.append(" <- ");
+            }
+            reason.append(cause.getClass().getName()).append(": ").append(cause.getMessage());
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason.toString();
+    }
+}
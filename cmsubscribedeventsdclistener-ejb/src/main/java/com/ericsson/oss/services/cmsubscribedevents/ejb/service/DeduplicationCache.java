@@ -0,0 +1,163 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.Arrays;
+
+/**
+ * Bounded set of 64 bit keys, forgotten after a time to live.
+ * <p>
+ * Keys are stored in two generations of open addressing {@code long} tables, so that the memory used is fixed whatever the message rate.
+ * A new generation is started once the current one is full or has been written for half the time to live, and the older generation is
+ * then dropped, so a key is remembered for at least half the time to live and at most the full time to live, unless the capacity forces an
+ * earlier rotation.
+ */
+public class DeduplicationCache {
+
+    private static final long EMPTY = 0L;
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private final int capacity;
+    private final long generationMillis;
+    private final int mask;
+    private long[] currentKeys;
+    private long[] previousKeys;
+    private int currentSize;
+    private long currentStartMillis;
+
+    /**
+     * Creates the cache.
+     *
+     * @param capacity
+     *     maximum number of keys in each generation
+     * @param timeToLiveMillis
+     *     maximum time a key is remembered
+     * @param currentTimeMillis
+     *     the current time
+     */
+    public DeduplicationCache(final int capacity, final long timeToLiveMillis, final long currentTimeMillis) {
+        this.capacity = Math.min(Math.max(1, capacity), MAX_CAPACITY);
+        this.generationMillis = Math.max(1L, timeToLiveMillis / 2);
+        final int tableSize = Integer.highestOneBit(Math.max(2, this.capacity * 2 - 1)) << 1;
+        this.mask = tableSize - 1;
+        this.currentKeys = new long[tableSize];
+        this.previousKeys = new long[tableSize];
+        this.currentStartMillis = currentTimeMillis;
+    }
+
+    /**
+     * Adds a key to the cache.
+     *
+     * @param key
+     *     the key
+     * @param currentTimeMillis
+     *     the current time
+     */
+    public synchronized void add(final long key, final long currentTimeMillis) {
+        expire(currentTimeMillis);
+        if (currentSize >= capacity) {
+            rotate(currentTimeMillis);
+        }
+        final long storedKey = toStoredKey(key);
+        int index = indexOf(storedKey);
+        while (currentKeys[index] != EMPTY) {
+            if (currentKeys[index] == storedKey) {
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        currentKeys[index] = storedKey;
+        currentSize++;
+    }
+
+    /**
+     * Checks whether a key was added and is still remembered.
+     *
+     * @param key
+     *     the key
+     * @param currentTimeMillis
+     *     the current time
+     * @return true if the key is in the cache
+     */
+    public synchronized boolean contains(final long key, final long currentTimeMillis) {
+        expire(currentTimeMillis);
+        final long storedKey = toStoredKey(key);
+        return contains(currentKeys, storedKey) || contains(previousKeys, storedKey);
+    }
+
+    /**
+     * @return the number of keys in the current generation
+     */
+    public synchronized int size() {
+        return currentSize;
+    }
+
+    /**
+     * Computes a 64 bit key for a string, using FNV-1a followed by a final mix so that the low bits used as table index are well spread.
+     *
+     * @param value
+     *     the string
+     * @return the key
+     */
+    public static long keyOf(final String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private void expire(final long currentTimeMillis) {
+        final long age = currentTimeMillis - currentStartMillis;
+        if (age >= 2 * generationMillis) {
+            Arrays.fill(previousKeys, EMPTY);
+            Arrays.fill(currentKeys, EMPTY);
+            currentSize = 0;
+            currentStartMillis = currentTimeMillis;
+        } else if (age >= generationMillis) {
+            rotate(currentTimeMillis);
+        }
+    }
+
+    private void rotate(final long currentTimeMillis) {
+        final long[] droppedKeys = previousKeys;
+        previousKeys = currentKeys;
+        Arrays.fill(droppedKeys, EMPTY);
+        currentKeys = droppedKeys;
+        currentSize = 0;
+        currentStartMillis = currentTimeMillis;
+    }
+
+    private boolean contains(final long[] keys, final long storedKey) {
+        int index = indexOf(storedKey);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == storedKey) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    private int indexOf(final long storedKey) {
+        return (int) (storedKey ^ (storedKey >>> 32)) & mask;
+    }
+
+    private static long toStoredKey(final long key) {
+        return key == EMPTY ? 1L : key;
+    }
+}
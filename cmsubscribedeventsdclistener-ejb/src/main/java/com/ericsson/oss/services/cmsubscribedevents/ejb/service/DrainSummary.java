@@ -0,0 +1,63 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+/**
+ * Outcome of the drain of the CmDataChangeDivertedQueue consumers before they are closed.
+ */
+public final class DrainSummary {
+
+    private final long drainedMessages;
+    private final long acknowledgedMessages;
+    private final long abandonedMessages;
+    private final long durationMillis;
+
+    /**
+     * @param drainedMessages
+     *     messages in flight when the delivery was stopped and processed before the deadline
+     * @param acknowledgedMessages
+     *     processed messages acknowledged by the drain
+     * @param abandonedMessages
+     *     messages left unacknowledged, to be redelivered by the broker
+     * @param durationMillis
+     *     time spent draining
+     */
+    public DrainSummary(final long drainedMessages, final long acknowledgedMessages, final long abandonedMessages, final long durationMillis) {
+        this.drainedMessages = drainedMessages;
+        this.acknowledgedMessages = acknowledgedMessages;
+        this.abandonedMessages = abandonedMessages;
+        this.durationMillis = durationMillis;
+    }
+
+    public long getDrainedMessages() {
+        return drainedMessages;
+    }
+
+    public long getAcknowledgedMessages() {
+        return acknowledgedMessages;
+    }
+
+    public long getAbandonedMessages() {
+        return abandonedMessages;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "DrainSummary [drainedMessages=" + drainedMessages + ", acknowledgedMessages=" + acknowledgedMessages + ", abandonedMessages="
+            + abandonedMessages + ", durationMillis=" + durationMillis + "]";
+    }
+}
@@ -0,0 +1,414 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
+import javax.jms.ObjectMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deserializes the event carried by an {@link ObjectMessage} received from CmDataChangeDivertedQueue with guardrails, in the listener
+ * rather than in the JMS provider, so that the connection factory shared by the server is left unchanged.
+ * <p>
+ * The serialized body is read from the Artemis core message of the {@link ObjectMessage}, which is not an API type, so it is accessed
+ * reflectively, and decoded here: a body longer than the configured maximum is rejected from its length before anything is read, only
+ * classes of the allowed packages are resolved, and an ObjectInputFilter limits the depth, references and array lengths of the object
+ * graph. Resolved classes are cached, so that the notification classes are looked up in the class loader once rather than for every
+ * message. Rejected payloads are reported as a {@link MessageFormatException}, as for any other body that cannot be deserialized. A message
+ * whose body cannot be read this way, from another provider, is deserialized by the provider through {@link ObjectMessage#getObject()}.
+ * <p>
+ * The ObjectInputFilter API is only available from Java 8 update 121, in sun.misc before Java 9, so it is looked up reflectively. Without
+ * it, the allow-list and the size limit still apply.
+ */
+@ApplicationScoped
+public class EventDeserializer {
+
+    static final String ALLOWED_PACKAGES_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "deserialization.allowed.packages";
+    static final String MAX_BYTES_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "deserialization.max.bytes";
+    static final String MAX_DEPTH_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "deserialization.max.depth";
+    static final String MAX_REFERENCES_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "deserialization.max.references";
+    static final String MAX_ARRAY_LENGTH_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "deserialization.max.array.length";
+    static final String DEFAULT_ALLOWED_PACKAGES = "com.ericsson.oss.mediation.,com.ericsson.oss.itpf.datalayer.dps.notification.,java.lang.,"
+        + "java.util.,java.math.,java.time.";
+
+    private static Logger logger = LoggerFactory.getLogger(EventDeserializer.class);
+
+    private final List<String> allowedPackages = parsePackages(
+        ConfigurationPropertyReader.getStringProperty(ALLOWED_PACKAGES_PROPERTY, DEFAULT_ALLOWED_PACKAGES));
+    private final long maxBytes = ConfigurationPropertyReader.getLongProperty(MAX_BYTES_PROPERTY, 8L * 1024 * 1024);
+    private final long maxDepth = ConfigurationPropertyReader.getLongProperty(MAX_DEPTH_PROPERTY, 64L);
+    private final long maxReferences = ConfigurationPropertyReader.getLongProperty(MAX_REFERENCES_PROPERTY, 1000000L);
+    private final long maxArrayLength = ConfigurationPropertyReader.getLongProperty(MAX_ARRAY_LENGTH_PROPERTY, 1000000L);
+    private final ConcurrentMap<String, Class<?>> resolvedClasses = new ConcurrentHashMap<>();
+    private final LongAdder rejectedPayloads = new LongAdder();
+    private final AtomicBoolean unguardedMessageLogged = new AtomicBoolean();
+    private final Object serialFilter = SerialFilterSupport.createFilter(this::checkGraph);
+
+    /**
+     * Extracts the event of a message.
+     *
+     * @param message
+     *     the received message
+     * @return the event, or null if the message has an empty body
+     * @throws JMSException
+     *     if the body cannot be read, or is rejected by the guardrails
+     */
+    public Serializable deserialize(final ObjectMessage message) throws JMSException {
+        final Object bodyBuffer = CoreMessageBody.duplicate(message);
+        if (bodyBuffer == null) {
+            if (unguardedMessageLogged.compareAndSet(false, true)) {
+                logger.warn("The serialized body of {} cannot be read, its ObjectMessages are deserialized by the JMS provider without "
+                    + "guardrails", message.getClass().getName());
+            }
+            return message.getObject();
+        }
+        final int bodyLength = CoreMessageBody.readLength(bodyBuffer);
+        if (bodyLength <= 0) {
+            return null;
+        }
+        if (bodyLength > maxBytes) {
+            throw reject("body of " + bodyLength + " bytes exceeds the limit of " + maxBytes + " bytes");
+        }
+        return deserialize(CoreMessageBody.readBytes(bodyBuffer, bodyLength));
+    }
+
+    /**
+     * Deserializes an event with the guardrails of the messages, such as an event read back from a local file.
+     *
+     * @param body
+     *     the serialized event
+     * @return the event
+     * @throws JMSException
+     *     if the body cannot be deserialized, or is rejected by the guardrails
+     */
+    public Serializable deserialize(final byte[] body) throws JMSException {
+        if (body.length > maxBytes) {
+            throw reject("body of " + body.length + " bytes exceeds the limit of " + maxBytes + " bytes");
+        }
+        try (final ObjectInputStream inputStream = new GuardedObjectInputStream(new ByteArrayInputStream(body))) {
+            return (Serializable) inputStream.readObject();
+        } catch (final InvalidClassException exception) {
+            throw reject(exception.getMessage());
+        } catch (final IOException | ClassNotFoundException | ClassCastException exception) {
+            throw new MessageFormatException("Cannot deserialize the message body: " + exception.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of payloads rejected by the size limit, the allow-list or the object graph limits
+     */
+    public long getRejectedPayloadCount() {
+        return rejectedPayloads.sum();
+    }
+
+    /**
+     * @return the number of classes resolved and cached
+     */
+    public int getResolvedClassCount() {
+        return resolvedClasses.size();
+    }
+
+    private MessageFormatException reject(final String reason) {
+        rejectedPayloads.increment();
+        logger.debug("Rejected message body: {}", reason);
+        return new MessageFormatException("Message body rejected: " + reason);
+    }
+
+    boolean isAllowed(final String className) {
+        String name = className;
+        if (name.startsWith("[")) {
+            final int elementStart = name.lastIndexOf('[') + 1;
+            if (name.charAt(elementStart) != 'L') {
+                return true;
+            }
+            name = name.substring(elementStart + 1, name.length() - 1);
+        }
+        for (final String allowedPackage : allowedPackages) {
+            if (name.startsWith(allowedPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return null if the graph is within the limits, the reason for rejecting it otherwise
+     */
+    String checkGraph(final long depth, final long references, final long arrayLength) {
+        if (depth > maxDepth) {
+            return "object graph depth " + depth + " exceeds the limit of " + maxDepth;
+        }
+        if (references > maxReferences) {
+            return "object graph references " + references + " exceed the limit of " + maxReferences;
+        }
+        if (arrayLength > maxArrayLength) {
+            return "array length " + arrayLength + " exceeds the limit of " + maxArrayLength;
+        }
+        return null;
+    }
+
+    private static List<String> parsePackages(final String packages) {
+        final List<String> parsedPackages = new ArrayList<>();
+        for (final String allowedPackage : packages.split(",")) {
+            if (!allowedPackage.trim().isEmpty()) {
+                parsedPackages.add(allowedPackage.trim());
+            }
+        }
+        return Collections.unmodifiableList(parsedPackages);
+    }
+
+    /**
+     * {@link ObjectInputStream} resolving only the allowed classes, from the cache when they were already resolved, and applying the serial
+     * filter when the JVM supports it.
+     */
+    private final class GuardedObjectInputStream extends ObjectInputStream {
+
+        private GuardedObjectInputStream(final InputStream inputStream) throws IOException {
+            super(inputStream);
+            SerialFilterSupport.setFilter(this, serialFilter);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+            final String className = descriptor.getName();
+            final Class<?> cachedClass = resolvedClasses.get(className);
+            if (cachedClass != null) {
+                return cachedClass;
+            }
+            if (!isAllowed(className)) {
+                throw new InvalidClassException(className, "class is not in the allowed packages");
+            }
+            Class<?> resolvedClass;
+            try {
+                resolvedClass = Class.forName(className, false, EventDeserializer.class.getClassLoader());
+            } catch (final ClassNotFoundException exception) {
+                resolvedClass = super.resolveClass(descriptor);
+            }
+            resolvedClasses.putIfAbsent(className, resolvedClass);
+            return resolvedClass;
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxy", "dynamic proxies are not expected in notifications");
+        }
+    }
+
+    /**
+     * Reflective access to the ObjectInputFilter of the running JVM.
+     */
+    static final class SerialFilterSupport {
+
+        private static final Class<?> FILTER_CLASS = findClass("java.io.ObjectInputFilter", "sun.misc.ObjectInputFilter");
+        private static final Method SET_FILTER_METHOD = findSetFilterMethod();
+
+        private SerialFilterSupport() {
+        }
+
+        /**
+         * @return true if the running JVM supports ObjectInputFilter
+         */
+        static boolean isAvailable() {
+            return FILTER_CLASS != null && SET_FILTER_METHOD != null;
+        }
+
+        static Object createFilter(final GraphCheck graphCheck) {
+            if (!isAvailable()) {
+                logger.warn("ObjectInputFilter is not supported by this JVM, the depth and reference limits are not applied");
+                return null;
+            }
+            try {
+                final Class<?> filterInfoClass = Class.forName(FILTER_CLASS.getName() + "$FilterInfo");
+                final Method depth = filterInfoClass.getMethod("depth");
+                final Method references = filterInfoClass.getMethod("references");
+                final Method arrayLength = filterInfoClass.getMethod("arrayLength");
+                final Object undecided = statusOf("UNDECIDED");
+                final Object rejected = statusOf("REJECTED");
+                return Proxy.newProxyInstance(EventDeserializer.class.getClassLoader(), new Class<?>[] {FILTER_CLASS}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "checkInput":
+                            final String reason = graphCheck.check((Long) depth.invoke(args[0]), (Long) references.invoke(args[0]),
+                                (Long) arrayLength.invoke(args[0]));
+                            if (reason != null) {
+                                logger.debug("Rejected message body: {}", reason);
+                                return rejected;
+                            }
+                            return undecided;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return "EventDeserializer graph limits";
+                    }
+                });
+            } catch (final ReflectiveOperationException | RuntimeException exception) {
+                logger.warn("Could not create the ObjectInputFilter, the depth and reference limits are not applied: {}", exception.getMessage());
+                return null;
+            }
+        }
+
+        static void setFilter(final ObjectInputStream inputStream, final Object filter) throws IOException {
+            if (filter == null) {
+                return;
+            }
+            try {
+                if (SET_FILTER_METHOD.getParameterCount() == 1) {
+                    SET_FILTER_METHOD.invoke(inputStream, filter);
+                } else {
+                    SET_FILTER_METHOD.invoke(null, inputStream, filter);
+                }
+            } catch (final IllegalAccessException | InvocationTargetException exception) {
+                throw new IOException("Could not set the ObjectInputFilter", exception);
+            }
+        }
+
+        private static Object statusOf(final String name) throws ClassNotFoundException {
+            final Class<?> statusClass = Class.forName(FILTER_CLASS.getName() + "$Status");
+            for (final Object status : statusClass.getEnumConstants()) {
+                if (((Enum<?>) status).name().equals(name)) {
+                    return status;
+                }
+            }
+            throw new ClassNotFoundException(statusClass.getName() + "." + name);
+        }
+
+        private static Class<?> findClass(final String... classNames) {
+            for (final String className : classNames) {
+                try {
+                    return Class.forName(className);
+                } catch (final ClassNotFoundException | LinkageError exception) {
+                    logger.debug("{} is not available: {}", className, exception.getMessage());
+                }
+            }
+            return null;
+        }
+
+        private static Method findSetFilterMethod() {
+            if (FILTER_CLASS == null) {
+                return null;
+            }
+            try {
+                if (FILTER_CLASS.getName().startsWith("java.io")) {
+                    return ObjectInputStream.class.getMethod("setObjectInputFilter", FILTER_CLASS);
+                }
+                return Class.forName(FILTER_CLASS.getName() + "$Config").getMethod("setObjectInputFilter", ObjectInputStream.class, FILTER_CLASS);
+            } catch (final ReflectiveOperationException exception) {
+                logger.debug("ObjectInputFilter cannot be set: {}", exception.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Reflective access to the body of an Artemis ObjectMessage: its core message holds the length of the serialized object followed by
+     * its bytes. A duplicate of the body buffer is read, so that the message itself is left unchanged.
+     */
+    static final class CoreMessageBody {
+
+        private static final ConcurrentMap<String, Method> METHODS = new ConcurrentHashMap<>();
+
+        private CoreMessageBody() {
+        }
+
+        /**
+         * @return a duplicate of the body buffer of the core message, or null if the message is not an Artemis message
+         */
+        static Object duplicate(final ObjectMessage message) {
+            try {
+                final Object coreMessage = invoke(message, "getCoreMessage");
+                return coreMessage == null ? null : invoke(coreMessage, "getBodyBufferDuplicate");
+            } catch (final ReflectiveOperationException | RuntimeException exception) {
+                logger.debug("Cannot read the body buffer of {}: {}", message, exception.toString());
+                return null;
+            }
+        }
+
+        /**
+         * @return the length of the serialized object, or 0 if the body is empty
+         */
+        static int readLength(final Object bodyBuffer) throws JMSException {
+            try {
+                if ((Integer) invoke(bodyBuffer, "readableBytes") < Integer.BYTES) {
+                    return 0;
+                }
+                return (Integer) invoke(bodyBuffer, "readInt");
+            } catch (final ReflectiveOperationException | RuntimeException exception) {
+                throw new MessageFormatException("Cannot read the message body: " + exception);
+            }
+        }
+
+        static byte[] readBytes(final Object bodyBuffer, final int length) throws JMSException {
+            try {
+                if ((Integer) invoke(bodyBuffer, "readableBytes") < length) {
+                    throw new MessageFormatException("Message body shorter than its length of " + length + " bytes");
+                }
+                final byte[] body = new byte[length];
+                findMethod(bodyBuffer.getClass(), "readBytes", byte[].class).invoke(bodyBuffer, (Object) body);
+                return body;
+            } catch (final ReflectiveOperationException | RuntimeException exception) {
+                throw new MessageFormatException("Cannot read the message body: " + exception);
+            }
+        }
+
+        private static Object invoke(final Object target, final String methodName) throws ReflectiveOperationException {
+            return findMethod(target.getClass(), methodName).invoke(target);
+        }
+
+        private static Method findMethod(final Class<?> targetClass, final String methodName, final Class<?>... parameterTypes)
+            throws NoSuchMethodException {
+            final String key = targetClass.getName() + '#' + methodName;
+            final Method cachedMethod = METHODS.get(key);
+            if (cachedMethod != null) {
+                return cachedMethod;
+            }
+            final Method method = targetClass.getMethod(methodName, parameterTypes);
+            METHODS.putIfAbsent(key, method);
+            return method;
+        }
+    }
+
+    /**
+     * Checks the size of the object graph being deserialized.
+     */
+    @FunctionalInterface
+    interface GraphCheck {
+
+        /**
+         * @return null if the graph is within the limits, the reason for rejecting it otherwise
+         */
+        String check(long depth, long references, long arrayLength);
+    }
+}
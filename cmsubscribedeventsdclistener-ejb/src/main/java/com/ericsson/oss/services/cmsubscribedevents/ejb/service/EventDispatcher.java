@@ -0,0 +1,42 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import javax.jms.Message;
+
+/**
+ * Moves the processing of the messages received from CmDataChangeDivertedQueue off the JMS session threads.
+ * <p>
+ * Implementations must report every dispatched message to its {@link SessionAcknowledgementTracker} once processed, and must block the
+ * calling session rather than drop a message when they are saturated.
+ */
+public interface EventDispatcher {
+
+    /**
+     * Dispatches a message for processing.
+     *
+     * @param message
+     *     the received message
+     * @param acknowledgementTracker
+     *     the acknowledgement tracker of the session which delivered the message
+     */
+    void dispatch(Message message, SessionAcknowledgementTracker acknowledgementTracker);
+
+    /**
+     * Stops accepting messages and waits for the messages already dispatched to be processed.
+     *
+     * @param timeoutMillis
+     *     maximum time to wait for the dispatched messages to be processed
+     */
+    void stop(long timeoutMillis);
+}
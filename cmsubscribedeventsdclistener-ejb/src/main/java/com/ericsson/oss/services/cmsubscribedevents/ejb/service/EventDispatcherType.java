@@ -0,0 +1,70 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The ways the listener can process the messages delivered by the JMS sessions, selected through the
+ * {@value #DISPATCHER_PROPERTY} JVM property. Node rate limiting relies on the priority lanes, so enabling it selects them when no
+ * dispatcher is configured.
+ */
+public enum EventDispatcherType {
+
+    /** Events processed on the session threads. */
+    SYNCHRONOUS,
+    /** Events handed over to the bounded pipeline, see {@link EventProcessingPipeline}. */
+    PIPELINE,
+    /** Events dispatched to lanes by FDN, see {@link PartitionedEventDispatcher}. */
+    PARTITIONED,
+    /** Events delivered to the processor in micro batches, see {@link BatchingEventDispatcher}. */
+    BATCHING,
+    /** Attribute changes of the same MO merged within a window, see {@link CoalescingEventDispatcher}. */
+    COALESCING,
+    /** Node notifications drained ahead of the bulk events, see {@link PriorityLaneDispatcher}. */
+    PRIORITY,
+    /** Events processed on virtual threads outside a container, in order per FDN, see {@link VirtualThreadEventDispatcher}. */
+    VIRTUAL_THREADS,
+    /** Events acknowledged once written to the local spool, and replayed to the processor, see {@link SpoolingEventDispatcher}. */
+    SPOOLING;
+
+    static final String DISPATCHER_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "dispatcher";
+
+    /**
+     * Reads the dispatcher configured through JVM properties.
+     *
+     * @return the configured dispatcher, {@link #PRIORITY} if none is configured and node rate limiting is enabled, {@link #SYNCHRONOUS}
+     *     otherwise
+     * @throws IllegalStateException
+     *     if the configured value is not a dispatcher, or if node rate limiting is enabled with a dispatcher other than {@link #PRIORITY}
+     */
+    public static EventDispatcherType fromConfiguration() {
+        final String value = ConfigurationPropertyReader.getStringProperty(DISPATCHER_PROPERTY, null);
+        if (value == null) {
+            return NodeRateLimiter.isEnabled() ? PRIORITY : SYNCHRONOUS;
+        }
+        final EventDispatcherType dispatcherType;
+        try {
+            dispatcherType = valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (final IllegalArgumentException exception) {
+            throw new IllegalStateException("Invalid value [" + value + "] for JVM property [" + DISPATCHER_PROPERTY + "], expected one of "
+                + Arrays.toString(values()), exception);
+        }
+        if (NodeRateLimiter.isEnabled() && dispatcherType != PRIORITY) {
+            throw new IllegalStateException("Only one event dispatcher can be enabled (node rate limiting implies priority lanes), but ["
+                + dispatcherType + ", " + PRIORITY + "] are enabled");
+        }
+        return dispatcherType;
+    }
+}
@@ -0,0 +1,261 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handles the failures of the processing of events by SubscribedEventsProcessor.
+ * <p>
+ * Transient failures are retried with an exponential backoff up to the configured number of attempts per message; permanent failures, and
+ * transient ones which exhausted their attempts, are handed to the {@link DeadLetterPublisher}. The calls are guarded by a
+ * {@link CircuitBreaker}: while SubscribedEventsProcessor keeps failing, the processing threads wait instead of consuming the queue. The
+ * attempts failing while the circuit is open or half-open are failures of SubscribedEventsProcessor rather than of the message, so they do
+ * not use up its attempts, and the default number of attempts is above the failure threshold of the circuit: an outage holds the messages
+ * instead of dead-lettering them.
+ * <p>
+ * A thread interrupted while it waits, or still retrying once the handler is stopped, gives up the event without processing or
+ * dead-lettering it, and throws an {@link EventRedeliveryException} so that the message is left for redelivery.
+ */
+@ApplicationScoped
+public class EventFailureHandler {
+
+    static final String MAX_ATTEMPTS_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "failure.retry.max.attempts";
+    static final String RETRY_INITIAL_DELAY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "failure.retry.initial.delay.millis";
+    static final String RETRY_MAX_DELAY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "failure.retry.max.delay.millis";
+    static final String CIRCUIT_FAILURE_THRESHOLD_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "circuit.breaker.failure.threshold";
+    static final String CIRCUIT_OPEN_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "circuit.breaker.open.millis";
+
+    private static Logger logger = LoggerFactory.getLogger(EventFailureHandler.class);
+
+    private final int maxAttempts = Math.max(1, ConfigurationPropertyReader.getIntProperty(MAX_ATTEMPTS_PROPERTY, 10));
+    private final long initialRetryDelayMillis = Math.max(0L, ConfigurationPropertyReader.getLongProperty(RETRY_INITIAL_DELAY_PROPERTY, 200L));
+    private final long maxRetryDelayMillis = Math.max(initialRetryDelayMillis,
+        ConfigurationPropertyReader.getLongProperty(RETRY_MAX_DELAY_PROPERTY, 5000L));
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("SubscribedEventsProcessor",
+        ConfigurationPropertyReader.getIntProperty(CIRCUIT_FAILURE_THRESHOLD_PROPERTY, 5),
+        ConfigurationPropertyReader.getLongProperty(CIRCUIT_OPEN_PROPERTY, 30000L));
+    private final LongAdder retries = new LongAdder();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    @Inject
+    private DeadLetterPublisher deadLetterPublisher;
+
+    @PreDestroy
+    public void destroy() {
+        stopped.countDown();
+        circuitBreaker.release();
+    }
+
+    /**
+     * Processes an event, retrying transient failures. A permanent failure, or a transient failure once the attempts are used up,
+     * dead-letters the message and is rethrown; an interruption or the stop of the handler gives up the event without dead-lettering it.
+     *
+     * @param message
+     *     the message of the event
+     * @param event
+     *     the event
+     * @param processing
+     *     the processing of the event, returning false if the event is not supported
+     * @return the result of the processing
+     * @throws EventRedeliveryException
+     *     if the event was given up, its message must be left for redelivery
+     */
+    public boolean process(final Message message, final Serializable event, final Predicate<Serializable> processing) {
+        return process(Collections.singletonList(message), () -> processing.test(event));
+    }
+
+    /**
+     * Processes an event whose message is already acknowledged, such as an event replayed from the {@link EventSpool}, retrying transient
+     * failures. A permanent failure, or a transient failure once the attempts are used up, is rethrown: there is no message left to
+     * dead-letter, the caller keeps the event.
+     *
+     * @param event
+     *     the event
+     * @param processing
+     *     the processing of the event, returning false if the event is not supported
+     * @return the result of the processing
+     * @throws EventRedeliveryException
+     *     if the event was given up
+     */
+    public boolean process(final Serializable event, final Predicate<Serializable> processing) {
+        return process(Collections.emptyList(), () -> processing.test(event));
+    }
+
+    /**
+     * Processes a batch of events in a single call, retrying transient failures of the whole batch like those of a single event. A
+     * permanent failure, or a transient failure once the attempts are used up, dead-letters every message of the batch and is rethrown.
+     *
+     * @param messages
+     *     the messages of the events
+     * @param events
+     *     the events
+     * @param processing
+     *     the processing of the batch, returning false if the batch processing is not supported
+     * @return the result of the processing
+     * @throws EventRedeliveryException
+     *     if the batch was given up, its messages must be left for redelivery
+     */
+    public boolean processBatch(final List<Message> messages, final List<Serializable> events,
+                                final Predicate<List<Serializable>> processing) {
+        return process(messages, () -> processing.test(events));
+    }
+
+    private boolean process(final List<Message> messages, final BooleanSupplier processing) {
+        int failedAttempts = 0;
+        RuntimeException lastFailure = null;
+        for (int attempt = 1;; attempt++) {
+            if (!awaitCircuitPermission() || isStopped()) {
+                throw giveUp(messages, attempt - 1, lastFailure);
+            }
+            final boolean circuitClosed = circuitBreaker.getState() == CircuitBreaker.State.CLOSED;
+            try {
+                final boolean processed = processing.getAsBoolean();
+                circuitBreaker.recordSuccess();
+                return processed;
+            } catch (final RuntimeException exception) {
+                lastFailure = exception;
+                final FailureClassifier.FailureType failureType = FailureClassifier.classify(exception);
+                if (failureType == FailureClassifier.FailureType.TRANSIENT) {
+                    circuitBreaker.recordFailure();
+                } else {
+                    circuitBreaker.recordSuccess();
+                }
+                if (circuitClosed) {
+                    failedAttempts++;
+                }
+                if (failureType == FailureClassifier.FailureType.PERMANENT || failedAttempts >= maxAttempts) {
+                    for (final Message message : messages) {
+                        deadLetterPublisher.publish(message, exception, failureType, attempt);
+                    }
+                    throw exception;
+                }
+                if (!backOff(attempt, exception)) {
+                    throw giveUp(messages, attempt, exception);
+                }
+            }
+        }
+    }
+
+    private EventRedeliveryException giveUp(final List<Message> messages, final int attempts, final RuntimeException lastFailure) {
+        final String reason = isStopped() ? "the failure handler is stopped" : "the processing thread was interrupted";
+        logger.warn("Gave up processing messages {} after {} attempts because {}, they are left for redelivery", messages, attempts, reason);
+        return new EventRedeliveryException("Gave up processing the event after " + attempts + " attempts because " + reason, lastFailure);
+    }
+
+    /**
+     * Dead-letters a message whose payload cannot be deserialized.
+     *
+     * @param message
+     *     the message
+     * @param failure
+     *     the deserialization failure
+     */
+    public void deserializationFailed(final Message message, final Exception failure) {
+        deadLetterPublisher.publish(message, failure, FailureClassifier.FailureType.PERMANENT, 1);
+    }
+
+    /**
+     * Dead-letters a message which SubscribedEventsProcessor refuses to process.
+     *
+     * @param message
+     *     the message
+     * @param failure
+     *     the reason of the refusal
+     */
+    public void deliveryRejected(final Message message, final Exception failure) {
+        deadLetterPublisher.publish(message, failure, FailureClassifier.FailureType.PERMANENT, 1);
+    }
+
+    /**
+     * @return the number of retried processing attempts
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the number of messages sent to the dead-letter queue
+     */
+    public long getDeadLetteredMessageCount() {
+        return deadLetterPublisher.getDeadLetteredMessageCount();
+    }
+
+    /**
+     * @return the number of failed messages which could not be sent to a dead-letter queue
+     */
+    public long getDiscardedMessageCount() {
+        return deadLetterPublisher.getDiscardedMessageCount();
+    }
+
+    /**
+     * @return the circuit breaker guarding SubscribedEventsProcessor
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    long getRetryDelayMillis(final int failedAttempts) {
+        long retryDelayMillis = initialRetryDelayMillis;
+        for (int attempt = 1; attempt < failedAttempts && retryDelayMillis < maxRetryDelayMillis; attempt++) {
+            retryDelayMillis *= 2;
+        }
+        return Math.min(retryDelayMillis, maxRetryDelayMillis);
+    }
+
+    private boolean awaitCircuitPermission() {
+        try {
+            circuitBreaker.awaitPermission();
+            return true;
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean isStopped() {
+        return stopped.getCount() == 0;
+    }
+
+    /**
+     * Waits before the next attempt.
+     *
+     * @return false if the thread was interrupted or the handler stopped while waiting
+     */
+    private boolean backOff(final int attempt, final RuntimeException exception) {
+        final long retryDelayMillis = getRetryDelayMillis(attempt);
+        logger.warn("Transient failure {} of attempt {} to process an event, will retry in {} ms", exception.getMessage(), attempt,
+            retryDelayMillis);
+        retries.increment();
+        try {
+            return !stopped.await(retryDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.DpsDataChangedEvent;
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification;
+import com.ericsson.oss.mediation.notifications.ComEcimNodeNotification;
+
+/**
+ * Resolves the FDN of the MO a notification received from CmDataChangeDivertedQueue refers to.
+ */
+public final class EventFdnResolver {
+
+    private EventFdnResolver() {
+    }
+
+    /**
+     * Gets the FDN (or DN for COM/ECIM notifications) of the MO the event refers to.
+     *
+     * @param event
+     *     the deserialized event
+     * @return the FDN, or null if the event type is not known or carries no FDN
+     */
+    public static String getFdn(final Serializable event) {
+        if (event instanceof NodeNotification) {
+            return ((NodeNotification) event).getFdn();
+        } else if (event instanceof ComEcimNodeNotification) {
+            return ((ComEcimNodeNotification) event).getDn();
+        } else if (event instanceof DpsDataChangedEvent) {
+            return ((DpsDataChangedEvent) event).getFdn();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,340 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification;
+import com.ericsson.oss.mediation.notifications.ComEcimNodeNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Traces a sample of the events from their creation on the node to the return of the SubscribedEventsProcessor, so that the staleness of
+ * the events pushed to the subscribers can be split into the {@link Stage stages} where it builds up.
+ * <p>
+ * One message out of every N received by each session thread is traced. The trace of a message is kept in a concurrent map keyed by the
+ * message instance from its reception to its delivery. The stage latencies are recorded in histograms, for all events and per notification
+ * type; the traces of the messages which are never delivered, for instance because a dispatcher dropped them as duplicates, expire. Only
+ * the timing is sampled, the trace ID of every event is propagated by the {@link EventTraceContext}.
+ */
+public class EventLatencyTracer {
+
+    static final String SAMPLING_RATE_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "latency.trace.sampling.rate";
+    static final String MAX_TRACES_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "latency.trace.max.in.flight";
+    private static final long MAX_LATENCY_MICROS = 1L << 36;
+    private static final long TRACE_EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(5L);
+
+    private static Logger logger = LoggerFactory.getLogger(EventLatencyTracer.class);
+
+    private final LogSampler sampler;
+    private final int maxTraces;
+    private final ConcurrentMap<Message, EventTrace> traces = new ConcurrentHashMap<>();
+    private final Map<Stage, Histogram> stageLatencyMicros = createStageHistograms();
+    private final ConcurrentMap<Class<?>, Map<Stage, Histogram>> eventTypeStageLatencyMicros = new ConcurrentHashMap<>();
+    private final AtomicLong lastExpiryNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * Stages of the path of an event, each measured between two of its timestamps. The stages starting or ending on the node or on the
+     * broker compare the clocks of different hosts, their negative durations are recorded as 0.
+     */
+    public enum Stage {
+        /** From the creation timestamp of the notification to the JMS timestamp set when its message was sent to the broker. */
+        NODE_TO_BROKER,
+        /** From the JMS timestamp to the reception of the message by the listener. */
+        BROKER_TO_LISTENER,
+        /** From the reception of the message to the end of its deserialization, including any wait in a dispatcher. */
+        RECEIVE_TO_DESERIALIZED,
+        /** From the end of the deserialization to the return of the processor, including any wait in a dispatcher. */
+        DESERIALIZED_TO_DELIVERED,
+        /** From the creation timestamp of the notification to the return of the processor. */
+        END_TO_END
+    }
+
+    /**
+     * Creates a tracer.
+     *
+     * @param samplingRate
+     *     one message out of this many is traced on each session thread; 1 or less traces every message
+     * @param maxTraces
+     *     maximum number of messages traced at once, messages received above it are not traced
+     */
+    public EventLatencyTracer(final int samplingRate, final int maxTraces) {
+        this.sampler = new LogSampler(samplingRate);
+        this.maxTraces = Math.max(1, maxTraces);
+        logger.info("Tracing the latency of one message out of every {}", Math.max(1, samplingRate));
+    }
+
+    /**
+     * @return true unless latency tracing is disabled by a sampling rate of 0 configured through JVM properties
+     */
+    public static boolean isEnabled() {
+        return ConfigurationPropertyReader.getIntProperty(SAMPLING_RATE_PROPERTY, 100) > 0;
+    }
+
+    /**
+     * Creates a tracer using the sampling rate and the trace limit configured through JVM properties, one message out of 100 by default.
+     *
+     * @return the tracer
+     */
+    public static EventLatencyTracer create() {
+        return new EventLatencyTracer(ConfigurationPropertyReader.getIntProperty(SAMPLING_RATE_PROPERTY, 100),
+            ConfigurationPropertyReader.getIntProperty(MAX_TRACES_PROPERTY, 10000));
+    }
+
+    /**
+     * Starts the trace of the message if it is sampled, to be called by the session thread which received it.
+     *
+     * @param message
+     *     the received message
+     */
+    public void messageReceived(final Message message) {
+        if (sampler.sample() && traces.size() < maxTraces) {
+            final long currentTimeNanos = System.nanoTime();
+            traces.put(message, new EventTrace(System.currentTimeMillis(), currentTimeNanos));
+            expireTracesIfDue(currentTimeNanos);
+        }
+    }
+
+    /**
+     * Marks the end of the deserialization of the body of the message, if it is traced.
+     *
+     * @param message
+     *     the deserialized message
+     */
+    public void eventDeserialized(final Message message) {
+        final EventTrace trace = traces.isEmpty() ? null : traces.get(message);
+        if (trace != null) {
+            trace.deserializedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Ends the trace of the message, if it is traced.
+     *
+     * @param message
+     *     the message whose event is about to be handed over to the processor
+     * @return the trace of the message, or null if it is not traced
+     */
+    public EventTrace deliveryStarted(final Message message) {
+        final EventTrace trace = traces.isEmpty() ? null : traces.remove(message);
+        if (trace != null) {
+            trace.traceId = EventTraceContext.getTraceId(message);
+        }
+        return trace;
+    }
+
+    /**
+     * Records the latency of each stage of the path of the event, if it was delivered.
+     *
+     * @param trace
+     *     the trace returned by {@link #deliveryStarted}, nothing is done if it is null
+     * @param message
+     *     the message of the event
+     * @param event
+     *     the event handed over to the processor
+     * @param delivered
+     *     false if no handler accepted the event or if its processing failed
+     */
+    public void deliveryEnded(final EventTrace trace, final Message message, final Serializable event, final boolean delivered) {
+        if (trace == null) {
+            return;
+        }
+        if (delivered) {
+            recordStages(trace, message, event, System.nanoTime());
+        }
+    }
+
+    /**
+     * @return the latency of each stage in microseconds, keyed by stage
+     */
+    public Map<String, HistogramSnapshot> getStageLatencyMicros() {
+        return getSnapshots(stageLatencyMicros);
+    }
+
+    /**
+     * @return the latency of each stage in microseconds, keyed by notification type and then by stage
+     */
+    public Map<String, Map<String, HistogramSnapshot>> getStageLatencyMicrosPerType() {
+        final Map<String, Map<String, HistogramSnapshot>> latencies = new TreeMap<>();
+        for (final Map.Entry<Class<?>, Map<Stage, Histogram>> entry : eventTypeStageLatencyMicros.entrySet()) {
+            latencies.put(entry.getKey().getSimpleName(), getSnapshots(entry.getValue()));
+        }
+        return latencies;
+    }
+
+    /**
+     * @return the number of messages whose trace was started and not yet ended or expired
+     */
+    public int getTracesInFlight() {
+        return traces.size();
+    }
+
+    /**
+     * Clears the stage latency histograms, the traces in flight are kept.
+     */
+    public void resetHistograms() {
+        for (final Histogram histogram : stageLatencyMicros.values()) {
+            histogram.reset();
+        }
+        for (final Map<Stage, Histogram> histograms : eventTypeStageLatencyMicros.values()) {
+            for (final Histogram histogram : histograms.values()) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * Gets the time the event was created on the node, from the creation timestamp of a CPP notification or from the ISO 8601 timestamp
+     * of a COM/ECIM notification, read as UTC when it has no offset.
+     *
+     * @param event
+     *     the event
+     * @return the creation time in milliseconds since the epoch, or 0 if the event carries no readable creation time
+     */
+    static long getCreationTimeMillis(final Serializable event) {
+        if (event instanceof NodeNotification) {
+            final Date creationTimestamp = ((NodeNotification) event).getCreationTimestamp();
+            return creationTimestamp == null ? 0L : creationTimestamp.getTime();
+        }
+        if (event instanceof ComEcimNodeNotification) {
+            return parseTimestamp(((ComEcimNodeNotification) event).getTimestamp());
+        }
+        return 0L;
+    }
+
+    private static long parseTimestamp(final String timestamp) {
+        if (timestamp == null || timestamp.isEmpty()) {
+            return 0L;
+        }
+        try {
+            final TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(timestamp, OffsetDateTime::from, LocalDateTime::from);
+            return parsed instanceof OffsetDateTime ? ((OffsetDateTime) parsed).toInstant().toEpochMilli()
+                : ((LocalDateTime) parsed).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (final DateTimeParseException exception) {
+            logger.debug("Could not read the notification timestamp {}: {}", timestamp, exception.getMessage());
+            return 0L;
+        }
+    }
+
+    private void recordStages(final EventTrace trace, final Message message, final Serializable event, final long deliveredNanos) {
+        final Map<Stage, Histogram> eventTypeHistograms = getEventTypeHistograms(event.getClass());
+        final long deliveredMillis = trace.receivedMillis + TimeUnit.NANOSECONDS.toMillis(deliveredNanos - trace.receivedNanos);
+        final long createdMillis = getCreationTimeMillis(event);
+        final long sentMillis = getJmsTimestamp(message);
+        if (createdMillis > 0 && sentMillis > 0) {
+            record(Stage.NODE_TO_BROKER, eventTypeHistograms, TimeUnit.MILLISECONDS.toMicros(sentMillis - createdMillis));
+        }
+        if (sentMillis > 0) {
+            record(Stage.BROKER_TO_LISTENER, eventTypeHistograms, TimeUnit.MILLISECONDS.toMicros(trace.receivedMillis - sentMillis));
+        }
+        final long deserializedNanos = trace.deserializedNanos;
+        if (deserializedNanos != 0) {
+            record(Stage.RECEIVE_TO_DESERIALIZED, eventTypeHistograms, TimeUnit.NANOSECONDS.toMicros(deserializedNanos - trace.receivedNanos));
+            record(Stage.DESERIALIZED_TO_DELIVERED, eventTypeHistograms, TimeUnit.NANOSECONDS.toMicros(deliveredNanos - deserializedNanos));
+        }
+        if (createdMillis > 0) {
+            record(Stage.END_TO_END, eventTypeHistograms, TimeUnit.MILLISECONDS.toMicros(deliveredMillis - createdMillis));
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Trace {}: {} created at {}, sent at {}, received at {} and delivered at {}", trace.traceId,
+                event.getClass().getSimpleName(), createdMillis, sentMillis, trace.receivedMillis, deliveredMillis);
+        }
+    }
+
+    private void record(final Stage stage, final Map<Stage, Histogram> eventTypeHistograms, final long latencyMicros) {
+        final long value = Math.max(0L, latencyMicros);
+        stageLatencyMicros.get(stage).record(value);
+        eventTypeHistograms.get(stage).record(value);
+    }
+
+    private Map<Stage, Histogram> getEventTypeHistograms(final Class<?> eventType) {
+        Map<Stage, Histogram> histograms = eventTypeStageLatencyMicros.get(eventType);
+        if (histograms == null) {
+            histograms = eventTypeStageLatencyMicros.computeIfAbsent(eventType, type -> createStageHistograms());
+        }
+        return histograms;
+    }
+
+    private void expireTracesIfDue(final long currentTimeNanos) {
+        final long lastExpiry = lastExpiryNanos.get();
+        if (currentTimeNanos - lastExpiry >= TRACE_EXPIRY_NANOS && lastExpiryNanos.compareAndSet(lastExpiry, currentTimeNanos)) {
+            traces.values().removeIf(trace -> currentTimeNanos - trace.receivedNanos >= TRACE_EXPIRY_NANOS);
+        }
+    }
+
+    private static long getJmsTimestamp(final Message message) {
+        try {
+            return message.getJMSTimestamp();
+        } catch (final JMSException exception) {
+            logger.debug("Could not read the JMS timestamp of message {}: {}", message, exception.getMessage());
+            return 0L;
+        }
+    }
+
+    private static Map<Stage, Histogram> createStageHistograms() {
+        final Map<Stage, Histogram> histograms = new EnumMap<>(Stage.class);
+        for (final Stage stage : Stage.values()) {
+            histograms.put(stage, Histogram.withPowerOfTwoBuckets(MAX_LATENCY_MICROS));
+        }
+        return histograms;
+    }
+
+    private static Map<String, HistogramSnapshot> getSnapshots(final Map<Stage, Histogram> histograms) {
+        final Map<String, HistogramSnapshot> snapshots = new LinkedHashMap<>();
+        for (final Map.Entry<Stage, Histogram> entry : histograms.entrySet()) {
+            snapshots.put(entry.getKey().name(), HistogramSnapshot.of(entry.getValue()));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Timestamps of a traced message.
+     */
+    public static final class EventTrace {
+        private final long receivedMillis;
+        private final long receivedNanos;
+        private volatile long deserializedNanos;
+        private volatile String traceId;
+
+        private EventTrace(final long receivedMillis, final long receivedNanos) {
+            this.receivedMillis = receivedMillis;
+            this.receivedNanos = receivedNanos;
+        }
+
+        /**
+         * @return the JMS correlation ID of the message, or its JMS message ID if it has none
+         */
+        public String getTraceId() {
+            return traceId;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the processing metrics of the CmDataChangeDivertedQueue listener: events processed, processing latency and deserialization
+ * time per notification type, message age and error counts.
+ * <p>
+ * Recording is lock free and does not allocate once every notification type has been seen, so the metrics can stay enabled permanently.
+ * Rates are computed from the counts when {@link #updateRates(long)} is called.
+ */
+public class EventMetrics {
+
+    private static final long MAX_LATENCY_MICROS = 1L << 24;
+    private static final long MAX_MESSAGE_AGE_MILLIS = 1L << 24;
+
+    private final ConcurrentMap<Class<?>, EventTypeMetrics> eventTypeMetrics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, Histogram> eventTypeDeserializationMicros = new ConcurrentHashMap<>();
+    private final Histogram deserializationMicros = Histogram.withPowerOfTwoBuckets(MAX_LATENCY_MICROS);
+    private final Histogram messageAgeMillis = Histogram.withPowerOfTwoBuckets(MAX_MESSAGE_AGE_MILLIS);
+    private final LongAdder deserializationErrors = new LongAdder();
+    private final LongAdder processingErrors = new LongAdder();
+    private long previousRateUpdateMillis;
+
+    /**
+     * Records the deserialization of a message body.
+     *
+     * @param durationNanos
+     *     time spent deserializing
+     */
+    public void eventDeserialized(final long durationNanos) {
+        deserializationMicros.record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    /**
+     * Records the deserialization of a message body, also per notification type.
+     *
+     * @param eventType
+     *     the type of the deserialized event, or null if the body was empty
+     * @param durationNanos
+     *     time spent deserializing
+     */
+    public void eventDeserialized(final Class<?> eventType, final long durationNanos) {
+        eventDeserialized(durationNanos);
+        if (eventType != null) {
+            Histogram histogram = eventTypeDeserializationMicros.get(eventType);
+            if (histogram == null) {
+                histogram = eventTypeDeserializationMicros.computeIfAbsent(eventType,
+                    type -> Histogram.withPowerOfTwoBuckets(MAX_LATENCY_MICROS));
+            }
+            histogram.record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+        }
+    }
+
+    /**
+     * Records a message whose body could not be deserialized.
+     */
+    public void deserializationFailed() {
+        deserializationErrors.increment();
+    }
+
+    /**
+     * Records the age of a message when its event is processed.
+     *
+     * @param ageMillis
+     *     time since the message was sent, negative values caused by clock differences are recorded as 0
+     */
+    public void messageAge(final long ageMillis) {
+        messageAgeMillis.record(Math.max(0L, ageMillis));
+    }
+
+    /**
+     * Records an event handed over to the SubscribedEventsProcessor.
+     *
+     * @param eventType
+     *     the notification type
+     * @param durationNanos
+     *     time spent in the processor
+     */
+    public void eventProcessed(final Class<?> eventType, final long durationNanos) {
+        EventTypeMetrics metrics = eventTypeMetrics.get(eventType);
+        if (metrics == null) {
+            metrics = eventTypeMetrics.computeIfAbsent(eventType, type -> new EventTypeMetrics());
+        }
+        metrics.processedEvents.increment();
+        metrics.latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    /**
+     * Records an event whose processing failed.
+     */
+    public void processingFailed() {
+        processingErrors.increment();
+    }
+
+    /**
+     * Computes the event rate of each notification type since the previous call.
+     *
+     * @param currentTimeMillis
+     *     the current time
+     */
+    public synchronized void updateRates(final long currentTimeMillis) {
+        final long elapsedMillis = currentTimeMillis - previousRateUpdateMillis;
+        for (final EventTypeMetrics metrics : eventTypeMetrics.values()) {
+            final long processedEvents = metrics.processedEvents.sum();
+            if (previousRateUpdateMillis > 0 && elapsedMillis > 0) {
+                metrics.ratePerSecond = (processedEvents - metrics.previousProcessedEvents) * 1000.0 / elapsedMillis;
+            }
+            metrics.previousProcessedEvents = processedEvents;
+        }
+        previousRateUpdateMillis = currentTimeMillis;
+    }
+
+    /**
+     * @return the number of processed events keyed by notification type
+     */
+    public Map<String, Long> getEventCounts() {
+        final Map<String, Long> eventCounts = new TreeMap<>();
+        for (final Map.Entry<Class<?>, EventTypeMetrics> entry : eventTypeMetrics.entrySet()) {
+            eventCounts.put(entry.getKey().getSimpleName(), entry.getValue().processedEvents.sum());
+        }
+        return eventCounts;
+    }
+
+    /**
+     * @return the events processed per second keyed by notification type, as computed by the last {@link #updateRates(long)}
+     */
+    public Map<String, Double> getEventRates() {
+        final Map<String, Double> eventRates = new TreeMap<>();
+        for (final Map.Entry<Class<?>, EventTypeMetrics> entry : eventTypeMetrics.entrySet()) {
+            eventRates.put(entry.getKey().getSimpleName(), entry.getValue().ratePerSecond);
+        }
+        return eventRates;
+    }
+
+    /**
+     * @return the time spent in the processor in microseconds, keyed by notification type
+     */
+    public Map<String, HistogramSnapshot> getProcessingLatencyMicros() {
+        final Map<String, HistogramSnapshot> latencies = new TreeMap<>();
+        for (final Map.Entry<Class<?>, EventTypeMetrics> entry : eventTypeMetrics.entrySet()) {
+            latencies.put(entry.getKey().getSimpleName(), HistogramSnapshot.of(entry.getValue().latencyMicros));
+        }
+        return latencies;
+    }
+
+    public HistogramSnapshot getDeserializationMicros() {
+        return HistogramSnapshot.of(deserializationMicros);
+    }
+
+    /**
+     * @return the time spent deserializing message bodies in microseconds, keyed by notification type
+     */
+    public Map<String, HistogramSnapshot> getDeserializationMicrosPerType() {
+        final Map<String, HistogramSnapshot> latencies = new TreeMap<>();
+        for (final Map.Entry<Class<?>, Histogram> entry : eventTypeDeserializationMicros.entrySet()) {
+            latencies.put(entry.getKey().getSimpleName(), HistogramSnapshot.of(entry.getValue()));
+        }
+        return latencies;
+    }
+
+    public HistogramSnapshot getMessageAgeMillis() {
+        return HistogramSnapshot.of(messageAgeMillis);
+    }
+
+    public long getDeserializationErrorCount() {
+        return deserializationErrors.sum();
+    }
+
+    public long getProcessingErrorCount() {
+        return processingErrors.sum();
+    }
+
+    /**
+     * Clears the latency and age histograms, the counts are kept.
+     */
+    public void resetHistograms() {
+        deserializationMicros.reset();
+        messageAgeMillis.reset();
+        for (final Histogram histogram : eventTypeDeserializationMicros.values()) {
+            histogram.reset();
+        }
+        for (final EventTypeMetrics metrics : eventTypeMetrics.values()) {
+            metrics.latencyMicros.reset();
+        }
+    }
+
+    private static final class EventTypeMetrics {
+        private final LongAdder processedEvents = new LongAdder();
+        private final Histogram latencyMicros = Histogram.withPowerOfTwoBuckets(MAX_LATENCY_MICROS);
+        private long previousProcessedEvents;
+        private volatile double ratePerSecond;
+    }
+}
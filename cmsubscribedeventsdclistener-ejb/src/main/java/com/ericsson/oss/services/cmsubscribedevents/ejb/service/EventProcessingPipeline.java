@@ -0,0 +1,120 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands the messages received from CmDataChangeDivertedQueue over to a pool of worker threads through bounded buffers, so that the JMS
+ * sessions only pay for the deserialization and an enqueue, and receive and processing throughput can be scaled separately.
+ * <p>
+ * The workers are the lanes of a {@link PartitionedEventDispatcher}: each event goes to the buffer of the worker its FDN hashes to, so
+ * that the events of one MO are processed in the order they were received whatever the number of workers. The configured buffer capacity
+ * is shared evenly between the workers. When the buffer of a worker is full the session thread blocks on the enqueue, which pauses the
+ * delivery of that consumer instead of dropping messages. Each message is reported to its {@link SessionAcknowledgementTracker} only once
+ * it has been processed.
+ */
+public class EventProcessingPipeline implements EventDispatcher {
+
+    static final String PIPELINE_BUFFER_CAPACITY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "pipeline.buffer.capacity";
+    static final String PIPELINE_WORKER_THREADS_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "pipeline.worker.threads";
+    static final int DEFAULT_BUFFER_CAPACITY = 1024;
+    static final int DEFAULT_WORKER_THREADS = 4;
+
+    private static Logger logger = LoggerFactory.getLogger(EventProcessingPipeline.class);
+
+    private final PartitionedEventDispatcher workers;
+    private final int workerThreads;
+
+    /**
+     * Creates and starts a pipeline.
+     *
+     * @param bufferCapacity
+     *     maximum number of messages waiting for a worker, shared evenly between the workers
+     * @param workerThreads
+     *     number of worker threads
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     the processing applied to each event by the workers
+     */
+    public EventProcessingPipeline(final int bufferCapacity, final int workerThreads, final Function<Message, Serializable> deserializer,
+                                   final BiConsumer<Message, Serializable> eventProcessor) {
+        this.workerThreads = Math.max(1, workerThreads);
+        final int workerBufferCapacity = Math.max(1, (bufferCapacity + this.workerThreads - 1) / this.workerThreads);
+        this.workers = new PartitionedEventDispatcher(this.workerThreads, workerBufferCapacity, deserializer, eventProcessor,
+            "CmDataChangeDivertedQueue-worker");
+        logger.info("Started event processing pipeline with buffer capacity {} and {} worker threads", bufferCapacity, this.workerThreads);
+    }
+
+    /**
+     * Creates a pipeline using the buffer capacity and number of worker threads configured through JVM properties.
+     *
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     the processing applied to each event by the workers
+     * @return the started pipeline
+     */
+    public static EventProcessingPipeline create(final Function<Message, Serializable> deserializer,
+                                                 final BiConsumer<Message, Serializable> eventProcessor) {
+        return new EventProcessingPipeline(ConfigurationPropertyReader.getIntProperty(PIPELINE_BUFFER_CAPACITY_PROPERTY, DEFAULT_BUFFER_CAPACITY),
+            ConfigurationPropertyReader.getIntProperty(PIPELINE_WORKER_THREADS_PROPERTY, DEFAULT_WORKER_THREADS), deserializer, eventProcessor);
+    }
+
+    /**
+     * Enqueues a message for processing by the worker of the FDN of its event, blocking the calling session while the buffer of that worker
+     * is full. If the pipeline is stopped or the session thread is interrupted, the message is processed on the calling thread so that it
+     * is never lost.
+     *
+     * @param message
+     *     the received message
+     * @param acknowledgementTracker
+     *     the acknowledgement tracker of the session which delivered the message
+     */
+    @Override
+    public void dispatch(final Message message, final SessionAcknowledgementTracker acknowledgementTracker) {
+        workers.dispatch(message, acknowledgementTracker);
+    }
+
+    @Override
+    public void stop(final long timeoutMillis) {
+        workers.stop(timeoutMillis);
+        logger.info("Stopped event processing pipeline");
+    }
+
+    /**
+     * @return the number of messages waiting for a worker
+     */
+    public int getBufferedMessages() {
+        int bufferedMessages = 0;
+        for (final PartitionedEventDispatcher.LaneStatistics laneStatistics : workers.getLaneStatistics()) {
+            bufferedMessages += laneStatistics.getQueueDepth();
+        }
+        return bufferedMessages;
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+}
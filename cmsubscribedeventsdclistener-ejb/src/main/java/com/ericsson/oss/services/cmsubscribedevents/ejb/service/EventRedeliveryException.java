@@ -0,0 +1,35 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+/**
+ * Thrown when the processing of an event is given up without processing or dead-lettering it, on shutdown or interruption. The message of
+ * the event must not be acknowledged: it is reported to its {@link SessionAcknowledgementTracker} as left for redelivery, which recovers
+ * the session instead of acknowledging it.
+ */
+public class EventRedeliveryException extends RuntimeException {
+
+    private static final long serialVersionUID = 2675013958471239084L;
+
+    /**
+     * Instantiates a new event redelivery exception with specific message and {@link Throwable}.
+     *
+     * @param message
+     *     the exception message
+     * @param exception
+     *     the failure of the last attempt, or null if the event was given up before its first attempt
+     */
+    public EventRedeliveryException(final String message, final Throwable exception) {
+        super(message, exception);
+    }
+}
@@ -0,0 +1,466 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only log of records kept in a directory as a sequence of memory-mapped segment files, read back in order by a single reader.
+ * <p>
+ * Each record is written as its length, the CRC32 of its payload and the payload; a length of -1 marks the end of the records of a
+ * segment, and a new segment is created when a record does not fit in the current one. Appended records are made durable by a flusher
+ * thread which forces the segments written since its previous round: the records appended while it forces the segments are forced together
+ * in the next round, so that concurrent writers share the cost of a sync. Only durable records are read.
+ * <p>
+ * The reader commits the position of the records it has consumed. The committed position is persisted by the flusher thread, and the
+ * segments before it are then deleted. When a spool is opened, the records after the committed position are read again, the segments are
+ * scanned up to the first incomplete or corrupt record, and the rest of that segment is cleared so that new records are appended there.
+ * <p>
+ * A position is the index of a segment in the upper 32 bits and the offset in the segment in the lower 32 bits, so that positions compare
+ * in the order of the records.
+ */
+public class EventSpool implements Closeable {
+
+    static final String SEGMENT_FILE_SUFFIX = ".segment";
+    static final String COMMITTED_POSITION_FILE = "committed.position";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int END_OF_SEGMENT = -1;
+
+    private static Logger logger = LoggerFactory.getLogger(EventSpool.class);
+
+    private final File directory;
+    private final int segmentBytes;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final List<Segment> unforcedSegments = new ArrayList<>();
+    private final FileChannel committedPositionChannel;
+    private final Thread flusher;
+    private Segment writeSegment;
+    private long writePosition;
+    private long durablePosition;
+    private long readPosition;
+    private long committedPosition;
+    private long persistedPosition;
+    private boolean closed;
+    private boolean flusherStopped;
+
+    /**
+     * Opens the spool kept in a directory, creating it if needed, and starts its flusher thread.
+     *
+     * @param directory
+     *     the directory of the segment files
+     * @param segmentBytes
+     *     size of the segment files created by this spool; existing segments keep their size
+     * @throws IOException
+     *     if the directory or its files cannot be read or written
+     */
+    public EventSpool(final File directory, final int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = Math.max(4096, segmentBytes);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the spool directory " + directory);
+        }
+        committedPositionChannel = new RandomAccessFile(new File(directory, COMMITTED_POSITION_FILE), "rw").getChannel();
+        try {
+            recover();
+        } catch (final IOException | RuntimeException exception) {
+            committedPositionChannel.close();
+            throw exception;
+        }
+        flusher = new NamedThreadFactory("CmDataChangeDivertedQueue-spool-flusher").newThread(this::flush);
+        flusher.start();
+        logger.info("Opened the event spool in {} with {} segments, replaying from position {} up to {}", directory, segments.size(),
+            describe(readPosition), describe(writePosition));
+    }
+
+    /**
+     * Appends a record. The record is not durable, nor readable, until {@link #awaitDurable} returns for the returned position.
+     *
+     * @param payload
+     *     the payload of the record
+     * @return the position following the record
+     * @throws IOException
+     *     if the spool is closed or a new segment cannot be created
+     * @throws IllegalArgumentException
+     *     if the record is larger than a segment
+     */
+    public synchronized long append(final byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("The event spool is closed");
+        }
+        if (payload.length > segmentBytes - RECORD_HEADER_BYTES) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes larger than the spool segments of " + segmentBytes + " bytes");
+        }
+        int offset = offsetOf(writePosition);
+        if (offset + RECORD_HEADER_BYTES + payload.length > writeSegment.size) {
+            if (offset + RECORD_HEADER_BYTES <= writeSegment.size) {
+                writeSegment.buffer.putInt(offset, END_OF_SEGMENT);
+            }
+            markUnforced(writeSegment);
+            writeSegment = createSegment(writeSegment.index + 1);
+            offset = 0;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        final ByteBuffer recordBuffer = writeSegment.buffer.duplicate();
+        recordBuffer.position(offset + 4);
+        recordBuffer.putInt((int) crc.getValue());
+        recordBuffer.put(payload);
+        writeSegment.buffer.putInt(offset, payload.length);
+        writePosition = positionOf(writeSegment.index, offset + RECORD_HEADER_BYTES + payload.length);
+        markUnforced(writeSegment);
+        notifyAll();
+        return writePosition;
+    }
+
+    /**
+     * Waits for the records up to a position to be forced to disk.
+     *
+     * @param position
+     *     the position returned by {@link #append}
+     * @throws InterruptedException
+     *     if the thread is interrupted while waiting
+     * @throws IOException
+     *     if the spool was closed before the records could be forced
+     */
+    public synchronized void awaitDurable(final long position) throws InterruptedException, IOException {
+        while (durablePosition < position) {
+            if (flusherStopped) {
+                throw new IOException("The event spool was closed before position " + describe(position) + " was forced");
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Waits while the spool has more than a number of segments, for the reader to consume them.
+     *
+     * @param maxSegments
+     *     the number of segments above which appending waits
+     * @throws InterruptedException
+     *     if the thread is interrupted while waiting
+     */
+    public synchronized void awaitSegmentsBelow(final int maxSegments) throws InterruptedException {
+        while (!closed && segments.size() > maxSegments) {
+            wait();
+        }
+    }
+
+    /**
+     * Reads the next durable record.
+     *
+     * @param timeoutMillis
+     *     maximum time to wait for a record
+     * @return the payload of the record, or null if no record was available within the timeout or the spool is closed
+     * @throws InterruptedException
+     *     if the thread is interrupted while waiting
+     * @throws IOException
+     *     if the record is corrupt; the rest of its segment is skipped
+     */
+    public synchronized byte[] poll(final long timeoutMillis) throws InterruptedException, IOException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!closed) {
+            if (readPosition >= durablePosition) {
+                final long remainingMillis = deadline - System.currentTimeMillis();
+                if (remainingMillis <= 0) {
+                    return null;
+                }
+                wait(remainingMillis);
+                continue;
+            }
+            final Segment segment = segments.get(segmentOf(readPosition));
+            final int offset = offsetOf(readPosition);
+            final int length = offset + RECORD_HEADER_BYTES > segment.size ? END_OF_SEGMENT : segment.buffer.getInt(offset);
+            if (length == END_OF_SEGMENT) {
+                readPosition = positionOf(segment.index + 1, 0);
+                continue;
+            }
+            final byte[] payload = length > 0 && offset + RECORD_HEADER_BYTES + length <= segment.size ? readPayload(segment, offset, length) : null;
+            if (payload == null) {
+                readPosition = positionOf(segment.index + 1, 0);
+                throw new IOException("Corrupt record at position " + describe(positionOf(segment.index, offset))
+                    + " of the event spool, skipping the rest of its segment");
+            }
+            readPosition = positionOf(segment.index, offset + RECORD_HEADER_BYTES + length);
+            return payload;
+        }
+        return null;
+    }
+
+    /**
+     * Commits the records read so far as consumed. The committed position is persisted, and the segments before it deleted, in the next
+     * round of the flusher thread.
+     */
+    public synchronized void commit() {
+        if (committedPosition != readPosition) {
+            committedPosition = readPosition;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return true if every record appended has been read, or if the spool is closed
+     */
+    public synchronized boolean isDrained() {
+        return closed || readPosition >= writePosition;
+    }
+
+    /**
+     * @return the directory of the segment files
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of segment files of the spool
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Stops the flusher thread once it has forced the records appended and persisted the committed position. Records appended and not
+     * committed are read again when the spool is next opened.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        committedPositionChannel.close();
+        logger.info("Closed the event spool in {} at position {}, committed up to {}", directory, describe(writePosition),
+            describe(persistedPosition));
+    }
+
+    private void flush() {
+        while (true) {
+            final List<Segment> segmentsToForce;
+            final long targetPosition;
+            final long positionToPersist;
+            synchronized (this) {
+                while (!closed && durablePosition == writePosition && persistedPosition == committedPosition) {
+                    waitForWork();
+                }
+                if (closed && durablePosition == writePosition && persistedPosition == committedPosition) {
+                    flusherStopped = true;
+                    notifyAll();
+                    return;
+                }
+                segmentsToForce = new ArrayList<>(unforcedSegments);
+                unforcedSegments.clear();
+                targetPosition = writePosition;
+                positionToPersist = committedPosition;
+            }
+            for (final Segment segment : segmentsToForce) {
+                segment.buffer.force();
+            }
+            final boolean persisted = positionToPersist == persistedPosition || persistCommittedPosition(positionToPersist);
+            final List<Segment> consumedSegments = new ArrayList<>();
+            synchronized (this) {
+                durablePosition = targetPosition;
+                if (persisted) {
+                    persistedPosition = positionToPersist;
+                    while (segments.firstKey() < segmentOf(positionToPersist)) {
+                        consumedSegments.add(segments.pollFirstEntry().getValue());
+                    }
+                }
+                notifyAll();
+            }
+            for (final Segment segment : consumedSegments) {
+                if (!segment.file.delete()) {
+                    logger.warn("Could not delete the consumed spool segment {}", segment.file);
+                }
+            }
+        }
+    }
+
+    private void waitForWork() {
+        try {
+            wait();
+        } catch (final InterruptedException exception) {
+            logger.warn("Spool flusher interrupted, closing the event spool in {}", directory);
+            closed = true;
+        }
+    }
+
+    private boolean persistCommittedPosition(final long position) {
+        try {
+            final ByteBuffer positionBuffer = ByteBuffer.allocate(Long.BYTES).putLong(0, position);
+            committedPositionChannel.write(positionBuffer, 0L);
+            committedPositionChannel.force(false);
+            return true;
+        } catch (final IOException exception) {
+            logger.error("Could not persist the committed position {} of the event spool: {}", describe(position), exception.getMessage());
+            return false;
+        }
+    }
+
+    private void recover() throws IOException {
+        final File[] segmentFiles = directory.listFiles((dir, name) -> name.matches("\\d{10}\\" + SEGMENT_FILE_SUFFIX));
+        if (segmentFiles != null) {
+            for (final File segmentFile : segmentFiles) {
+                final int index = Integer.parseInt(segmentFile.getName().substring(0, 10));
+                segments.put(index, mapSegment(index, segmentFile, segmentFile.length()));
+            }
+        }
+        long position = segments.isEmpty() ? 0L : positionOf(segments.firstKey(), 0);
+        if (committedPositionChannel.size() >= Long.BYTES) {
+            final ByteBuffer positionBuffer = ByteBuffer.allocate(Long.BYTES);
+            committedPositionChannel.read(positionBuffer, 0L);
+            position = Math.max(position, positionBuffer.getLong(0));
+        }
+        for (final Map.Entry<Integer, Segment> entry : new ArrayList<>(segments.headMap(segmentOf(position)).entrySet())) {
+            segments.remove(entry.getKey());
+            if (!entry.getValue().file.delete()) {
+                logger.warn("Could not delete the consumed spool segment {}", entry.getValue().file);
+            }
+        }
+        readPosition = position;
+        committedPosition = position;
+        persistedPosition = position;
+        writePosition = findEndOfRecords(position);
+        durablePosition = writePosition;
+        writeSegment = segments.get(segmentOf(writePosition));
+        if (writeSegment == null) {
+            writeSegment = createSegment(segmentOf(writePosition));
+        }
+    }
+
+    private long findEndOfRecords(final long fromPosition) {
+        long position = fromPosition;
+        while (true) {
+            final Segment segment = segments.get(segmentOf(position));
+            if (segment == null) {
+                return position;
+            }
+            final int offset = offsetOf(position);
+            final int length = offset + RECORD_HEADER_BYTES > segment.size ? END_OF_SEGMENT : segment.buffer.getInt(offset);
+            if (length == END_OF_SEGMENT) {
+                position = positionOf(segment.index + 1, 0);
+            } else if (length > 0 && offset + RECORD_HEADER_BYTES + length <= segment.size && readPayload(segment, offset, length) != null) {
+                position = positionOf(segment.index, offset + RECORD_HEADER_BYTES + length);
+            } else {
+                if (length != 0 || segment.buffer.getInt(offset + 4) != 0) {
+                    truncate(segment, offset);
+                }
+                deleteSegmentsAfter(segment.index);
+                return position;
+            }
+        }
+    }
+
+    private void truncate(final Segment segment, final int offset) {
+        logger.info("Truncating the spool segment {} at offset {}, after the last complete record", segment.file, offset);
+        final ByteBuffer clearedBuffer = segment.buffer.duplicate();
+        clearedBuffer.position(offset);
+        while (clearedBuffer.hasRemaining()) {
+            clearedBuffer.put((byte) 0);
+        }
+        segment.buffer.force();
+    }
+
+    private void deleteSegmentsAfter(final int index) {
+        for (final Segment laterSegment : new ArrayList<>(segments.tailMap(index, false).values())) {
+            segments.remove(laterSegment.index);
+            if (!laterSegment.file.delete()) {
+                logger.warn("Could not delete the spool segment {} following the last complete record", laterSegment.file);
+            }
+        }
+    }
+
+    private static byte[] readPayload(final Segment segment, final int offset, final int length) {
+        final byte[] payload = new byte[length];
+        final ByteBuffer recordBuffer = segment.buffer.duplicate();
+        recordBuffer.position(offset + 4);
+        final int expectedCrc = recordBuffer.getInt();
+        recordBuffer.get(payload);
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue() == expectedCrc ? payload : null;
+    }
+
+    private Segment createSegment(final int index) throws IOException {
+        final Segment segment = mapSegment(index, new File(directory, String.format("%010d", index) + SEGMENT_FILE_SUFFIX), segmentBytes);
+        segments.put(index, segment);
+        return segment;
+    }
+
+    private void markUnforced(final Segment segment) {
+        if (!unforcedSegments.contains(segment)) {
+            unforcedSegments.add(segment);
+        }
+    }
+
+    private static Segment mapSegment(final int index, final File file, final long size) throws IOException {
+        try (RandomAccessFile segmentFile = new RandomAccessFile(file, "rw")) {
+            if (segmentFile.length() < size) {
+                segmentFile.setLength(size);
+            }
+            final int mappedSize = (int) Math.min(size, Integer.MAX_VALUE);
+            return new Segment(index, file, segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, mappedSize));
+        }
+    }
+
+    static long positionOf(final int segment, final int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    static int segmentOf(final long position) {
+        return (int) (position >>> 32);
+    }
+
+    static int offsetOf(final long position) {
+        return (int) position;
+    }
+
+    private static String describe(final long position) {
+        return segmentOf(position) + ":" + offsetOf(position);
+    }
+
+    /**
+     * A segment file and its mapping, shared by the writer and the reader through independent views.
+     */
+    private static final class Segment {
+        private final int index;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final int size;
+
+        private Segment(final int index, final File file, final MappedByteBuffer buffer) {
+            this.index = index;
+            this.file = file;
+            this.buffer = buffer;
+            this.size = buffer.capacity();
+        }
+    }
+}
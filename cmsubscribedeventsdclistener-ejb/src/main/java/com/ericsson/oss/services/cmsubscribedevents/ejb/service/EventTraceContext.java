@@ -0,0 +1,111 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Holds the trace ID of the events being handed over to the processor by the current thread.
+ * <p>
+ * The trace ID of a message is its JMS correlation ID, or else its JMS message ID. It is set for every event, whether or not its latency is
+ * traced, and {@link TraceIdClientInterceptor} adds it to the context data of the EJB invocations made by the thread, so that it reaches
+ * the processor. It is also put in the {@link MDC} under {@value #TRACE_ID_KEY}, so that the log lines written on the thread carry it.
+ */
+public final class EventTraceContext {
+
+    static final String TRACE_ID_KEY = "traceId";
+
+    private static final ThreadLocal<String> CURRENT_TRACE_ID = new ThreadLocal<>();
+    private static Logger logger = LoggerFactory.getLogger(EventTraceContext.class);
+
+    private EventTraceContext() {
+    }
+
+    /**
+     * Sets the trace ID of the message whose event is about to be handed over to the processor, until {@link #clear} is called.
+     *
+     * @param message
+     *     the message
+     */
+    public static void set(final Message message) {
+        set(getTraceId(message));
+    }
+
+    /**
+     * Sets the trace IDs of the messages whose events are about to be handed over together to the processor, separated by commas, until
+     * {@link #clear} is called.
+     *
+     * @param messages
+     *     the messages
+     */
+    public static void set(final List<Message> messages) {
+        final StringBuilder traceIds = new StringBuilder();
+        for (final Message message : messages) {
+            final String traceId = getTraceId(message);
+            if (traceId != null) {
+                traceIds.append(traceIds.length() == 0 ? "" : ",").append(traceId);
+            }
+        }
+        set(traceIds.length() == 0 ? null : traceIds.toString());
+    }
+
+    /**
+     * @return the trace ID set on the current thread, or null if none is set
+     */
+    public static String get() {
+        return CURRENT_TRACE_ID.get();
+    }
+
+    /**
+     * Removes the trace ID of the current thread.
+     */
+    public static void clear() {
+        CURRENT_TRACE_ID.remove();
+        MDC.remove(TRACE_ID_KEY);
+    }
+
+    /**
+     * @return the JMS correlation ID of the message, or its JMS message ID if it has none, or null if neither can be read
+     */
+    static String getTraceId(final Message message) {
+        try {
+            final String correlationId = message.getJMSCorrelationID();
+            return correlationId == null ? message.getJMSMessageID() : correlationId;
+        } catch (final JMSException exception) {
+            logger.debug("Could not read the IDs of message {}: {}", message, exception.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sets a trace ID read back from the {@link EventSpool}, until {@link #clear} is called.
+     *
+     * @param traceId
+     *     the trace ID, nothing is set if it is null
+     */
+    static void set(final String traceId) {
+        if (traceId == null) {
+            clear();
+            return;
+        }
+        CURRENT_TRACE_ID.set(traceId);
+        MDC.put(TRACE_ID_KEY, traceId);
+    }
+}
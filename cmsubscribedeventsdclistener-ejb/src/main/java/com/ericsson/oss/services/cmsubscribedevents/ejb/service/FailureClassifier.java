@@ -0,0 +1,65 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import javax.ejb.ConcurrentAccessTimeoutException;
+import javax.ejb.NoSuchEJBException;
+
+/**
+ * Classifies the failures raised while processing an event, to decide whether the processing is worth retrying.
+ */
+public final class FailureClassifier {
+
+    private static final int MAX_CAUSE_DEPTH = 10;
+    private static final String NO_EJB_RECEIVER = "No EJB receiver";
+
+    /**
+     * Kind of failure.
+     */
+    public enum FailureType {
+        /**
+         * The remote processor is unavailable or overloaded; the same event may succeed later.
+         */
+        TRANSIENT,
+        /**
+         * The event or its payload cannot be processed, whatever the number of attempts.
+         */
+        PERMANENT
+    }
+
+    private FailureClassifier() {
+    }
+
+    /**
+     * Classifies a failure from its cause chain. Communication failures and timeouts towards SubscribedEventsProcessor are transient,
+     * anything else, such as a deserialization error, a class mismatch or a bug in the processing of the event, is permanent.
+     *
+     * @param failure
+     *     the failure
+     * @return the type of the failure
+     */
+    public static FailureType classify(final Throwable failure) {
+        Throwable cause = failure;
+        for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (cause instanceof IOException || cause instanceof TimeoutException || cause instanceof NoSuchEJBException
+                || cause instanceof ConcurrentAccessTimeoutException
+                || cause instanceof IllegalStateException && cause.getMessage() != null && cause.getMessage().contains(NO_EJB_RECEIVER)) {
+                return FailureType.TRANSIENT;
+            }
+            cause = cause.getCause();
+        }
+        return FailureType.PERMANENT;
+    }
+}
@@ -0,0 +1,154 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram with fixed bucket upper bounds. Values above the last bound are counted in an overflow bucket.
+ */
+public class Histogram {
+
+    private final long[] upperBounds;
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates a histogram.
+     *
+     * @param upperBounds
+     *     the inclusive upper bound of each bucket, in ascending order
+     */
+    public Histogram(final long... upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        this.bucketCounts = new AtomicLongArray(upperBounds.length + 1);
+    }
+
+    /**
+     * Creates a histogram whose bucket bounds are the powers of two up to the given maximum.
+     *
+     * @param maxValue
+     *     the largest bucket bound
+     * @return the histogram
+     */
+    public static Histogram withPowerOfTwoBuckets(final long maxValue) {
+        int buckets = 1;
+        while ((1L << (buckets - 1)) < maxValue && buckets < Long.SIZE - 1) {
+            buckets++;
+        }
+        final long[] upperBounds = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            upperBounds[i] = 1L << i;
+        }
+        return new Histogram(upperBounds);
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value
+     *     the value to record
+     */
+    public void record(final long value) {
+        bucketCounts.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long currentCount = count.get();
+        return currentCount == 0 ? 0 : (double) sum.get() / currentCount;
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket containing it.
+     *
+     * @param percentile
+     *     the percentile, between 0 and 100
+     * @return the estimated value, or 0 if nothing was recorded
+     */
+    public long getPercentile(final double percentile) {
+        final long currentCount = count.get();
+        if (currentCount == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(currentCount * percentile / 100.0);
+        long cumulative = 0;
+        for (int i = 0; i < upperBounds.length; i++) {
+            cumulative += bucketCounts.get(i);
+            if (cumulative >= rank) {
+                return upperBounds[i];
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Gets the count of each bucket, keyed by a label such as "&lt;=16", with "&gt;N" for the overflow bucket.
+     *
+     * @return the bucket counts, in ascending order of bound
+     */
+    public Map<String, Long> getBucketCounts() {
+        final Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < upperBounds.length; i++) {
+            buckets.put("<=" + upperBounds[i], bucketCounts.get(i));
+        }
+        if (upperBounds.length > 0) {
+            buckets.put(">" + upperBounds[upperBounds.length - 1], bucketCounts.get(upperBounds.length));
+        }
+        return buckets;
+    }
+
+    /**
+     * Clears every recorded value.
+     */
+    public void reset() {
+        for (int i = 0; i < bucketCounts.length(); i++) {
+            bucketCounts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private int bucketIndex(final long value) {
+        int low = 0;
+        int high = upperBounds.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (upperBounds[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,73 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Summary of a {@link Histogram} at a point in time, exposed as composite data through JMX.
+ */
+public class HistogramSnapshot {
+
+    private final long count;
+    private final double mean;
+    private final long median;
+    private final long percentile99;
+    private final long max;
+
+    @ConstructorProperties({ "count", "mean", "median", "percentile99", "max" })
+    public HistogramSnapshot(final long count, final double mean, final long median, final long percentile99, final long max) {
+        this.count = count;
+        this.mean = mean;
+        this.median = median;
+        this.percentile99 = percentile99;
+        this.max = max;
+    }
+
+    /**
+     * Takes a snapshot of a histogram.
+     *
+     * @param histogram
+     *     the histogram
+     * @return the snapshot
+     */
+    public static HistogramSnapshot of(final Histogram histogram) {
+        return new HistogramSnapshot(histogram.getCount(), histogram.getMean(), histogram.getPercentile(50), histogram.getPercentile(99),
+            histogram.getMax());
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getMedian() {
+        return median;
+    }
+
+    public long getPercentile99() {
+        return percentile99;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + mean + ", median=" + median + ", percentile99=" + percentile99 + ", max=" + max;
+    }
+}
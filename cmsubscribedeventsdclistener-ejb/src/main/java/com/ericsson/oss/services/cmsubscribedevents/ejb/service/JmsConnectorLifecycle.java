@@ -0,0 +1,186 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts the {@link JmsQueueConnector} off the deployment thread and retries until it listens.
+ * <p>
+ * A failed start, for example while the broker or the JNDI names are not yet available, is retried with an exponential backoff between
+ * the configured initial and maximum delays, so that the instance recovers without a restart. A connection failure reported by the JMS
+ * provider once listening is recovered the same way. The {@link State} of the connector tells whether it is ready to consume messages.
+ * <p>
+ * On stop the consumers are drained before they are closed: the processed messages are acknowledged instead of being redelivered to the
+ * next instance, which keeps rolling upgrades and scale-in from causing a reprocessing burst downstream.
+ */
+@ApplicationScoped
+public class JmsConnectorLifecycle {
+
+    static final String RETRY_INITIAL_DELAY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "startup.retry.initial.delay.millis";
+    static final String RETRY_MAX_DELAY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "startup.retry.max.delay.millis";
+    static final String DRAIN_TIMEOUT_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "drain.timeout.millis";
+    private static final long STOP_TIMEOUT_MILLIS = 10000L;
+
+    private static Logger logger = LoggerFactory.getLogger(JmsConnectorLifecycle.class);
+
+    /**
+     * Readiness of the connector.
+     */
+    public enum State {
+        STOPPED, STARTING, RETRYING, LISTENING, DRAINING
+    }
+
+    private final long initialRetryDelayMillis = Math.max(1L, ConfigurationPropertyReader.getLongProperty(RETRY_INITIAL_DELAY_PROPERTY, 1000L));
+    private final long maxRetryDelayMillis = Math.max(initialRetryDelayMillis,
+        ConfigurationPropertyReader.getLongProperty(RETRY_MAX_DELAY_PROPERTY, 60000L));
+    private final long drainTimeoutMillis = ConfigurationPropertyReader.getLongProperty(DRAIN_TIMEOUT_PROPERTY, 10000L);
+
+    private volatile State state = State.STOPPED;
+    private volatile int failedStartAttempts;
+    private volatile int reconnections;
+    private volatile DrainSummary lastDrainSummary;
+    private ScheduledExecutorService startupExecutor;
+
+    @Inject
+    private JmsQueueConnector jmsQueueConnector;
+
+    /**
+     * Starts the connector asynchronously. Does nothing if it is already started or being started.
+     */
+    public synchronized void start() {
+        if (startupExecutor != null) {
+            return;
+        }
+        state = State.STARTING;
+        failedStartAttempts = 0;
+        startupExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("CmDataChangeDivertedQueue-startup"));
+        jmsQueueConnector.setConnectionFailureHandler(this::reconnect);
+        startupExecutor.execute(this::attemptStart);
+    }
+
+    /**
+     * Abandons the failed connection of the connector and starts it again in the background, with the same backoff as the initial start.
+     * Does nothing if the lifecycle is stopped.
+     */
+    public synchronized void reconnect() {
+        if (startupExecutor == null) {
+            return;
+        }
+        state = State.RETRYING;
+        failedStartAttempts = 0;
+        reconnections++;
+        logger.warn("Reconnecting CmDataChangeDivertedQueue consumers after a connection failure");
+        startupExecutor.execute(() -> {
+            jmsQueueConnector.abandonConnection();
+            attemptStart();
+        });
+    }
+
+    /**
+     * Cancels any pending start attempt, drains the consumers within the configured timeout unless it is 0, and stops the connector.
+     */
+    public void stop() {
+        final ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = startupExecutor;
+            startupExecutor = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                if (!executor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    logger.warn("CmDataChangeDivertedQueue start attempt still running after {} ms", STOP_TIMEOUT_MILLIS);
+                }
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (drainTimeoutMillis > 0) {
+            state = State.DRAINING;
+            lastDrainSummary = jmsQueueConnector.drain(drainTimeoutMillis);
+        }
+        jmsQueueConnector.stopListening();
+        state = State.STOPPED;
+    }
+
+    /**
+     * @return the current state of the connector
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if the connector is listening
+     */
+    public boolean isReady() {
+        return state == State.LISTENING;
+    }
+
+    /**
+     * @return the number of reconnections after a connection failure
+     */
+    public int getReconnectionCount() {
+        return reconnections;
+    }
+
+    /**
+     * @return the outcome of the last drain of the consumers, or null if they were never drained
+     */
+    public DrainSummary getLastDrainSummary() {
+        return lastDrainSummary;
+    }
+
+    /**
+     * @return the number of failed start attempts since the connector was last started or reconnected
+     */
+    public int getFailedStartAttempts() {
+        return failedStartAttempts;
+    }
+
+    void attemptStart() {
+        if (jmsQueueConnector.startListening()) {
+            state = State.LISTENING;
+            logger.info("CmDataChangeDivertedQueue connector listening after {} failed start attempts", failedStartAttempts);
+            return;
+        }
+        synchronized (this) {
+            if (startupExecutor == null || startupExecutor.isShutdown()) {
+                return;
+            }
+            failedStartAttempts++;
+            final long retryDelayMillis = getRetryDelayMillis(failedStartAttempts);
+            state = State.RETRYING;
+            logger.warn("CmDataChangeDivertedQueue connector start attempt {} failed, will retry in {} ms", failedStartAttempts,
+                retryDelayMillis);
+            startupExecutor.schedule(this::attemptStart, retryDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    long getRetryDelayMillis(final int failedAttempts) {
+        long retryDelayMillis = initialRetryDelayMillis;
+        for (int attempt = 1; attempt < failedAttempts && retryDelayMillis < maxRetryDelayMillis; attempt++) {
+            retryDelayMillis *= 2;
+        }
+        return Math.min(retryDelayMillis, maxRetryDelayMillis);
+    }
+}
@@ -22,17 +22,48 @@ import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
 import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.QueueBrowser;
 import javax.jms.Session;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 /**
  * This class manages all the configuration parameters required by JMS and the relative life cycle.
+ * <p>
+ * By default the consumers listen to CmDataChangeDivertedQueue only. A comma separated list of channel URIs can be configured instead,
+ * for instance to consume from diverted queues sharded per node type or hosted on different broker nodes. Each queue gets its own
+ * connections and its own consumers, sized by the sdk.eventbus.jms.concurrent.queue.listeners.number property of the queue, and the
+ * sessions of a queue are spread over its connections. The consumers added or removed at runtime belong to the first queue.
+ * <p>
+ * {@link ConsumerGroup}s can be configured as well: each group has its own consumers of the first queue, created with the message selector
+ * of the group, so that the broker routes the messages of each notification family to the consumers of its group. The other consumers of
+ * the first queue, including the ones added at runtime, are created with the complementary selector and only receive the messages
+ * matching no group, so that they do not compete with the consumers of the groups.
  */
 @ApplicationScoped
 public class JmsQueueConnector {
@@ -43,13 +74,29 @@ public class JmsQueueConnector {
     private static final String CONNECTION_FACTORY_JNDI_NAME = "java:/ConnectionFactory";
     private static final int DEFAULT_NUMBER_OF_DC_QUEUE_CONCURRENT_CONSUMERS = 1;
     private static final String CM_DATA_CHANGE_DIVERTED_QUEUE = "CmDataChangeDivertedQueue";
+    private static final long CONSUMER_REMOVAL_TIMEOUT_MILLIS = 10000L;
+    private static final int MAX_PREWARM_THREADS = 8;
+    static final String QUEUES_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "queues";
+    static final String CONNECTIONS_PER_QUEUE_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "connections.per.queue";
 
     private final List<Session> sessions = new LinkedList<>();
     private final List<MessageConsumer> consumers = new LinkedList<>();
+    private final List<SessionAcknowledgementTracker> acknowledgementTrackers = new CopyOnWriteArrayList<>();
+    private final Map<MessageConsumer, Session> consumerSessions = new IdentityHashMap<>();
 
     private ConnectionFactory connectionFactory;
-    private Connection connection;
+    private final Map<String, Destination> producerDestinations = new ConcurrentHashMap<>();
+    private final List<Connection> additionalConnections = new ArrayList<>();
+    private final List<Connection> primaryQueueConnections = new ArrayList<>();
+
+    private volatile Connection connection;
+    private String primaryQueueName = CM_DATA_CHANGE_DIVERTED_QUEUE;
+    private int fixedConsumerCount;
+    private String defaultSelector;
     private InitialContext context;
+    private Destination destination;
+    private int nextSessionIndex;
+    private volatile Runnable connectionFailureHandler;
 
     @Inject
     ChannelLocator channelLocator;
@@ -61,7 +108,7 @@ public class JmsQueueConnector {
      * Stops listening to messages.
      *
      */
-    public void stopListening() {
+    public synchronized void stopListening() {
         try {
             if (isActive()) {
                 for (final MessageConsumer consumer : consumers) {
@@ -70,6 +117,10 @@ public class JmsQueueConnector {
                 }
                 final int size = consumers.size();
                 consumers.clear();
+                consumerSessions.clear();
+                closeAcknowledgementTrackers();
+                nextSessionIndex = 0;
+                fixedConsumerCount = 0;
                 logger.info("stopped {} CmDataChangeDivertedQueue consumers", size);
                 destroyQueueConnection();
             }
@@ -91,6 +142,7 @@ public class JmsQueueConnector {
             logger.error("Could not close CmDataChangeDivertedQueue sessions due to: {}", exception.getMessage());
             throw new JmsAdapterException("Could not close CmDataChangeDivertedQueue sessions.", exception);
         }
+        closeAdditionalConnections();
         try {
             connection.close();
         } catch (final JMSException exception) {
@@ -104,27 +156,410 @@ public class JmsQueueConnector {
      *
      * @return true if activation is successful
      */
-    public boolean startListening() {
+    public synchronized boolean startListening() {
         logger.info("trying to activate the message observer {}", this);
         if (isActive()) {
             logger.debug("{} is already active! returning now", this.getClass());
             return true;
         }
+        final List<String> queueUris = getConfiguredQueueUris();
+        final int connectionsPerQueue = Math.max(1, ConfigurationPropertyReader.getIntProperty(CONNECTIONS_PER_QUEUE_PROPERTY, 1));
+        final ExecutorService prewarmExecutor = Executors.newFixedThreadPool(Math.min(queueUris.size(), MAX_PREWARM_THREADS),
+            new NamedThreadFactory("CmDataChangeDivertedQueue-prewarm"));
         try {
+            final List<Future<String>> destinationUris = new ArrayList<>(queueUris.size());
+            for (final String queueUri : queueUris) {
+                destinationUris.add(prewarmExecutor.submit(() -> channelLocator.lookupChannel(queueUri).getChannelURI()));
+            }
+            primaryQueueName = getQueueName(queueUris.get(0));
             startQueueConnection();
-            consumers.addAll(createQueueConsumers(channelLocator.lookupChannel(QUEUE_URI).getChannelURI()));
 
-            for (final MessageConsumer consumer : consumers) {
-                consumer.setMessageListener(cmDataChangeDivertedQueueListener);
+            // The consumers of the additional queues and of the consumer groups come first, so that the consumers added and removed at
+            // runtime are the last ones.
+            final Map<String, List<MessageConsumer>> queueConsumers = new LinkedHashMap<>();
+            for (int i = 1; i < queueUris.size(); i++) {
+                final String queueName = getQueueName(queueUris.get(i));
+                final List<MessageConsumer> createdConsumers = createQueueConsumers(queueName, getPrewarmed(destinationUris.get(i)),
+                    createAdditionalConnections(connectionsPerQueue));
+                consumers.addAll(createdConsumers);
+                fixedConsumerCount += createdConsumers.size();
+                queueConsumers.put(queueName, createdConsumers);
+            }
+            primaryQueueConnections.add(connection);
+            primaryQueueConnections.addAll(createAdditionalConnections(connectionsPerQueue - 1));
+            final Map<String, Predicate<Serializable>> notificationDispatches = new HashMap<>();
+            final List<ConsumerGroup> consumerGroups = ConsumerGroup.getConfiguredGroups();
+            defaultSelector = ConsumerGroup.getComplementarySelector(consumerGroups);
+            for (final ConsumerGroup consumerGroup : consumerGroups) {
+                final String groupName = primaryQueueName + "-" + consumerGroup.getName();
+                final List<MessageConsumer> groupConsumers = createQueueConsumers(primaryQueueName, getPrewarmed(destinationUris.get(0)),
+                    primaryQueueConnections, consumerGroup.getConsumerCount(), consumerGroup.getSelector());
+                consumers.addAll(groupConsumers);
+                fixedConsumerCount += groupConsumers.size();
+                queueConsumers.put(groupName, groupConsumers);
+                if (consumerGroup.getNotificationType() != null) {
+                    notificationDispatches.put(groupName, cmDataChangeDivertedQueueListener.getNotificationHandlerRegistry()
+                        .createTypedDispatch(consumerGroup.getNotificationType()));
+                }
+                logger.info("Created {} consumers of {}", groupConsumers.size(), consumerGroup);
+            }
+            final List<MessageConsumer> primaryQueueConsumers = createQueueConsumers(primaryQueueName, getPrewarmed(destinationUris.get(0)),
+                primaryQueueConnections, fetchConfiguredNumberOfQueueConcurrentConsumers(primaryQueueName,
+                    DEFAULT_NUMBER_OF_DC_QUEUE_CONCURRENT_CONSUMERS), defaultSelector);
+            consumers.addAll(primaryQueueConsumers);
+            queueConsumers.put(primaryQueueName, primaryQueueConsumers);
+
+            for (final Map.Entry<String, List<MessageConsumer>> entry : queueConsumers.entrySet()) {
+                for (final MessageConsumer consumer : entry.getValue()) {
+                    registerMessageListener(entry.getKey(), consumer, notificationDispatches.get(entry.getKey()));
+                }
             }
-            logger.info("Number of consumers registered are :: {} ", consumers.size());
+            logger.info("Number of consumers registered are :: {} on {} queues", consumers.size(), queueUris.size());
             return true;
         } catch (final Exception exception) {
             logger.error("Listeners not started for CmDataChangeDivertedQueue due to exception :: {} ", exception.getMessage());
+            releaseConnection();
+            return false;
+        } finally {
+            prewarmExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Drains the consumers before they are closed, so that the messages already received are not redelivered to the next instance. The
+     * delivery of new messages is stopped first by removing the message listeners, then each session waits for the end of its delivery in
+     * progress and for its messages in flight, up to the given deadline shared by all sessions, and acknowledges its processed messages. A
+     * session with messages still in flight at the deadline is not acknowledged, since that would acknowledge the unprocessed messages too:
+     * all its unacknowledged messages are abandoned and redelivered by the broker.
+     * <p>
+     * The consumers, the sessions and the connection are left open, to be closed by {@link #stopListening()} once the sessions are
+     * acknowledged: closing a consumer first would return its unacknowledged messages to the queue.
+     *
+     * @param timeoutMillis
+     *     maximum time to wait for the messages in flight
+     * @return the number of messages drained, acknowledged and abandoned
+     */
+    public synchronized DrainSummary drain(final long timeoutMillis) {
+        final long startMillis = System.currentTimeMillis();
+        if (!isActive()) {
+            return new DrainSummary(0L, 0L, 0L, 0L);
+        }
+        for (final MessageConsumer consumer : consumers) {
+            try {
+                consumer.setMessageListener(null);
+            } catch (final JMSException exception) {
+                logger.debug("Could not stop a CmDataChangeDivertedQueue consumer due to: {}", exception.getMessage());
+            }
+        }
+        final long deadline = startMillis + timeoutMillis;
+        long drainedMessages = 0;
+        long acknowledgedMessages = 0;
+        long abandonedMessages = 0;
+        for (final SessionAcknowledgementTracker acknowledgementTracker : acknowledgementTrackers) {
+            final int inFlightMessages = acknowledgementTracker.getInFlightMessages();
+            final long acknowledgedBefore = acknowledgementTracker.getAcknowledgedMessages();
+            final boolean acknowledged = acknowledgementTracker.acknowledgePending(Math.max(0L, deadline - System.currentTimeMillis()));
+            final int remainingInFlightMessages = acknowledged ? 0 : acknowledgementTracker.getInFlightMessages();
+            drainedMessages += inFlightMessages - remainingInFlightMessages;
+            acknowledgedMessages += acknowledgementTracker.getAcknowledgedMessages() - acknowledgedBefore;
+            if (!acknowledged) {
+                abandonedMessages += acknowledgementTracker.getPendingAcknowledgements() + remainingInFlightMessages;
+            }
+        }
+        final DrainSummary drainSummary = new DrainSummary(drainedMessages, acknowledgedMessages, abandonedMessages,
+            System.currentTimeMillis() - startMillis);
+        logger.info("Drained {} CmDataChangeDivertedQueue consumers in {} ms: {} messages in flight completed, {} acknowledged, {} abandoned "
+            + "for redelivery", consumers.size(), drainSummary.getDurationMillis(), drainedMessages, acknowledgedMessages, abandonedMessages);
+        return drainSummary;
+    }
+
+    /**
+     * Sets the handler called when the connection used by the consumers fails, from the thread of the JMS provider.
+     *
+     * @param connectionFailureHandler
+     *     the handler, expected to call {@link #abandonConnection()} and to start listening again
+     */
+    public void setConnectionFailureHandler(final Runnable connectionFailureHandler) {
+        this.connectionFailureHandler = connectionFailureHandler;
+    }
+
+    /**
+     * Releases a failed connection with its sessions and consumers. The messages processed but not yet acknowledged will be redelivered by
+     * the broker, and are recognised as such by the {@link RedeliveredMessageFilter}. The acknowledgement trackers of the sessions are
+     * closed, so the messages of these sessions still held by the event dispatchers are never acknowledged on the released sessions.
+     */
+    public synchronized void abandonConnection() {
+        if (!isActive()) {
+            return;
+        }
+        for (final MessageConsumer consumer : consumers) {
+            try {
+                consumer.setMessageListener(null);
+            } catch (final JMSException exception) {
+                logger.debug("Could not remove the listener of a CmDataChangeDivertedQueue consumer due to: {}", exception.getMessage());
+            }
+        }
+        final int size = consumers.size();
+        releaseConnection();
+        logger.warn("Abandoned the failed CmDataChangeDivertedQueue connection and its {} consumers", size);
+    }
+
+    /**
+     * Adds a session and its consumer while listening, to increase the number of messages processed concurrently.
+     *
+     * @return true if the consumer was added
+     */
+    public synchronized boolean addConsumer() {
+        if (!isActive() || destination == null) {
+            return false;
+        }
+        try {
+            final int primaryQueueConsumerCount = consumers.size() - fixedConsumerCount;
+            final Connection sessionConnection = primaryQueueConnections.isEmpty() ? connection
+                : primaryQueueConnections.get(primaryQueueConsumerCount % primaryQueueConnections.size());
+            final MessageConsumer consumer = createSessionConsumer(sessionConnection, destination, defaultSelector);
+            consumers.add(consumer);
+            registerMessageListener(primaryQueueName, consumer, null);
+            logger.info("Added a CmDataChangeDivertedQueue consumer, {} consumers registered", consumers.size());
+            return true;
+        } catch (final JMSException exception) {
+            logger.error("Could not add a CmDataChangeDivertedQueue consumer due to: {}", exception.getMessage());
             return false;
         }
     }
 
+    /**
+     * Removes the most recently added session and its consumer while listening. The delivery to the consumer is stopped, then the messages
+     * the session has processed are acknowledged before the consumer and the session are closed, since closing the consumer first would
+     * return them to the queue. The last consumer of the first queue outside the consumer groups is never removed, nor are the consumers of
+     * the consumer groups.
+     *
+     * @return true if the consumer was removed
+     */
+    public synchronized boolean removeConsumer() {
+        if (consumers.size() - fixedConsumerCount <= 1 || sessions.size() != consumers.size()) {
+            return false;
+        }
+        final int index = consumers.size() - 1;
+        final MessageConsumer consumer = consumers.remove(index);
+        final Session session = sessions.remove(index);
+        consumerSessions.remove(consumer);
+        final SessionAcknowledgementTracker acknowledgementTracker = acknowledgementTrackers.remove(index);
+        try {
+            consumer.setMessageListener(null);
+            acknowledgementTracker.acknowledgePending(CONSUMER_REMOVAL_TIMEOUT_MILLIS);
+            consumer.close();
+            session.close();
+            logger.info("Removed CmDataChangeDivertedQueue consumer of session {}, {} consumers registered", acknowledgementTracker.getSessionId(),
+                consumers.size());
+        } catch (final JMSException exception) {
+            logger.error("Exception caught while removing CmDataChangeDivertedQueue consumer of session {}: {}",
+                acknowledgementTracker.getSessionId(), exception.getMessage());
+        } finally {
+            acknowledgementTracker.close();
+        }
+        return true;
+    }
+
+    /**
+     * Sends a message to a queue, on a short lived session of the connection used by the consumers. Meant for occasional messages such as
+     * dead letters, this does not wait for the connector lock.
+     *
+     * @param destinationName
+     *     the JNDI name of the queue
+     * @param message
+     *     the message
+     * @return true if the message was sent
+     */
+    public boolean sendToQueue(final String destinationName, final Message message) {
+        final Connection currentConnection = connection;
+        final InitialContext currentContext = context;
+        if (currentConnection == null || currentContext == null) {
+            logger.error("Could not send message {} to {}: no CmDataChangeDivertedQueue connection", message, destinationName);
+            return false;
+        }
+        Session producerSession = null;
+        try {
+            Destination producerDestination = producerDestinations.get(destinationName);
+            if (producerDestination == null) {
+                producerDestination = (Destination) currentContext.lookup(destinationName);
+                producerDestinations.put(destinationName, producerDestination);
+            }
+            producerSession = currentConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final MessageProducer producer = producerSession.createProducer(producerDestination);
+            producer.send(message);
+            producer.close();
+            return true;
+        } catch (final JMSException | NamingException exception) {
+            logger.error("Could not send message {} to {} due to: {}", message, destinationName, exception.getMessage());
+            return false;
+        } finally {
+            closeQuietly(producerSession);
+        }
+    }
+
+    /**
+     * @return the number of registered consumers
+     */
+    public synchronized int getConsumerCount() {
+        return consumers.size();
+    }
+
+    /**
+     * @return the number of consumers of the first queue outside the consumer groups, the only ones added and removed at runtime
+     */
+    public synchronized int getScalableConsumerCount() {
+        return Math.max(0, consumers.size() - fixedConsumerCount);
+    }
+
+    /**
+     * @return the acknowledgement trackers of the sessions of the consumers added and removed at runtime
+     */
+    public synchronized List<SessionAcknowledgementTracker> getScalableAcknowledgementTrackers() {
+        final int fromIndex = Math.min(fixedConsumerCount, acknowledgementTrackers.size());
+        return Collections.unmodifiableList(new ArrayList<>(acknowledgementTrackers.subList(fromIndex, acknowledgementTrackers.size())));
+    }
+
+    /**
+     * @return the acknowledgement trackers of the registered sessions
+     */
+    public List<SessionAcknowledgementTracker> getAcknowledgementTrackers() {
+        return Collections.unmodifiableList(acknowledgementTrackers);
+    }
+
+    /**
+     * Counts the messages waiting in the first queue with a {@link QueueBrowser}, stopping at the given limit since browsing
+     * a deep queue is expensive.
+     *
+     * @param limit
+     *     maximum number of messages to count
+     * @return the number of messages in the queue, up to the limit, or -1 if the queue cannot be browsed
+     */
+    public synchronized int browseQueueDepth(final int limit) {
+        if (!isActive() || !(destination instanceof Queue)) {
+            return -1;
+        }
+        Session browserSession = null;
+        try {
+            browserSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final QueueBrowser queueBrowser = browserSession.createBrowser((Queue) destination);
+            final Enumeration<?> messages = queueBrowser.getEnumeration();
+            int depth = 0;
+            while (depth < limit && messages.hasMoreElements()) {
+                messages.nextElement();
+                depth++;
+            }
+            queueBrowser.close();
+            return depth;
+        } catch (final JMSException exception) {
+            logger.debug("Could not browse CmDataChangeDivertedQueue due to: {}", exception.getMessage());
+            return -1;
+        } finally {
+            closeQuietly(browserSession);
+        }
+    }
+
+    /**
+     * Acknowledges the sessions whose oldest processed message has been waiting for longer than the configured maximum delay, and which
+     * are not delivering a message, so that a session receiving no more messages does not keep its processed messages unacknowledged.
+     */
+    public void acknowledgeExpiredMessages() {
+        final long currentTimeMillis = System.currentTimeMillis();
+        for (final SessionAcknowledgementTracker acknowledgementTracker : acknowledgementTrackers) {
+            acknowledgementTracker.acknowledgeIfDelayExpired(currentTimeMillis);
+        }
+    }
+
+    /**
+     * Gets the number of processed messages waiting for acknowledgement in each session.
+     *
+     * @return the pending acknowledgements keyed by session identifier
+     */
+    public Map<String, Integer> getPendingAcknowledgements() {
+        final Map<String, Integer> pendingAcknowledgements = new LinkedHashMap<>();
+        for (final SessionAcknowledgementTracker acknowledgementTracker : acknowledgementTrackers) {
+            pendingAcknowledgements.put(acknowledgementTracker.getSessionId(), acknowledgementTracker.getPendingAcknowledgements());
+        }
+        return pendingAcknowledgements;
+    }
+
+    private void registerMessageListener(final String consumerName, final MessageConsumer consumer,
+                                         final Predicate<Serializable> notificationDispatch) throws JMSException {
+        final String sessionId = consumerName + "-session-" + nextSessionIndex++;
+        final Session session = consumerSessions.get(consumer);
+        final SessionAcknowledgementTracker acknowledgementTracker = SessionAcknowledgementTracker.create(sessionId,
+            session == null ? null : () -> recover(sessionId, session));
+        acknowledgementTrackers.add(acknowledgementTracker);
+        consumer.setMessageListener(new SessionMessageListener(cmDataChangeDivertedQueueListener, acknowledgementTracker, notificationDispatch));
+    }
+
+    /**
+     * Recovers a session holding a message left for redelivery, so that the broker redelivers its unacknowledged messages.
+     */
+    private static void recover(final String sessionId, final Session session) {
+        try {
+            session.recover();
+        } catch (final JMSException exception) {
+            throw new JmsAdapterException("Could not recover CmDataChangeDivertedQueue session " + sessionId, exception);
+        }
+    }
+
+    private void closeQuietly(final Session session) {
+        if (session != null) {
+            try {
+                session.close();
+            } catch (final JMSException exception) {
+                logger.debug("Could not close CmDataChangeDivertedQueue session due to: {}", exception.getMessage());
+            }
+        }
+    }
+
+    private static <T> T getPrewarmed(final Future<T> prewarmed) {
+        try {
+            return prewarmed.get();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new JmsAdapterException("Interrupted while starting CmDataChangeDivertedQueue consumers.", exception);
+        } catch (final ExecutionException exception) {
+            throw new JmsAdapterException("Could not prepare CmDataChangeDivertedQueue consumers.", exception.getCause());
+        }
+    }
+
+    private void closeAcknowledgementTrackers() {
+        for (final SessionAcknowledgementTracker acknowledgementTracker : acknowledgementTrackers) {
+            acknowledgementTracker.close();
+        }
+        acknowledgementTrackers.clear();
+    }
+
+    private void releaseConnection() {
+        for (final MessageConsumer consumer : consumers) {
+            try {
+                consumer.close();
+            } catch (final JMSException exception) {
+                logger.debug("Could not close CmDataChangeDivertedQueue consumer due to: {}", exception.getMessage());
+            }
+        }
+        consumers.clear();
+        consumerSessions.clear();
+        closeAcknowledgementTrackers();
+        nextSessionIndex = 0;
+        fixedConsumerCount = 0;
+        for (final Session session : sessions) {
+            closeQuietly(session);
+        }
+        sessions.clear();
+        closeAdditionalConnections();
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (final JMSException exception) {
+                logger.debug("Could not close CmDataChangeDivertedQueue connection due to: {}", exception.getMessage());
+            }
+            connection = null;
+        }
+    }
+
     private boolean isActive() {
         return !consumers.isEmpty();
     }
@@ -133,14 +568,60 @@ public class JmsQueueConnector {
         initialiseConnectionFactory();
         try {
             connection = connectionFactory.createConnection();
-            logger.info("Successfully created CmDataChangeDivertedQueueConnection. Will start it now...");
-            connection.start();
+            startConnection(connection);
+        } catch (final JMSException jmsException) {
+            logger.error("Exception while configuring JMS connection for CmDataChangeDivertedQueue due to: {}", jmsException.getMessage());
+            throw new JmsAdapterException("Exception while configuring JMS connection for CmDataChangeDivertedQueue.", jmsException);
+        }
+    }
+
+    private List<Connection> createAdditionalConnections(final int count) {
+        final List<Connection> createdConnections = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                final Connection createdConnection = connectionFactory.createConnection();
+                additionalConnections.add(createdConnection);
+                createdConnections.add(createdConnection);
+                startConnection(createdConnection);
+            }
+            return createdConnections;
         } catch (final JMSException jmsException) {
             logger.error("Exception while configuring JMS connection for CmDataChangeDivertedQueue due to: {}", jmsException.getMessage());
             throw new JmsAdapterException("Exception while configuring JMS connection for CmDataChangeDivertedQueue.", jmsException);
         }
     }
 
+    private void startConnection(final Connection createdConnection) throws JMSException {
+        createdConnection.setExceptionListener(exception -> onConnectionFailure(createdConnection, exception));
+        logger.info("Successfully created CmDataChangeDivertedQueueConnection. Will start it now...");
+        createdConnection.start();
+    }
+
+    private void closeAdditionalConnections() {
+        for (final Connection additionalConnection : additionalConnections) {
+            try {
+                additionalConnection.close();
+            } catch (final JMSException exception) {
+                logger.error("Could not close CmDataChangeDivertedQueue Connection due to: {}", exception.getMessage());
+            }
+        }
+        additionalConnections.clear();
+        primaryQueueConnections.clear();
+    }
+
+    private void onConnectionFailure(final Connection failedConnection, final JMSException exception) {
+        logger.error("CmDataChangeDivertedQueue connection failed due to: {}", exception.getMessage());
+        synchronized (this) {
+            if ((failedConnection != connection && !additionalConnections.contains(failedConnection)) || !isActive()) {
+                return;
+            }
+        }
+        final Runnable failureHandler = connectionFailureHandler;
+        if (failureHandler != null) {
+            failureHandler.run();
+        }
+    }
+
     private void initialiseConnectionFactory() {
         if (connectionFactory == null) {
             LOOKUP_PROPERTIES.putAll(System.getProperties());
@@ -162,30 +643,108 @@ public class JmsQueueConnector {
         }
     }
 
-    private List<MessageConsumer> createQueueConsumers(final String destinationUri) {
-        final List<MessageConsumer> messageConsumers = new LinkedList<>();
+    private List<MessageConsumer> createQueueConsumers(final String queueName, final String destinationUri,
+                                                       final List<Connection> queueConnections) {
+        return createQueueConsumers(queueName, destinationUri, queueConnections,
+            fetchConfiguredNumberOfQueueConcurrentConsumers(queueName, DEFAULT_NUMBER_OF_DC_QUEUE_CONCURRENT_CONSUMERS), null);
+    }
 
-        final Integer configuredNumberOfQueueConcurrentConsumers = fetchConfiguredNumberOfQueueConcurrentConsumers(CM_DATA_CHANGE_DIVERTED_QUEUE,
-            DEFAULT_NUMBER_OF_DC_QUEUE_CONCURRENT_CONSUMERS);
+    private List<MessageConsumer> createQueueConsumers(final String queueName, final String destinationUri,
+                                                       final List<Connection> queueConnections,
+                                                       final int configuredNumberOfQueueConcurrentConsumers, final String selector) {
+        final List<MessageConsumer> messageConsumers = new LinkedList<>();
 
         try {
-            final Destination destination = (Destination) context.lookup(destinationUri);
-            logger.debug("Successfully found JMS destination for {} is :: {} ", destinationUri, destination);
+            final Destination queueDestination = (Destination) context.lookup(destinationUri);
+            logger.debug("Successfully found JMS destination for {} is :: {} ", destinationUri, queueDestination);
+            if (queueName.equals(primaryQueueName)) {
+                destination = queueDestination;
+            }
 
-            for (int i = 0; i < configuredNumberOfQueueConcurrentConsumers; i++) {
-                final Session session = connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
-                sessions.add(session);
-                final MessageConsumer consumer = session.createConsumer(destination);
-                messageConsumers.add(consumer);
+            if (configuredNumberOfQueueConcurrentConsumers > 1) {
+                messageConsumers.addAll(createSessionConsumersInParallel(queueConnections, queueDestination,
+                    configuredNumberOfQueueConcurrentConsumers, selector));
+            } else {
+                for (int i = 0; i < configuredNumberOfQueueConcurrentConsumers; i++) {
+                    messageConsumers.add(createSessionConsumer(queueConnections.get(i % queueConnections.size()), queueDestination, selector));
+                }
             }
             logger.info("Successfully created consumer for destination {}.", destinationUri);
         } catch (final JMSException | NamingException exception) {
-            logger.error("Could not create JMS Consumer for CmDataChangeDivertedQueue due to: {}", exception.getMessage());
-            throw new JmsAdapterException("Could not create JMS Consumer for CmDataChangeDivertedQueue", exception);
+            logger.error("Could not create JMS Consumer for {} due to: {}", queueName, exception.getMessage());
+            throw new JmsAdapterException("Could not create JMS Consumer for " + queueName, exception);
         }
         return messageConsumers;
     }
 
+    private MessageConsumer createSessionConsumer(final Connection sessionConnection, final Destination queueDestination,
+                                                  final String selector) throws JMSException {
+        final Session session = sessionConnection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+        try {
+            final MessageConsumer consumer = createConsumer(session, queueDestination, selector);
+            sessions.add(session);
+            consumerSessions.put(consumer, session);
+            return consumer;
+        } catch (final JMSException exception) {
+            closeQuietly(session);
+            throw exception;
+        }
+    }
+
+    /**
+     * Creates the sessions and their consumers concurrently, since each creation is a round trip to the broker. The sessions are spread over
+     * the connections of the queue and registered in order once all of them are created, or closed if any creation fails.
+     */
+    private List<MessageConsumer> createSessionConsumersInParallel(final List<Connection> queueConnections, final Destination queueDestination,
+                                                                   final int count, final String selector) {
+        final ExecutorService prewarmExecutor = Executors.newFixedThreadPool(Math.min(count, MAX_PREWARM_THREADS),
+            new NamedThreadFactory("CmDataChangeDivertedQueue-prewarm"));
+        final List<Future<Session>> createdSessions = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                final Connection sessionConnection = queueConnections.get(i % queueConnections.size());
+                createdSessions.add(prewarmExecutor.submit(() -> sessionConnection.createSession(false, Session.CLIENT_ACKNOWLEDGE)));
+            }
+            final List<Future<MessageConsumer>> createdConsumers = new ArrayList<>(count);
+            for (final Future<Session> createdSession : createdSessions) {
+                final Session session = getPrewarmed(createdSession);
+                createdConsumers.add(prewarmExecutor.submit(() -> createConsumer(session, queueDestination, selector)));
+            }
+            final List<MessageConsumer> messageConsumers = new ArrayList<>(count);
+            for (final Future<MessageConsumer> createdConsumer : createdConsumers) {
+                messageConsumers.add(getPrewarmed(createdConsumer));
+            }
+            for (int i = 0; i < count; i++) {
+                sessions.add(getPrewarmed(createdSessions.get(i)));
+                consumerSessions.put(messageConsumers.get(i), getPrewarmed(createdSessions.get(i)));
+            }
+            return messageConsumers;
+        } catch (final JmsAdapterException exception) {
+            for (final Future<Session> createdSession : createdSessions) {
+                closeQuietly(getQuietly(createdSession));
+            }
+            throw exception;
+        } finally {
+            prewarmExecutor.shutdown();
+        }
+    }
+
+    private static MessageConsumer createConsumer(final Session session, final Destination queueDestination, final String selector)
+        throws JMSException {
+        return selector == null ? session.createConsumer(queueDestination) : session.createConsumer(queueDestination, selector);
+    }
+
+    private static <T> T getQuietly(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException exception) {
+            return null;
+        }
+    }
+
     private Integer fetchConfiguredNumberOfQueueConcurrentConsumers(final String queueName, final int defaultNumberOfConsumers) {
         Integer numberOfQueueConcurrentConsumers = defaultNumberOfConsumers;
         try {
@@ -213,6 +772,20 @@ public class JmsQueueConnector {
         }
     }
 
+    private static List<String> getConfiguredQueueUris() {
+        final Set<String> queueUris = new LinkedHashSet<>();
+        for (final String queueUri : ConfigurationPropertyReader.getStringProperty(QUEUES_PROPERTY, QUEUE_URI).split(",")) {
+            if (!queueUri.trim().isEmpty()) {
+                queueUris.add(queueUri.trim());
+            }
+        }
+        return queueUris.isEmpty() ? Collections.singletonList(QUEUE_URI) : new ArrayList<>(queueUris);
+    }
+
+    private static String getQueueName(final String queueUri) {
+        return queueUri.substring(queueUri.lastIndexOf('/') + 1);
+    }
+
     private String getNumberOfConsumersForQueueJvmPropertyName(final String queueName) {
         return "sdk.eventbus.jms.concurrent.queue.listeners.number" + "." + queueName;
     }
@@ -0,0 +1,59 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+/**
+ * Selects one event out of every N for per event diagnostic logging, counting per thread so that sampling needs no shared state. Each
+ * message is sampled once, and all the diagnostics of a sampled message are logged together.
+ */
+public class LogSampler {
+
+    static final String LOG_SAMPLING_RATE_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "log.sampling.rate";
+
+    private final int samplingRate;
+    private final ThreadLocal<int[]> threadEventCount = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * Creates a sampler.
+     *
+     * @param samplingRate
+     *     one event out of this many is sampled; 1 or less samples every event
+     */
+    public LogSampler(final int samplingRate) {
+        this.samplingRate = Math.max(1, samplingRate);
+    }
+
+    /**
+     * Creates a sampler using the sampling rate configured through JVM properties, every event by default.
+     *
+     * @return the sampler
+     */
+    public static LogSampler create() {
+        return new LogSampler(ConfigurationPropertyReader.getIntProperty(LOG_SAMPLING_RATE_PROPERTY, 1));
+    }
+
+    /**
+     * @return true if the current event should be logged
+     */
+    public boolean sample() {
+        if (samplingRate == 1) {
+            return true;
+        }
+        final int[] eventCount = threadEventCount.get();
+        if (++eventCount[0] >= samplingRate) {
+            eventCount[0] = 0;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ThreadFactory} creating threads named after the component which owns them.
+ * <p>
+ * The threads are created by the default {@link ManagedThreadFactory} of the application server, so that they run with the context of the
+ * application and are managed by the container. Outside a container, as in the unit tests and the benchmarks, plain daemon threads are
+ * created instead.
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+    static final String MANAGED_THREAD_FACTORY_JNDI_NAME = "java:comp/DefaultManagedThreadFactory";
+
+    private static Logger logger = LoggerFactory.getLogger(NamedThreadFactory.class);
+
+    private final String namePrefix;
+    private final ThreadFactory managedThreadFactory;
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    public NamedThreadFactory(final String namePrefix) {
+        this(namePrefix, lookupManagedThreadFactory());
+    }
+
+    NamedThreadFactory(final String namePrefix, final ThreadFactory managedThreadFactory) {
+        this.namePrefix = namePrefix;
+        this.managedThreadFactory = managedThreadFactory;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        final String name = namePrefix + "-" + threadCounter.getAndIncrement();
+        if (managedThreadFactory != null) {
+            final Thread thread = managedThreadFactory.newThread(runnable);
+            if (thread != null) {
+                thread.setName(name);
+            }
+            return thread;
+        }
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * @return true if the threads are created by the managed thread factory of the container
+     */
+    public boolean isManaged() {
+        return managedThreadFactory != null;
+    }
+
+    private static ThreadFactory lookupManagedThreadFactory() {
+        try {
+            return (ManagedThreadFactory) new InitialContext().lookup(MANAGED_THREAD_FACTORY_JNDI_NAME);
+        } catch (final NamingException | RuntimeException exception) {
+            logger.debug("No managed thread factory found at {}, creating unmanaged threads: {}", MANAGED_THREAD_FACTORY_JNDI_NAME,
+                exception.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the rate of the events of each node with a token bucket, so that a node flooding CmDataChangeDivertedQueue, for instance while
+ * it loops on resynchronizations, can be isolated from the events of the rest of the network.
+ * <p>
+ * The node is the prefix of the FDN up to its MeContext, NetworkElement or ManagedElement, whichever comes first. Each node has a bucket
+ * holding up to the burst size in tokens, refilled at the configured rate; an event which finds the bucket of its node empty is over the
+ * limit. The buckets are kept in a concurrent map and the buckets of the nodes idle for longer than the eviction delay are removed, so
+ * that the map only holds the recently active nodes.
+ */
+public class NodeRateLimiter {
+
+    static final String RATE_LIMIT_ENABLED_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "node.rate.limit.enabled";
+    static final String RATE_LIMIT_PER_SECOND_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "node.rate.limit.events.per.second";
+    static final String RATE_LIMIT_BURST_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "node.rate.limit.burst";
+    static final String IDLE_EVICTION_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "node.rate.limit.idle.eviction.millis";
+    static final String HOT_NODE_COUNT_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "node.rate.limit.hot.nodes";
+    private static final String[] NODE_RDN_TYPES = {"MeContext=", "NetworkElement=", "ManagedElement="};
+
+    private static Logger logger = LoggerFactory.getLogger(NodeRateLimiter.class);
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final double tokensPerNano;
+    private final double burst;
+    private final long idleEvictionNanos;
+    private final int hotNodeCount;
+    private final AtomicLong lastEvictionNanos;
+    private final LongAdder limitedEvents = new LongAdder();
+
+    /**
+     * Creates a limiter.
+     *
+     * @param eventsPerSecond
+     *     sustained event rate allowed for each node
+     * @param burst
+     *     number of events a node can send at once after being quiet
+     * @param idleEvictionMillis
+     *     time after which the bucket of a node without events is removed
+     * @param hotNodeCount
+     *     maximum number of nodes in the hot node report
+     */
+    public NodeRateLimiter(final double eventsPerSecond, final int burst, final long idleEvictionMillis, final int hotNodeCount) {
+        this.tokensPerNano = Math.max(0.0, eventsPerSecond) / TimeUnit.SECONDS.toNanos(1L);
+        this.burst = Math.max(1, burst);
+        this.idleEvictionNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, idleEvictionMillis));
+        this.hotNodeCount = Math.max(1, hotNodeCount);
+        this.lastEvictionNanos = new AtomicLong(System.nanoTime());
+        logger.info("Limiting the events of each node to {} per second with bursts of {}", eventsPerSecond, this.burst);
+    }
+
+    /**
+     * @return true if the events of each node are rate limited through JVM properties
+     */
+    public static boolean isEnabled() {
+        return ConfigurationPropertyReader.getBooleanProperty(RATE_LIMIT_ENABLED_PROPERTY, false);
+    }
+
+    /**
+     * Creates a limiter using the rate, burst, eviction delay and report size configured through JVM properties.
+     *
+     * @return the limiter
+     */
+    public static NodeRateLimiter create() {
+        return new NodeRateLimiter(ConfigurationPropertyReader.getDoubleProperty(RATE_LIMIT_PER_SECOND_PROPERTY, 100.0),
+            ConfigurationPropertyReader.getIntProperty(RATE_LIMIT_BURST_PROPERTY, 500),
+            ConfigurationPropertyReader.getLongProperty(IDLE_EVICTION_PROPERTY, 300000L),
+            ConfigurationPropertyReader.getIntProperty(HOT_NODE_COUNT_PROPERTY, 10));
+    }
+
+    /**
+     * Takes a token from the bucket of the node of the given FDN.
+     *
+     * @param fdn
+     *     the FDN the event refers to
+     * @param currentTimeNanos
+     *     the current value of {@link System#nanoTime()}
+     * @return false if the node is over its limit, true if it is within its limit or if no node can be found in the FDN
+     */
+    public boolean tryAcquire(final String fdn, final long currentTimeNanos) {
+        final String node = getNode(fdn);
+        if (node == null) {
+            return true;
+        }
+        TokenBucket bucket = buckets.get(node);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(node, key -> new TokenBucket(burst, currentTimeNanos));
+        }
+        final boolean acquired = bucket.tryAcquire(currentTimeNanos, tokensPerNano, burst);
+        if (!acquired) {
+            limitedEvents.increment();
+        }
+        evictIdleBucketsIfDue(currentTimeNanos);
+        return acquired;
+    }
+
+    /**
+     * @return the nodes with the most events over the limit, in decreasing order, with their number of events over the limit since their
+     *     bucket was created
+     */
+    public Map<String, Long> getHotNodes() {
+        final List<Map.Entry<String, Long>> limitedNodes = new ArrayList<>();
+        for (final Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            final long nodeLimitedEvents = entry.getValue().getLimitedEvents();
+            if (nodeLimitedEvents > 0) {
+                limitedNodes.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), nodeLimitedEvents));
+            }
+        }
+        limitedNodes.sort(Map.Entry.<String, Long> comparingByValue().reversed());
+        final Map<String, Long> hotNodes = new LinkedHashMap<>();
+        for (final Map.Entry<String, Long> entry : limitedNodes.subList(0, Math.min(hotNodeCount, limitedNodes.size()))) {
+            hotNodes.put(entry.getKey(), entry.getValue());
+        }
+        return hotNodes;
+    }
+
+    /**
+     * @return the number of events over the limit of their node
+     */
+    public long getLimitedEventCount() {
+        return limitedEvents.sum();
+    }
+
+    /**
+     * @return the number of nodes with a bucket
+     */
+    public int getTrackedNodeCount() {
+        return buckets.size();
+    }
+
+    /**
+     * Gets the node of an FDN.
+     *
+     * @param fdn
+     *     the FDN
+     * @return the FDN of the node, or null if the FDN is null or does not name a node
+     */
+    static String getNode(final String fdn) {
+        if (fdn == null) {
+            return null;
+        }
+        int nodeStart = -1;
+        for (final String nodeRdnType : NODE_RDN_TYPES) {
+            final int index = indexOfRdn(fdn, nodeRdnType);
+            if (index >= 0 && (nodeStart < 0 || index < nodeStart)) {
+                nodeStart = index;
+            }
+        }
+        if (nodeStart < 0) {
+            return null;
+        }
+        final int nodeEnd = fdn.indexOf(',', nodeStart);
+        return nodeEnd < 0 ? fdn : fdn.substring(0, nodeEnd);
+    }
+
+    private static int indexOfRdn(final String fdn, final String rdnType) {
+        int index = fdn.indexOf(rdnType);
+        while (index > 0 && fdn.charAt(index - 1) != ',') {
+            index = fdn.indexOf(rdnType, index + 1);
+        }
+        return index;
+    }
+
+    private void evictIdleBucketsIfDue(final long currentTimeNanos) {
+        final long previousEvictionNanos = lastEvictionNanos.get();
+        if (currentTimeNanos - previousEvictionNanos < idleEvictionNanos
+            || !lastEvictionNanos.compareAndSet(previousEvictionNanos, currentTimeNanos)) {
+            return;
+        }
+        final int trackedNodes = buckets.size();
+        buckets.values().removeIf(bucket -> bucket.isIdle(currentTimeNanos, idleEvictionNanos));
+        logger.debug("Evicted {} idle nodes, {} nodes tracked", trackedNodes - buckets.size(), buckets.size());
+    }
+
+    private static final class TokenBucket {
+        private double tokens;
+        private long lastRefillNanos;
+        private long limitedEvents;
+
+        private TokenBucket(final double tokens, final long currentTimeNanos) {
+            this.tokens = tokens;
+            this.lastRefillNanos = currentTimeNanos;
+        }
+
+        private synchronized boolean tryAcquire(final long currentTimeNanos, final double tokensPerNano, final double burst) {
+            if (currentTimeNanos > lastRefillNanos) {
+                tokens = Math.min(burst, tokens + (currentTimeNanos - lastRefillNanos) * tokensPerNano);
+                lastRefillNanos = currentTimeNanos;
+            }
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                return true;
+            }
+            limitedEvents++;
+            return false;
+        }
+
+        private synchronized boolean isIdle(final long currentTimeNanos, final long idleNanos) {
+            return currentTimeNanos - lastRefillNanos >= idleNanos;
+        }
+
+        private synchronized long getLimitedEvents() {
+            return limitedEvents;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+
+/**
+ * Handles one type of notification received from CmDataChangeDivertedQueue.
+ * <p>
+ * Handlers deployed as CDI beans are registered in the {@link NotificationHandlerRegistry} of {@link CmDataChangeDivertedQueueListener} at
+ * startup, so new notification types can be supported without changing the listener. A handler also handles the subclasses of its type
+ * unless a more specific handler is registered.
+ *
+ * @param <T>
+ *     the notification type
+ */
+public interface NotificationHandler<T extends Serializable> {
+
+    /**
+     * @return the notification type handled
+     */
+    Class<T> getNotificationType();
+
+    /**
+     * Handles a notification.
+     *
+     * @param notification
+     *     the notification
+     */
+    void handle(T notification);
+}
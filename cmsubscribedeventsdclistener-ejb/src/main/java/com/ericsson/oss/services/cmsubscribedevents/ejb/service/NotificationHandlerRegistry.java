@@ -0,0 +1,170 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the {@link NotificationHandler}s keyed by notification class.
+ * <p>
+ * The handler of a concrete class is resolved once, walking up its superclasses and interfaces, and cached, so dispatching a notification
+ * costs a single map lookup. Classes without handler are cached as well. Registering a handler clears the cache.
+ */
+public class NotificationHandlerRegistry {
+
+    private static final NotificationHandler<Serializable> NO_HANDLER = new NotificationHandler<Serializable>() {
+        @Override
+        public Class<Serializable> getNotificationType() {
+            return Serializable.class;
+        }
+
+        @Override
+        public void handle(final Serializable notification) {
+            // no handler registered for the type
+        }
+    };
+
+    private static Logger logger = LoggerFactory.getLogger(NotificationHandlerRegistry.class);
+
+    private final Map<Class<?>, NotificationHandler<?>> registeredHandlers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, NotificationHandler<?>> resolvedHandlers = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a handler, replacing any handler already registered for the same type.
+     *
+     * @param handler
+     *     the handler
+     */
+    public void register(final NotificationHandler<?> handler) {
+        final NotificationHandler<?> previousHandler = registeredHandlers.put(handler.getNotificationType(), handler);
+        resolvedHandlers.clear();
+        if (previousHandler != null) {
+            logger.info("Replaced handler {} of notification type {} with {}", previousHandler, handler.getNotificationType(), handler);
+        }
+    }
+
+    /**
+     * Registers a handler defined by a notification type and a callback.
+     *
+     * @param notificationType
+     *     the notification type
+     * @param callback
+     *     the callback handling the notifications
+     * @param <T>
+     *     the notification type
+     */
+    public <T extends Serializable> void register(final Class<T> notificationType, final Consumer<? super T> callback) {
+        register(new NotificationHandler<T>() {
+            @Override
+            public Class<T> getNotificationType() {
+                return notificationType;
+            }
+
+            @Override
+            public void handle(final T notification) {
+                callback.accept(notification);
+            }
+
+            @Override
+            public String toString() {
+                return "NotificationHandler[" + notificationType.getSimpleName() + "]";
+            }
+        });
+    }
+
+    /**
+     * Hands a notification over to the handler of its class.
+     *
+     * @param notification
+     *     the notification
+     * @return false if no handler is registered for the class of the notification
+     */
+    @SuppressWarnings("unchecked")
+    public boolean dispatch(final Serializable notification) {
+        final NotificationHandler<Serializable> handler = (NotificationHandler<Serializable>) resolve(notification.getClass());
+        if (handler == NO_HANDLER) {
+            return false;
+        }
+        handler.handle(notification);
+        return true;
+    }
+
+    /**
+     * Creates a dispatch bound to the handler of a notification class, resolved once: the notifications of exactly that class are handed
+     * straight over to that handler, the others go through {@link #dispatch}. Meant for the consumers receiving a single notification class,
+     * so that their dispatch path does not depend on the other classes. Handlers registered later are not seen by the returned dispatch.
+     *
+     * @param notificationClass
+     *     the notification class
+     * @return the dispatch, returning false if no handler is registered for the class of a notification
+     */
+    @SuppressWarnings("unchecked")
+    public Predicate<Serializable> createTypedDispatch(final Class<? extends Serializable> notificationClass) {
+        final NotificationHandler<Serializable> handler = (NotificationHandler<Serializable>) resolve(notificationClass);
+        if (handler == NO_HANDLER) {
+            logger.warn("No handler registered for notification type {}, its notifications are dispatched by class", notificationClass);
+            return this::dispatch;
+        }
+        return notification -> {
+            if (notification.getClass() == notificationClass) {
+                handler.handle(notification);
+                return true;
+            }
+            return dispatch(notification);
+        };
+    }
+
+    /**
+     * @param notificationClass
+     *     the notification class
+     * @return true if a handler is registered for the class
+     */
+    public boolean supports(final Class<?> notificationClass) {
+        return resolve(notificationClass) != NO_HANDLER;
+    }
+
+    private NotificationHandler<?> resolve(final Class<?> notificationClass) {
+        final NotificationHandler<?> handler = resolvedHandlers.get(notificationClass);
+        if (handler != null) {
+            return handler;
+        }
+        final NotificationHandler<?> resolvedHandler = findHandler(notificationClass);
+        resolvedHandlers.put(notificationClass, resolvedHandler);
+        return resolvedHandler;
+    }
+
+    private NotificationHandler<?> findHandler(final Class<?> notificationClass) {
+        for (Class<?> type = notificationClass; type != null; type = type.getSuperclass()) {
+            final NotificationHandler<?> handler = registeredHandlers.get(type);
+            if (handler != null) {
+                return handler;
+            }
+        }
+        for (Class<?> type = notificationClass; type != null; type = type.getSuperclass()) {
+            for (final Class<?> implementedInterface : type.getInterfaces()) {
+                final NotificationHandler<?> handler = registeredHandlers.get(implementedInterface);
+                if (handler != null) {
+                    return handler;
+                }
+            }
+        }
+        return NO_HANDLER;
+    }
+}
@@ -0,0 +1,268 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches the messages received from CmDataChangeDivertedQueue to a fixed number of single threaded lanes chosen by hashing the FDN of
+ * the event, so that the events of one MO are processed in the order they were received while different MOs are processed in parallel.
+ * <p>
+ * The message is deserialized on the session thread to find its FDN. Each lane has a bounded queue; when it is full the session thread
+ * blocks until the lane catches up. Per lane queue depth and latency are kept so that a hot node skewing one lane can be spotted.
+ */
+public class PartitionedEventDispatcher implements EventDispatcher {
+
+    static final String PARTITIONED_LANES_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "partitioned.lanes";
+    static final String PARTITIONED_LANE_CAPACITY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "partitioned.lane.capacity";
+    static final int DEFAULT_LANES = 8;
+    static final int DEFAULT_LANE_CAPACITY = 256;
+    private static final long POLL_TIMEOUT_MILLIS = 500L;
+
+    private static Logger logger = LoggerFactory.getLogger(PartitionedEventDispatcher.class);
+
+    private final Lane[] lanes;
+    private final Function<Message, Serializable> deserializer;
+    private final BiConsumer<Message, Serializable> eventProcessor;
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts the lanes.
+     *
+     * @param numberOfLanes
+     *     number of single threaded lanes
+     * @param laneCapacity
+     *     maximum number of events waiting in each lane
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     the processing applied to each event by its lane
+     */
+    public PartitionedEventDispatcher(final int numberOfLanes, final int laneCapacity, final Function<Message, Serializable> deserializer,
+                                      final BiConsumer<Message, Serializable> eventProcessor) {
+        this(numberOfLanes, laneCapacity, deserializer, eventProcessor, "CmDataChangeDivertedQueue-lane");
+    }
+
+    PartitionedEventDispatcher(final int numberOfLanes, final int laneCapacity, final Function<Message, Serializable> deserializer,
+                               final BiConsumer<Message, Serializable> eventProcessor, final String threadNamePrefix) {
+        this.deserializer = deserializer;
+        this.eventProcessor = eventProcessor;
+        this.lanes = new Lane[Math.max(1, numberOfLanes)];
+        final NamedThreadFactory threadFactory = new NamedThreadFactory(threadNamePrefix);
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i, Math.max(1, laneCapacity));
+            lanes[i].thread = threadFactory.newThread(lanes[i]);
+            lanes[i].thread.start();
+        }
+        logger.info("Started partitioned event dispatcher with {} lanes of capacity {}", lanes.length, laneCapacity);
+    }
+
+    /**
+     * Creates a dispatcher using the number of lanes and lane capacity configured through JVM properties.
+     *
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     the processing applied to each event by its lane
+     * @return the started dispatcher
+     */
+    public static PartitionedEventDispatcher create(final Function<Message, Serializable> deserializer,
+                                                    final BiConsumer<Message, Serializable> eventProcessor) {
+        return new PartitionedEventDispatcher(ConfigurationPropertyReader.getIntProperty(PARTITIONED_LANES_PROPERTY, DEFAULT_LANES),
+            ConfigurationPropertyReader.getIntProperty(PARTITIONED_LANE_CAPACITY_PROPERTY, DEFAULT_LANE_CAPACITY), deserializer, eventProcessor);
+    }
+
+    @Override
+    public void dispatch(final Message message, final SessionAcknowledgementTracker acknowledgementTracker) {
+        final Serializable event = deserializer.apply(message);
+        final LaneEntry entry = new LaneEntry(message, event, acknowledgementTracker);
+        if (running) {
+            try {
+                lanes[laneIndex(EventFdnResolver.getFdn(event))].queue.put(entry);
+                return;
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while waiting for space in a dispatcher lane, processing message on the session thread");
+            }
+        }
+        process(entry);
+    }
+
+    @Override
+    public void stop(final long timeoutMillis) {
+        running = false;
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (final Lane lane : lanes) {
+            try {
+                lane.thread.join(Math.max(1L, deadline - System.currentTimeMillis()));
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            if (lane.thread.isAlive()) {
+                logger.warn("Lane {} did not drain within {} ms, {} events left in the lane", lane.index, timeoutMillis, lane.queue.size());
+                lane.thread.interrupt();
+            }
+        }
+        logger.info("Stopped partitioned event dispatcher");
+    }
+
+    /**
+     * Gets a snapshot of the statistics of every lane.
+     *
+     * @return the lane statistics, ordered by lane index
+     */
+    public List<LaneStatistics> getLaneStatistics() {
+        final List<LaneStatistics> statistics = new ArrayList<>(lanes.length);
+        for (final Lane lane : lanes) {
+            statistics.add(new LaneStatistics(lane.index, lane.queue.size(), lane.processedEvents.get(), lane.totalLatencyNanos.get(),
+                lane.maxLatencyNanos.get()));
+        }
+        return statistics;
+    }
+
+    int laneIndex(final String fdn) {
+        if (fdn == null) {
+            return 0;
+        }
+        final int hash = fdn.hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private void process(final LaneEntry entry) {
+        boolean leftForRedelivery = false;
+        try {
+            eventProcessor.accept(entry.message, entry.event);
+        } catch (final EventRedeliveryException exception) {
+            leftForRedelivery = true;
+        } catch (final Exception exception) {
+            logger.error("Exception :: {} while processing message :: {} in a dispatcher lane", exception, entry.message);
+        } finally {
+            if (leftForRedelivery) {
+                entry.acknowledgementTracker.messageLeftForRedelivery(entry.message);
+            } else {
+                entry.acknowledgementTracker.messageProcessed(entry.message);
+            }
+        }
+    }
+
+    private final class Lane implements Runnable {
+        private final int index;
+        private final BlockingQueue<LaneEntry> queue;
+        private final AtomicLong processedEvents = new AtomicLong();
+        private final AtomicLong totalLatencyNanos = new AtomicLong();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+        private Thread thread;
+
+        private Lane(final int index, final int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                try {
+                    final LaneEntry entry = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (entry != null) {
+                        process(entry);
+                        recordLatency(System.nanoTime() - entry.enqueueTimeNanos);
+                    }
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void recordLatency(final long latencyNanos) {
+            processedEvents.incrementAndGet();
+            totalLatencyNanos.addAndGet(latencyNanos);
+            long currentMax = maxLatencyNanos.get();
+            while (latencyNanos > currentMax && !maxLatencyNanos.compareAndSet(currentMax, latencyNanos)) {
+                currentMax = maxLatencyNanos.get();
+            }
+        }
+    }
+
+    private static final class LaneEntry {
+        private final Message message;
+        private final Serializable event;
+        private final SessionAcknowledgementTracker acknowledgementTracker;
+        private final long enqueueTimeNanos = System.nanoTime();
+
+        private LaneEntry(final Message message, final Serializable event, final SessionAcknowledgementTracker acknowledgementTracker) {
+            this.message = message;
+            this.event = event;
+            this.acknowledgementTracker = acknowledgementTracker;
+        }
+    }
+
+    /**
+     * Snapshot of the statistics of one lane. The latency covers the time spent waiting in the lane and being processed.
+     */
+    public static final class LaneStatistics {
+        private final int laneIndex;
+        private final int queueDepth;
+        private final long processedEvents;
+        private final long totalLatencyNanos;
+        private final long maxLatencyNanos;
+
+        LaneStatistics(final int laneIndex, final int queueDepth, final long processedEvents, final long totalLatencyNanos,
+                       final long maxLatencyNanos) {
+            this.laneIndex = laneIndex;
+            this.queueDepth = queueDepth;
+            this.processedEvents = processedEvents;
+            this.totalLatencyNanos = totalLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+        }
+
+        public int getLaneIndex() {
+            return laneIndex;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getProcessedEvents() {
+            return processedEvents;
+        }
+
+        public long getAverageLatencyMillis() {
+            return processedEvents == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos / processedEvents);
+        }
+
+        public long getMaxLatencyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "Lane " + laneIndex + " [queueDepth=" + queueDepth + ", processedEvents=" + processedEvents + ", averageLatencyMillis="
+                + getAverageLatencyMillis() + ", maxLatencyMillis=" + getMaxLatencyMillis() + "]";
+        }
+    }
+}
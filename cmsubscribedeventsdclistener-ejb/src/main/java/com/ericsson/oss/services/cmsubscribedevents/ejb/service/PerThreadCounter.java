@@ -0,0 +1,73 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Counter with one primitive cell per thread, summed on demand.
+ * <p>
+ * Each cell has a single writer, so incrementing is a plain ordered write with no contention between the JMS session and worker threads
+ * and no allocation after the first increment of a thread.
+ */
+public class PerThreadCounter {
+
+    private final Queue<Cell> cells = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Cell> threadCell = ThreadLocal.withInitial(this::registerCell);
+
+    /**
+     * Adds one to the cell of the calling thread.
+     */
+    public void increment() {
+        threadCell.get().add(1L);
+    }
+
+    /**
+     * Adds a value to the cell of the calling thread.
+     *
+     * @param value
+     *     the value to add
+     */
+    public void add(final long value) {
+        threadCell.get().add(value);
+    }
+
+    /**
+     * @return the sum of the cells of every thread
+     */
+    public long sum() {
+        long sum = 0;
+        for (final Cell cell : cells) {
+            sum += cell.value;
+        }
+        return sum;
+    }
+
+    private Cell registerCell() {
+        final Cell cell = new Cell();
+        cells.add(cell);
+        return cell;
+    }
+
+    private static final class Cell {
+        private static final AtomicLongFieldUpdater<Cell> VALUE_UPDATER = AtomicLongFieldUpdater.newUpdater(Cell.class, "value");
+
+        private volatile long value;
+
+        private void add(final long delta) {
+            VALUE_UPDATER.lazySet(this, value + delta);
+        }
+    }
+}
@@ -0,0 +1,485 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification;
+import com.ericsson.oss.mediation.notifications.ComEcimNodeNotification;
+
+/**
+ * Dispatches the messages received from CmDataChangeDivertedQueue to a live lane and a bulk lane, so that node notifications are not
+ * delayed behind the DPS changes of an import or of a mass configuration change.
+ * <p>
+ * The message is deserialized on the session thread to find its lane: {@link NodeNotification}s and {@link ComEcimNodeNotification}s go to
+ * the live lane, every other event to the bulk lane. Each worker serves its own partition of every lane, chosen by hashing the FDN of the
+ * event as in {@link PartitionedEventDispatcher}, so that the events of one MO in a lane are processed in the order they were received.
+ * A worker drains its partitions with a smooth weighted round robin, so that while both lanes have events the live lane is served
+ * weight-live times for weight-bulk times the bulk lane, and an idle lane leaves the worker to the other.
+ * <p>
+ * Every partition of every lane is bounded by the lane capacity: when the partition of an event is full the session thread blocks until
+ * the worker catches up, so a bulk backlog or a flooding node slows the consumption of the queue down instead of filling the heap. A
+ * session blocked on the bulk lane, or reaching its acknowledgement count while bulk events are in flight, also delays the live
+ * notifications it receives, so live notifications should be received on their own sessions through a {@link ConsumerGroup} selecting
+ * them, so that they never wait behind a bulk backlog.
+ * <p>
+ * When node rate limiting is enabled, which selects the lanes by default, the events of a node over its {@link NodeRateLimiter} limit go to a
+ * third, overflow lane instead, served with its own weight, so that a node flooding the queue does not delay the events of the other
+ * nodes. Once a node is over its limit, all its events go to the overflow lane until the last of them is processed. The events of a node
+ * are then routed to the partitions by node rather than by FDN, and a worker holds back the overflow event of a node while the same node
+ * still has events in its live or bulk partitions, so that the events of a node are not reordered when it moves between the lanes.
+ * <p>
+ * The latency of each lane, from dispatch to the end of the processing, is compared with its service level objective.
+ */
+public class PriorityLaneDispatcher implements EventDispatcher {
+
+    static final String PRIORITY_WORKERS_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "priority.workers";
+    static final String PRIORITY_LANE_CAPACITY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "priority.lane.capacity";
+    static final String LIVE_WEIGHT_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "priority.live.weight";
+    static final String BULK_WEIGHT_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "priority.bulk.weight";
+    static final String LIVE_SLO_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "priority.live.slo.millis";
+    static final String BULK_SLO_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "priority.bulk.slo.millis";
+    static final String OVERFLOW_WEIGHT_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "priority.overflow.weight";
+    static final String OVERFLOW_SLO_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "priority.overflow.slo.millis";
+    static final String LIVE_LANE = "live";
+    static final String BULK_LANE = "bulk";
+    static final String OVERFLOW_LANE = "overflow";
+    private static final long POLL_TIMEOUT_MILLIS = 500L;
+    private static final long MAX_LATENCY_BUCKET_MILLIS = 1L << 20;
+
+    private static Logger logger = LoggerFactory.getLogger(PriorityLaneDispatcher.class);
+
+    private final Lane liveLane;
+    private final Lane bulkLane;
+    private final Lane overflowLane;
+    private final Lane[] lanes;
+    private final NodeRateLimiter nodeRateLimiter;
+    private final ConcurrentMap<String, Integer> overflowingNodes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> regularNodes = new ConcurrentHashMap<>();
+    private final Worker[] workers;
+    private final Function<Message, Serializable> deserializer;
+    private final BiConsumer<Message, Serializable> eventProcessor;
+    private volatile boolean running = true;
+
+    /**
+     * Creates the lanes and starts the workers.
+     *
+     * @param numberOfWorkers
+     *     number of threads draining the lanes, each serving its own partition of every lane
+     * @param laneCapacity
+     *     maximum number of events waiting in each partition of every lane
+     * @param liveWeight
+     *     share of the workers given to the live lane while both lanes have events
+     * @param bulkWeight
+     *     share of the workers given to the bulk lane while both lanes have events
+     * @param liveSloMillis
+     *     latency objective of the live lane
+     * @param bulkSloMillis
+     *     latency objective of the bulk lane
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     the processing applied to each event by the workers
+     */
+    public PriorityLaneDispatcher(final int numberOfWorkers, final int laneCapacity, final int liveWeight, final int bulkWeight,
+                                  final long liveSloMillis, final long bulkSloMillis, final Function<Message, Serializable> deserializer,
+                                  final BiConsumer<Message, Serializable> eventProcessor) {
+        this(numberOfWorkers, laneCapacity, liveWeight, bulkWeight, liveSloMillis, bulkSloMillis, null, 1, bulkSloMillis, deserializer,
+            eventProcessor);
+    }
+
+    /**
+     * Creates the lanes, with an overflow lane for the events of the nodes over their rate limit, and starts the workers.
+     *
+     * @param numberOfWorkers
+     *     number of threads draining the lanes, each serving its own partition of every lane
+     * @param laneCapacity
+     *     maximum number of events waiting in each partition of every lane
+     * @param liveWeight
+     *     share of the workers given to the live lane while the lanes have events
+     * @param bulkWeight
+     *     share of the workers given to the bulk lane while the lanes have events
+     * @param liveSloMillis
+     *     latency objective of the live lane
+     * @param bulkSloMillis
+     *     latency objective of the bulk lane
+     * @param nodeRateLimiter
+     *     the rate limiter of the nodes, or null for no overflow lane
+     * @param overflowWeight
+     *     share of the workers given to the overflow lane while the lanes have events
+     * @param overflowSloMillis
+     *     latency objective of the overflow lane
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     the processing applied to each event by the workers
+     */
+    public PriorityLaneDispatcher(final int numberOfWorkers, final int laneCapacity, final int liveWeight, final int bulkWeight,
+                                  final long liveSloMillis, final long bulkSloMillis, final NodeRateLimiter nodeRateLimiter,
+                                  final int overflowWeight, final long overflowSloMillis, final Function<Message, Serializable> deserializer,
+                                  final BiConsumer<Message, Serializable> eventProcessor) {
+        this.deserializer = deserializer;
+        this.eventProcessor = eventProcessor;
+        this.nodeRateLimiter = nodeRateLimiter;
+        final int partitions = Math.max(1, numberOfWorkers);
+        final int capacity = Math.max(1, laneCapacity);
+        this.liveLane = new Lane(LIVE_LANE, partitions, capacity, Math.max(1, liveWeight), liveSloMillis);
+        this.bulkLane = new Lane(BULK_LANE, partitions, capacity, Math.max(1, bulkWeight), bulkSloMillis);
+        this.overflowLane = new Lane(OVERFLOW_LANE, partitions, capacity, Math.max(1, overflowWeight), overflowSloMillis);
+        this.lanes = nodeRateLimiter == null ? new Lane[] {liveLane, bulkLane} : new Lane[] {liveLane, bulkLane, overflowLane};
+        this.workers = new Worker[partitions];
+        final NamedThreadFactory threadFactory = new NamedThreadFactory("CmDataChangeDivertedQueue-priority");
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+            workers[i].thread = threadFactory.newThread(workers[i]);
+            workers[i].thread.start();
+        }
+        logger.info("Started priority lane dispatcher with {} workers, lane capacity {}, live weight {} and bulk weight {}", workers.length,
+            capacity, liveLane.weight, bulkLane.weight);
+    }
+
+    /**
+     * Creates a dispatcher using the workers, lane capacity, weights and objectives configured through JVM properties, with an overflow lane
+     * if node rate limiting is enabled.
+     *
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     the processing applied to each event by the workers
+     * @return the started dispatcher
+     */
+    public static PriorityLaneDispatcher create(final Function<Message, Serializable> deserializer,
+                                                final BiConsumer<Message, Serializable> eventProcessor) {
+        if (ConsumerGroup.getConfiguredGroups().isEmpty()) {
+            logger.warn("No consumer group configured: node notifications share their sessions with the bulk events and wait behind them "
+                + "once a session reaches its acknowledgement count");
+        }
+        return new PriorityLaneDispatcher(ConfigurationPropertyReader.getIntProperty(PRIORITY_WORKERS_PROPERTY, 4),
+            ConfigurationPropertyReader.getIntProperty(PRIORITY_LANE_CAPACITY_PROPERTY, 1000),
+            ConfigurationPropertyReader.getIntProperty(LIVE_WEIGHT_PROPERTY, 4), ConfigurationPropertyReader.getIntProperty(BULK_WEIGHT_PROPERTY, 1),
+            ConfigurationPropertyReader.getLongProperty(LIVE_SLO_PROPERTY, 1000L), ConfigurationPropertyReader.getLongProperty(BULK_SLO_PROPERTY,
+                60000L), NodeRateLimiter.isEnabled() ? NodeRateLimiter.create() : null,
+            ConfigurationPropertyReader.getIntProperty(OVERFLOW_WEIGHT_PROPERTY, 1), ConfigurationPropertyReader.getLongProperty(
+                OVERFLOW_SLO_PROPERTY, 300000L), deserializer, eventProcessor);
+    }
+
+    @Override
+    public void dispatch(final Message message, final SessionAcknowledgementTracker acknowledgementTracker) {
+        final Serializable event = deserializer.apply(message);
+        final String fdn = EventFdnResolver.getFdn(event);
+        final String node = nodeRateLimiter == null ? null : NodeRateLimiter.getNode(fdn);
+        final Lane lane = getLane(event, fdn, node);
+        final LaneEntry entry = new LaneEntry(message, event, acknowledgementTracker, node);
+        if (running) {
+            final Worker worker = workers[workerIndex(node != null ? node : fdn)];
+            try {
+                lane.partitions.get(worker.index).put(entry);
+                worker.queuedEvents.release();
+                worker.eventQueued();
+                return;
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while waiting for space in the {} lane, processing message on the session thread", lane.name);
+            }
+        }
+        process(lane, entry);
+    }
+
+    @Override
+    public void stop(final long timeoutMillis) {
+        running = false;
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (final Worker worker : workers) {
+            try {
+                worker.thread.join(Math.max(1L, deadline - System.currentTimeMillis()));
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            if (worker.thread.isAlive()) {
+                logger.warn("Priority lane worker {} did not drain within {} ms, events left: {}", worker.thread.getName(), timeoutMillis,
+                    getLaneDepths());
+                worker.thread.interrupt();
+            }
+        }
+        logger.info("Stopped priority lane dispatcher");
+    }
+
+    /**
+     * @return the latency from dispatch to the end of the processing of each lane, in milliseconds, keyed by lane name
+     */
+    public Map<String, HistogramSnapshot> getLaneLatencyMillis() {
+        final Map<String, HistogramSnapshot> latencies = new LinkedHashMap<>();
+        for (final Lane lane : lanes) {
+            latencies.put(lane.name, HistogramSnapshot.of(lane.latencyMillis));
+        }
+        return latencies;
+    }
+
+    /**
+     * @return the number of events whose latency exceeded the objective of their lane, keyed by lane name
+     */
+    public Map<String, Long> getLaneSloViolations() {
+        final Map<String, Long> violations = new LinkedHashMap<>();
+        for (final Lane lane : lanes) {
+            violations.put(lane.name, lane.sloViolations.sum());
+        }
+        return violations;
+    }
+
+    /**
+     * @return the number of events waiting in each lane, over all its partitions, keyed by lane name
+     */
+    public Map<String, Integer> getLaneDepths() {
+        final Map<String, Integer> depths = new LinkedHashMap<>();
+        for (final Lane lane : lanes) {
+            depths.put(lane.name, lane.size());
+        }
+        return depths;
+    }
+
+    /**
+     * @return the rate limiter of the nodes, or null if node rate limiting is disabled
+     */
+    public NodeRateLimiter getNodeRateLimiter() {
+        return nodeRateLimiter;
+    }
+
+    static boolean isLiveEvent(final Serializable event) {
+        return event instanceof NodeNotification || event instanceof ComEcimNodeNotification;
+    }
+
+    int workerIndex(final String key) {
+        if (key == null) {
+            return 0;
+        }
+        final int hash = key.hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % workers.length;
+    }
+
+    /**
+     * Finds the lane of the event: the overflow lane if its node is over its limit or still has events in the overflow lane, the live or
+     * bulk lane otherwise. With node rate limiting, the event is counted in the overflow or regular events of its node until processed.
+     */
+    private Lane getLane(final Serializable event, final String fdn, final String node) {
+        final Lane regularLane = isLiveEvent(event) ? liveLane : bulkLane;
+        if (nodeRateLimiter == null) {
+            return regularLane;
+        }
+        final boolean withinLimit = nodeRateLimiter.tryAcquire(fdn, System.nanoTime());
+        if (node == null) {
+            return regularLane;
+        }
+        final Integer overflowEvents = overflowingNodes.compute(node, (key, count) -> {
+            if (count != null) {
+                return count + 1;
+            }
+            return withinLimit ? null : 1;
+        });
+        if (overflowEvents != null) {
+            return overflowLane;
+        }
+        regularNodes.merge(node, 1, Integer::sum);
+        return regularLane;
+    }
+
+    private void process(final Lane lane, final LaneEntry entry) {
+        boolean leftForRedelivery = false;
+        try {
+            eventProcessor.accept(entry.message, entry.event);
+        } catch (final EventRedeliveryException exception) {
+            leftForRedelivery = true;
+        } catch (final Exception exception) {
+            logger.error("Exception :: {} while processing message :: {} in the {} lane", exception, entry.message, lane.name);
+        } finally {
+            if (entry.node != null) {
+                (lane == overflowLane ? overflowingNodes : regularNodes).computeIfPresent(entry.node,
+                    (key, count) -> count == 1 ? null : count - 1);
+            }
+            if (leftForRedelivery) {
+                entry.acknowledgementTracker.messageLeftForRedelivery(entry.message);
+            } else {
+                entry.acknowledgementTracker.messageProcessed(entry.message);
+            }
+            lane.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.enqueueTimeNanos));
+        }
+    }
+
+    private static final class Lane {
+        private final String name;
+        private final List<BlockingQueue<LaneEntry>> partitions;
+        private final int weight;
+        private final long sloMillis;
+        private final Histogram latencyMillis = Histogram.withPowerOfTwoBuckets(MAX_LATENCY_BUCKET_MILLIS);
+        private final LongAdder sloViolations = new LongAdder();
+
+        private Lane(final String name, final int partitionCount, final int capacity, final int weight, final long sloMillis) {
+            this.name = name;
+            this.partitions = new ArrayList<>(partitionCount);
+            for (int i = 0; i < partitionCount; i++) {
+                partitions.add(new ArrayBlockingQueue<>(capacity));
+            }
+            this.weight = weight;
+            this.sloMillis = sloMillis;
+        }
+
+        private int size() {
+            int size = 0;
+            for (final BlockingQueue<LaneEntry> partition : partitions) {
+                size += partition.size();
+            }
+            return size;
+        }
+
+        private void recordLatency(final long latency) {
+            latencyMillis.record(latency);
+            if (latency > sloMillis) {
+                sloViolations.increment();
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final int index;
+        private final Semaphore queuedEvents = new Semaphore(0);
+        private final int[] currentWeights = new int[lanes.length];
+        private volatile boolean awaitingEvent;
+        private Thread thread;
+
+        private Worker(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            while (running || queuedEvents.availablePermits() > 0) {
+                try {
+                    if (queuedEvents.tryAcquire(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        final Lane lane = awaitReadyLane();
+                        final LaneEntry entry = lane.partitions.get(index).poll();
+                        if (entry != null) {
+                            process(lane, entry);
+                        }
+                    }
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Selects the lane to serve once a permit is acquired. If the only lane with events is the overflow lane held back by regular events
+         * of its node, these events are routed to this worker but still being put in their partition by another session thread: the worker
+         * waits until a session thread signals a queued event, rechecking periodically in case the regular events are processed on the
+         * session thread instead, once the dispatcher is stopped. The permit is kept while waiting, the event queued meanwhile is served
+         * first and its permit serves the overflow event.
+         */
+        private Lane awaitReadyLane() throws InterruptedException {
+            final Lane lane = selectLane();
+            if (lane != null) {
+                return lane;
+            }
+            synchronized (this) {
+                awaitingEvent = true;
+                try {
+                    Lane readyLane;
+                    while ((readyLane = selectLane()) == null) {
+                        wait(POLL_TIMEOUT_MILLIS);
+                    }
+                    return readyLane;
+                } finally {
+                    awaitingEvent = false;
+                }
+            }
+        }
+
+        /**
+         * Called by a session thread after putting an event in a partition of this worker, to wake the worker up if it waits for it.
+         */
+        private void eventQueued() {
+            if (awaitingEvent) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Smooth weighted round robin over the partitions of the lanes which have events: each lane earns its weight, the richest lane is
+         * served and pays the total weight of the competing lanes. The worker is the only consumer of its partitions, so the selected
+         * partition holds the event the permit was acquired for. The overflow lane does not compete while the node of its next event still
+         * has events in the live or bulk lane, which are older and on this worker as the events of a node are routed by node.
+         *
+         * @return the lane to serve, or null if the only lane with events is held back
+         */
+        private Lane selectLane() {
+            int selectedIndex = -1;
+            int totalWeight = 0;
+            for (int i = 0; i < lanes.length; i++) {
+                if (isReady(lanes[i])) {
+                    currentWeights[i] += lanes[i].weight;
+                    totalWeight += lanes[i].weight;
+                    if (selectedIndex < 0 || currentWeights[i] > currentWeights[selectedIndex]) {
+                        selectedIndex = i;
+                    }
+                }
+            }
+            if (selectedIndex < 0) {
+                return null;
+            }
+            currentWeights[selectedIndex] -= totalWeight;
+            return lanes[selectedIndex];
+        }
+
+        private boolean isReady(final Lane lane) {
+            final LaneEntry next = lane.partitions.get(index).peek();
+            if (next == null) {
+                return false;
+            }
+            return lane != overflowLane || !regularNodes.containsKey(next.node);
+        }
+    }
+
+    private static final class LaneEntry {
+        private final Message message;
+        private final Serializable event;
+        private final SessionAcknowledgementTracker acknowledgementTracker;
+        private final String node;
+        private final long enqueueTimeNanos = System.nanoTime();
+
+        private LaneEntry(final Message message, final Serializable event, final SessionAcknowledgementTracker acknowledgementTracker,
+                          final String node) {
+            this.message = message;
+            this.event = event;
+            this.acknowledgementTracker = acknowledgementTracker;
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts occurrences of an event and allows at most one report of it per interval, so that a burst of the same event does not flood the
+ * logs.
+ */
+public class RateLimitedCounter {
+
+    private final long reportIntervalMillis;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong countSinceLastReport = new AtomicLong();
+    private final AtomicLong nextReportTimeMillis = new AtomicLong();
+
+    /**
+     * Creates a counter.
+     *
+     * @param reportIntervalMillis
+     *     minimum time between two reports
+     */
+    public RateLimitedCounter(final long reportIntervalMillis) {
+        this.reportIntervalMillis = reportIntervalMillis;
+    }
+
+    /**
+     * Counts one occurrence.
+     *
+     * @return the number of occurrences since the last report if the occurrence should be reported, or 0 if the report is suppressed
+     */
+    public long increment() {
+        totalCount.incrementAndGet();
+        countSinceLastReport.incrementAndGet();
+        final long currentTimeMillis = System.currentTimeMillis();
+        final long reportTimeMillis = nextReportTimeMillis.get();
+        if (currentTimeMillis >= reportTimeMillis && nextReportTimeMillis.compareAndSet(reportTimeMillis, currentTimeMillis + reportIntervalMillis)) {
+            return countSinceLastReport.getAndSet(0);
+        }
+        return 0;
+    }
+
+    /**
+     * @return the total number of occurrences
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+}
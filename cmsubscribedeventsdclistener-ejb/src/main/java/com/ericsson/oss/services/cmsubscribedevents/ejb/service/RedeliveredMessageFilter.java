@@ -0,0 +1,163 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification;
+import com.ericsson.oss.mediation.notifications.ComEcimNodeNotification;
+
+/**
+ * Suppresses the redelivery of messages already forwarded to SubscribedEventsProcessor.
+ * <p>
+ * Messages processed but not yet acknowledged are redelivered by the broker whenever their session is closed or their connection lost.
+ * Every forwarded message is therefore remembered in a {@link DeduplicationCache} once its processing is over, keyed by its JMSMessageID,
+ * or by the FDN and notification timestamp of its event when the producer disabled message identifiers. A message is only remembered after
+ * its processing, so that the redelivery of a message received but never processed, for instance because it was still waiting in a
+ * dispatcher when its connection was lost, is processed. Only messages flagged as redelivered are looked up, so the normal flow only pays
+ * for recording the key.
+ */
+@ApplicationScoped
+public class RedeliveredMessageFilter {
+
+    static final String DEDUPLICATION_ENABLED_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "deduplication.enabled";
+    static final String DEDUPLICATION_CAPACITY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "deduplication.capacity";
+    static final String DEDUPLICATION_TTL_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "deduplication.ttl.millis";
+
+    private static Logger logger = LoggerFactory.getLogger(RedeliveredMessageFilter.class);
+
+    private final boolean enabled = ConfigurationPropertyReader.getBooleanProperty(DEDUPLICATION_ENABLED_PROPERTY, true);
+    private final DeduplicationCache forwardedMessages = new DeduplicationCache(
+        ConfigurationPropertyReader.getIntProperty(DEDUPLICATION_CAPACITY_PROPERTY, 100000),
+        ConfigurationPropertyReader.getLongProperty(DEDUPLICATION_TTL_PROPERTY, 600000L), System.currentTimeMillis());
+    private final LongAdder suppressedDuplicates = new LongAdder();
+
+    /**
+     * Checks whether a message is the redelivery of a message already forwarded, by its JMSMessageID. Messages without a JMSMessageID are
+     * left to {@link #isDuplicateEvent(Message, Serializable)}.
+     *
+     * @param message
+     *     the received message
+     * @return true if the message was already forwarded and must not be processed again
+     */
+    public boolean isDuplicate(final Message message) {
+        if (!enabled) {
+            return false;
+        }
+        try {
+            final String messageId = message.getJMSMessageID();
+            return messageId != null && isForwarded(DeduplicationCache.keyOf(messageId), message.getJMSRedelivered());
+        } catch (final JMSException exception) {
+            logger.debug("Could not read the redelivery details of message {}: {}", message, exception.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the event of a message without JMSMessageID is the redelivery of an event already forwarded, by the FDN and
+     * notification timestamp of the event.
+     *
+     * @param message
+     *     the received message
+     * @param event
+     *     the deserialized event of the message
+     * @return true if the event was already forwarded and must not be processed again
+     */
+    public boolean isDuplicateEvent(final Message message, final Serializable event) {
+        if (!enabled) {
+            return false;
+        }
+        try {
+            if (message.getJMSMessageID() != null) {
+                return false;
+            }
+            final String fdn = EventFdnResolver.getFdn(event);
+            return fdn != null && isForwarded(DeduplicationCache.keyOf(fdn + '@' + getNotificationTimestamp(message, event)),
+                message.getJMSRedelivered());
+        } catch (final JMSException exception) {
+            logger.debug("Could not read the redelivery details of message {}: {}", message, exception.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Records a message whose processing is over, keyed by its JMSMessageID, or by the FDN and notification timestamp of its event when it
+     * has no JMSMessageID.
+     *
+     * @param message
+     *     the processed message
+     * @param event
+     *     the deserialized event of the message
+     */
+    public void messageForwarded(final Message message, final Serializable event) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            final String messageId = message.getJMSMessageID();
+            if (messageId != null) {
+                forwardedMessages.add(DeduplicationCache.keyOf(messageId), System.currentTimeMillis());
+                return;
+            }
+            final String fdn = EventFdnResolver.getFdn(event);
+            if (fdn != null) {
+                forwardedMessages.add(DeduplicationCache.keyOf(fdn + '@' + getNotificationTimestamp(message, event)), System.currentTimeMillis());
+            }
+        } catch (final JMSException exception) {
+            logger.debug("Could not record the forwarded message {}: {}", message, exception.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of redelivered messages which were not processed again
+     */
+    public long getSuppressedDuplicateCount() {
+        return suppressedDuplicates.sum();
+    }
+
+    /**
+     * @return the number of messages recorded in the current generation of the cache
+     */
+    public int getRecordedMessageCount() {
+        return forwardedMessages.size();
+    }
+
+    private boolean isForwarded(final long key, final boolean redelivered) {
+        if (redelivered && forwardedMessages.contains(key, System.currentTimeMillis())) {
+            suppressedDuplicates.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private static String getNotificationTimestamp(final Message message, final Serializable event) throws JMSException {
+        if (event instanceof NodeNotification) {
+            final Date creationTimestamp = ((NodeNotification) event).getCreationTimestamp();
+            if (creationTimestamp != null) {
+                return String.valueOf(creationTimestamp.getTime());
+            }
+        } else if (event instanceof ComEcimNodeNotification && ((ComEcimNodeNotification) event).getTimestamp() != null) {
+            return ((ComEcimNodeNotification) event).getTimestamp();
+        }
+        return String.valueOf(message.getJMSTimestamp());
+    }
+}
@@ -0,0 +1,397 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the messages consumed but not yet acknowledged by a single CLIENT_ACKNOWLEDGE session.
+ * <p>
+ * The pending messages are acknowledged as soon as the configured count is reached, or when the oldest pending message has waited longer
+ * than the configured maximum delay, whichever comes first. Acknowledging a message in CLIENT_ACKNOWLEDGE mode acknowledges every message
+ * consumed by the session, so no acknowledgement is sent while any message received by the session is still being processed.
+ * <p>
+ * A JMS session must not be used by two threads at once, so every acknowledgement follows one rule: it is sent under the monitor of the
+ * tracker, and only while no message is being delivered to the listener of the session. The session thread checks both conditions at the
+ * end of each delivery, in {@link #acknowledgeIfDue(long)}, waiting for the messages in flight if needed. Any other thread, such as the
+ * acknowledgement timer, the drain or the removal of a consumer, first waits for the delivery in progress to end, and the next delivery
+ * waits for its acknowledgement to be sent. The timer, calling {@link #acknowledgeIfDelayExpired(long)}, acknowledges the processed
+ * messages of sessions receiving no more messages.
+ * <p>
+ * A message whose processing was given up, see {@link EventRedeliveryException}, must not be acknowledged with the others. It is reported
+ * with {@link #messageLeftForRedelivery(Message)}, and the next acknowledgement of the session recovers it instead, so that the broker
+ * redelivers every unacknowledged message of the session; those already processed are recognised by the {@link RedeliveredMessageFilter}.
+ * <p>
+ * Once its session is closed, the tracker is closed as well: the dispatchers may still hold messages of the session, and the messages they
+ * report as processed are then ignored instead of being acknowledged on the closed session. The broker redelivers them to another session.
+ */
+public class SessionAcknowledgementTracker {
+
+    static final String ACKNOWLEDGEMENT_COUNT_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "acknowledgement.count";
+    static final String ACKNOWLEDGEMENT_MAX_DELAY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "acknowledgement.max.delay.millis";
+    static final int DEFAULT_ACKNOWLEDGEMENT_COUNT = 2000;
+    static final long DEFAULT_ACKNOWLEDGEMENT_MAX_DELAY_MILLIS = 5000L;
+    private static final long IN_FLIGHT_WAIT_MILLIS = 1000L;
+
+    private static Logger logger = LoggerFactory.getLogger(SessionAcknowledgementTracker.class);
+
+    private final String sessionId;
+    private final int acknowledgementCount;
+    private final long maxAcknowledgementDelayMillis;
+    private final Runnable sessionRecovery;
+
+    private Message lastUnacknowledgedMessage;
+    private long firstPendingTimestamp;
+    private int inFlightMessages;
+    private boolean delivering;
+    private boolean closed;
+    private boolean recoveryRequired;
+    private volatile int pendingAcknowledgements;
+    private long processedMessages;
+    private long acknowledgedMessages;
+    private long busyStartNanos;
+    private long busyNanos;
+
+    /**
+     * Creates a tracker for the given session.
+     *
+     * @param sessionId
+     *     identifier of the session, used for logging and gauges
+     * @param acknowledgementCount
+     *     number of processed messages after which the session is acknowledged
+     * @param maxAcknowledgementDelayMillis
+     *     maximum time a processed message can stay unacknowledged
+     */
+    public SessionAcknowledgementTracker(final String sessionId, final int acknowledgementCount, final long maxAcknowledgementDelayMillis) {
+        this(sessionId, acknowledgementCount, maxAcknowledgementDelayMillis, null);
+    }
+
+    /**
+     * Creates a tracker for the given session, able to recover it.
+     *
+     * @param sessionId
+     *     identifier of the session, used for logging and gauges
+     * @param acknowledgementCount
+     *     number of processed messages after which the session is acknowledged
+     * @param maxAcknowledgementDelayMillis
+     *     maximum time a processed message can stay unacknowledged
+     * @param sessionRecovery
+     *     recovers the session so that its unacknowledged messages are redelivered, or null if the session cannot be recovered
+     */
+    public SessionAcknowledgementTracker(final String sessionId, final int acknowledgementCount, final long maxAcknowledgementDelayMillis,
+                                         final Runnable sessionRecovery) {
+        this.sessionId = sessionId;
+        this.acknowledgementCount = Math.max(1, acknowledgementCount);
+        this.maxAcknowledgementDelayMillis = maxAcknowledgementDelayMillis;
+        this.sessionRecovery = sessionRecovery;
+    }
+
+    /**
+     * Creates a tracker for the given session using the acknowledgement count and maximum delay configured through JVM properties.
+     *
+     * @param sessionId
+     *     identifier of the session
+     * @return the tracker
+     */
+    public static SessionAcknowledgementTracker create(final String sessionId) {
+        return create(sessionId, null);
+    }
+
+    /**
+     * Creates a tracker for the given session, able to recover it, using the acknowledgement count and maximum delay configured through
+     * JVM properties.
+     *
+     * @param sessionId
+     *     identifier of the session
+     * @param sessionRecovery
+     *     recovers the session so that its unacknowledged messages are redelivered, or null if the session cannot be recovered
+     * @return the tracker
+     */
+    public static SessionAcknowledgementTracker create(final String sessionId, final Runnable sessionRecovery) {
+        return new SessionAcknowledgementTracker(sessionId,
+            ConfigurationPropertyReader.getIntProperty(ACKNOWLEDGEMENT_COUNT_PROPERTY, DEFAULT_ACKNOWLEDGEMENT_COUNT),
+            ConfigurationPropertyReader.getLongProperty(ACKNOWLEDGEMENT_MAX_DELAY_PROPERTY, DEFAULT_ACKNOWLEDGEMENT_MAX_DELAY_MILLIS),
+            sessionRecovery);
+    }
+
+    /**
+     * Called by the session thread when the provider starts delivering a message to the listener of the session, before anything else is
+     * done with the message. Waits while another thread acknowledges the session.
+     */
+    public synchronized void deliveryStarted() {
+        delivering = true;
+    }
+
+    /**
+     * Called by the session thread once the listener of the session has returned, so that other threads can acknowledge the session.
+     */
+    public synchronized void deliveryEnded() {
+        delivering = false;
+        notifyAll();
+    }
+
+    /**
+     * Marks the start of the processing of a message delivered to the session.
+     */
+    public synchronized void messageReceived() {
+        if (closed) {
+            return;
+        }
+        if (inFlightMessages++ == 0) {
+            busyStartNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records a message as processed. The message may be processed on a thread other than the one of the session, so the acknowledgement
+     * itself is left to {@link #acknowledgeIfDue(long)} and {@link #acknowledgeIfDelayExpired(long)}.
+     *
+     * @param message
+     *     the processed message
+     */
+    public synchronized void messageProcessed(final Message message) {
+        if (closed) {
+            return;
+        }
+        if (inFlightMessages > 0) {
+            inFlightMessages--;
+        }
+        if (pendingAcknowledgements == 0) {
+            firstPendingTimestamp = System.currentTimeMillis();
+        }
+        lastUnacknowledgedMessage = message;
+        pendingAcknowledgements++;
+        processedMessages++;
+        if (inFlightMessages == 0) {
+            busyNanos += System.nanoTime() - busyStartNanos;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Records a message whose processing was given up. The message is not acknowledged: the next acknowledgement of the session recovers it
+     * instead, so that the message is redelivered.
+     *
+     * @param message
+     *     the message left for redelivery
+     */
+    public synchronized void messageLeftForRedelivery(final Message message) {
+        if (closed) {
+            return;
+        }
+        if (inFlightMessages > 0) {
+            inFlightMessages--;
+        }
+        if (!recoveryRequired) {
+            logger.warn("Message {} of session {} left for redelivery, the session will be recovered", message, sessionId);
+        }
+        recoveryRequired = true;
+        if (inFlightMessages == 0) {
+            busyNanos += System.nanoTime() - busyStartNanos;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Called by the session thread after it has handed over a message. If the received messages reach the acknowledgement count, or if the
+     * oldest pending message has waited longer than the maximum delay, or if a message was left for redelivery, waits for the messages
+     * still in flight to be processed and then acknowledges or recovers the session. Blocking here also stops the session from receiving
+     * more messages until the acknowledgement is sent.
+     *
+     * @param currentTimeMillis
+     *     the current time
+     */
+    public synchronized void acknowledgeIfDue(final long currentTimeMillis) {
+        if (pendingAcknowledgements + inFlightMessages < acknowledgementCount && !isDelayExpired(currentTimeMillis) && !recoveryRequired) {
+            return;
+        }
+        while (inFlightMessages > 0 && !closed) {
+            try {
+                wait(IN_FLIGHT_WAIT_MILLIS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while waiting for {} in flight messages of session {}", inFlightMessages, sessionId);
+                return;
+            }
+        }
+        acknowledge();
+    }
+
+    /**
+     * Called periodically by the acknowledgement timer. Acknowledges the session if the oldest pending message has waited longer than the
+     * maximum delay, or recovers it if a message was left for redelivery, provided no message is being delivered and no message is in
+     * flight. Otherwise the acknowledgement is left to the next delivery or the next call.
+     *
+     * @param currentTimeMillis
+     *     the current time
+     */
+    public synchronized void acknowledgeIfDelayExpired(final long currentTimeMillis) {
+        if (!delivering && inFlightMessages == 0 && (isDelayExpired(currentTimeMillis) || recoveryRequired)) {
+            acknowledge();
+        }
+    }
+
+    /**
+     * Acknowledges every processed message of the session, waiting up to the given timeout for the delivery in progress to end and for the
+     * messages still in flight. Used before the session is closed, once the listener of the session is removed, so that its processed
+     * messages are not redelivered. A session with a message left for redelivery is not acknowledged, its messages are redelivered once
+     * it is closed.
+     *
+     * @param timeoutMillis
+     *     maximum time to wait for the messages in flight
+     * @return true if no message was still in flight or left for redelivery when the session was acknowledged
+     */
+    public synchronized boolean acknowledgePending(final long timeoutMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remainingMillis = timeoutMillis;
+        while ((delivering || inFlightMessages > 0) && remainingMillis > 0) {
+            try {
+                wait(remainingMillis);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            remainingMillis = deadline - System.currentTimeMillis();
+        }
+        if (delivering || inFlightMessages > 0) {
+            logger.warn("{} messages of session {} still in flight after {} ms, they will be redelivered", inFlightMessages, sessionId,
+                timeoutMillis);
+            return false;
+        }
+        if (recoveryRequired) {
+            logger.warn("Session {} has a message left for redelivery, its {} processed messages will be redelivered", sessionId,
+                pendingAcknowledgements);
+            return false;
+        }
+        acknowledge();
+        return true;
+    }
+
+    /**
+     * Called once the session is closed, without acknowledging it. The messages received by the session and not yet acknowledged are left
+     * for redelivery by the broker, and the messages still held by the dispatchers are ignored when they are reported as processed. Wakes
+     * up the threads waiting for the messages in flight.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (pendingAcknowledgements + inFlightMessages > 0) {
+            logger.info("Session {} closed with {} processed and {} in flight messages left for redelivery", sessionId, pendingAcknowledgements,
+                inFlightMessages);
+        }
+        if (inFlightMessages > 0) {
+            busyNanos += System.nanoTime() - busyStartNanos;
+        }
+        lastUnacknowledgedMessage = null;
+        pendingAcknowledgements = 0;
+        inFlightMessages = 0;
+        notifyAll();
+    }
+
+    /**
+     * @return the number of processed messages acknowledged since the session was created
+     */
+    public synchronized long getAcknowledgedMessages() {
+        return acknowledgedMessages;
+    }
+
+    /**
+     * @return the number of messages received by the session and not yet processed
+     */
+    public synchronized int getInFlightMessages() {
+        return inFlightMessages;
+    }
+
+    /**
+     * @return the number of messages processed since the session was created
+     */
+    public synchronized long getProcessedMessages() {
+        return processedMessages;
+    }
+
+    /**
+     * Gets the time during which the session had at least one message in flight. Comparing two readings with the elapsed time gives the
+     * utilization of the session.
+     *
+     * @return the busy time of the session in nanoseconds, since it was created
+     */
+    public synchronized long getBusyNanos() {
+        return inFlightMessages > 0 ? busyNanos + System.nanoTime() - busyStartNanos : busyNanos;
+    }
+
+    /**
+     * @return the number of processed messages not yet acknowledged
+     */
+    public int getPendingAcknowledgements() {
+        return pendingAcknowledgements;
+    }
+
+    /**
+     * @return the identifier of the tracked session
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    private boolean isDelayExpired(final long currentTimeMillis) {
+        return pendingAcknowledgements > 0 && currentTimeMillis - firstPendingTimestamp >= maxAcknowledgementDelayMillis;
+    }
+
+    private void acknowledge() {
+        if (closed) {
+            return;
+        }
+        if (recoveryRequired) {
+            recover();
+            return;
+        }
+        if (lastUnacknowledgedMessage == null) {
+            return;
+        }
+        try {
+            lastUnacknowledgedMessage.acknowledge();
+            acknowledgedMessages += pendingAcknowledgements;
+            if (logger.isDebugEnabled()) {
+                logger.debug("Acknowledgement sent for session {} at pending acknowledgement count {}", sessionId, pendingAcknowledgements);
+            }
+        } catch (final Exception exception) {
+            logger.error("Exception :: {} caught while sending acknowledgement for session {}", exception.getMessage(), sessionId);
+        } finally {
+            lastUnacknowledgedMessage = null;
+            pendingAcknowledgements = 0;
+        }
+    }
+
+    private void recover() {
+        try {
+            if (sessionRecovery == null) {
+                logger.error("Session {} cannot be recovered, its message left for redelivery will be acknowledged with the next ones", sessionId);
+            } else {
+                sessionRecovery.run();
+                logger.info("Session {} recovered, its {} processed and unacknowledged messages will be redelivered", sessionId,
+                    pendingAcknowledgements);
+            }
+        } catch (final Exception exception) {
+            logger.error("Exception :: {} caught while recovering session {}", exception.getMessage(), sessionId);
+        } finally {
+            recoveryRequired = false;
+            lastUnacknowledgedMessage = null;
+            pendingAcknowledgements = 0;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.util.function.Predicate;
+
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+/**
+ * {@link MessageListener} registered on the consumer of a single session, so that the messages delivered by that session are acknowledged
+ * through its own {@link SessionAcknowledgementTracker}, which is told when each delivery starts and ends. The session of a
+ * {@link ConsumerGroup} may also have its own dispatch to the notification handlers.
+ */
+public class SessionMessageListener implements MessageListener {
+
+    private final CmDataChangeDivertedQueueListener cmDataChangeDivertedQueueListener;
+    private final SessionAcknowledgementTracker acknowledgementTracker;
+    private final Predicate<Serializable> notificationDispatch;
+
+    public SessionMessageListener(final CmDataChangeDivertedQueueListener cmDataChangeDivertedQueueListener,
+                                  final SessionAcknowledgementTracker acknowledgementTracker) {
+        this(cmDataChangeDivertedQueueListener, acknowledgementTracker, null);
+    }
+
+    /**
+     * @param cmDataChangeDivertedQueueListener
+     *     the listener processing the messages
+     * @param acknowledgementTracker
+     *     the acknowledgement tracker of the session
+     * @param notificationDispatch
+     *     the dispatch of the events of the session to the notification handlers, or null to use the dispatch of the listener
+     */
+    public SessionMessageListener(final CmDataChangeDivertedQueueListener cmDataChangeDivertedQueueListener,
+                                  final SessionAcknowledgementTracker acknowledgementTracker,
+                                  final Predicate<Serializable> notificationDispatch) {
+        this.cmDataChangeDivertedQueueListener = cmDataChangeDivertedQueueListener;
+        this.acknowledgementTracker = acknowledgementTracker;
+        this.notificationDispatch = notificationDispatch;
+    }
+
+    @Override
+    public void onMessage(final Message message) {
+        acknowledgementTracker.deliveryStarted();
+        try {
+            if (notificationDispatch == null) {
+                cmDataChangeDivertedQueueListener.onMessage(message, acknowledgementTracker);
+            } else {
+                cmDataChangeDivertedQueueListener.onMessage(message, acknowledgementTracker, notificationDispatch);
+            }
+        } finally {
+            acknowledgementTracker.deliveryEnded();
+        }
+    }
+
+    public SessionAcknowledgementTracker getAcknowledgementTracker() {
+        return acknowledgementTracker;
+    }
+}
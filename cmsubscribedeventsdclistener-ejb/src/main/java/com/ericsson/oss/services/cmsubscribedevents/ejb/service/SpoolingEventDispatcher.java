@@ -0,0 +1,326 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches the messages received from CmDataChangeDivertedQueue through a local write-ahead {@link EventSpool}, so that they are
+ * acknowledged as soon as their event is on disk rather than once it is processed.
+ * <p>
+ * The message is deserialized on the session thread and its event, with its trace ID, appended to the spool. The session thread waits for
+ * the flusher of the spool to force the record to disk, sharing the sync with the other sessions, and then reports the message processed
+ * so that it is acknowledged. A single replayer thread reads the events back in the order they were spooled, hands them over to the
+ * processor and commits them. Events spooled and not committed when the service stops or crashes are replayed when it starts again, so an
+ * event can be delivered twice but is not lost once its message is acknowledged.
+ * <p>
+ * The spooled events are read back with the guardrails of the {@link EventDeserializer}. The message of a spooled event is already
+ * acknowledged, so an event which cannot be read back, or whose processing fails once its retries are used up, cannot be dead-lettered
+ * to a queue: its record is written to the dead-letter directory of the spool before it is committed, and replay stops, keeping the
+ * event in the spool, if the record cannot be written there.
+ * <p>
+ * Unsupported events, and events which cannot be spooled, are processed on the session thread as without dispatcher. The sessions block
+ * while the spool holds more than the configured number of segments, so that a processor slower than the queue for too long slows the
+ * consumption of the queue down again.
+ */
+public class SpoolingEventDispatcher implements EventDispatcher {
+
+    static final String SPOOL_DIRECTORY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "spool.directory";
+    static final String SPOOL_SEGMENT_BYTES_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "spool.segment.bytes";
+    static final String SPOOL_MAX_SEGMENTS_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "spool.max.segments";
+    static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    static final int DEFAULT_MAX_SEGMENTS = 16;
+    static final String DEAD_LETTER_DIRECTORY = "dead-letter";
+    static final String DEAD_LETTER_FILE_SUFFIX = ".record";
+    private static final long POLL_TIMEOUT_MILLIS = 500L;
+
+    private static Logger logger = LoggerFactory.getLogger(SpoolingEventDispatcher.class);
+
+    private final EventSpool spool;
+    private final int maxSegments;
+    private final Function<Message, Serializable> deserializer;
+    private final EventDeserializer recordDeserializer;
+    private final File deadLetterDirectory;
+    private final Predicate<Serializable> spoolEligible;
+    private final BiConsumer<Message, Serializable> eventProcessor;
+    private final BiConsumer<String, Serializable> spooledEventProcessor;
+    private final LongAdder spooledEvents = new LongAdder();
+    private final LongAdder replayedEvents = new LongAdder();
+    private final LongAdder deadLetteredEvents = new LongAdder();
+    private final Thread replayer;
+    private volatile boolean running = true;
+    private volatile boolean abandoned;
+
+    /**
+     * Creates the dispatcher and starts replaying the events of the spool.
+     *
+     * @param spool
+     *     the opened spool
+     * @param maxSegments
+     *     number of segments of the spool above which the sessions wait for the replayer
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param recordDeserializer
+     *     reads back the spooled events
+     * @param spoolEligible
+     *     selects the events which are spooled
+     * @param eventProcessor
+     *     the processing applied on the session thread to the events which are not spooled
+     * @param spooledEventProcessor
+     *     the processing applied by the replayer to each spooled event, given its trace ID, throwing if the event failed
+     */
+    public SpoolingEventDispatcher(final EventSpool spool, final int maxSegments, final Function<Message, Serializable> deserializer,
+                                   final EventDeserializer recordDeserializer, final Predicate<Serializable> spoolEligible,
+                                   final BiConsumer<Message, Serializable> eventProcessor,
+                                   final BiConsumer<String, Serializable> spooledEventProcessor) {
+        this.spool = spool;
+        this.maxSegments = Math.max(2, maxSegments);
+        this.deserializer = deserializer;
+        this.recordDeserializer = recordDeserializer;
+        this.deadLetterDirectory = new File(spool.getDirectory(), DEAD_LETTER_DIRECTORY);
+        this.spoolEligible = spoolEligible;
+        this.eventProcessor = eventProcessor;
+        this.spooledEventProcessor = spooledEventProcessor;
+        replayer = new NamedThreadFactory("CmDataChangeDivertedQueue-spool-replayer").newThread(this::replay);
+        replayer.start();
+        logger.info("Started spooling event dispatcher with at most {} spool segments", this.maxSegments);
+    }
+
+    /**
+     * Creates a dispatcher using the spool directory, segment size and segment limit configured through JVM properties. The spool is kept in
+     * the data directory of the server by default.
+     *
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param recordDeserializer
+     *     reads back the spooled events
+     * @param spoolEligible
+     *     selects the events which are spooled
+     * @param eventProcessor
+     *     the processing applied on the session thread to the events which are not spooled
+     * @param spooledEventProcessor
+     *     the processing applied by the replayer to each spooled event, given its trace ID, throwing if the event failed
+     * @return the started dispatcher
+     */
+    public static SpoolingEventDispatcher create(final Function<Message, Serializable> deserializer, final EventDeserializer recordDeserializer,
+                                                 final Predicate<Serializable> spoolEligible,
+                                                 final BiConsumer<Message, Serializable> eventProcessor,
+                                                 final BiConsumer<String, Serializable> spooledEventProcessor) {
+        final File defaultDirectory = new File(System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir")),
+            "cmsubscribedeventsdclistener-spool");
+        final File directory = new File(ConfigurationPropertyReader.getStringProperty(SPOOL_DIRECTORY_PROPERTY, defaultDirectory.getPath()));
+        try {
+            return new SpoolingEventDispatcher(new EventSpool(directory,
+                ConfigurationPropertyReader.getIntProperty(SPOOL_SEGMENT_BYTES_PROPERTY, DEFAULT_SEGMENT_BYTES)),
+                ConfigurationPropertyReader.getIntProperty(SPOOL_MAX_SEGMENTS_PROPERTY, DEFAULT_MAX_SEGMENTS), deserializer, recordDeserializer,
+                spoolEligible, eventProcessor, spooledEventProcessor);
+        } catch (final IOException exception) {
+            logger.error("Could not open the event spool in {}: {}", directory, exception.getMessage());
+            throw new IllegalStateException("Could not open the event spool in " + directory, exception);
+        }
+    }
+
+    @Override
+    public void dispatch(final Message message, final SessionAcknowledgementTracker acknowledgementTracker) {
+        final Serializable event = deserializer.apply(message);
+        if (running && spoolEligible.test(event)) {
+            try {
+                final byte[] record = toRecord(EventTraceContext.getTraceId(message), event);
+                spool.awaitSegmentsBelow(maxSegments);
+                spool.awaitDurable(spool.append(record));
+                spooledEvents.increment();
+                acknowledgementTracker.messageProcessed(message);
+                return;
+            } catch (final IOException | IllegalArgumentException exception) {
+                logger.warn("Could not spool the event of message {}, processing it on the session thread: {}", message, exception.getMessage());
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while spooling the event of message {}, processing it on the session thread", message);
+            }
+        }
+        boolean leftForRedelivery = false;
+        try {
+            eventProcessor.accept(message, event);
+        } catch (final EventRedeliveryException exception) {
+            leftForRedelivery = true;
+        } catch (final Exception exception) {
+            logger.error("Exception :: {} while processing message :: {}", exception, message);
+        } finally {
+            if (leftForRedelivery) {
+                acknowledgementTracker.messageLeftForRedelivery(message);
+            } else {
+                acknowledgementTracker.messageProcessed(message);
+            }
+        }
+    }
+
+    /**
+     * Stops spooling and waits for the replayer to deliver the spooled events. The events not delivered within the timeout stay in the spool
+     * and are replayed when the dispatcher is next created.
+     */
+    @Override
+    public void stop(final long timeoutMillis) {
+        running = false;
+        try {
+            replayer.join(Math.max(1L, timeoutMillis));
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        if (replayer.isAlive()) {
+            logger.warn("The spooled events were not replayed within {} ms, {} events are left in the spool", timeoutMillis,
+                getBacklogEvents());
+            abandoned = true;
+            replayer.interrupt();
+            try {
+                replayer.join(POLL_TIMEOUT_MILLIS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            spool.close();
+        } catch (final IOException exception) {
+            logger.warn("Could not close the event spool: {}", exception.getMessage());
+        }
+        logger.info("Stopped spooling event dispatcher, {} events spooled and {} replayed", spooledEvents.sum(), replayedEvents.sum());
+    }
+
+    /**
+     * @return the number of events spooled by this dispatcher and not replayed yet, the events left in the spool by a previous run excluded
+     */
+    public long getBacklogEvents() {
+        return Math.max(0L, spooledEvents.sum() - replayedEvents.sum());
+    }
+
+    /**
+     * @return the number of segment files of the spool
+     */
+    public int getSegmentCount() {
+        return spool.getSegmentCount();
+    }
+
+    /**
+     * @return the number of spooled events written to the dead-letter directory of the spool by this dispatcher
+     */
+    public long getDeadLetteredEvents() {
+        return deadLetteredEvents.sum();
+    }
+
+    private void replay() {
+        while (running || !spool.isDrained()) {
+            try {
+                final byte[] record = spool.poll(POLL_TIMEOUT_MILLIS);
+                if (record != null) {
+                    if (!deliver(record)) {
+                        logger.error("Replay of the spooled events stopped, the failed event and the following ones are left in the spool");
+                        return;
+                    }
+                    if (abandoned) {
+                        return;
+                    }
+                    spool.commit();
+                }
+            } catch (final EventRedeliveryException exception) {
+                logger.warn("Replay of the spooled events given up, the event is left in the spool");
+                return;
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final IOException exception) {
+                logger.error("Could not read the event spool: {}", exception.getMessage());
+                spool.commit();
+            }
+        }
+    }
+
+    /**
+     * Hands a spooled event over to the processor, or writes its record to the dead-letter directory if it cannot be read or processed.
+     *
+     * @return false if the event failed and its record could not be written to the dead-letter directory
+     */
+    private boolean deliver(final byte[] record) {
+        final String traceId;
+        final Serializable event;
+        try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(record))) {
+            final String spooledTraceId = inputStream.readUTF();
+            traceId = spooledTraceId.isEmpty() ? null : spooledTraceId;
+            final byte[] body = new byte[inputStream.available()];
+            inputStream.readFully(body);
+            event = recordDeserializer.deserialize(body);
+        } catch (final IOException | JMSException exception) {
+            return deadLetter(record, "Could not read the spooled event: " + exception.getMessage());
+        }
+        try {
+            spooledEventProcessor.accept(traceId, event);
+        } catch (final EventRedeliveryException exception) {
+            throw exception;
+        } catch (final Exception exception) {
+            return deadLetter(record, "Exception :: " + exception + " while processing spooled event :: " + event);
+        }
+        replayedEvents.increment();
+        return true;
+    }
+
+    /**
+     * Writes the record of a failed event, its trace ID followed by the serialized event, to a file of the dead-letter directory.
+     */
+    private boolean deadLetter(final byte[] record, final String reason) {
+        final File deadLetterFile = new File(deadLetterDirectory,
+            String.format("%013d-%06d", System.currentTimeMillis(), deadLetteredEvents.sum()) + DEAD_LETTER_FILE_SUFFIX);
+        try {
+            if (!deadLetterDirectory.isDirectory() && !deadLetterDirectory.mkdirs()) {
+                throw new IOException("Cannot create the directory " + deadLetterDirectory);
+            }
+            try (FileOutputStream outputStream = new FileOutputStream(deadLetterFile)) {
+                outputStream.write(record);
+                outputStream.getFD().sync();
+            }
+        } catch (final IOException exception) {
+            logger.error("Could not write the failed spooled event to {}: {}. {}", deadLetterFile, exception.getMessage(), reason);
+            return false;
+        }
+        deadLetteredEvents.increment();
+        replayedEvents.increment();
+        logger.error("Wrote the failed spooled event to {}. {}", deadLetterFile, reason);
+        return true;
+    }
+
+    static byte[] toRecord(final String traceId, final Serializable event) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+        try (DataOutputStream outputStream = new DataOutputStream(record)) {
+            outputStream.writeUTF(traceId == null ? "" : traceId);
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+                objectOutputStream.writeObject(event);
+            }
+        }
+        return record.toByteArray();
+    }
+}
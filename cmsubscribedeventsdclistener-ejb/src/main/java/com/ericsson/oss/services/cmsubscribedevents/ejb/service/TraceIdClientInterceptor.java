@@ -0,0 +1,40 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import org.jboss.ejb.client.EJBClientInterceptor;
+import org.jboss.ejb.client.EJBClientInvocationContext;
+
+/**
+ * EJB client interceptor propagating the trace ID of the events to the processor.
+ * <p>
+ * The trace ID set in the {@link EventTraceContext} of the invoking thread is added to the context data of the invocation under
+ * {@value EventTraceContext#TRACE_ID_KEY}, so that it is available to the server side interceptors of the processor through
+ * InvocationContext.getContextData(). The interceptor is registered through META-INF/services.
+ */
+public class TraceIdClientInterceptor implements EJBClientInterceptor {
+
+    @Override
+    public void handleInvocation(final EJBClientInvocationContext context) throws Exception {
+        final String traceId = EventTraceContext.get();
+        if (traceId != null) {
+            context.getContextData().put(EventTraceContext.TRACE_ID_KEY, traceId);
+        }
+        context.sendRequest();
+    }
+
+    @Override
+    public Object handleInvocationResult(final EJBClientInvocationContext context) throws Exception {
+        return context.getResult();
+    }
+}
@@ -0,0 +1,304 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2023
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the processing of each event on its own virtual thread, so that many blocking calls to SubscribedEventsProcessor can be in progress
+ * while only one or two JMS sessions are open. On a JVM without virtual threads a fixed pool of platform threads of the same size is used
+ * instead.
+ * <p>
+ * The message is deserialized on the session thread to find its FDN. Events of the same FDN are chained and processed one after the other
+ * in the order they were received; events without FDN are processed independently. A semaphore bounds the events handed over and not yet
+ * processed: when all its permits are taken the session thread blocks until an event completes.
+ * <p>
+ * Virtual threads are not supported inside the container: they run on carrier threads of the JVM which the managed thread factory cannot
+ * create, so they would lack the context of the application. When a managed thread factory is available, the pool of managed platform
+ * threads is used instead, and virtual threads are only used outside a container, as in the benchmarks.
+ */
+public class VirtualThreadEventDispatcher implements EventDispatcher {
+
+    static final String VIRTUAL_THREADS_MAX_CONCURRENCY_PROPERTY = ConfigurationPropertyReader.PROPERTY_PREFIX + "virtual.threads.max.concurrency";
+    static final int DEFAULT_MAX_CONCURRENCY = 256;
+    private static final String THREAD_NAME_PREFIX = "CmDataChangeDivertedQueue-virtual";
+
+    private static Logger logger = LoggerFactory.getLogger(VirtualThreadEventDispatcher.class);
+
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Map<String, FdnChain> activeChains = new HashMap<>();
+    private final Function<Message, Serializable> deserializer;
+    private final BiConsumer<Message, Serializable> eventProcessor;
+    private volatile boolean running = true;
+
+    /**
+     * Creates the dispatcher, on virtual threads when the JVM supports them and no managed thread factory is available.
+     *
+     * @param maxConcurrency
+     *     maximum number of events handed over and not yet processed
+     * @param preferVirtualThreads
+     *     false to use the pool of platform threads even when virtual threads are available
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     the processing applied to each event
+     */
+    public VirtualThreadEventDispatcher(final int maxConcurrency, final boolean preferVirtualThreads,
+                                        final Function<Message, Serializable> deserializer,
+                                        final BiConsumer<Message, Serializable> eventProcessor) {
+        this(maxConcurrency, preferVirtualThreads, new NamedThreadFactory(THREAD_NAME_PREFIX), deserializer, eventProcessor);
+    }
+
+    VirtualThreadEventDispatcher(final int maxConcurrency, final boolean preferVirtualThreads, final NamedThreadFactory threadFactory,
+                                 final Function<Message, Serializable> deserializer,
+                                 final BiConsumer<Message, Serializable> eventProcessor) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.permits = new Semaphore(this.maxConcurrency);
+        this.deserializer = deserializer;
+        this.eventProcessor = eventProcessor;
+        ExecutorService virtualThreadExecutor = null;
+        if (preferVirtualThreads && threadFactory.isManaged()) {
+            logger.warn("Virtual threads are not supported in the container, using managed platform threads");
+        } else if (preferVirtualThreads) {
+            virtualThreadExecutor = createVirtualThreadExecutor();
+        }
+        this.virtualThreads = virtualThreadExecutor != null;
+        this.executor = virtualThreads ? virtualThreadExecutor : Executors.newFixedThreadPool(this.maxConcurrency, threadFactory);
+        logger.info("Started event dispatcher on {} with a concurrency of {}", virtualThreads ? "virtual threads" : "platform threads",
+            this.maxConcurrency);
+    }
+
+    /**
+     * Creates a dispatcher using the maximum concurrency configured through JVM properties.
+     *
+     * @param deserializer
+     *     extracts the event from the message, on the session thread
+     * @param eventProcessor
+     *     the processing applied to each event
+     * @return the started dispatcher
+     */
+    public static VirtualThreadEventDispatcher create(final Function<Message, Serializable> deserializer,
+                                                      final BiConsumer<Message, Serializable> eventProcessor) {
+        return new VirtualThreadEventDispatcher(ConfigurationPropertyReader.getIntProperty(VIRTUAL_THREADS_MAX_CONCURRENCY_PROPERTY,
+            DEFAULT_MAX_CONCURRENCY), true, deserializer, eventProcessor);
+    }
+
+    @Override
+    public void dispatch(final Message message, final SessionAcknowledgementTracker acknowledgementTracker) {
+        final Serializable event = deserializer.apply(message);
+        final ChainEntry entry = new ChainEntry(message, event, acknowledgementTracker);
+        if (running) {
+            try {
+                permits.acquire();
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while waiting for a processing permit, processing message on the session thread");
+                process(entry);
+                return;
+            }
+            if (submit(EventFdnResolver.getFdn(event), entry)) {
+                return;
+            }
+            permits.release();
+        }
+        process(entry);
+    }
+
+    @Override
+    public void stop(final long timeoutMillis) {
+        running = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("{} events still in progress after {} ms", getInFlightEvents(), timeoutMillis);
+                executor.shutdownNow();
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+        logger.info("Stopped virtual thread event dispatcher");
+    }
+
+    /**
+     * @return true if the events are processed on virtual threads, false if on the pool of platform threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return the number of events handed over and not yet processed
+     */
+    public int getInFlightEvents() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of FDNs with events in progress
+     */
+    public synchronized int getActiveFdnCount() {
+        return activeChains.size();
+    }
+
+    /**
+     * Appends the entry to the chain of its FDN, starting the chain if no event of the FDN is in progress.
+     *
+     * @return false if the executor no longer accepts tasks, the entries appended meanwhile to a chain which could not be started are then
+     *     processed on the calling thread
+     */
+    private boolean submit(final String fdn, final ChainEntry entry) {
+        if (fdn == null) {
+            return execute(() -> processAndRelease(entry));
+        }
+        final FdnChain chain;
+        synchronized (this) {
+            final FdnChain activeChain = activeChains.get(fdn);
+            if (activeChain != null) {
+                activeChain.entries.add(entry);
+                return true;
+            }
+            chain = new FdnChain(fdn);
+            chain.entries.add(entry);
+            activeChains.put(fdn, chain);
+        }
+        if (execute(chain)) {
+            return true;
+        }
+        final Queue<ChainEntry> strandedEntries;
+        synchronized (this) {
+            activeChains.remove(fdn);
+            chain.entries.remove(entry);
+            strandedEntries = new ArrayDeque<>(chain.entries);
+            chain.entries.clear();
+        }
+        for (final ChainEntry strandedEntry : strandedEntries) {
+            processAndRelease(strandedEntry);
+        }
+        return false;
+    }
+
+    private boolean execute(final Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (final RejectedExecutionException exception) {
+            logger.warn("Dispatcher is stopped, processing message on the session thread");
+            return false;
+        }
+    }
+
+    private void processAndRelease(final ChainEntry entry) {
+        try {
+            process(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void process(final ChainEntry entry) {
+        boolean leftForRedelivery = false;
+        try {
+            eventProcessor.accept(entry.message, entry.event);
+        } catch (final EventRedeliveryException exception) {
+            leftForRedelivery = true;
+        } catch (final Exception exception) {
+            logger.error("Exception :: {} while processing message :: {}", exception, entry.message);
+        } finally {
+            if (leftForRedelivery) {
+                entry.acknowledgementTracker.messageLeftForRedelivery(entry.message);
+            } else {
+                entry.acknowledgementTracker.messageProcessed(entry.message);
+            }
+        }
+    }
+
+    /**
+     * Creates an executor starting a named virtual thread per task, through reflection since virtual threads only exist from Java 21.
+     *
+     * @return the executor, or null if the JVM does not support virtual threads
+     */
+    static ExecutorService createVirtualThreadExecutor() {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Object namedBuilder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX + "-", 0L);
+            final ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(namedBuilder);
+            final Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (final ReflectiveOperationException | RuntimeException exception) {
+            logger.info("Virtual threads are not available on this JVM, using platform threads: {}", exception.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Events of one FDN waiting to be processed, drained in order by a single task at a time.
+     */
+    private final class FdnChain implements Runnable {
+        private final String fdn;
+        private final Queue<ChainEntry> entries = new ArrayDeque<>();
+
+        private FdnChain(final String fdn) {
+            this.fdn = fdn;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final ChainEntry entry;
+                synchronized (VirtualThreadEventDispatcher.this) {
+                    entry = entries.poll();
+                    if (entry == null) {
+                        activeChains.remove(fdn);
+                        return;
+                    }
+                }
+                processAndRelease(entry);
+            }
+        }
+    }
+
+    private static final class ChainEntry {
+        private final Message message;
+        private final Serializable event;
+        private final SessionAcknowledgementTracker acknowledgementTracker;
+
+        private ChainEntry(final Message message, final Serializable event, final SessionAcknowledgementTracker acknowledgementTracker) {
+            this.message = message;
+            this.event = event;
+            this.acknowledgementTracker = acknowledgementTracker;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.BiConsumer
+import java.util.function.BiPredicate
+import java.util.function.Consumer
+import java.util.function.Function
+import java.util.function.Predicate
+import javax.jms.Message
+import javax.jms.ObjectMessage
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * This class tests the BatchingEventDispatcher and the BulkEventsProcessorInvoker.
+ */
+class BatchingEventDispatcherSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+    Function<Message, Serializable> deserializer = { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>
+    Predicate<Serializable> bulkEligible = { it instanceof NodeNotification } as Predicate<Serializable>
+    List<Serializable> singleEvents = new CopyOnWriteArrayList<>()
+    List<Object> deliveries = new CopyOnWriteArrayList<>()
+    BiConsumer<Message, Serializable> eventProcessor = { message, event ->
+        singleEvents.add(event)
+        deliveries.add(event)
+    } as BiConsumer<Message, Serializable>
+    List<Message> rejectedMessages = new CopyOnWriteArrayList<>()
+    Consumer<Message> rejectedMessageHandler = { rejectedMessages.add(it) } as Consumer<Message>
+    BulkEventsProcessor bulkEventsProcessor = Mock(BulkEventsProcessor)
+    SessionAcknowledgementTracker tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+
+    def 'when the batch size is reached, the batch is delivered in one bulk call and the messages are reported as processed'() {
+        given: 'a dispatcher with a batch size of 3 and a long linger time'
+            def dispatcher = new BatchingEventDispatcher(3, 60000L, true, bulkProcessor(), deserializer, bulkEligible, eventProcessor,
+                rejectedMessageHandler)
+            def messages = (1..3).collect { createMessage("MeContext=ERBS$it") }
+
+        when: 'three events are dispatched'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+
+        then: 'one bulk call delivers the three events'
+            1 * bulkEventsProcessor.processEvents({ it.size() == 3 })
+            singleEvents.isEmpty()
+            tracker.getPendingAcknowledgements() == 3
+            dispatcher.getBatchSizeHistogram().getCount() == 1
+            dispatcher.getBatchSizeHistogram().getMax() == 3
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'when the linger time expires, the partial batch is delivered'() {
+        given: 'a dispatcher with a large batch size and a short linger time'
+            def dispatcher = new BatchingEventDispatcher(100, 50L, true, null, deserializer, bulkEligible, eventProcessor, rejectedMessageHandler)
+            def message = createMessage("MeContext=ERBS1")
+
+        when: 'a single event is dispatched'
+            tracker.messageReceived()
+            dispatcher.dispatch(message, tracker)
+
+        then: 'the event is delivered on its own once the linger time has expired'
+            conditions.eventually {
+                assert singleEvents.size() == 1
+                assert tracker.getPendingAcknowledgements() == 1
+            }
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'when the bulk call fails, the events are not delivered again one by one'() {
+        given: 'a dispatcher whose bulk call fails'
+            def dispatcher = new BatchingEventDispatcher(2, 60000L, true, bulkProcessor(), deserializer, bulkEligible, eventProcessor,
+                rejectedMessageHandler)
+            bulkEventsProcessor.processEvents(_) >> { throw new IllegalStateException("processor unavailable") }
+            def messages = (1..2).collect { createMessage("MeContext=ERBS$it") }
+
+        when: 'two events are dispatched'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+
+        then: 'no event is delivered twice, and both messages are reported as processed'
+            singleEvents.isEmpty()
+            tracker.getPendingAcknowledgements() == 2
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'when the bulk entry point is not supported, the events of this batch and of the later ones are delivered one by one'() {
+        given: 'a dispatcher whose bulk processing reports that the bulk entry point is not supported'
+            def bulkCalls = 0
+            def dispatcher = new BatchingEventDispatcher(2, 60000L, true, { messages, events ->
+                bulkCalls++
+                return false
+            } as BiPredicate<List<Message>, List<Serializable>>, deserializer, bulkEligible, eventProcessor, rejectedMessageHandler)
+            def messages = (1..4).collect { createMessage("MeContext=ERBS$it") }
+
+        when: 'two batches of events are dispatched'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+
+        then: 'the bulk entry point is only tried once and every event is delivered one by one'
+            bulkCalls == 1
+            singleEvents.size() == 4
+            tracker.getPendingAcknowledgements() == 4
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'the events which cannot be delivered in bulk are delivered between the bulk calls, in the order they were received'() {
+        given: 'a dispatcher with a batch size of 5 recording the bulk and single deliveries'
+            def dispatcher = new BatchingEventDispatcher(5, 60000L, true, { messages, events ->
+                deliveries.add(events.collect { it.fdn })
+                return true
+            } as BiPredicate<List<Message>, List<Serializable>>, deserializer, bulkEligible, eventProcessor, rejectedMessageHandler)
+            def messages = [createMessage("MeContext=ERBS1"), createMessage("MeContext=ERBS2"), createOtherMessage("other event"),
+                            createMessage("MeContext=ERBS3"), createMessage("MeContext=ERBS4")]
+
+        when: 'a batch with an event not eligible for the bulk entry point in the middle is dispatched'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+
+        then: 'the events before it are delivered in bulk, then the event on its own, then the events after it in bulk'
+            deliveries == [["MeContext=ERBS1", "MeContext=ERBS2"], "other event", ["MeContext=ERBS3", "MeContext=ERBS4"]]
+            tracker.getPendingAcknowledgements() == 5
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'a batch is not delivered while an earlier batch is still being delivered by another thread'() {
+        given: 'a dispatcher with a batch size of 1 whose first bulk call blocks'
+            def firstCallStarted = new CountDownLatch(1)
+            def release = new CountDownLatch(1)
+            def dispatcher = new BatchingEventDispatcher(1, 60000L, true, { messages, events ->
+                if (events[0].fdn == "MeContext=ERBS1") {
+                    firstCallStarted.countDown()
+                    release.await()
+                }
+                deliveries.add(events[0].fdn)
+                return true
+            } as BiPredicate<List<Message>, List<Serializable>>, deserializer, bulkEligible, eventProcessor, rejectedMessageHandler)
+
+        when: 'the first event is dispatched by one session and the second by another once the first is being delivered'
+            Thread.start {
+                tracker.messageReceived()
+                dispatcher.dispatch(createMessage("MeContext=ERBS1"), tracker)
+            }
+            firstCallStarted.await(5, TimeUnit.SECONDS)
+            def secondSession = Thread.start {
+                tracker.messageReceived()
+                dispatcher.dispatch(createMessage("MeContext=ERBS2"), tracker)
+            }
+            secondSession.join(300)
+
+        then: 'the second batch waits for the first one'
+            secondSession.isAlive()
+            deliveries.isEmpty()
+
+        when: 'the first bulk call completes'
+            release.countDown()
+
+        then: 'the batches are delivered in the order they were filled'
+            conditions.eventually {
+                assert deliveries == ["MeContext=ERBS1", "MeContext=ERBS2"]
+            }
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'when the per-event fallback is disabled, the messages of a batch the processor does not support are rejected'() {
+        given: 'a dispatcher without per-event fallback whose bulk processing reports that the bulk entry point is not supported'
+            def unsupportedBulkProcessor = { messages, events -> false } as BiPredicate<List<Message>, List<Serializable>>
+            def dispatcher = new BatchingEventDispatcher(2, 60000L, false, unsupportedBulkProcessor, deserializer, bulkEligible, eventProcessor,
+                rejectedMessageHandler)
+            def messages = (1..2).collect { createMessage("MeContext=ERBS$it") }
+
+        when: 'a batch of events is dispatched'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+
+        then: 'the messages are rejected instead of being delivered one by one'
+            singleEvents.isEmpty()
+            rejectedMessages == messages
+            tracker.getPendingAcknowledgements() == 2
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'when the per-event fallback is disabled, a dispatcher cannot be created without a bulk entry point'() {
+        when: 'a dispatcher without per-event fallback is created for a processor API without bulk entry point'
+            new BatchingEventDispatcher(2, 60000L, false, null, deserializer, bulkEligible, eventProcessor, rejectedMessageHandler)
+
+        then: 'the creation fails'
+            thrown(IllegalStateException)
+    }
+
+    def 'when the dispatcher is stopped, the current batch is delivered'() {
+        given: 'a dispatcher with one event waiting'
+            def dispatcher = new BatchingEventDispatcher(100, 60000L, true, null, deserializer, bulkEligible, eventProcessor, rejectedMessageHandler)
+            def message = createMessage("MeContext=ERBS1")
+            tracker.messageReceived()
+            dispatcher.dispatch(message, tracker)
+
+        when: 'the dispatcher is stopped'
+            dispatcher.stop(1000L)
+
+        then: 'the event is delivered'
+            singleEvents.size() == 1
+            tracker.getPendingAcknowledgements() == 1
+    }
+
+    def 'the bulk entry point is only found when the processor interface offers a processEvents method taking a list'() {
+        expect:
+            BulkEventsProcessorInvoker.findBulkMethod(BulkEventsProcessor) != null
+            BulkEventsProcessorInvoker.findBulkMethod(Runnable) == null
+    }
+
+    def 'an unsupported operation raised anywhere in the cause chain of a bulk call means the bulk entry point is not supported'() {
+        expect:
+            BulkEventsProcessorInvoker.isUnsupportedOperation(failure) == unsupported
+
+        where:
+            failure                                                             | unsupported
+            new UnsupportedOperationException()                                 | true
+            new RuntimeException(new AbstractMethodError("processEvents"))      | true
+            new IllegalStateException("processor unavailable")                  | false
+    }
+
+    def bulkProcessor() {
+        return { messages, events ->
+            bulkEventsProcessor.processEvents(events)
+            return true
+        } as BiPredicate<List<Message>, List<Serializable>>
+    }
+
+    def createMessage(String fdn) {
+        def nodeNotification = new NodeNotification()
+        nodeNotification.setFdn(fdn)
+        def message = Mock(ObjectMessage)
+        message.getObject() >> nodeNotification
+        return message
+    }
+
+    def createOtherMessage(String event) {
+        def message = Mock(ObjectMessage)
+        message.getObject() >> event
+        return message
+    }
+
+    interface BulkEventsProcessor {
+        void processEvents(List<Serializable> events)
+    }
+}
@@ -0,0 +1,97 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import spock.lang.Specification
+
+/**
+ * This class tests the CircuitBreaker.
+ */
+class CircuitBreakerSpec extends Specification {
+
+    def 'the circuit opens after the configured number of consecutive failures'() {
+        given: 'a circuit breaker opening after 3 failures'
+            def circuitBreaker = new CircuitBreaker("processor", 3, 60000L)
+
+        when: 'two failures are separated by a success and followed by two more failures'
+            circuitBreaker.recordFailure()
+            circuitBreaker.recordSuccess()
+            circuitBreaker.recordFailure()
+            circuitBreaker.recordFailure()
+
+        then: 'the circuit is still closed'
+            circuitBreaker.getState() == CircuitBreaker.State.CLOSED
+
+        when: 'a third consecutive failure is recorded'
+            circuitBreaker.recordFailure()
+
+        then: 'the circuit is open'
+            circuitBreaker.getState() == CircuitBreaker.State.OPEN
+            circuitBreaker.getOpenCount() == 1
+    }
+
+    def 'while the circuit is open, callers wait until a trial call is permitted'() {
+        given: 'an open circuit breaker with an open period of 200 ms'
+            def circuitBreaker = new CircuitBreaker("processor", 1, 200L)
+            circuitBreaker.recordFailure()
+            def startMillis = System.currentTimeMillis()
+
+        when: 'a caller asks for permission'
+            circuitBreaker.awaitPermission()
+
+        then: 'it is let through as trial call once the open period has elapsed'
+            System.currentTimeMillis() - startMillis >= 150L
+            circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN
+
+        when: 'the trial call succeeds'
+            circuitBreaker.recordSuccess()
+
+        then: 'the circuit is closed'
+            circuitBreaker.getState() == CircuitBreaker.State.CLOSED
+    }
+
+    def 'when the trial call fails, the circuit opens again'() {
+        given: 'a half open circuit breaker'
+            def circuitBreaker = new CircuitBreaker("processor", 1, 10L)
+            circuitBreaker.recordFailure()
+            circuitBreaker.awaitPermission()
+
+        when: 'the trial call fails'
+            circuitBreaker.recordFailure()
+
+        then: 'the circuit is open again'
+            circuitBreaker.getState() == CircuitBreaker.State.OPEN
+            circuitBreaker.getOpenCount() == 2
+    }
+
+    def 'when the circuit breaker is released, waiting callers are let through'() {
+        given: 'a caller waiting on an open circuit breaker'
+            def circuitBreaker = new CircuitBreaker("processor", 1, 60000L)
+            circuitBreaker.recordFailure()
+            def permitted = new CountDownLatch(1)
+            Thread.start {
+                circuitBreaker.awaitPermission()
+                permitted.countDown()
+            }
+
+        expect: 'the caller waits'
+            !permitted.await(100, TimeUnit.MILLISECONDS)
+
+        when: 'the circuit breaker is released'
+            circuitBreaker.release()
+
+        then: 'the caller is let through'
+            permitted.await(5, TimeUnit.SECONDS)
+    }
+}
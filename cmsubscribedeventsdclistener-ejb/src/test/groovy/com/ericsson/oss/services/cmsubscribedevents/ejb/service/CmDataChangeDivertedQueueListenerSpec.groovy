@@ -20,6 +20,7 @@ import com.ericsson.oss.mediation.notifications.ComEcimNodeNotificationListType
 import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
 import com.ericsson.oss.services.cmsubscribedevents.api.SubscribedEventsProcessor
 
+import java.util.function.Consumer
 import javax.jms.BytesMessage
 import javax.jms.ObjectMessage
 import spock.lang.Specification
@@ -43,8 +44,9 @@ class CmDataChangeDivertedQueueListenerSpec extends Specification {
             def objectMessage = Mock(ObjectMessage)
             objectMessage.getObject() >> attributeChangedEvent
 
-        and: 'Mock for logger is set'
+        and: 'Mock for logger is set with DEBUG enabled'
             cmDataChangeDivertedQueueListener.logger = Mock(Logger)
+            cmDataChangeDivertedQueueListener.logger.isDebugEnabled() >> true
 
         and: 'Mock for eventsProcessor is set'
             cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
@@ -67,8 +69,9 @@ class CmDataChangeDivertedQueueListenerSpec extends Specification {
             def objectMessage = Mock(ObjectMessage)
             objectMessage.getObject() >> comEcimNodeNotification
 
-        and: 'Mock for logger is set'
+        and: 'Mock for logger is set with DEBUG enabled'
             cmDataChangeDivertedQueueListener.logger = Mock(Logger)
+            cmDataChangeDivertedQueueListener.logger.isDebugEnabled() >> true
 
         and: 'Mock for eventsProcessor is set'
             cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
@@ -92,8 +95,9 @@ class CmDataChangeDivertedQueueListenerSpec extends Specification {
             def objectMessage = Mock(ObjectMessage)
             objectMessage.getObject() >> nodeNotification
 
-        and: 'Mock for logger is set'
+        and: 'Mock for logger is set with DEBUG enabled'
             cmDataChangeDivertedQueueListener.logger = Mock(Logger)
+            cmDataChangeDivertedQueueListener.logger.isDebugEnabled() >> true
 
         and: 'Mock for eventsProcessor is set'
             cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
@@ -106,6 +110,53 @@ class CmDataChangeDivertedQueueListenerSpec extends Specification {
             1 * cmDataChangeDivertedQueueListener.eventsProcessor.processEvent(nodeNotification);
     }
 
+    def 'when DEBUG is disabled, no per event diagnostics are logged but the events are counted'() {
+        given: 'NodeNotification event is created'
+            def nodeNotification = new NodeNotification()
+            nodeNotification.setFdn("MeContext=LTE02ERBS00006")
+            def objectMessage = Mock(ObjectMessage)
+            objectMessage.getObject() >> nodeNotification
+
+        and: 'Mock for logger is set with DEBUG disabled'
+            cmDataChangeDivertedQueueListener.logger = Mock(Logger)
+            cmDataChangeDivertedQueueListener.logger.isDebugEnabled() >> false
+
+        and: 'Mock for eventsProcessor is set'
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
+
+        when: 'Received the NodeNotification event 3 times in listener'
+            3.times { cmDataChangeDivertedQueueListener.onMessage(objectMessage) }
+
+        then: 'Nothing is logged and the events are processed and counted'
+            0 * cmDataChangeDivertedQueueListener.logger.debug(*_)
+            0 * cmDataChangeDivertedQueueListener.logger.info(*_)
+            3 * cmDataChangeDivertedQueueListener.eventsProcessor.processEvent(nodeNotification)
+            cmDataChangeDivertedQueueListener.getTotalEventCount() == 3
+    }
+
+    def 'when log sampling is configured, only one event out of N is logged'() {
+        given: 'NodeNotification event is created'
+            def nodeNotification = new NodeNotification()
+            nodeNotification.setFdn("MeContext=LTE02ERBS00006")
+            def objectMessage = Mock(ObjectMessage)
+            objectMessage.getObject() >> nodeNotification
+
+        and: 'Mock for logger is set with DEBUG enabled and one event out of 10 sampled'
+            cmDataChangeDivertedQueueListener.logger = Mock(Logger)
+            cmDataChangeDivertedQueueListener.logger.isDebugEnabled() >> true
+            cmDataChangeDivertedQueueListener.eventLogSampler = new LogSampler(10)
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
+
+        when: 'Received the NodeNotification event 20 times in listener'
+            20.times { cmDataChangeDivertedQueueListener.onMessage(objectMessage) }
+
+        then: 'Both diagnostics lines are logged for 2 of the 20 messages, never one without the other'
+            2 * cmDataChangeDivertedQueueListener.logger.debug('Object Message {} and totalEventCounter is {}', nodeNotification, _)
+            2 * cmDataChangeDivertedQueueListener.logger.debug(
+                'CPP Notification Event received in CmDataChangeDivertedQueue for MO FDN {} at DateTime {}', 'MeContext=LTE02ERBS00006', _)
+            0 * cmDataChangeDivertedQueueListener.logger.debug(*_)
+    }
+
     @Unroll
     def 'when null event is received in queue listener, corresponding error is logged'() {
         given: 'Mock for logger is set'
@@ -124,8 +175,9 @@ class CmDataChangeDivertedQueueListenerSpec extends Specification {
             def objectMessage = Mock(ObjectMessage)
             objectMessage.getObject() >> null
 
-        and: 'Mock for logger is set'
+        and: 'Mock for logger is set with DEBUG enabled'
             cmDataChangeDivertedQueueListener.logger = Mock(Logger)
+            cmDataChangeDivertedQueueListener.logger.isDebugEnabled() >> true
 
         when: 'Received the event in listener'
             cmDataChangeDivertedQueueListener.onMessage(objectMessage)
@@ -166,7 +218,50 @@ class CmDataChangeDivertedQueueListenerSpec extends Specification {
             cmDataChangeDivertedQueueListener.onMessage(objectMessage)
 
         then: 'The corresponding debug logs are logged'
-            1 * cmDataChangeDivertedQueueListener.logger.info('Unexpected event {} with properties {}', objectMessage, objectMessage.getPropertyNames())
+            1 * cmDataChangeDivertedQueueListener.logger.info('Unexpected event {} with properties {}, {} unexpected events received since the last report',
+                objectMessage, objectMessage.getPropertyNames(), 1L)
+            cmDataChangeDivertedQueueListener.getUnexpectedEventCount() == 1
+    }
+
+    @Unroll
+    def 'when many events of an unexpected type are received, they are counted and reported at most once per interval'() {
+        given: 'an event of an unexpected type'
+            def dn = "SubNetwork=sub1,ManagedElement=LTE04dg2ERBS00035"
+            def comEcimNodeMultipleNotification = new ComEcimNodeMultipleNotification(dn, 3L, ComEcimNodeNotificationListType.SYNC_LIST, 1L)
+            def objectMessage = Mock(ObjectMessage)
+            objectMessage.getObject() >> comEcimNodeMultipleNotification
+
+        and: 'Mock for logger is set'
+            cmDataChangeDivertedQueueListener.logger = Mock(Logger)
+
+        when: 'Received the event 100 times in listener'
+            100.times { cmDataChangeDivertedQueueListener.onMessage(objectMessage) }
+
+        then: 'Only the first occurrence is logged and every occurrence is counted'
+            1 * cmDataChangeDivertedQueueListener.logger.info('Unexpected event {} with properties {}, {} unexpected events received since the last report', *_)
+            cmDataChangeDivertedQueueListener.getUnexpectedEventCount() == 100
+    }
+
+    @Unroll
+    def 'when a handler is registered for a new notification type, events of that type are handed to it'() {
+        given: 'a handler registered for ComEcimNodeMultipleNotification'
+            def dn = "SubNetwork=sub1,ManagedElement=LTE04dg2ERBS00035"
+            def comEcimNodeMultipleNotification = new ComEcimNodeMultipleNotification(dn, 3L, ComEcimNodeNotificationListType.SYNC_LIST, 1L)
+            def handled = []
+            cmDataChangeDivertedQueueListener.getNotificationHandlerRegistry().register(ComEcimNodeMultipleNotification, { handled.add(it) } as Consumer)
+            def objectMessage = Mock(ObjectMessage)
+            objectMessage.getObject() >> comEcimNodeMultipleNotification
+
+        and: 'Mock for logger is set'
+            cmDataChangeDivertedQueueListener.logger = Mock(Logger)
+
+        when: 'Received the event in listener'
+            cmDataChangeDivertedQueueListener.onMessage(objectMessage)
+
+        then: 'The event is handled and not reported as unexpected'
+            handled == [comEcimNodeMultipleNotification]
+            0 * cmDataChangeDivertedQueueListener.logger.info(*_)
+            cmDataChangeDivertedQueueListener.getUnexpectedEventCount() == 0
     }
 
     @Unroll
@@ -194,6 +289,297 @@ class CmDataChangeDivertedQueueListenerSpec extends Specification {
             2000       | 1
     }
 
+    def 'when node rate limiting is enabled without dispatcher property, the priority lanes it relies on are selected'() {
+        given: 'node rate limiting is enabled without dispatcher property'
+            System.setProperty(NodeRateLimiter.RATE_LIMIT_ENABLED_PROPERTY, "true")
+
+        when: 'the listener is initialized'
+            cmDataChangeDivertedQueueListener.init()
+
+        then: 'the events are dispatched to the priority lanes with an overflow lane'
+            cmDataChangeDivertedQueueListener.getEventDispatcher() instanceof PriorityLaneDispatcher
+            ((PriorityLaneDispatcher) cmDataChangeDivertedQueueListener.getEventDispatcher()).getNodeRateLimiter() != null
+
+        cleanup:
+            cmDataChangeDivertedQueueListener.destroy()
+            System.clearProperty(NodeRateLimiter.RATE_LIMIT_ENABLED_PROPERTY)
+    }
+
+    def 'when node rate limiting is enabled with another dispatcher, the listener is rejected'() {
+        given: 'node rate limiting is enabled and the FDN partitioned dispatcher is configured'
+            System.setProperty(NodeRateLimiter.RATE_LIMIT_ENABLED_PROPERTY, "true")
+            System.setProperty(EventDispatcherType.DISPATCHER_PROPERTY, "partitioned")
+
+        when: 'the listener is initialized'
+            cmDataChangeDivertedQueueListener.init()
+
+        then: 'the initialization fails instead of silently processing the events without limit'
+            thrown(IllegalStateException)
+
+        cleanup:
+            cmDataChangeDivertedQueueListener.destroy()
+            System.clearProperty(NodeRateLimiter.RATE_LIMIT_ENABLED_PROPERTY)
+            System.clearProperty(EventDispatcherType.DISPATCHER_PROPERTY)
+    }
+
+    def 'the event dispatcher is selected by the dispatcher property'() {
+        given: 'the coalescing dispatcher is configured'
+            System.setProperty(EventDispatcherType.DISPATCHER_PROPERTY, "coalescing")
+
+        when: 'the listener is initialized'
+            cmDataChangeDivertedQueueListener.init()
+
+        then: 'the events are dispatched to the coalescing dispatcher'
+            cmDataChangeDivertedQueueListener.getEventDispatcher() instanceof CoalescingEventDispatcher
+
+        cleanup:
+            cmDataChangeDivertedQueueListener.destroy()
+            System.clearProperty(EventDispatcherType.DISPATCHER_PROPERTY)
+    }
+
+    def 'when no dispatcher is configured, the events are processed on the session threads'() {
+        when: 'the listener is initialized without dispatcher property'
+            cmDataChangeDivertedQueueListener.init()
+
+        then: 'no dispatcher is started'
+            cmDataChangeDivertedQueueListener.getEventDispatcher() == null
+    }
+
+    def 'when the dispatcher property is not a known dispatcher, the listener is rejected instead of silently using another one'() {
+        given: 'an unknown dispatcher is configured'
+            System.setProperty(EventDispatcherType.DISPATCHER_PROPERTY, "coalescing,batching")
+
+        when: 'the listener is initialized'
+            cmDataChangeDivertedQueueListener.init()
+
+        then: 'the initialization fails and no dispatcher is started'
+            thrown(IllegalStateException)
+            cmDataChangeDivertedQueueListener.getEventDispatcher() == null
+
+        cleanup:
+            System.clearProperty(EventDispatcherType.DISPATCHER_PROPERTY)
+    }
+
+    def 'when the maximum acknowledgement delay has expired, the session thread acknowledges the message it has processed'() {
+        given: 'a DPS event message and a session whose maximum acknowledgement delay has expired'
+            def objectMessage = Mock(ObjectMessage)
+            objectMessage.getObject() >> createAttributeChangeEvent("NetworkElement=LTE04dg2ERBS00035,CmFunction=1")
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 0L)
+
+        when: 'the message is delivered by the session'
+            cmDataChangeDivertedQueueListener.onMessage(objectMessage, tracker)
+
+        then: 'it is acknowledged once processed, before the session thread returns'
+            1 * cmDataChangeDivertedQueueListener.eventsProcessor.processEvent(_)
+
+        then:
+            1 * objectMessage.acknowledge()
+            tracker.getPendingAcknowledgements() == 0
+    }
+
+    def 'when an already forwarded message is redelivered, it is acknowledged without being processed again'() {
+        given: 'a DPS event message and its redelivery'
+            def fdn = "NetworkElement=LTE04dg2ERBS00035,CmFunction=1"
+            def attributeChangedEvent = createAttributeChangeEvent(fdn)
+            def objectMessage = Mock(ObjectMessage)
+            objectMessage.getJMSMessageID() >> "ID:1"
+            objectMessage.getObject() >> attributeChangedEvent
+            def redeliveredMessage = Mock(ObjectMessage)
+            redeliveredMessage.getJMSMessageID() >> "ID:1"
+            redeliveredMessage.getJMSRedelivered() >> true
+            cmDataChangeDivertedQueueListener.redeliveredMessageFilter = new RedeliveredMessageFilter()
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
+            def tracker = new SessionAcknowledgementTracker("session-0", 1, 60000L)
+
+        when: 'the message is received'
+            cmDataChangeDivertedQueueListener.onMessage(objectMessage, tracker)
+
+        then: 'it is processed'
+            1 * cmDataChangeDivertedQueueListener.eventsProcessor.processEvent(attributeChangedEvent)
+
+        when: 'the message is redelivered'
+            cmDataChangeDivertedQueueListener.onMessage(redeliveredMessage, tracker)
+
+        then: 'it is acknowledged without being deserialized or processed'
+            0 * redeliveredMessage.getObject()
+            0 * cmDataChangeDivertedQueueListener.eventsProcessor._
+            1 * redeliveredMessage.acknowledge()
+            cmDataChangeDivertedQueueListener.getSuppressedDuplicateCount() == 1
+    }
+
+    def 'when a message received but never processed is redelivered, it is processed'() {
+        given: 'a DPS event message and its redelivery'
+            def attributeChangedEvent = createAttributeChangeEvent("NetworkElement=LTE04dg2ERBS00035,CmFunction=1")
+            def objectMessage = Mock(ObjectMessage)
+            objectMessage.getJMSMessageID() >> "ID:1"
+            def redeliveredMessage = Mock(ObjectMessage)
+            redeliveredMessage.getJMSMessageID() >> "ID:1"
+            redeliveredMessage.getJMSRedelivered() >> true
+            redeliveredMessage.getObject() >> attributeChangedEvent
+            cmDataChangeDivertedQueueListener.redeliveredMessageFilter = new RedeliveredMessageFilter()
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
+            def tracker = new SessionAcknowledgementTracker("session-0", 1, 60000L)
+
+        and: 'a dispatcher which loses the message, as when its connection is abandoned'
+            cmDataChangeDivertedQueueListener.eventDispatcher = Mock(EventDispatcher)
+
+        when: 'the message is received'
+            cmDataChangeDivertedQueueListener.onMessage(objectMessage, tracker)
+
+        then: 'it is not processed'
+            0 * cmDataChangeDivertedQueueListener.eventsProcessor._
+
+        when: 'the message is redelivered to a session processing its messages itself'
+            cmDataChangeDivertedQueueListener.eventDispatcher = null
+            cmDataChangeDivertedQueueListener.onMessage(redeliveredMessage, tracker)
+
+        then: 'it is processed'
+            1 * cmDataChangeDivertedQueueListener.eventsProcessor.processEvent(attributeChangedEvent)
+            cmDataChangeDivertedQueueListener.getSuppressedDuplicateCount() == 0
+    }
+
+    def 'when the processing of an event fails permanently, its message is dead-lettered'() {
+        given: 'a DPS event message whose processing fails'
+            def attributeChangedEvent = createAttributeChangeEvent("NetworkElement=LTE04dg2ERBS00035,CmFunction=1")
+            def objectMessage = Mock(ObjectMessage)
+            objectMessage.getObject() >> attributeChangedEvent
+            def failure = new ClassCastException("NodeNotification")
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor) {
+                processEvent(attributeChangedEvent) >> { throw failure }
+            }
+            def eventFailureHandler = new EventFailureHandler()
+            eventFailureHandler.deadLetterPublisher = Mock(DeadLetterPublisher)
+            cmDataChangeDivertedQueueListener.eventFailureHandler = eventFailureHandler
+
+        when: 'the message is received'
+            cmDataChangeDivertedQueueListener.onMessage(objectMessage)
+
+        then: 'the message is dead-lettered and the failure counted'
+            1 * eventFailureHandler.deadLetterPublisher.publish(objectMessage, failure, FailureClassifier.FailureType.PERMANENT, 1)
+            cmDataChangeDivertedQueueListener.getEventMetrics().getProcessingErrorCount() == 1
+    }
+
+    def 'when events are processed, the event metrics are recorded per notification type'() {
+        given: 'a NodeNotification message sent 2 seconds ago and a DPS event message'
+            def nodeNotificationMessage = Mock(ObjectMessage)
+            nodeNotificationMessage.getObject() >> new NodeNotification()
+            nodeNotificationMessage.getJMSTimestamp() >> System.currentTimeMillis() - 2000L
+            def dpsMessage = Mock(ObjectMessage)
+            dpsMessage.getObject() >> createAttributeChangeEvent("NetworkElement=LTE04dg2ERBS00035,CmFunction=1")
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
+
+        when: 'the messages are received'
+            2.times { cmDataChangeDivertedQueueListener.onMessage(nodeNotificationMessage) }
+            cmDataChangeDivertedQueueListener.onMessage(dpsMessage)
+            def eventMetrics = cmDataChangeDivertedQueueListener.getEventMetrics()
+
+        then: 'the events are counted per type and timed'
+            eventMetrics.getEventCounts() == ["DpsAttributeChangedEvent": 1L, "NodeNotification": 2L]
+            eventMetrics.getProcessingLatencyMicros()["NodeNotification"].count == 2
+            eventMetrics.getDeserializationMicros().count == 3
+
+        and: 'the age of the messages with a JMS timestamp is recorded'
+            eventMetrics.getMessageAgeMillis().count == 2
+            eventMetrics.getMessageAgeMillis().max >= 2000L
+    }
+
+    def 'when a session has its own notification dispatch, the events it delivers are handed over to that dispatch'() {
+        given: 'a NodeNotification message and a dispatch accepting every event'
+            def nodeNotification = new NodeNotification()
+            def objectMessage = Mock(ObjectMessage)
+            objectMessage.getObject() >> nodeNotification
+            def tracker = new SessionAcknowledgementTracker("session-0", 1, 60000L)
+            List<Serializable> dispatched = []
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
+
+        when: 'the message is received'
+            cmDataChangeDivertedQueueListener.onMessage(objectMessage, tracker, { dispatched.add(it) })
+
+        then: 'the event is dispatched by the session dispatch instead of the registry, and counted as processed'
+            dispatched == [nodeNotification]
+            0 * cmDataChangeDivertedQueueListener.eventsProcessor.processEvent(_)
+            cmDataChangeDivertedQueueListener.getEventMetrics().getEventCounts() == ["NodeNotification": 1L]
+    }
+
+    def 'when latency tracing is enabled, the stages of the traced events are recorded'() {
+        given: 'a tracer of every message and a NodeNotification message sent 1 second ago'
+            cmDataChangeDivertedQueueListener.eventLatencyTracer = new EventLatencyTracer(1, 10)
+            def nodeNotificationMessage = Mock(ObjectMessage)
+            nodeNotificationMessage.getObject() >> new NodeNotification()
+            nodeNotificationMessage.getJMSTimestamp() >> System.currentTimeMillis() - 1000L
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
+
+        when: 'the message is received'
+            cmDataChangeDivertedQueueListener.onMessage(nodeNotificationMessage)
+            def stageLatencies = cmDataChangeDivertedQueueListener.getEventLatencyTracer().getStageLatencyMicros()
+
+        then: 'the stages from the broker to the delivery are recorded and the trace is ended'
+            stageLatencies.get("BROKER_TO_LISTENER").count == 1
+            stageLatencies.get("BROKER_TO_LISTENER").max >= 1000000L
+            stageLatencies.get("RECEIVE_TO_DESERIALIZED").count == 1
+            stageLatencies.get("DESERIALIZED_TO_DELIVERED").count == 1
+            cmDataChangeDivertedQueueListener.getEventLatencyTracer().getTracesInFlight() == 0
+    }
+
+    def 'the trace ID of every event is set while it is processed, whether or not its latency is traced'() {
+        given: 'latency tracing of one message out of 100 and two messages with a correlation ID and a message ID'
+            cmDataChangeDivertedQueueListener.eventLatencyTracer = new EventLatencyTracer(100, 10)
+            def correlatedMessage = Mock(ObjectMessage)
+            correlatedMessage.getObject() >> new NodeNotification()
+            correlatedMessage.getJMSCorrelationID() >> "correlation-1"
+            def message = Mock(ObjectMessage)
+            message.getObject() >> new NodeNotification()
+            message.getJMSMessageID() >> "ID:message-2"
+            def traceIds = []
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor) {
+                processEvent(_) >> { traceIds << EventTraceContext.get() }
+            }
+
+        when: 'the messages are received'
+            cmDataChangeDivertedQueueListener.onMessage(correlatedMessage)
+            cmDataChangeDivertedQueueListener.onMessage(message)
+
+        then: 'the trace ID of each event is set during its processing and cleared afterwards'
+            traceIds == ["correlation-1", "ID:message-2"]
+            EventTraceContext.get() == null
+    }
+
+    def 'when a NodeNotification is received, its deserialization is timed per notification type'() {
+        given: 'a NodeNotification carried by an ObjectMessage'
+            def nodeNotification = new NodeNotification()
+            nodeNotification.setFdn("MeContext=ERBS1")
+            def objectMessage = Mock(ObjectMessage)
+            objectMessage.getObject() >> nodeNotification
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
+
+        when: 'the message is received'
+            cmDataChangeDivertedQueueListener.onMessage(objectMessage)
+
+        then: 'the event is processed and its deserialization is timed per type'
+            1 * cmDataChangeDivertedQueueListener.eventsProcessor.processEvent({ it instanceof NodeNotification && it.fdn == "MeContext=ERBS1" })
+            cmDataChangeDivertedQueueListener.getEventMetrics().getDeserializationMicrosPerType()["NodeNotification"].count == 1
+    }
+
+    def 'when the processing or the deserialization of an event fails, the errors are counted'() {
+        given: 'a message whose event cannot be processed and one which cannot be deserialized'
+            def failingMessage = Mock(ObjectMessage)
+            failingMessage.getObject() >> new NodeNotification()
+            def corruptedMessage = Mock(ObjectMessage)
+            corruptedMessage.getObject() >> { throw new IllegalStateException("corrupted") }
+            cmDataChangeDivertedQueueListener.logger = Mock(Logger)
+            cmDataChangeDivertedQueueListener.eventsProcessor = Mock(SubscribedEventsProcessor)
+            cmDataChangeDivertedQueueListener.eventsProcessor.processEvent(_ as NodeNotification) >> { throw new IllegalStateException("failed") }
+
+        when: 'the messages are received'
+            cmDataChangeDivertedQueueListener.onMessage(failingMessage)
+            cmDataChangeDivertedQueueListener.onMessage(corruptedMessage)
+
+        then: 'one processing error and one deserialization error are counted'
+            cmDataChangeDivertedQueueListener.getEventMetrics().getProcessingErrorCount() == 1
+            cmDataChangeDivertedQueueListener.getEventMetrics().getDeserializationErrorCount() == 1
+    }
+
     def createAttributeChangeEvent(String fdn) {
         def oldValue = "{UNSYNCHRONIZED}"
         def newValue = "{PENDING}"
@@ -13,9 +13,10 @@ package com.ericsson.oss.services.cmsubscribedevents.ejb.service
 
 import com.ericsson.cds.cdi.support.rule.ObjectUnderTest
 import spock.lang.Specification
-import spock.lang.Unroll
 
+import java.lang.management.ManagementFactory
 import javax.inject.Inject
+import javax.management.ObjectName
 
 /**
  * This class tests the CmSubscribedEventsStartupBean.
@@ -28,21 +29,94 @@ class CmSubscribedEventsStartupBeanSpec extends Specification {
     @Inject
     JmsQueueConnector jmsQueueConnector = Mock(JmsQueueConnector)
 
-    @Unroll
-    def 'when postConstruct and preDestroy methods are invoked from startup bean, jmsQueueConnector start listening and stop listening respectively'() {
+    @Inject
+    JmsConnectorLifecycle jmsConnectorLifecycle = Mock(JmsConnectorLifecycle)
+
+    @Inject
+    ConsumerPoolController consumerPoolController = Mock(ConsumerPoolController)
+
+    @Inject
+    CmDataChangeDivertedQueueListener cmDataChangeDivertedQueueListener = Mock(CmDataChangeDivertedQueueListener)
+
+    @Inject
+    EventFailureHandler eventFailureHandler = Mock(EventFailureHandler)
+
+    def setup() {
+        cmSubscribedEventsStartupBean.jmsConnectorLifecycle = jmsConnectorLifecycle
+        cmSubscribedEventsStartupBean.consumerPoolController = consumerPoolController
+        cmSubscribedEventsStartupBean.cmDataChangeDivertedQueueListener = cmDataChangeDivertedQueueListener
+        cmSubscribedEventsStartupBean.eventFailureHandler = eventFailureHandler
+    }
+
+    def 'when postConstruct and preDestroy methods are invoked from startup bean, the JMS connector is started and stopped respectively'() {
+        given:
+            cmSubscribedEventsStartupBean.jmsQueueConnector = jmsQueueConnector
+
+        when: 'init() is getting called'
+            cmSubscribedEventsStartupBean.init()
+
+        then: 'the JMS connector is started in the background'
+            1 * jmsConnectorLifecycle.start()
+            0 * jmsQueueConnector.startListening()
+
+        when: 'cleanup() is getting called'
+            cmSubscribedEventsStartupBean.cleanup()
+
+        then: 'the JMS connector is stopped'
+            1 * jmsConnectorLifecycle.stop()
+    }
+
+    def 'when the acknowledgement timer fires, jmsQueueConnector acknowledges the expired messages'() {
         given:
             cmSubscribedEventsStartupBean.jmsQueueConnector = jmsQueueConnector
 
+        when: 'acknowledgeExpiredMessages() is getting called'
+            cmSubscribedEventsStartupBean.acknowledgeExpiredMessages()
+
+        then: 'JmsQueueConnector acknowledgeExpiredMessages() is invoked'
+            1 * jmsQueueConnector.acknowledgeExpiredMessages()
+    }
+
+    def 'when the autoscaling timer fires, the consumer pool controller adjusts the consumer count'() {
+        when: 'adjustConsumerCount() is getting called'
+            cmSubscribedEventsStartupBean.adjustConsumerCount()
+
+        then: 'ConsumerPoolController adjustConsumerCount() is invoked'
+            1 * consumerPoolController.adjustConsumerCount(_ as Long)
+    }
+
+    def 'the metrics MBean is registered while the startup bean is active'() {
+        given: 'the JMS queue connector reports 3 consumers and is listening'
+            cmSubscribedEventsStartupBean.jmsQueueConnector = jmsQueueConnector
+            jmsQueueConnector.getConsumerCount() >> 3
+            jmsConnectorLifecycle.getState() >> JmsConnectorLifecycle.State.LISTENING
+            def objectName = new ObjectName(CmDataChangeDivertedQueueMetrics.OBJECT_NAME)
+            def mbeanServer = ManagementFactory.getPlatformMBeanServer()
+
         when: 'init() is getting called'
             cmSubscribedEventsStartupBean.init()
 
-        then: 'JmsQueueConnector startListening() is invoked'
-            1 * jmsQueueConnector.startListening()
+        then: 'the MBean is registered and reads the JMS queue connector'
+            mbeanServer.isRegistered(objectName)
+            mbeanServer.getAttribute(objectName, "ConsumerCount") == 3
+            mbeanServer.getAttribute(objectName, "ConnectorState") == "LISTENING"
 
         when: 'cleanup() is getting called'
             cmSubscribedEventsStartupBean.cleanup()
 
-        then: 'JmsQueueConnector stopListening() is invoked'
-            1 * jmsQueueConnector.stopListening()
+        then: 'the MBean is unregistered'
+            !mbeanServer.isRegistered(objectName)
+    }
+
+    def 'when the metrics timer fires, the event rates are updated'() {
+        given: 'the listener metrics'
+            def eventMetrics = Mock(EventMetrics)
+            cmDataChangeDivertedQueueListener.getEventMetrics() >> eventMetrics
+
+        when: 'updateEventRates() is getting called'
+            cmSubscribedEventsStartupBean.updateEventRates()
+
+        then: 'the rates are updated'
+            1 * eventMetrics.updateRates(_ as Long)
     }
-}
\ No newline at end of file
+}
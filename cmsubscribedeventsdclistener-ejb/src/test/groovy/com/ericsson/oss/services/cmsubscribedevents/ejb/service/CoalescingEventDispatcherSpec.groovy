@@ -0,0 +1,175 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.AttributeChangeData
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.DpsAttributeChangedEvent
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.DpsObjectDeletedEvent
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.function.BiConsumer
+import java.util.function.Function
+import javax.jms.Message
+import javax.jms.ObjectMessage
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * This class tests the CoalescingEventDispatcher.
+ */
+class CoalescingEventDispatcherSpec extends Specification {
+
+    static final String FDN = "NetworkElement=LTE04dg2ERBS00035,CmFunction=1"
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+    Function<Message, Serializable> deserializer = { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>
+    List<Serializable> deliveredEvents = new CopyOnWriteArrayList<>()
+    BiConsumer<Message, Serializable> eventProcessor = { message, event -> deliveredEvents.add(event) } as BiConsumer<Message, Serializable>
+    SessionAcknowledgementTracker tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+
+    def 'successive attribute changes of an MO are merged, keeping the first old value and the last new value'() {
+        given: 'a dispatcher with a long window and three changes of the same MO'
+            def dispatcher = new CoalescingEventDispatcher(60000L, 100, deserializer, eventProcessor)
+            def messages = [
+                createMessage(createAttributeChangedEvent(FDN, [new AttributeChangeData('syncStatus', 'UNSYNCHRONIZED', 'TOPOLOGY', null, null)])),
+                createMessage(createAttributeChangedEvent(FDN, [new AttributeChangeData('syncStatus', 'TOPOLOGY', 'ATTRIBUTE', null, null),
+                                                                new AttributeChangeData('userLabel', 'a', 'b', null, null)])),
+                createMessage(createAttributeChangedEvent(FDN, [new AttributeChangeData('syncStatus', 'ATTRIBUTE', 'SYNCHRONIZED', null, null)]))
+            ]
+
+        when: 'the changes are dispatched and the window expires'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+            def pendingBeforeFlush = tracker.getPendingAcknowledgements()
+            dispatcher.flushExpired(Long.MAX_VALUE)
+
+        then: 'a single event with the merged changes is delivered'
+            pendingBeforeFlush == 0
+            deliveredEvents.size() == 1
+            def changes = ((DpsAttributeChangedEvent) deliveredEvents[0]).changedAttributes.collectEntries { [it.name, [it.oldValue, it.newValue]] }
+            changes == [syncStatus: ['UNSYNCHRONIZED', 'SYNCHRONIZED'], userLabel: ['a', 'b']]
+
+        and: 'every message is reported as processed and the ratio is counted'
+            tracker.getPendingAcknowledgements() == 3
+            dispatcher.getReceivedChangeCount() == 3
+            dispatcher.getDeliveredChangeCount() == 1
+            dispatcher.getCoalescingRatio() == 3.0d
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'changes are not merged across a delete of the MO'() {
+        given: 'a dispatcher with a long window'
+            def dispatcher = new CoalescingEventDispatcher(60000L, 100, deserializer, eventProcessor)
+            def deletedEvent = new DpsObjectDeletedEvent()
+            deletedEvent.setFdn(FDN)
+            def messages = [
+                createMessage(createAttributeChangedEvent(FDN, [new AttributeChangeData('userLabel', 'a', 'b', null, null)])),
+                createMessage(deletedEvent),
+                createMessage(createAttributeChangedEvent(FDN, [new AttributeChangeData('userLabel', 'b', 'c', null, null)]))
+            ]
+
+        when: 'a change, a delete and a change of the same MO are dispatched'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+
+        then: 'the first change is delivered before the delete, the last change stays pending'
+            deliveredEvents.size() == 2
+            deliveredEvents[0] instanceof DpsAttributeChangedEvent
+            deliveredEvents[1] == deletedEvent
+            dispatcher.getPendingMoCount() == 1
+
+        when: 'the window expires'
+            dispatcher.flushExpired(Long.MAX_VALUE)
+
+        then: 'the last change is delivered on its own'
+            deliveredEvents.size() == 3
+            ((DpsAttributeChangedEvent) deliveredEvents[2]).changedAttributes*.newValue == ['c']
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'changes of different MOs are delivered separately once the window expires'() {
+        given: 'a dispatcher with a short window'
+            def dispatcher = new CoalescingEventDispatcher(50L, 100, deserializer, eventProcessor)
+            def messages = ['MeContext=ERBS1', 'MeContext=ERBS2'].collect {
+                createMessage(createAttributeChangedEvent(it, [new AttributeChangeData('userLabel', 'a', 'b', null, null)]))
+            }
+
+        when: 'changes of two MOs are dispatched'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+
+        then: 'both are delivered by the flush timer'
+            conditions.eventually {
+                assert deliveredEvents.size() == 2
+                assert tracker.getPendingAcknowledgements() == 2
+            }
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'when the maximum number of pending MOs is exceeded, the oldest changes are delivered immediately'() {
+        given: 'a dispatcher with at most one pending MO'
+            def dispatcher = new CoalescingEventDispatcher(60000L, 1, deserializer, eventProcessor)
+            def first = createAttributeChangedEvent('MeContext=ERBS1', [])
+            def messages = [createMessage(first), createMessage(createAttributeChangedEvent('MeContext=ERBS2', []))]
+
+        when: 'changes of two MOs are dispatched'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+
+        then: 'the change of the first MO is delivered'
+            deliveredEvents == [first]
+            dispatcher.getPendingMoCount() == 1
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'pending changes are delivered when the dispatcher stops'() {
+        given: 'a dispatcher with a pending change'
+            def dispatcher = new CoalescingEventDispatcher(60000L, 100, deserializer, eventProcessor)
+            def message = createMessage(createAttributeChangedEvent(FDN, []))
+            tracker.messageReceived()
+            dispatcher.dispatch(message, tracker)
+
+        when: 'the dispatcher stops'
+            dispatcher.stop(1000L)
+
+        then: 'the change is delivered'
+            deliveredEvents.size() == 1
+            tracker.getPendingAcknowledgements() == 1
+    }
+
+    private static DpsAttributeChangedEvent createAttributeChangedEvent(String fdn, List<AttributeChangeData> changes) {
+        return new DpsAttributeChangedEvent(namespace: "OSS_NE_CM_DEF", type: "CmFunction", version: "1.0.1", poId: 57010, fdn: fdn,
+            bucketName: "Live", changedAttributes: changes)
+    }
+
+    private Message createMessage(Serializable event) {
+        def message = Mock(ObjectMessage)
+        message.getObject() >> event
+        return message
+    }
+}
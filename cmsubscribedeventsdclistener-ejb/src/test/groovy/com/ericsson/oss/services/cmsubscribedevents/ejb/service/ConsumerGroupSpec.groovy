@@ -0,0 +1,81 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+
+import spock.lang.Specification
+
+/**
+ * This class tests the ConsumerGroup.
+ */
+class ConsumerGroupSpec extends Specification {
+
+    static final String CPP_GROUP_PREFIX = ConsumerGroup.CONSUMER_GROUP_PREFIX + "cpp"
+    static final String DPS_GROUP_PREFIX = ConsumerGroup.CONSUMER_GROUP_PREFIX + "dps"
+
+    def cleanup() {
+        System.clearProperty(ConsumerGroup.CONSUMER_GROUPS_PROPERTY)
+        [CPP_GROUP_PREFIX, DPS_GROUP_PREFIX].each { prefix ->
+            [ConsumerGroup.SELECTOR_SUFFIX, ConsumerGroup.CONSUMERS_SUFFIX, ConsumerGroup.NOTIFICATION_TYPE_SUFFIX].each { suffix ->
+                System.clearProperty(prefix + suffix)
+            }
+        }
+    }
+
+    def 'no consumer group is configured by default'() {
+        expect: 'no group'
+            ConsumerGroup.getConfiguredGroups().isEmpty()
+    }
+
+    def 'the configured consumer groups are read in order with their selector, consumer count and notification type'() {
+        given: 'a CPP group with a notification type and a DPS group with the default count'
+            System.setProperty(ConsumerGroup.CONSUMER_GROUPS_PROPERTY, " cpp, dps ,cpp")
+            System.setProperty(CPP_GROUP_PREFIX + ConsumerGroup.SELECTOR_SUFFIX, "eventType = 'NodeNotification'")
+            System.setProperty(CPP_GROUP_PREFIX + ConsumerGroup.CONSUMERS_SUFFIX, "4")
+            System.setProperty(CPP_GROUP_PREFIX + ConsumerGroup.NOTIFICATION_TYPE_SUFFIX, NodeNotification.name)
+            System.setProperty(DPS_GROUP_PREFIX + ConsumerGroup.SELECTOR_SUFFIX, "eventType LIKE 'Dps%'")
+
+        when: 'the groups are read'
+            def consumerGroups = ConsumerGroup.getConfiguredGroups()
+
+        then: 'each group is read once'
+            consumerGroups*.getName() == ["cpp", "dps"]
+            consumerGroups*.getSelector() == ["eventType = 'NodeNotification'", "eventType LIKE 'Dps%'"]
+            consumerGroups*.getConsumerCount() == [4, 1]
+            consumerGroups*.getNotificationType() == [NodeNotification, null]
+    }
+
+    def 'the complementary selector matches the messages selected by none of the groups'() {
+        given: 'a CPP group and a DPS group'
+            def consumerGroups = [new ConsumerGroup("cpp", "eventType = 'NodeNotification'", 1, null),
+                                  new ConsumerGroup("dps", "eventType LIKE 'Dps%'", 1, null)]
+
+        expect: 'the negation of the union of the group selectors, and no selector without group'
+            ConsumerGroup.getComplementarySelector(consumerGroups) == "NOT ((eventType = 'NodeNotification') OR (eventType LIKE 'Dps%'))"
+            ConsumerGroup.getComplementarySelector([]) == null
+    }
+
+    def 'a consumer group without selector is ignored and an unknown notification type is not used'() {
+        given: 'a CPP group with an unknown notification type and a DPS group without selector'
+            System.setProperty(ConsumerGroup.CONSUMER_GROUPS_PROPERTY, "cpp,dps")
+            System.setProperty(CPP_GROUP_PREFIX + ConsumerGroup.SELECTOR_SUFFIX, "eventType = 'NodeNotification'")
+            System.setProperty(CPP_GROUP_PREFIX + ConsumerGroup.NOTIFICATION_TYPE_SUFFIX, "com.example.UnknownNotification")
+
+        when: 'the groups are read'
+            def consumerGroups = ConsumerGroup.getConfiguredGroups()
+
+        then: 'only the CPP group is kept, without notification type'
+            consumerGroups*.getName() == ["cpp"]
+            consumerGroups[0].getNotificationType() == null
+    }
+}
@@ -0,0 +1,180 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import spock.lang.Specification
+
+/**
+ * This class tests the ConsumerPoolController.
+ */
+class ConsumerPoolControllerSpec extends Specification {
+
+    JmsQueueConnector jmsQueueConnector = Mock(JmsQueueConnector)
+    SessionAcknowledgementTracker firstTracker = new SessionAcknowledgementTracker("session-0", 2000, 5000L)
+    SessionAcknowledgementTracker secondTracker = new SessionAcknowledgementTracker("session-1", 2000, 5000L)
+
+    def setup() {
+        System.setProperty(ConsumerPoolController.AUTOSCALING_ENABLED_PROPERTY, "true")
+        System.setProperty(ConsumerPoolController.MIN_CONSUMERS_PROPERTY, "1")
+        System.setProperty(ConsumerPoolController.MAX_CONSUMERS_PROPERTY, "4")
+        System.setProperty(ConsumerPoolController.STABLE_EVALUATIONS_PROPERTY, "2")
+        System.setProperty(ConsumerPoolController.COOLDOWN_PROPERTY, "60000")
+        jmsQueueConnector.getScalableAcknowledgementTrackers() >> [firstTracker, secondTracker]
+    }
+
+    def cleanup() {
+        [ConsumerPoolController.AUTOSCALING_ENABLED_PROPERTY, ConsumerPoolController.MIN_CONSUMERS_PROPERTY,
+         ConsumerPoolController.MAX_CONSUMERS_PROPERTY, ConsumerPoolController.STABLE_EVALUATIONS_PROPERTY,
+         ConsumerPoolController.COOLDOWN_PROPERTY].each { System.clearProperty(it) }
+    }
+
+    def 'when autoscaling is disabled, the consumers are never changed'() {
+        given: 'autoscaling is disabled'
+            System.clearProperty(ConsumerPoolController.AUTOSCALING_ENABLED_PROPERTY)
+            def controller = createController()
+
+        when: 'the consumer count is adjusted'
+            controller.adjustConsumerCount(100000L)
+
+        then: 'the connector is not used'
+            0 * jmsQueueConnector._
+    }
+
+    def 'when the sessions stay busy for the configured number of evaluations, a consumer is added'() {
+        given: 'two sessions with a message in flight and an empty queue'
+            def controller = createController()
+            jmsQueueConnector.getScalableConsumerCount() >> 2
+            jmsQueueConnector.browseQueueDepth(_) >> 0
+            firstTracker.messageReceived()
+            secondTracker.messageReceived()
+
+        when: 'the first evaluation records the baseline and the second observes the load'
+            controller.adjustConsumerCount(100000L)
+            sleep(5)
+            controller.adjustConsumerCount(110000L)
+
+        then: 'no consumer is added yet'
+            0 * jmsQueueConnector.addConsumer()
+
+        when: 'the load is observed a second time'
+            sleep(5)
+            controller.adjustConsumerCount(120000L)
+
+        then: 'a consumer is added'
+            1 * jmsQueueConnector.addConsumer() >> true
+
+        when: 'the load is still observed within the cool down period'
+            [130000L, 140000L, 150000L].each {
+                sleep(5)
+                controller.adjustConsumerCount(it)
+            }
+
+        then: 'no other consumer is added'
+            0 * jmsQueueConnector.addConsumer()
+    }
+
+    def 'when the sessions stay idle and the queue is empty, a consumer is removed'() {
+        given: 'two idle sessions and an empty queue'
+            def controller = createController()
+            jmsQueueConnector.getScalableConsumerCount() >> 2
+            jmsQueueConnector.browseQueueDepth(_) >> 0
+
+        when: 'the sessions are evaluated three times'
+            [100000L, 110000L, 120000L].each {
+                sleep(5)
+                controller.adjustConsumerCount(it)
+            }
+
+        then: 'a consumer is removed'
+            1 * jmsQueueConnector.removeConsumer() >> true
+            0 * jmsQueueConnector.addConsumer()
+    }
+
+    def 'when idle sessions have a backlog in the queue, a consumer is added instead of removed'() {
+        given: 'two idle sessions and 5000 queued messages'
+            def controller = createController()
+            jmsQueueConnector.getScalableConsumerCount() >> 2
+            jmsQueueConnector.browseQueueDepth(_) >> 5000
+
+        when: 'the sessions are evaluated three times'
+            [100000L, 110000L, 120000L].each {
+                sleep(5)
+                controller.adjustConsumerCount(it)
+            }
+
+        then: 'a consumer is added'
+            1 * jmsQueueConnector.addConsumer() >> true
+            0 * jmsQueueConnector.removeConsumer()
+    }
+
+    def 'when the load alternates between evaluations, the consumers are not changed'() {
+        given: 'two sessions and a queue alternately empty and deep'
+            def controller = createController()
+            jmsQueueConnector.getScalableConsumerCount() >> 2
+            jmsQueueConnector.browseQueueDepth(_) >>> [0, 5000, 0, 5000, 0]
+
+        when: 'the sessions are evaluated five times'
+            [100000L, 110000L, 120000L, 130000L, 140000L].each {
+                sleep(5)
+                controller.adjustConsumerCount(it)
+            }
+
+        then: 'no consumer is added or removed'
+            0 * jmsQueueConnector.addConsumer()
+            0 * jmsQueueConnector.removeConsumer()
+    }
+
+    def 'when there are fewer consumers than the minimum, a consumer is added immediately'() {
+        given: 'a minimum of 3 consumers'
+            System.setProperty(ConsumerPoolController.MIN_CONSUMERS_PROPERTY, "3")
+            def controller = createController()
+            jmsQueueConnector.getScalableConsumerCount() >> 2
+
+        when: 'the consumer count is adjusted'
+            controller.adjustConsumerCount(100000L)
+
+        then: 'a consumer is added'
+            1 * jmsQueueConnector.addConsumer() >> true
+    }
+
+    def 'when the connector is not listening, the consumers are not changed'() {
+        given: 'no consumer registered'
+            def controller = createController()
+            jmsQueueConnector.getScalableConsumerCount() >> 0
+
+        when: 'the consumer count is adjusted'
+            controller.adjustConsumerCount(100000L)
+
+        then: 'no consumer is added'
+            0 * jmsQueueConnector.addConsumer()
+    }
+
+    def 'the fixed consumers of the additional queues and consumer groups are not scaled'() {
+        given: 'two consumers of the first queue without selector among six registered consumers, above the maximum of 4'
+            def controller = createController()
+            jmsQueueConnector.getConsumerCount() >> 6
+            jmsQueueConnector.getScalableConsumerCount() >> 2
+            jmsQueueConnector.browseQueueDepth(_) >> 0
+
+        when: 'the consumer count is adjusted'
+            controller.adjustConsumerCount(100000L)
+
+        then: 'no consumer is removed since only the two scalable consumers are compared with the maximum'
+            0 * jmsQueueConnector.removeConsumer()
+    }
+
+    private ConsumerPoolController createController() {
+        def controller = new ConsumerPoolController()
+        controller.jmsQueueConnector = jmsQueueConnector
+        return controller
+    }
+}
@@ -0,0 +1,87 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import javax.jms.Message
+import spock.lang.Specification
+
+/**
+ * This class tests the DeadLetterPublisher.
+ */
+class DeadLetterPublisherSpec extends Specification {
+
+    JmsQueueConnector jmsQueueConnector = Mock(JmsQueueConnector)
+    Message message = Mock(Message)
+
+    def cleanup() {
+        System.clearProperty(DeadLetterPublisher.DEAD_LETTER_QUEUE_PROPERTY)
+    }
+
+    def 'a failed message is sent to the dead-letter queue with its original properties and the failure details'() {
+        given: 'a dead-letter queue is configured'
+            System.setProperty(DeadLetterPublisher.DEAD_LETTER_QUEUE_PROPERTY, "jms/queue/CmDataChangeDivertedDLQ")
+            def deadLetterPublisher = new DeadLetterPublisher()
+            deadLetterPublisher.jmsQueueConnector = jmsQueueConnector
+            message.getPropertyNames() >> Collections.enumeration(["nodeName"])
+            message.getObjectProperty("nodeName") >> "ERBS1"
+            message.getJMSMessageID() >> "ID:1"
+
+        when: 'a message is published'
+            deadLetterPublisher.publish(message, new RuntimeException("failed", new IOException("refused")),
+                FailureClassifier.FailureType.TRANSIENT, 3)
+
+        then: 'the original properties are kept'
+            1 * message.clearProperties()
+
+        then: 'the failure details are added'
+            1 * message.setObjectProperty("nodeName", "ERBS1")
+            1 * message.setStringProperty(DeadLetterPublisher.FAILURE_TYPE_PROPERTY, "TRANSIENT")
+            1 * message.setStringProperty(DeadLetterPublisher.FAILURE_REASON_PROPERTY,
+                "java.lang.RuntimeException: failed <- java.io.IOException: refused")
+            1 * message.setIntProperty(DeadLetterPublisher.FAILURE_ATTEMPTS_PROPERTY, 3)
+            1 * message.setStringProperty(DeadLetterPublisher.ORIGINAL_MESSAGE_ID_PROPERTY, "ID:1")
+
+        then: 'the message is sent to the dead-letter queue'
+            1 * jmsQueueConnector.sendToQueue("jms/queue/CmDataChangeDivertedDLQ", message) >> true
+            deadLetterPublisher.getDeadLetteredMessageCount() == 1
+            deadLetterPublisher.getDiscardedMessageCount() == 0
+    }
+
+    def 'when the dead-letter queue cannot be reached, the message is counted as discarded'() {
+        given: 'a dead-letter queue is configured'
+            System.setProperty(DeadLetterPublisher.DEAD_LETTER_QUEUE_PROPERTY, "jms/queue/CmDataChangeDivertedDLQ")
+            def deadLetterPublisher = new DeadLetterPublisher()
+            deadLetterPublisher.jmsQueueConnector = jmsQueueConnector
+            jmsQueueConnector.sendToQueue(*_) >> false
+
+        when: 'a message is published'
+            deadLetterPublisher.publish(message, new ClassCastException(), FailureClassifier.FailureType.PERMANENT, 1)
+
+        then: 'it is discarded'
+            deadLetterPublisher.getDeadLetteredMessageCount() == 0
+            deadLetterPublisher.getDiscardedMessageCount() == 1
+    }
+
+    def 'when no dead-letter queue is configured, the failed message is only logged'() {
+        given: 'no dead-letter queue is configured'
+            def deadLetterPublisher = new DeadLetterPublisher()
+            deadLetterPublisher.jmsQueueConnector = jmsQueueConnector
+
+        when: 'a message is published'
+            deadLetterPublisher.publish(message, new ClassCastException(), FailureClassifier.FailureType.PERMANENT, 1)
+
+        then: 'nothing is sent'
+            0 * jmsQueueConnector._
+            0 * message.clearProperties()
+            deadLetterPublisher.getDiscardedMessageCount() == 1
+    }
+}
@@ -0,0 +1,65 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import spock.lang.Specification
+
+/**
+ * This class tests the DeduplicationCache.
+ */
+class DeduplicationCacheSpec extends Specification {
+
+    def 'added keys are found, other keys are not'() {
+        given: 'a cache with two keys'
+            def cache = new DeduplicationCache(100, 60000L, 0L)
+            cache.add(DeduplicationCache.keyOf("ID:1"), 0L)
+            cache.add(0L, 0L)
+
+        expect:
+            cache.contains(DeduplicationCache.keyOf("ID:1"), 10L)
+            cache.contains(0L, 10L)
+            !cache.contains(DeduplicationCache.keyOf("ID:2"), 10L)
+            cache.size() == 2
+    }
+
+    def 'keys are remembered for at least half the time to live and forgotten after the time to live'() {
+        given: 'a cache with a time to live of 1000 ms and a key added at time 0'
+            def cache = new DeduplicationCache(100, 1000L, 0L)
+            def key = DeduplicationCache.keyOf("ID:1")
+            cache.add(key, 0L)
+
+        expect: 'the key is found in the next generation'
+            cache.contains(key, 600L)
+
+        and: 'it is forgotten once the time to live has elapsed'
+            !cache.contains(key, 1200L)
+    }
+
+    def 'when a generation is full, a new one is started and the oldest keys are dropped'() {
+        given: 'a cache holding 10 keys per generation'
+            def cache = new DeduplicationCache(10, 60000L, 0L)
+
+        when: '25 keys are added'
+            (0..<25).each { cache.add(DeduplicationCache.keyOf("ID:" + it), 0L) }
+
+        then: 'the keys of the two latest generations are found'
+            (10..<25).every { cache.contains(DeduplicationCache.keyOf("ID:" + it), 0L) }
+
+        and: 'the keys of the first generation are dropped'
+            (0..<10).every { !cache.contains(DeduplicationCache.keyOf("ID:" + it), 0L) }
+    }
+
+    def 'string keys are spread over 64 bits'() {
+        expect: 'distinct message identifiers give distinct keys'
+            (0..<10000).collect { DeduplicationCache.keyOf("ID:" + it) }.toSet().size() == 10000
+    }
+}
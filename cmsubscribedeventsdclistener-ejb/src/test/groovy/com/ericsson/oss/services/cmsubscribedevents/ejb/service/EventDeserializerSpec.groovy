@@ -0,0 +1,201 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+
+import java.nio.ByteBuffer
+import javax.jms.MessageFormatException
+import javax.jms.ObjectMessage
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * This class tests the EventDeserializer.
+ */
+class EventDeserializerSpec extends Specification {
+
+    def cleanup() {
+        System.clearProperty(EventDeserializer.MAX_BYTES_PROPERTY)
+        System.clearProperty(EventDeserializer.MAX_DEPTH_PROPERTY)
+        System.clearProperty(EventDeserializer.ALLOWED_PACKAGES_PROPERTY)
+    }
+
+    def 'the serialized body of an Artemis ObjectMessage is decoded without the provider, and its classes are resolved once'() {
+        given: 'a deserializer and a NodeNotification serialized in an Artemis ObjectMessage'
+            def deserializer = new EventDeserializer()
+            def nodeNotification = new NodeNotification()
+            nodeNotification.setFdn("MeContext=ERBS1")
+            def message = createCoreObjectMessage(nodeNotification)
+
+        when: 'the message is deserialized twice'
+            def first = deserializer.deserialize(message)
+            def resolvedClasses = deserializer.getResolvedClassCount()
+            def second = deserializer.deserialize(createCoreObjectMessage(nodeNotification))
+
+        then: 'the events are equivalent to the original one and the provider did not deserialize them'
+            first instanceof NodeNotification
+            first.fdn == "MeContext=ERBS1"
+            second.fdn == "MeContext=ERBS1"
+            0 * message.getObject()
+
+        and: 'the second decode only used cached classes'
+            resolvedClasses > 0
+            deserializer.getResolvedClassCount() == resolvedClasses
+            deserializer.getRejectedPayloadCount() == 0
+    }
+
+    def 'the body of an ObjectMessage of another provider is deserialized by the provider'() {
+        given: 'an ObjectMessage without core message carrying a NodeNotification'
+            def nodeNotification = new NodeNotification()
+            def message = Mock(ObjectMessage)
+            message.getObject() >> nodeNotification
+
+        expect: 'the event is returned'
+            new EventDeserializer().deserialize(message).is(nodeNotification)
+    }
+
+    def 'a body longer than the limit is rejected without being read'() {
+        given: 'a deserializer limited to 16 bytes and a body announcing 17 bytes'
+            System.setProperty(EventDeserializer.MAX_BYTES_PROPERTY, "16")
+            def deserializer = new EventDeserializer()
+            def buffer = Spy(new CoreBodyBuffer(ByteBuffer.allocate(Integer.BYTES + 17).putInt(17).put(new byte[17]).flip()))
+            def message = Mock(CoreObjectMessage)
+            message.getCoreMessage() >> new CoreMessage(buffer)
+
+        when: 'the message is deserialized'
+            deserializer.deserialize(message)
+
+        then: 'the body is rejected'
+            thrown(MessageFormatException)
+            0 * buffer.readBytes(_)
+            0 * message.getObject()
+            deserializer.getRejectedPayloadCount() == 1
+    }
+
+    def 'a class outside of the allowed packages is rejected'() {
+        given: 'a deserializer allowing only the mediation notifications'
+            System.setProperty(EventDeserializer.ALLOWED_PACKAGES_PROPERTY, "com.ericsson.oss.mediation.")
+            def deserializer = new EventDeserializer()
+
+        when: 'a serialized list is deserialized'
+            deserializer.deserialize(createCoreObjectMessage(new ArrayList<>(["value"])))
+
+        then: 'the body is rejected'
+            def exception = thrown(MessageFormatException)
+            exception.message.contains("java.util.ArrayList")
+            deserializer.getRejectedPayloadCount() == 1
+    }
+
+    def 'an object graph deeper than the limit is rejected when the JVM supports ObjectInputFilter'() {
+        given: 'a deserializer limited to a depth of 10 and a graph of 50 nested lists'
+            System.setProperty(EventDeserializer.MAX_DEPTH_PROPERTY, "10")
+            def deserializer = new EventDeserializer()
+            def graph = new ArrayList<Object>()
+            def current = graph
+            50.times {
+                def nested = new ArrayList<Object>()
+                current.add(nested)
+                current = nested
+            }
+
+        when: 'the graph is deserialized'
+            def event = null
+            def failure = null
+            try {
+                event = deserializer.deserialize(createCoreObjectMessage(graph))
+            } catch (MessageFormatException exception) {
+                failure = exception
+            }
+
+        then: 'the body is rejected if the filter is available'
+            EventDeserializer.SerialFilterSupport.isAvailable() ? failure != null && deserializer.getRejectedPayloadCount() == 1 : event != null
+    }
+
+    def 'an ObjectMessage with an empty body has no event'() {
+        given: 'an Artemis ObjectMessage without body'
+            def message = Mock(CoreObjectMessage)
+            message.getCoreMessage() >> new CoreMessage(new CoreBodyBuffer(ByteBuffer.allocate(0)))
+
+        expect:
+            new EventDeserializer().deserialize(message) == null
+    }
+
+    @Unroll
+    def 'class #className is allowed: #allowed'() {
+        expect:
+            new EventDeserializer().isAllowed(className) == allowed
+
+        where:
+            className                                                                  | allowed
+            "com.ericsson.oss.mediation.network.api.notifications.NodeNotification"    | true
+            "[Lcom.ericsson.oss.mediation.notifications.ComEcimNodeNotification;"      | true
+            "[[I"                                                                      | true
+            "java.util.HashMap"                                                        | true
+            "org.apache.commons.collections.functors.InvokerTransformer"               | false
+            "[Lorg.apache.commons.collections.functors.InvokerTransformer;"            | false
+    }
+
+    def createCoreObjectMessage(Serializable event) {
+        def bytes = new ByteArrayOutputStream()
+        def outputStream = new ObjectOutputStream(bytes)
+        outputStream.writeObject(event)
+        outputStream.close()
+        def body = bytes.toByteArray()
+        def message = Mock(CoreObjectMessage)
+        message.getCoreMessage() >> new CoreMessage(new CoreBodyBuffer(ByteBuffer.allocate(Integer.BYTES + body.length).putInt(body.length)
+            .put(body).flip()))
+        return message
+    }
+
+    /**
+     * ObjectMessage exposing its core message, as the ObjectMessages of Artemis.
+     */
+    static abstract class CoreObjectMessage implements ObjectMessage {
+
+        abstract CoreMessage getCoreMessage()
+    }
+
+    static class CoreMessage {
+
+        private final CoreBodyBuffer bodyBuffer
+
+        CoreMessage(CoreBodyBuffer bodyBuffer) {
+            this.bodyBuffer = bodyBuffer
+        }
+
+        CoreBodyBuffer getBodyBufferDuplicate() {
+            return bodyBuffer
+        }
+    }
+
+    static class CoreBodyBuffer {
+
+        private final ByteBuffer buffer
+
+        CoreBodyBuffer(ByteBuffer buffer) {
+            this.buffer = buffer
+        }
+
+        int readableBytes() {
+            return buffer.remaining()
+        }
+
+        int readInt() {
+            return buffer.getInt()
+        }
+
+        void readBytes(byte[] bytes) {
+            buffer.get(bytes)
+        }
+    }
+}
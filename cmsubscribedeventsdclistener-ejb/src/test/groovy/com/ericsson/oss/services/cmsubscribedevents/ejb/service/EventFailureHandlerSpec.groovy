@@ -0,0 +1,300 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import java.util.concurrent.CountDownLatch
+import java.util.function.Predicate
+import javax.ejb.EJBException
+import javax.ejb.NoSuchEJBException
+import javax.jms.JMSException
+import javax.jms.Message
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * This class tests the EventFailureHandler and the classification of the failures.
+ */
+class EventFailureHandlerSpec extends Specification {
+
+    DeadLetterPublisher deadLetterPublisher = Mock(DeadLetterPublisher)
+    Message message = Mock(Message)
+    EventFailureHandler eventFailureHandler
+
+    def setup() {
+        System.setProperty(EventFailureHandler.RETRY_INITIAL_DELAY_PROPERTY, "1")
+        System.setProperty(EventFailureHandler.CIRCUIT_OPEN_PROPERTY, "10")
+        eventFailureHandler = new EventFailureHandler()
+        eventFailureHandler.deadLetterPublisher = deadLetterPublisher
+    }
+
+    def cleanup() {
+        System.clearProperty(EventFailureHandler.RETRY_INITIAL_DELAY_PROPERTY)
+        System.clearProperty(EventFailureHandler.CIRCUIT_OPEN_PROPERTY)
+        System.clearProperty(EventFailureHandler.MAX_ATTEMPTS_PROPERTY)
+    }
+
+    @Unroll
+    def 'a #failure.class.simpleName is classified as #failureType'() {
+        expect:
+            FailureClassifier.classify(failure) == failureType
+
+        where:
+            failure                                                             | failureType
+            new EJBException(new IOException("connection refused"))              | FailureClassifier.FailureType.TRANSIENT
+            new NoSuchEJBException("EJBCLIENT000079: Unable to discover")       | FailureClassifier.FailureType.TRANSIENT
+            new IllegalStateException("EJBCLIENT000025: No EJB receiver available") | FailureClassifier.FailureType.TRANSIENT
+            new JMSException("ClassNotFoundException")                          | FailureClassifier.FailureType.PERMANENT
+            new ClassCastException("NodeNotification")                          | FailureClassifier.FailureType.PERMANENT
+            new NullPointerException()                                          | FailureClassifier.FailureType.PERMANENT
+    }
+
+    def 'a successfully processed event is neither retried nor dead-lettered'() {
+        when: 'the event is processed'
+            def result = eventFailureHandler.process(message, "event", { true } as Predicate)
+
+        then:
+            result
+            0 * deadLetterPublisher._
+            eventFailureHandler.getRetryCount() == 0
+    }
+
+    def 'a transient failure is retried until the processing succeeds'() {
+        given: 'a processing failing twice with a transient failure'
+            def attempts = 0
+            def processing = { event ->
+                if (++attempts <= 2) {
+                    throw new NoSuchEJBException("unavailable")
+                }
+                true
+            } as Predicate
+
+        when: 'the event is processed'
+            def result = eventFailureHandler.process(message, "event", processing)
+
+        then: 'it succeeds on the third attempt'
+            result
+            attempts == 3
+            eventFailureHandler.getRetryCount() == 2
+            0 * deadLetterPublisher._
+    }
+
+    def 'the attempts failing while SubscribedEventsProcessor is down do not use up the attempts of the message'() {
+        given: 'a processing failing ten times with a transient failure, opening the circuit'
+            def attempts = 0
+            def processing = { event ->
+                if (++attempts <= 10) {
+                    throw new NoSuchEJBException("unavailable")
+                }
+                true
+            } as Predicate
+
+        when: 'the event is processed'
+            def result = eventFailureHandler.process(message, "event", processing)
+
+        then: 'it succeeds on the eleventh attempt without being dead-lettered'
+            result
+            attempts == 11
+            0 * deadLetterPublisher._
+    }
+
+    def 'a transient failure is dead-lettered once the attempts of the message are used up'() {
+        given: 'three attempts per message and a processing always failing with a transient failure'
+            System.setProperty(EventFailureHandler.MAX_ATTEMPTS_PROPERTY, "3")
+            def handler = new EventFailureHandler()
+            handler.deadLetterPublisher = deadLetterPublisher
+            def failure = new NoSuchEJBException("unavailable")
+            def attempts = 0
+            def processing = { event ->
+                attempts++
+                throw failure
+            } as Predicate
+
+        when: 'the event is processed'
+            handler.process(message, "event", processing)
+
+        then: 'the message is dead-lettered after the third attempt and the failure rethrown'
+            thrown(NoSuchEJBException)
+            attempts == 3
+            1 * deadLetterPublisher.publish(message, failure, FailureClassifier.FailureType.TRANSIENT, 3)
+    }
+
+    def 'a thread interrupted while backing off gives up the event without dead-lettering it'() {
+        given: 'a processing failing with a transient failure and an interrupted thread'
+            def failure = new NoSuchEJBException("unavailable")
+            def processing = { throw failure } as Predicate
+            Thread.currentThread().interrupt()
+
+        when: 'the event is processed'
+            eventFailureHandler.process(message, "event", processing)
+
+        then: 'the event is given up with the failure as cause and the message is left for redelivery'
+            def exception = thrown(EventRedeliveryException)
+            exception.cause == failure
+            0 * deadLetterPublisher._
+            Thread.interrupted()
+    }
+
+    def 'a thread interrupted while the circuit is open gives up the event without calling the processor'() {
+        given: 'an open circuit and an interrupted thread'
+            System.setProperty(EventFailureHandler.CIRCUIT_OPEN_PROPERTY, "60000")
+            def handler = new EventFailureHandler()
+            handler.deadLetterPublisher = deadLetterPublisher
+            5.times { handler.getCircuitBreaker().recordFailure() }
+            def processing = Mock(Predicate)
+            Thread.currentThread().interrupt()
+
+        when: 'the event is processed'
+            handler.process(message, "event", processing)
+
+        then: 'the processor is not called and the message is not dead-lettered'
+            thrown(EventRedeliveryException)
+            0 * processing._
+            0 * deadLetterPublisher._
+            Thread.interrupted()
+    }
+
+    def 'a stopped handler gives up the event without calling the processor'() {
+        given: 'a stopped handler'
+            eventFailureHandler.destroy()
+            def processing = Mock(Predicate)
+
+        when: 'the event is processed'
+            eventFailureHandler.process(message, "event", processing)
+
+        then: 'the event is given up and left for redelivery'
+            thrown(EventRedeliveryException)
+            0 * processing._
+            0 * deadLetterPublisher._
+    }
+
+    def 'stopping the handler ends the back off of a retried event'() {
+        given: 'a long retry delay and a processing always failing with a transient failure'
+            System.setProperty(EventFailureHandler.RETRY_INITIAL_DELAY_PROPERTY, "60000")
+            def handler = new EventFailureHandler()
+            handler.deadLetterPublisher = deadLetterPublisher
+            def attempted = new CountDownLatch(1)
+            def processing = { event ->
+                attempted.countDown()
+                throw new NoSuchEJBException("unavailable")
+            } as Predicate
+            Throwable outcome = null
+            def thread = Thread.start {
+                try {
+                    handler.process(message, "event", processing)
+                } catch (Throwable throwable) {
+                    outcome = throwable
+                }
+            }
+            attempted.await()
+
+        when: 'the handler is stopped while the event waits for its next attempt'
+            handler.destroy()
+            thread.join(5000)
+
+        then: 'the event is given up at once and left for redelivery'
+            !thread.isAlive()
+            outcome instanceof EventRedeliveryException
+            0 * deadLetterPublisher._
+    }
+
+    def 'a permanent failure is dead-lettered without retry'() {
+        given: 'a processing failing with a permanent failure'
+            def failure = new ClassCastException("NodeNotification")
+            def processing = { throw failure } as Predicate
+
+        when: 'the event is processed'
+            eventFailureHandler.process(message, "event", processing)
+
+        then: 'the message is dead-lettered after a single attempt'
+            1 * deadLetterPublisher.publish(message, failure, FailureClassifier.FailureType.PERMANENT, 1)
+            thrown(ClassCastException)
+            eventFailureHandler.getRetryCount() == 0
+            eventFailureHandler.getCircuitBreaker().getState() == CircuitBreaker.State.CLOSED
+    }
+
+    def 'a batch is retried as a whole on a transient failure and every message of the batch is dead-lettered on a permanent failure'() {
+        given: 'a batch processing failing once with a transient failure, then with a permanent failure'
+            def otherMessage = Mock(Message)
+            def failure = new ClassCastException("NodeNotification")
+            def attempts = 0
+            def processing = { events ->
+                if (++attempts == 1) {
+                    throw new NoSuchEJBException("unavailable")
+                }
+                throw failure
+            } as Predicate
+
+        when: 'the batch is processed'
+            eventFailureHandler.processBatch([message, otherMessage], ["event", "otherEvent"], processing)
+
+        then: 'both messages are dead-lettered after the second attempt'
+            1 * deadLetterPublisher.publish(message, failure, FailureClassifier.FailureType.PERMANENT, 2)
+            1 * deadLetterPublisher.publish(otherMessage, failure, FailureClassifier.FailureType.PERMANENT, 2)
+            thrown(ClassCastException)
+            eventFailureHandler.getRetryCount() == 1
+    }
+
+    def 'repeated transient failures open the circuit breaker, which closes once the processing succeeds again'() {
+        given: 'a processing failing with transient failures until the processor is available again'
+            def attempts = 0
+            def processing = { event ->
+                if (++attempts <= 6) {
+                    throw new NoSuchEJBException("unavailable")
+                }
+                true
+            } as Predicate
+
+        when: 'the event is processed'
+            def result = eventFailureHandler.process(message, "event", processing)
+
+        then: 'the circuit breaker opened while the processor was unavailable, and the trial call closed it'
+            result
+            eventFailureHandler.getCircuitBreaker().getOpenCount() >= 1
+            eventFailureHandler.getCircuitBreaker().getState() == CircuitBreaker.State.CLOSED
+            0 * deadLetterPublisher._
+    }
+
+    def 'a message which cannot be deserialized is dead-lettered'() {
+        given:
+            def failure = new JMSException("ClassNotFoundException")
+
+        when:
+            eventFailureHandler.deserializationFailed(message, failure)
+
+        then:
+            1 * deadLetterPublisher.publish(message, failure, FailureClassifier.FailureType.PERMANENT, 1)
+    }
+
+    def 'a message whose delivery the processor does not support is dead-lettered'() {
+        given:
+            def failure = new UnsupportedOperationException("Bulk delivery is not supported by SubscribedEventsProcessor")
+
+        when:
+            eventFailureHandler.deliveryRejected(message, failure)
+
+        then:
+            1 * deadLetterPublisher.publish(message, failure, FailureClassifier.FailureType.PERMANENT, 1)
+    }
+
+    def 'the retry delay doubles after each failed attempt up to the maximum'() {
+        given: 'an initial delay of 100 ms and a maximum of 300 ms'
+            System.setProperty(EventFailureHandler.RETRY_INITIAL_DELAY_PROPERTY, "100")
+            System.setProperty(EventFailureHandler.RETRY_MAX_DELAY_PROPERTY, "300")
+            def handler = new EventFailureHandler()
+
+        expect:
+            [1, 2, 3, 4].collect { handler.getRetryDelayMillis(it) } == [100L, 200L, 300L, 300L]
+
+        cleanup:
+            System.clearProperty(EventFailureHandler.RETRY_MAX_DELAY_PROPERTY)
+    }
+}
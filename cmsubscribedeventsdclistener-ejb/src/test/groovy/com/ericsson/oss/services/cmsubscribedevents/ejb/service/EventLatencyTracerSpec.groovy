@@ -0,0 +1,137 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import javax.jms.Message
+
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.DpsAttributeChangedEvent
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+import com.ericsson.oss.mediation.notifications.ComEcimNodeNotification
+
+import spock.lang.Specification
+
+/**
+ * This class tests the EventLatencyTracer.
+ */
+class EventLatencyTracerSpec extends Specification {
+
+    def 'the latency of each stage of a traced event is recorded for all events and for its notification type'() {
+        given: 'a tracer of every message'
+            def eventLatencyTracer = new EventLatencyTracer(1, 10)
+
+        and: 'a CPP notification created 3 seconds ago and sent to the broker 1 second ago'
+            def nodeNotification = new NodeNotification()
+            nodeNotification.setCreationTimestamp(new Date(System.currentTimeMillis() - 3000L))
+            def message = Mock(Message)
+            message.getJMSTimestamp() >> System.currentTimeMillis() - 1000L
+            message.getJMSMessageID() >> "ID:1"
+
+        when: 'the message is received, deserialized and delivered'
+            eventLatencyTracer.messageReceived(message)
+            eventLatencyTracer.eventDeserialized(message)
+            def trace = eventLatencyTracer.deliveryStarted(message)
+            eventLatencyTracer.deliveryEnded(trace, message, nodeNotification, true)
+
+        then: 'the trace ID is the JMS message ID'
+            trace.getTraceId() == "ID:1"
+            eventLatencyTracer.getTracesInFlight() == 0
+
+        and: 'every stage is recorded once'
+            def stageLatencies = eventLatencyTracer.getStageLatencyMicros()
+            stageLatencies.keySet() as List == EventLatencyTracer.Stage.values()*.name()
+            stageLatencies.values().every { it.getCount() == 1 }
+            stageLatencies.get("NODE_TO_BROKER").getMax() >= 2000000L
+            stageLatencies.get("BROKER_TO_LISTENER").getMax() >= 1000000L
+            stageLatencies.get("END_TO_END").getMax() >= 3000000L
+
+        and: 'also for the notification type'
+            eventLatencyTracer.getStageLatencyMicrosPerType().keySet() == ["NodeNotification"] as Set
+            eventLatencyTracer.getStageLatencyMicrosPerType().get("NodeNotification").get("END_TO_END").getCount() == 1
+    }
+
+    def 'the stages of an event without creation time start at the broker'() {
+        given: 'a tracer of every message and a DPS event whose message has a correlation ID'
+            def eventLatencyTracer = new EventLatencyTracer(1, 10)
+            def message = Mock(Message)
+            message.getJMSTimestamp() >> System.currentTimeMillis()
+            message.getJMSCorrelationID() >> "correlation-1"
+
+        when: 'the message is received, deserialized and delivered'
+            eventLatencyTracer.messageReceived(message)
+            eventLatencyTracer.eventDeserialized(message)
+            def trace = eventLatencyTracer.deliveryStarted(message)
+            eventLatencyTracer.deliveryEnded(trace, message, new DpsAttributeChangedEvent(), true)
+
+        then: 'the trace ID is the correlation ID'
+            trace.getTraceId() == "correlation-1"
+
+        and: 'the stages starting on the node are not recorded'
+            def stageLatencies = eventLatencyTracer.getStageLatencyMicros()
+            stageLatencies.get("NODE_TO_BROKER").getCount() == 0
+            stageLatencies.get("END_TO_END").getCount() == 0
+            stageLatencies.get("BROKER_TO_LISTENER").getCount() == 1
+            stageLatencies.get("DESERIALIZED_TO_DELIVERED").getCount() == 1
+    }
+
+    def 'events which were not sampled, or not delivered, are not recorded'() {
+        given: 'a tracer of one message out of 2'
+            def eventLatencyTracer = new EventLatencyTracer(2, 10)
+            def firstMessage = Mock(Message)
+            def secondMessage = Mock(Message)
+
+        when: 'two messages are received'
+            eventLatencyTracer.messageReceived(firstMessage)
+            eventLatencyTracer.messageReceived(secondMessage)
+
+        then: 'only the second one is traced'
+            eventLatencyTracer.deliveryStarted(firstMessage) == null
+            def trace = eventLatencyTracer.deliveryStarted(secondMessage)
+            trace != null
+
+        when: 'the processing of the second event fails'
+            eventLatencyTracer.deliveryEnded(trace, secondMessage, new NodeNotification(), false)
+
+        then: 'no latency is recorded'
+            eventLatencyTracer.getStageLatencyMicros().values().every { it.getCount() == 0 }
+            eventLatencyTracer.getStageLatencyMicrosPerType().isEmpty()
+    }
+
+    def 'messages received while the maximum number of messages are traced are not traced'() {
+        given: 'a tracer of every message, up to a single message at once'
+            def eventLatencyTracer = new EventLatencyTracer(1, 1)
+            def firstMessage = Mock(Message)
+            def secondMessage = Mock(Message)
+
+        when: 'two messages are received'
+            eventLatencyTracer.messageReceived(firstMessage)
+            eventLatencyTracer.messageReceived(secondMessage)
+
+        then: 'only the first one is traced'
+            eventLatencyTracer.getTracesInFlight() == 1
+            eventLatencyTracer.deliveryStarted(secondMessage) == null
+            eventLatencyTracer.deliveryStarted(firstMessage) != null
+    }
+
+    def 'the creation time of a notification is read from its timestamp'() {
+        expect: 'the time of the CPP creation timestamp or of the ISO 8601 COM/ECIM timestamp'
+            EventLatencyTracer.getCreationTimeMillis(event) == creationTimeMillis
+
+        where:
+            event                                                                                     | creationTimeMillis
+            new ComEcimNodeNotification("MeContext=1", 1L, "2023-01-01T00:00:00.000", 1L, false)      | 1672531200000L
+            new ComEcimNodeNotification("MeContext=1", 1L, "2023-01-01T01:00:00.000+01:00", 1L, false) | 1672531200000L
+            new ComEcimNodeNotification("MeContext=1", 1L, "not a timestamp", 1L, false)              | 0L
+            new ComEcimNodeNotification("MeContext=1", 1L, null, 1L, false)                           | 0L
+            new NodeNotification()                                                                    | 0L
+            new DpsAttributeChangedEvent()                                                            | 0L
+    }
+}
@@ -0,0 +1,94 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.DpsAttributeChangedEvent
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * This class tests the EventMetrics.
+ */
+class EventMetricsSpec extends Specification {
+
+    EventMetrics eventMetrics = new EventMetrics()
+
+    def 'processed events are counted and timed per notification type'() {
+        when: 'events of two types are processed'
+            3.times { eventMetrics.eventProcessed(NodeNotification, TimeUnit.MICROSECONDS.toNanos(100)) }
+            eventMetrics.eventProcessed(DpsAttributeChangedEvent, TimeUnit.MICROSECONDS.toNanos(3000))
+
+        then: 'the counts and latencies are reported by type'
+            eventMetrics.getEventCounts() == ["DpsAttributeChangedEvent": 1L, "NodeNotification": 3L]
+            eventMetrics.getProcessingLatencyMicros()["NodeNotification"].count == 3
+            eventMetrics.getProcessingLatencyMicros()["NodeNotification"].median == 128
+            eventMetrics.getProcessingLatencyMicros()["DpsAttributeChangedEvent"].max == 3000
+    }
+
+    def 'event rates are computed from the counts between two updates'() {
+        given: 'the rates are updated once'
+            eventMetrics.eventProcessed(NodeNotification, 0)
+            eventMetrics.updateRates(10000L)
+
+        when: '50 events are processed in 10 seconds'
+            50.times { eventMetrics.eventProcessed(NodeNotification, 0) }
+            eventMetrics.updateRates(20000L)
+
+        then: 'the rate is 5 events per second'
+            eventMetrics.getEventRates() == ["NodeNotification": 5.0d]
+    }
+
+    def 'message ages, deserialization times and errors are recorded'() {
+        when: 'the metrics are recorded'
+            eventMetrics.messageAge(1500L)
+            eventMetrics.messageAge(-20L)
+            eventMetrics.eventDeserialized(TimeUnit.MICROSECONDS.toNanos(40))
+            eventMetrics.deserializationFailed()
+            2.times { eventMetrics.processingFailed() }
+
+        then: 'they are reported, negative ages as 0'
+            eventMetrics.getMessageAgeMillis().count == 2
+            eventMetrics.getMessageAgeMillis().max == 1500
+            eventMetrics.getDeserializationMicros().max == 40
+            eventMetrics.getDeserializationErrorCount() == 1
+            eventMetrics.getProcessingErrorCount() == 2
+    }
+
+    def 'deserialization times are recorded per notification type and overall'() {
+        when: 'two NodeNotifications and one empty body are deserialized'
+            eventMetrics.eventDeserialized(NodeNotification, TimeUnit.MICROSECONDS.toNanos(40))
+            eventMetrics.eventDeserialized(NodeNotification, TimeUnit.MICROSECONDS.toNanos(80))
+            eventMetrics.eventDeserialized(null, TimeUnit.MICROSECONDS.toNanos(10))
+
+        then: 'the type of the events is used as key and every body is counted overall'
+            eventMetrics.getDeserializationMicrosPerType().keySet() == ["NodeNotification"] as Set
+            eventMetrics.getDeserializationMicrosPerType()["NodeNotification"].count == 2
+            eventMetrics.getDeserializationMicrosPerType()["NodeNotification"].max == 80
+            eventMetrics.getDeserializationMicros().count == 3
+    }
+
+    def 'resetting the histograms keeps the counts'() {
+        given: 'recorded metrics'
+            eventMetrics.eventProcessed(NodeNotification, 1000)
+            eventMetrics.messageAge(100L)
+
+        when: 'the histograms are reset'
+            eventMetrics.resetHistograms()
+
+        then: 'only the histograms are cleared'
+            eventMetrics.getProcessingLatencyMicros()["NodeNotification"].count == 0
+            eventMetrics.getMessageAgeMillis().count == 0
+            eventMetrics.getEventCounts() == ["NodeNotification": 1L]
+    }
+}
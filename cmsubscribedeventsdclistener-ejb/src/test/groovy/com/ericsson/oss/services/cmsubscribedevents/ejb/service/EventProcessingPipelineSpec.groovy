@@ -0,0 +1,154 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.BiConsumer
+import java.util.function.Function
+import javax.jms.Message
+import javax.jms.ObjectMessage
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * This class tests the EventProcessingPipeline.
+ */
+class EventProcessingPipelineSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+    Function<Message, Serializable> deserializer = { "event" } as Function<Message, Serializable>
+
+    def 'submitted messages are processed by the workers and reported to the session tracker'() {
+        given: 'a pipeline recording the processed messages'
+            def processed = new ConcurrentLinkedQueue<Message>()
+            def pipeline = new EventProcessingPipeline(16, 2, deserializer,
+                { message, event -> processed.add(message) } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 3, 60000L)
+            def lastMessage = Mock(Message)
+            def messages = [Mock(Message), Mock(Message), lastMessage]
+
+        when: 'the messages are submitted'
+            messages.each {
+                tracker.messageReceived()
+                pipeline.dispatch(it, tracker)
+            }
+            tracker.acknowledgeIfDue(System.currentTimeMillis())
+
+        then: 'all the messages are processed and the session is acknowledged'
+            conditions.eventually {
+                assert processed.size() == 3
+            }
+            tracker.getPendingAcknowledgements() == 0
+
+        cleanup:
+            pipeline.stop(1000L)
+    }
+
+    def 'by default, several workers process the events of each MO on one worker, in the order they were received'() {
+        given: 'a pipeline created with the default configuration, recording the sequence and worker of the events of each FDN'
+            def processedPerFdn = new ConcurrentHashMap<String, List<Integer>>()
+            def workersPerFdn = new ConcurrentHashMap<String, Set<String>>()
+            def pipeline = EventProcessingPipeline.create({ ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event ->
+                    processedPerFdn.computeIfAbsent(event.fdn, { new CopyOnWriteArrayList() }).add(message.getIntProperty("sequence"))
+                    workersPerFdn.computeIfAbsent(event.fdn, { ConcurrentHashMap.newKeySet() }).add(Thread.currentThread().name)
+                } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            def fdns = ["MeContext=ERBS1", "MeContext=ERBS2", "MeContext=ERBS3"]
+            def messages = (0..<20).collectMany { sequence -> fdns.collect { fdn -> createMessage(fdn, sequence) } }
+
+        when: 'the messages of the different MOs are submitted interleaved'
+            messages.each {
+                tracker.messageReceived()
+                pipeline.dispatch(it, tracker)
+            }
+
+        then: 'the events of each MO are processed in order, each by a single worker'
+            pipeline.getWorkerThreads() == EventProcessingPipeline.DEFAULT_WORKER_THREADS
+            conditions.eventually {
+                fdns.each { fdn ->
+                    assert processedPerFdn[fdn] == (0..<20).toList()
+                    assert workersPerFdn[fdn].size() == 1
+                }
+            }
+
+        cleanup:
+            pipeline.stop(1000L)
+    }
+
+    def 'when the buffer is full, the session thread is blocked instead of dropping messages'() {
+        given: 'a pipeline with one worker blocked and a buffer of one message'
+            def release = new CountDownLatch(1)
+            def processed = new ConcurrentLinkedQueue<Message>()
+            def pipeline = new EventProcessingPipeline(1, 1, deserializer,
+                { message, event -> release.await(); processed.add(message) } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            def submitted = new CountDownLatch(3)
+
+        when: 'three messages are submitted from a session thread'
+            Thread.start {
+                3.times {
+                    tracker.messageReceived()
+                    pipeline.dispatch(Mock(Message), tracker)
+                    submitted.countDown()
+                }
+            }
+
+        then: 'the third submission waits for space in the buffer'
+            !submitted.await(300, TimeUnit.MILLISECONDS)
+            submitted.count == 1
+
+        when: 'the worker is released'
+            release.countDown()
+
+        then: 'every message is processed'
+            submitted.await(5, TimeUnit.SECONDS)
+            conditions.eventually {
+                assert processed.size() == 3
+                assert tracker.getPendingAcknowledgements() == 3
+            }
+
+        cleanup:
+            pipeline.stop(1000L)
+    }
+
+    def 'when the pipeline is stopped, submitted messages are processed on the calling thread'() {
+        given: 'a stopped pipeline'
+            def processed = new ConcurrentLinkedQueue<Message>()
+            def pipeline = new EventProcessingPipeline(16, 1, deserializer,
+                { message, event -> processed.add(message) } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            pipeline.stop(1000L)
+
+        when: 'a message is submitted'
+            tracker.messageReceived()
+            pipeline.dispatch(Mock(Message), tracker)
+
+        then: 'the message is processed straight away'
+            processed.size() == 1
+            tracker.getPendingAcknowledgements() == 1
+    }
+
+    def createMessage(String fdn, int sequence) {
+        def nodeNotification = new NodeNotification()
+        nodeNotification.setFdn(fdn)
+        def message = Mock(ObjectMessage)
+        message.getObject() >> nodeNotification
+        message.getIntProperty("sequence") >> sequence
+        return message
+    }
+}
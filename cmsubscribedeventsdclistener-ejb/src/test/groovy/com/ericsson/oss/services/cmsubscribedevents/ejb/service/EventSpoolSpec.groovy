@@ -0,0 +1,140 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * This class tests the EventSpool.
+ */
+class EventSpoolSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+    File directory = File.createTempDir()
+
+    def cleanup() {
+        directory.deleteDir()
+    }
+
+    def 'records appended concurrently are durable once awaited and read back in the order they were appended'() {
+        given: 'a spool with small segments'
+            def spool = new EventSpool(directory, 4096)
+
+        when: 'four writers append 200 records each'
+            def executor = Executors.newFixedThreadPool(4)
+            def writers = (0..<4).collect { writer ->
+                executor.submit({
+                    (0..<200).each { spool.awaitDurable(spool.append("${writer}-${it}".bytes)) }
+                } as Callable)
+            }
+            writers*.get()
+            executor.shutdown()
+
+        and: 'the records are read'
+            def records = (0..<800).collect { new String(spool.poll(1000L)) }
+
+        then: 'the records of each writer are read in order, across several segments'
+            (0..<4).each { writer ->
+                assert records.findAll { it.startsWith("${writer}-") } == (0..<200).collect { "${writer}-${it}" }
+            }
+            spool.getSegmentCount() > 1
+            spool.isDrained()
+            spool.poll(10L) == null
+
+        cleanup:
+            spool.close()
+    }
+
+    def 'the segments before the committed position are deleted'() {
+        given: 'a spool whose records fill three segments'
+            def spool = new EventSpool(directory, 4096)
+            (0..<30).each { spool.awaitDurable(spool.append(new byte[400])) }
+            def segmentCount = spool.getSegmentCount()
+
+        when: 'every record is read and committed'
+            30.times { spool.poll(1000L) }
+            spool.commit()
+
+        then: 'only the segment of the committed position is left'
+            segmentCount == 3
+            conditions.eventually {
+                assert spool.getSegmentCount() == 1
+                assert directory.list().findAll { it.endsWith(EventSpool.SEGMENT_FILE_SUFFIX) }.size() == 1
+            }
+
+        cleanup:
+            spool.close()
+    }
+
+    def 'when a spool is opened again, the records which were not committed are read again and new records follow them'() {
+        given: 'a spool of which two of five records were committed and a third was read'
+            def spool = new EventSpool(directory, 4096)
+            (0..<5).each { spool.awaitDurable(spool.append("record-${it}".bytes)) }
+            2.times { spool.poll(1000L) }
+            spool.commit()
+            spool.poll(1000L)
+            spool.close()
+
+        when: 'the spool is opened again and a record appended'
+            def reopenedSpool = new EventSpool(directory, 4096)
+            reopenedSpool.awaitDurable(reopenedSpool.append("record-5".bytes))
+            def records = (0..<4).collect { new String(reopenedSpool.poll(1000L)) }
+
+        then: 'the records after the committed position are read, followed by the new one'
+            records == ["record-2", "record-3", "record-4", "record-5"]
+
+        cleanup:
+            reopenedSpool.close()
+    }
+
+    def 'when a spool is opened again after a torn write, the incomplete record is discarded and overwritten'() {
+        given: 'a spool with two records, the second of which was only partly written'
+            def spool = new EventSpool(directory, 4096)
+            spool.awaitDurable(spool.append("complete".bytes))
+            spool.awaitDurable(spool.append("torn".bytes))
+            spool.close()
+            def segmentFile = new File(directory, String.format("%010d", 0) + EventSpool.SEGMENT_FILE_SUFFIX)
+            new RandomAccessFile(segmentFile, "rw").withCloseable { it.seek(8 + 8 + 8); it.write("TORN".bytes) }
+
+        when: 'the spool is opened again and a record appended'
+            def reopenedSpool = new EventSpool(directory, 4096)
+            reopenedSpool.awaitDurable(reopenedSpool.append("next".bytes))
+            def records = [reopenedSpool.poll(1000L), reopenedSpool.poll(1000L), reopenedSpool.poll(10L)]
+
+        then: 'the complete record is read, followed by the new one'
+            records.collect { it == null ? null : new String(it) } == ["complete", "next", null]
+
+        cleanup:
+            reopenedSpool.close()
+    }
+
+    def 'a record larger than a segment is rejected, and appending to a closed spool fails'() {
+        given: 'a spool'
+            def spool = new EventSpool(directory, 4096)
+
+        when: 'a record larger than a segment is appended'
+            spool.append(new byte[4096])
+
+        then: 'it is rejected'
+            thrown(IllegalArgumentException)
+
+        when: 'a record is appended once the spool is closed'
+            spool.close()
+            spool.append(new byte[16])
+
+        then: 'it fails'
+            thrown(IOException)
+    }
+}
@@ -0,0 +1,80 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import javax.jms.JMSException
+import javax.jms.Message
+import spock.lang.Specification
+
+/**
+ * This class tests the EventTraceContext.
+ */
+class EventTraceContextSpec extends Specification {
+
+    def cleanup() {
+        EventTraceContext.clear()
+    }
+
+    def 'the trace ID of a message is its correlation ID, or else its message ID'() {
+        given: 'a message with a correlation ID and one without'
+            def correlatedMessage = Mock(Message)
+            correlatedMessage.getJMSCorrelationID() >> "correlation-1"
+            def message = Mock(Message)
+            message.getJMSMessageID() >> "ID:message-2"
+
+        expect: 'the correlation ID is preferred to the message ID'
+            EventTraceContext.getTraceId(correlatedMessage) == "correlation-1"
+            EventTraceContext.getTraceId(message) == "ID:message-2"
+    }
+
+    def 'the trace ID is set on the current thread until it is cleared'() {
+        given: 'a message'
+            def message = Mock(Message)
+            message.getJMSMessageID() >> "ID:message-1"
+
+        when: 'its trace ID is set'
+            EventTraceContext.set(message)
+
+        then: 'it is available on the current thread only'
+            EventTraceContext.get() == "ID:message-1"
+            runOnOtherThread { EventTraceContext.get() } == null
+
+        when: 'it is cleared'
+            EventTraceContext.clear()
+
+        then: 'it is removed'
+            EventTraceContext.get() == null
+    }
+
+    def 'the trace IDs of a batch are joined, skipping the messages whose IDs cannot be read'() {
+        given: 'three messages, one of which cannot be read'
+            def firstMessage = Mock(Message)
+            firstMessage.getJMSMessageID() >> "ID:message-1"
+            def unreadableMessage = Mock(Message)
+            unreadableMessage.getJMSCorrelationID() >> { throw new JMSException("closed") }
+            def lastMessage = Mock(Message)
+            lastMessage.getJMSCorrelationID() >> "correlation-3"
+
+        when: 'the trace IDs of the batch are set'
+            EventTraceContext.set([firstMessage, unreadableMessage, lastMessage])
+
+        then: 'the readable IDs are separated by commas'
+            EventTraceContext.get() == "ID:message-1,correlation-3"
+    }
+
+    private static Object runOnOtherThread(final Closure closure) {
+        def result = null
+        def thread = Thread.start { result = closure.call() }
+        thread.join()
+        return result
+    }
+}
@@ -0,0 +1,60 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import spock.lang.Specification
+
+/**
+ * This class tests the Histogram.
+ */
+class HistogramSpec extends Specification {
+
+    def 'recorded values are counted in the bucket of their upper bound'() {
+        given: 'a histogram with power of two buckets up to 8'
+            def histogram = Histogram.withPowerOfTwoBuckets(8)
+
+        when: 'values are recorded'
+            [1, 2, 3, 8, 9, 100].each { histogram.record(it) }
+
+        then: 'the buckets, count and max reflect the values'
+            histogram.getBucketCounts() == ["<=1": 1L, "<=2": 1L, "<=4": 1L, "<=8": 1L, ">8": 2L]
+            histogram.getCount() == 6
+            histogram.getMax() == 100
+            histogram.getMean() == 123 / 6
+    }
+
+    def 'percentiles are estimated from the bucket bounds'() {
+        given: 'a histogram with 90 small values and 10 large values'
+            def histogram = new Histogram(10, 100, 1000)
+            90.times { histogram.record(5) }
+            10.times { histogram.record(500) }
+
+        expect:
+            histogram.getPercentile(50) == 10
+            histogram.getPercentile(90) == 10
+            histogram.getPercentile(99) == 1000
+    }
+
+    def 'reset clears every recorded value'() {
+        given:
+            def histogram = new Histogram(10)
+            histogram.record(5)
+
+        when:
+            histogram.reset()
+
+        then:
+            histogram.getCount() == 0
+            histogram.getMax() == 0
+            histogram.getPercentile(99) == 0
+    }
+}
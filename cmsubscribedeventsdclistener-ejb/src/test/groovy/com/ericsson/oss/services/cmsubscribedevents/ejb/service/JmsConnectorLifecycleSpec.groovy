@@ -0,0 +1,146 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * This class tests the JmsConnectorLifecycle.
+ */
+class JmsConnectorLifecycleSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+    JmsQueueConnector jmsQueueConnector = Mock(JmsQueueConnector)
+    JmsConnectorLifecycle jmsConnectorLifecycle
+
+    def setup() {
+        System.setProperty(JmsConnectorLifecycle.RETRY_INITIAL_DELAY_PROPERTY, "10")
+        System.setProperty(JmsConnectorLifecycle.RETRY_MAX_DELAY_PROPERTY, "40")
+        jmsConnectorLifecycle = new JmsConnectorLifecycle()
+        jmsConnectorLifecycle.jmsQueueConnector = jmsQueueConnector
+    }
+
+    def cleanup() {
+        jmsConnectorLifecycle.stop()
+        System.clearProperty(JmsConnectorLifecycle.RETRY_INITIAL_DELAY_PROPERTY)
+        System.clearProperty(JmsConnectorLifecycle.RETRY_MAX_DELAY_PROPERTY)
+    }
+
+    def 'when the connector starts on the first attempt, it is ready'() {
+        given: 'the connector starts listening'
+            jmsQueueConnector.startListening() >> true
+
+        when: 'the lifecycle is started'
+            jmsConnectorLifecycle.start()
+
+        then: 'the connector becomes ready without failed attempts'
+            conditions.eventually {
+                assert jmsConnectorLifecycle.isReady()
+                assert jmsConnectorLifecycle.getState() == JmsConnectorLifecycle.State.LISTENING
+            }
+            jmsConnectorLifecycle.getFailedStartAttempts() == 0
+    }
+
+    def 'when the connector fails to start, the start is retried until it listens'() {
+        given: 'the connector fails twice before listening'
+            jmsQueueConnector.startListening() >>> [false, false, true]
+
+        when: 'the lifecycle is started'
+            jmsConnectorLifecycle.start()
+
+        then: 'the connector becomes ready after two failed attempts'
+            conditions.eventually {
+                assert jmsConnectorLifecycle.isReady()
+            }
+            jmsConnectorLifecycle.getFailedStartAttempts() == 2
+    }
+
+    def 'when the lifecycle is stopped, start attempts are cancelled and the connector stops listening'() {
+        given: 'the connector never starts'
+            jmsQueueConnector.startListening() >> false
+            jmsConnectorLifecycle.start()
+            conditions.eventually {
+                assert jmsConnectorLifecycle.getState() == JmsConnectorLifecycle.State.RETRYING
+            }
+
+        when: 'the lifecycle is stopped'
+            jmsConnectorLifecycle.stop()
+            def failedAttempts = jmsConnectorLifecycle.getFailedStartAttempts()
+            sleep(100)
+
+        then: 'the connector is stopped and no further attempt is made'
+            1 * jmsQueueConnector.stopListening()
+            jmsConnectorLifecycle.getState() == JmsConnectorLifecycle.State.STOPPED
+            jmsConnectorLifecycle.getFailedStartAttempts() == failedAttempts
+    }
+
+    def 'when the lifecycle is stopped, the consumers are drained before the connector is stopped'() {
+        given: 'a listening connector'
+            def drainSummary = new DrainSummary(3L, 120L, 0L, 15L)
+            jmsQueueConnector.startListening() >> true
+            jmsConnectorLifecycle.start()
+            conditions.eventually {
+                assert jmsConnectorLifecycle.isReady()
+            }
+
+        when: 'the lifecycle is stopped'
+            jmsConnectorLifecycle.stop()
+
+        then: 'the consumers are drained'
+            1 * jmsQueueConnector.drain(10000L) >> drainSummary
+
+        then: 'the connector is stopped and the outcome of the drain is kept'
+            1 * jmsQueueConnector.stopListening()
+            jmsConnectorLifecycle.getState() == JmsConnectorLifecycle.State.STOPPED
+            jmsConnectorLifecycle.getLastDrainSummary() == drainSummary
+    }
+
+    def 'the retry delay doubles after each failed attempt up to the maximum'() {
+        expect: 'an exponential backoff capped at the maximum delay'
+            jmsConnectorLifecycle.getRetryDelayMillis(failedAttempts) == retryDelayMillis
+
+        where:
+            failedAttempts | retryDelayMillis
+            1              | 10
+            2              | 20
+            3              | 40
+            10             | 40
+    }
+
+    def 'when the connection fails, the connector abandons it and starts listening again'() {
+        given: 'a listening connector'
+            jmsQueueConnector.startListening() >> true
+            jmsConnectorLifecycle.start()
+            conditions.eventually {
+                assert jmsConnectorLifecycle.isReady()
+            }
+
+        when: 'the connection fails'
+            jmsConnectorLifecycle.reconnect()
+
+        then: 'the failed connection is abandoned and the connector is ready again'
+            conditions.eventually {
+                assert jmsConnectorLifecycle.isReady()
+            }
+            1 * jmsQueueConnector.abandonConnection()
+            jmsConnectorLifecycle.getReconnectionCount() == 1
+    }
+
+    def 'when the lifecycle is started, it handles the connection failures of the connector'() {
+        when: 'the lifecycle is started'
+            jmsConnectorLifecycle.start()
+
+        then: 'it is registered as the connection failure handler'
+            1 * jmsQueueConnector.setConnectionFailureHandler(_ as Runnable)
+    }
+}
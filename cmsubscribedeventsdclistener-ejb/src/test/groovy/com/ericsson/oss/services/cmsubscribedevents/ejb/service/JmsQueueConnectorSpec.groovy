@@ -14,15 +14,20 @@ package com.ericsson.oss.services.cmsubscribedevents.ejb.service
 import com.ericsson.cds.cdi.support.rule.ObjectUnderTest
 import com.ericsson.oss.itpf.sdk.eventbus.ChannelLocator
 import com.ericsson.oss.itpf.sdk.eventbus.Channel
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
 import javax.jms.JMSException
 import org.mockito.Mockito
 import org.slf4j.Logger
 import spock.lang.Specification
 import javax.jms.Destination
+import javax.jms.Message
 
 import javax.jms.Connection
 import javax.jms.ConnectionFactory
 import javax.jms.MessageConsumer
+import javax.jms.MessageProducer
+import javax.jms.Queue
+import javax.jms.QueueBrowser
 import javax.jms.Session
 import javax.naming.InitialContext
 
@@ -194,8 +199,196 @@ class JmsQueueConnectorSpec extends Specification {
 
         then: "connection is started and message listener is set"
             1 * connection.start()
-            1 * messageConsumer.setMessageListener(cmDataChangeDivertedQueueListener)
+            1 * messageConsumer.setMessageListener({ it instanceof SessionMessageListener && it.cmDataChangeDivertedQueueListener == cmDataChangeDivertedQueueListener })
             result == true
+
+        and: "an acknowledgement tracker is created for the session"
+            jmsQueueConnector.getPendingAcknowledgements() == ["CmDataChangeDivertedQueue-session-0": 0]
+    }
+
+    def "when acknowledgeExpiredMessages() is called, every idle session with expired pending messages is acknowledged"() {
+        given: "three sessions with one processed message each and no acknowledgement delay, the last one delivering a message"
+            Message firstMessage = Mock(Message)
+            Message secondMessage = Mock(Message)
+            Message deliveringMessage = Mock(Message)
+            SessionAcknowledgementTracker firstTracker = new SessionAcknowledgementTracker("session-0", 2000, 0L)
+            SessionAcknowledgementTracker secondTracker = new SessionAcknowledgementTracker("session-1", 2000, 0L)
+            SessionAcknowledgementTracker deliveringTracker = new SessionAcknowledgementTracker("session-2", 2000, 0L)
+            firstTracker.messageProcessed(firstMessage)
+            secondTracker.messageProcessed(secondMessage)
+            deliveringTracker.messageProcessed(deliveringMessage)
+            deliveringTracker.deliveryStarted()
+            jmsQueueConnector.acknowledgementTrackers.addAll([firstTracker, secondTracker, deliveringTracker])
+
+        expect: "the pending acknowledgements are reported per session"
+            jmsQueueConnector.getPendingAcknowledgements() == ["session-0": 1, "session-1": 1, "session-2": 1]
+
+        when: "acknowledgeExpiredMessages is invoked"
+            jmsQueueConnector.acknowledgeExpiredMessages()
+
+        then: "the idle sessions are acknowledged, the session delivering a message is left to its own thread"
+            1 * firstMessage.acknowledge()
+            1 * secondMessage.acknowledge()
+            0 * deliveringMessage.acknowledge()
+            jmsQueueConnector.getPendingAcknowledgements() == ["session-0": 0, "session-1": 0, "session-2": 1]
+    }
+
+    def "when addConsumer() is called while listening, a session and a consumer with its own acknowledgement tracker are added"() {
+        given: "one consumer is registered"
+            Session addedSession = Mock(Session)
+            MessageConsumer addedConsumer = Mock(MessageConsumer)
+            jmsQueueConnector.sessions.add(session)
+            jmsQueueConnector.consumers.add(messageConsumer)
+            jmsQueueConnector.acknowledgementTrackers.add(new SessionAcknowledgementTracker("CmDataChangeDivertedQueue-session-0", 2000, 5000L))
+            jmsQueueConnector.nextSessionIndex = 1
+            jmsQueueConnector.connection = connection
+            jmsQueueConnector.destination = destination
+
+        when: "addConsumer is invoked"
+            def result = jmsQueueConnector.addConsumer()
+
+        then: "a consumer is created on a new session and its message listener is set"
+            1 * connection.createSession(false, Session.CLIENT_ACKNOWLEDGE) >> addedSession
+            1 * addedSession.createConsumer(destination) >> addedConsumer
+            1 * addedConsumer.setMessageListener({ it instanceof SessionMessageListener })
+            result == true
+            jmsQueueConnector.getConsumerCount() == 2
+            jmsQueueConnector.getPendingAcknowledgements().keySet() == ["CmDataChangeDivertedQueue-session-0", "CmDataChangeDivertedQueue-session-1"] as Set
+    }
+
+    def "a message left for redelivery recovers the session of its consumer instead of acknowledging it"() {
+        given: "a consumer added while listening"
+            Session addedSession = Mock(Session)
+            MessageConsumer addedConsumer = Mock(MessageConsumer)
+            Message givenUpMessage = Mock(Message)
+            jmsQueueConnector.sessions.add(session)
+            jmsQueueConnector.consumers.add(messageConsumer)
+            jmsQueueConnector.acknowledgementTrackers.add(new SessionAcknowledgementTracker("CmDataChangeDivertedQueue-session-0", 2000, 5000L))
+            jmsQueueConnector.nextSessionIndex = 1
+            jmsQueueConnector.connection = connection
+            jmsQueueConnector.destination = destination
+            connection.createSession(false, Session.CLIENT_ACKNOWLEDGE) >> addedSession
+            addedSession.createConsumer(destination) >> addedConsumer
+            jmsQueueConnector.addConsumer()
+            SessionAcknowledgementTracker tracker = jmsQueueConnector.getAcknowledgementTrackers().get(1)
+
+        when: "a message of its session is left for redelivery"
+            tracker.messageReceived()
+            tracker.messageLeftForRedelivery(givenUpMessage)
+            tracker.acknowledgeIfDue(System.currentTimeMillis())
+
+        then: "the session is recovered and the message is not acknowledged"
+            1 * addedSession.recover()
+            0 * givenUpMessage.acknowledge()
+    }
+
+    def "when consumer groups are configured, addConsumer() creates the consumer with the complementary selector"() {
+        given: "a consumer group consumer and a default consumer are registered"
+            Session addedSession = Mock(Session)
+            MessageConsumer addedConsumer = Mock(MessageConsumer)
+            jmsQueueConnector.sessions.addAll([session, session])
+            jmsQueueConnector.consumers.addAll([messageConsumer, messageConsumer])
+            jmsQueueConnector.fixedConsumerCount = 1
+            jmsQueueConnector.defaultSelector = "NOT ((eventType = 'NodeNotification'))"
+            jmsQueueConnector.nextSessionIndex = 2
+            jmsQueueConnector.connection = connection
+            jmsQueueConnector.destination = destination
+
+        when: "addConsumer is invoked"
+            def result = jmsQueueConnector.addConsumer()
+
+        then: "the consumer is created with the complementary selector"
+            1 * connection.createSession(false, Session.CLIENT_ACKNOWLEDGE) >> addedSession
+            1 * addedSession.createConsumer(destination, "NOT ((eventType = 'NodeNotification'))") >> addedConsumer
+            0 * addedSession.createConsumer(destination)
+            result == true
+            jmsQueueConnector.getScalableConsumerCount() == 2
+    }
+
+    def "when addConsumer() is called while not listening, no consumer is added"() {
+        when: "addConsumer is invoked"
+            def result = jmsQueueConnector.addConsumer()
+
+        then: "no session is created"
+            0 * connection.createSession(*_)
+            result == false
+    }
+
+    def "when removeConsumer() is called, the last consumer is closed after its session is acknowledged"() {
+        given: "two consumers are registered and the second session has a processed message"
+            Session removedSession = Mock(Session)
+            MessageConsumer removedConsumer = Mock(MessageConsumer)
+            Message message = Mock(Message)
+            SessionAcknowledgementTracker removedTracker = new SessionAcknowledgementTracker("session-1", 2000, 5000L)
+            removedTracker.messageReceived()
+            removedTracker.messageProcessed(message)
+            jmsQueueConnector.sessions.addAll([session, removedSession])
+            jmsQueueConnector.consumers.addAll([messageConsumer, removedConsumer])
+            jmsQueueConnector.acknowledgementTrackers.addAll([new SessionAcknowledgementTracker("session-0", 2000, 5000L), removedTracker])
+
+        when: "removeConsumer is invoked"
+            def result = jmsQueueConnector.removeConsumer()
+
+        then: "the delivery to the consumer is stopped"
+            1 * removedConsumer.setMessageListener(null)
+
+        then: "the processed message is acknowledged"
+            1 * message.acknowledge()
+
+        then: "the consumer and the session are closed"
+            1 * removedConsumer.close()
+
+        then:
+            1 * removedSession.close()
+            0 * messageConsumer.close()
+            result == true
+            jmsQueueConnector.getPendingAcknowledgements().keySet() == ["session-0"] as Set
+    }
+
+    def "when removeConsumer() is called with a single consumer, it is kept"() {
+        given: "one consumer is registered"
+            jmsQueueConnector.sessions.add(session)
+            jmsQueueConnector.consumers.add(messageConsumer)
+            jmsQueueConnector.acknowledgementTrackers.add(new SessionAcknowledgementTracker("session-0", 2000, 5000L))
+
+        when: "removeConsumer is invoked"
+            def result = jmsQueueConnector.removeConsumer()
+
+        then: "the consumer is not closed"
+            0 * messageConsumer.close()
+            result == false
+    }
+
+    def "browseQueueDepth() counts the queued messages up to the limit"() {
+        given: "a queue with 5 messages"
+            Queue queue = Mock(Queue)
+            Session browserSession = Mock(Session)
+            QueueBrowser queueBrowser = Mock(QueueBrowser)
+            jmsQueueConnector.consumers.add(messageConsumer)
+            jmsQueueConnector.connection = connection
+            jmsQueueConnector.destination = queue
+            connection.createSession(false, Session.AUTO_ACKNOWLEDGE) >> browserSession
+            browserSession.createBrowser(queue) >> queueBrowser
+            queueBrowser.getEnumeration() >> { Collections.enumeration(["message"] * 5) }
+
+        expect: "the depth is capped by the limit"
+            jmsQueueConnector.browseQueueDepth(limit) == depth
+
+        where:
+            limit | depth
+            10    | 5
+            3     | 3
+    }
+
+    def "browseQueueDepth() returns -1 when the queue cannot be browsed"() {
+        given: "the browser session cannot be created"
+            jmsQueueConnector.consumers.add(messageConsumer)
+            jmsQueueConnector.connection = connection
+            jmsQueueConnector.destination = Mock(Queue)
+            connection.createSession(false, Session.AUTO_ACKNOWLEDGE) >> { throw new JMSException("unavailable") }
+
+        expect: "the depth is unknown"
+            jmsQueueConnector.browseQueueDepth(10) == -1
     }
 
     def "when JMSException is thrown during start connection, then corresponding error is logged and return false"() {
@@ -291,4 +484,272 @@ class JmsQueueConnectorSpec extends Specification {
             consumersCreated.size() == 10
     }
 
-}
\ No newline at end of file
+    def "when the connection fails while listening, the connection failure handler is called"() {
+        given: "a listening connector with a failure handler"
+            def failureHandler = Mock(Runnable)
+            def exceptionListener = null
+            jmsQueueConnector.context = context
+            jmsQueueConnector.connectionFactory = connectionFactory
+            connectionFactory.createConnection() >> connection
+            connection.setExceptionListener(_) >> { arguments -> exceptionListener = arguments[0] }
+            connection.createSession(false, Session.CLIENT_ACKNOWLEDGE) >> session
+            context.lookup(_ as String) >> destination
+            session.createConsumer(destination) >> messageConsumer
+            ChannelLocator channelLocator = Mock(ChannelLocator)
+            jmsQueueConnector.channelLocator = channelLocator
+            Channel channel = Mock(Channel)
+            channelLocator.lookupChannel(jmsQueueConnector.QUEUE_URI) >> channel
+            channel.getChannelURI() >> "CmDataChangeQueueUri"
+            jmsQueueConnector.setConnectionFailureHandler(failureHandler)
+            jmsQueueConnector.startListening()
+
+        when: "the JMS provider reports a connection failure"
+            exceptionListener.onException(new JMSException("connection lost"))
+
+        then: "the failure handler is called"
+            1 * failureHandler.run()
+    }
+
+    def "when the connection is abandoned, its consumers, sessions and connection are released"() {
+        given: "a listening connector"
+            jmsQueueConnector.sessions.add(session)
+            jmsQueueConnector.consumers.add(messageConsumer)
+            def acknowledgementTracker = new SessionAcknowledgementTracker("session-0", 1, 5000L)
+            jmsQueueConnector.acknowledgementTrackers.add(acknowledgementTracker)
+            jmsQueueConnector.connection = connection
+            def inFlightMessage = Mock(Message)
+            acknowledgementTracker.messageReceived()
+
+        when: "the connection is abandoned"
+            jmsQueueConnector.abandonConnection()
+
+        then: "the consumer, session and connection are closed"
+            1 * messageConsumer.setMessageListener(null)
+            1 * messageConsumer.close()
+            1 * session.close()
+            1 * connection.close()
+            jmsQueueConnector.getConsumerCount() == 0
+            jmsQueueConnector.getAcknowledgementTrackers().isEmpty()
+
+        when: "a dispatcher then reports the message in flight of the released session as processed"
+            acknowledgementTracker.messageProcessed(inFlightMessage)
+            acknowledgementTracker.acknowledgeIfDue(System.currentTimeMillis())
+
+        then: "the message is not acknowledged on the released session"
+            0 * inFlightMessage.acknowledge()
+    }
+
+    def "sendToQueue() sends the message on a short lived session"() {
+        given: "a connected connector"
+            Destination deadLetterQueue = Mock(Destination)
+            Session producerSession = Mock(Session)
+            MessageProducer producer = Mock(MessageProducer)
+            Message message = Mock(Message)
+            jmsQueueConnector.context = context
+            jmsQueueConnector.connection = connection
+            context.lookup("jms/queue/DLQ") >> deadLetterQueue
+            connection.createSession(false, Session.AUTO_ACKNOWLEDGE) >> producerSession
+            producerSession.createProducer(deadLetterQueue) >> producer
+
+        when: "a message is sent"
+            def result = jmsQueueConnector.sendToQueue("jms/queue/DLQ", message)
+
+        then: "it is sent and the session closed"
+            1 * producer.send(message)
+            1 * producerSession.close()
+            result == true
+    }
+
+    def "sendToQueue() returns false when there is no connection"() {
+        expect:
+            !jmsQueueConnector.sendToQueue("jms/queue/DLQ", Mock(Message))
+    }
+
+    def "when several queues are configured, each queue gets its own connections and consumers"() {
+        given: "two queues with two connections per queue and two consumers per queue"
+            System.setProperty(JmsQueueConnector.QUEUES_PROPERTY, "jms:/queue/CmDataChangeDivertedQueue, jms:/queue/CmDataChangeDivertedQueue2")
+            System.setProperty(JmsQueueConnector.CONNECTIONS_PER_QUEUE_PROPERTY, "2")
+            System.setProperty("sdk.eventbus.jms.concurrent.queue.listeners.number.CmDataChangeDivertedQueue", "2")
+            System.setProperty("sdk.eventbus.jms.concurrent.queue.listeners.number.CmDataChangeDivertedQueue2", "2")
+            Connection[] connections = [Mock(Connection), Mock(Connection), Mock(Connection), Mock(Connection)]
+            Destination shardDestination = Mock(Destination)
+            Session shardSession = Mock(Session)
+            MessageConsumer shardConsumer = Mock(MessageConsumer)
+            jmsQueueConnector.context = context
+            jmsQueueConnector.connectionFactory = connectionFactory
+            connectionFactory.createConnection() >>> connections
+            context.lookup("CmDataChangeQueueUri") >> destination
+            context.lookup("CmDataChangeQueue2Uri") >> shardDestination
+            session.createConsumer(destination) >> messageConsumer
+            shardSession.createConsumer(shardDestination) >> shardConsumer
+            ChannelLocator channelLocator = Mock(ChannelLocator)
+            jmsQueueConnector.channelLocator = channelLocator
+            channelLocator.lookupChannel("jms:/queue/CmDataChangeDivertedQueue") >> Mock(Channel) { getChannelURI() >> "CmDataChangeQueueUri" }
+            channelLocator.lookupChannel("jms:/queue/CmDataChangeDivertedQueue2") >> Mock(Channel) { getChannelURI() >> "CmDataChangeQueue2Uri" }
+
+        when: "startListening is invoked"
+            def result = jmsQueueConnector.startListening()
+
+        then: "four connections are started and the sessions of each queue are spread over its own connections"
+            1 * connections[0].start()
+            1 * connections[1].start()
+            1 * connections[2].start()
+            1 * connections[3].start()
+            1 * connections[1].createSession(false, Session.CLIENT_ACKNOWLEDGE) >> shardSession
+            1 * connections[2].createSession(false, Session.CLIENT_ACKNOWLEDGE) >> shardSession
+            1 * connections[0].createSession(false, Session.CLIENT_ACKNOWLEDGE) >> session
+            1 * connections[3].createSession(false, Session.CLIENT_ACKNOWLEDGE) >> session
+            result == true
+            jmsQueueConnector.getConsumerCount() == 4
+            jmsQueueConnector.getScalableConsumerCount() == 2
+            jmsQueueConnector.getScalableAcknowledgementTrackers()*.sessionId == ["CmDataChangeDivertedQueue-session-2",
+                "CmDataChangeDivertedQueue-session-3"]
+
+        and: "the consumers of the additional queue are registered first"
+            jmsQueueConnector.getPendingAcknowledgements().keySet() as List == ["CmDataChangeDivertedQueue2-session-0",
+                "CmDataChangeDivertedQueue2-session-1", "CmDataChangeDivertedQueue-session-2", "CmDataChangeDivertedQueue-session-3"]
+
+        cleanup:
+            System.clearProperty(JmsQueueConnector.QUEUES_PROPERTY)
+            System.clearProperty(JmsQueueConnector.CONNECTIONS_PER_QUEUE_PROPERTY)
+            System.clearProperty("sdk.eventbus.jms.concurrent.queue.listeners.number.CmDataChangeDivertedQueue")
+            System.clearProperty("sdk.eventbus.jms.concurrent.queue.listeners.number.CmDataChangeDivertedQueue2")
+    }
+
+    def "when a consumer group is configured, its consumers of the first queue are created with its selector and registered first"() {
+        given: "a consumer group of CPP notifications with two consumers"
+            def selector = "eventType = 'NodeNotification'"
+            System.setProperty(ConsumerGroup.CONSUMER_GROUPS_PROPERTY, "cpp")
+            System.setProperty(ConsumerGroup.CONSUMER_GROUP_PREFIX + "cpp" + ConsumerGroup.SELECTOR_SUFFIX, selector)
+            System.setProperty(ConsumerGroup.CONSUMER_GROUP_PREFIX + "cpp" + ConsumerGroup.CONSUMERS_SUFFIX, "2")
+            System.setProperty(ConsumerGroup.CONSUMER_GROUP_PREFIX + "cpp" + ConsumerGroup.NOTIFICATION_TYPE_SUFFIX, NodeNotification.name)
+            MessageConsumer groupConsumer = Mock(MessageConsumer)
+            jmsQueueConnector.context = context
+            jmsQueueConnector.connectionFactory = connectionFactory
+            jmsQueueConnector.cmDataChangeDivertedQueueListener = new CmDataChangeDivertedQueueListener()
+            connectionFactory.createConnection() >> connection
+            connection.createSession(false, Session.CLIENT_ACKNOWLEDGE) >> session
+            context.lookup("CmDataChangeQueueUri") >> destination
+            ChannelLocator channelLocator = Mock(ChannelLocator)
+            jmsQueueConnector.channelLocator = channelLocator
+            channelLocator.lookupChannel("jms:/queue/CmDataChangeDivertedQueue") >> Mock(Channel) { getChannelURI() >> "CmDataChangeQueueUri" }
+
+        when: "startListening is invoked"
+            def result = jmsQueueConnector.startListening()
+
+        then: "the consumers of the group use its selector and its typed dispatch, the default consumer uses the listener dispatch"
+            2 * session.createConsumer(destination, selector) >> groupConsumer
+            0 * session.createConsumer(destination)
+
+        and: "the default consumer only selects the messages matching no group"
+            1 * session.createConsumer(destination, "NOT ((" + selector + "))") >> messageConsumer
+            2 * groupConsumer.setMessageListener({ it.notificationDispatch != null })
+            1 * messageConsumer.setMessageListener({ it.notificationDispatch == null })
+            result == true
+            jmsQueueConnector.getConsumerCount() == 3
+            jmsQueueConnector.getScalableConsumerCount() == 1
+
+        and: "the consumers of the group are registered first"
+            jmsQueueConnector.getPendingAcknowledgements().keySet() as List == ["CmDataChangeDivertedQueue-cpp-session-0",
+                "CmDataChangeDivertedQueue-cpp-session-1", "CmDataChangeDivertedQueue-session-2"]
+
+        cleanup:
+            System.clearProperty(ConsumerGroup.CONSUMER_GROUPS_PROPERTY)
+            System.clearProperty(ConsumerGroup.CONSUMER_GROUP_PREFIX + "cpp" + ConsumerGroup.SELECTOR_SUFFIX)
+            System.clearProperty(ConsumerGroup.CONSUMER_GROUP_PREFIX + "cpp" + ConsumerGroup.CONSUMERS_SUFFIX)
+            System.clearProperty(ConsumerGroup.CONSUMER_GROUP_PREFIX + "cpp" + ConsumerGroup.NOTIFICATION_TYPE_SUFFIX)
+    }
+
+    def "when removeConsumer() is called with a single consumer on the first queue, the consumers of the additional queues are kept"() {
+        given: "one consumer of an additional queue followed by one consumer of the first queue"
+            MessageConsumer shardConsumer = Mock(MessageConsumer)
+            jmsQueueConnector.sessions.addAll([Mock(Session), session])
+            jmsQueueConnector.consumers.addAll([shardConsumer, messageConsumer])
+            jmsQueueConnector.acknowledgementTrackers.addAll([new SessionAcknowledgementTracker("session-0", 2000, 5000L),
+                new SessionAcknowledgementTracker("session-1", 2000, 5000L)])
+            jmsQueueConnector.fixedConsumerCount = 1
+
+        when: "removeConsumer is invoked"
+            def result = jmsQueueConnector.removeConsumer()
+
+        then: "no consumer is closed"
+            0 * messageConsumer.close()
+            0 * shardConsumer.close()
+            result == false
+    }
+
+    def "when the connection of an additional queue fails while listening, the connection failure handler is called"() {
+        given: "a connector listening to two queues"
+            System.setProperty(JmsQueueConnector.QUEUES_PROPERTY, "jms:/queue/CmDataChangeDivertedQueue,jms:/queue/CmDataChangeDivertedQueue2")
+            def failureHandler = Mock(Runnable)
+            def exceptionListeners = []
+            Connection shardConnection = Mock(Connection)
+            jmsQueueConnector.context = context
+            jmsQueueConnector.connectionFactory = connectionFactory
+            connectionFactory.createConnection() >>> [connection, shardConnection]
+            [connection, shardConnection].each {
+                it.setExceptionListener(_) >> { arguments -> exceptionListeners << arguments[0] }
+                it.createSession(false, Session.CLIENT_ACKNOWLEDGE) >> session
+            }
+            context.lookup(_ as String) >> destination
+            session.createConsumer(destination) >> messageConsumer
+            ChannelLocator channelLocator = Mock(ChannelLocator)
+            jmsQueueConnector.channelLocator = channelLocator
+            channelLocator.lookupChannel(_ as String) >> Mock(Channel) { getChannelURI() >> "CmDataChangeQueueUri" }
+            jmsQueueConnector.setConnectionFailureHandler(failureHandler)
+            jmsQueueConnector.startListening()
+
+        when: "the JMS provider reports a failure of the connection of the additional queue"
+            exceptionListeners[1].onException(new JMSException("connection lost"))
+
+        then: "the failure handler is called"
+            1 * failureHandler.run()
+
+        cleanup:
+            System.clearProperty(JmsQueueConnector.QUEUES_PROPERTY)
+    }
+
+    def "drain() stops the delivery and acknowledges the sessions whose messages were all processed before the deadline"() {
+        given: "a session with a processed message and a session with a message which stays in flight"
+            Message processedMessage = Mock(Message)
+            Message stuckMessage = Mock(Message)
+            MessageConsumer stuckConsumer = Mock(MessageConsumer)
+            SessionAcknowledgementTracker firstTracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            SessionAcknowledgementTracker secondTracker = new SessionAcknowledgementTracker("session-1", 2000, 60000L)
+            firstTracker.messageReceived()
+            firstTracker.messageProcessed(processedMessage)
+            secondTracker.messageReceived()
+            secondTracker.messageProcessed(stuckMessage)
+            secondTracker.messageReceived()
+            jmsQueueConnector.sessions.addAll([session, Mock(Session)])
+            jmsQueueConnector.consumers.addAll([messageConsumer, stuckConsumer])
+            jmsQueueConnector.acknowledgementTrackers.addAll([firstTracker, secondTracker])
+
+        when: "the consumers are drained"
+            DrainSummary drainSummary = jmsQueueConnector.drain(50L)
+
+        then: "the delivery is stopped"
+            1 * messageConsumer.setMessageListener(null)
+            1 * stuckConsumer.setMessageListener(null)
+
+        then: "only the session without messages in flight is acknowledged, and the consumers are left open for stopListening"
+            1 * processedMessage.acknowledge()
+            0 * stuckMessage.acknowledge()
+            0 * messageConsumer.close()
+            0 * stuckConsumer.close()
+            0 * session.close()
+            drainSummary.getAcknowledgedMessages() == 1
+            drainSummary.getAbandonedMessages() == 2
+            drainSummary.getDrainedMessages() == 0
+            jmsQueueConnector.getConsumerCount() == 2
+    }
+
+    def "drain() does nothing when the connector is not listening"() {
+        when: "the consumers are drained"
+            DrainSummary drainSummary = jmsQueueConnector.drain(50L)
+
+        then: "nothing is drained"
+            drainSummary.getAcknowledgedMessages() == 0
+            drainSummary.getAbandonedMessages() == 0
+    }
+}
@@ -0,0 +1,50 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import java.util.concurrent.ThreadFactory
+import spock.lang.Specification
+
+/**
+ * This class tests the NamedThreadFactory.
+ */
+class NamedThreadFactorySpec extends Specification {
+
+    def 'threads are created by the managed thread factory of the container and named after their component'() {
+        given: 'a managed thread factory'
+            def managedThread = new Thread()
+            def managedThreadFactory = Mock(ThreadFactory)
+            def threadFactory = new NamedThreadFactory("CmDataChangeDivertedQueue-worker", managedThreadFactory)
+
+        when: 'a thread is created'
+            def thread = threadFactory.newThread({} as Runnable)
+
+        then: 'it is the managed thread, renamed'
+            1 * managedThreadFactory.newThread(_) >> managedThread
+            thread.is(managedThread)
+            thread.name == "CmDataChangeDivertedQueue-worker-0"
+            threadFactory.isManaged()
+    }
+
+    def 'outside a container, daemon threads named after their component are created'() {
+        given: 'no managed thread factory can be looked up'
+            def threadFactory = new NamedThreadFactory("CmDataChangeDivertedQueue-worker")
+
+        when: 'two threads are created'
+            def threads = (1..2).collect { threadFactory.newThread({} as Runnable) }
+
+        then: 'they are numbered daemon threads'
+            threads*.name == ["CmDataChangeDivertedQueue-worker-0", "CmDataChangeDivertedQueue-worker-1"]
+            threads.every { it.daemon }
+            !threadFactory.isManaged()
+    }
+}
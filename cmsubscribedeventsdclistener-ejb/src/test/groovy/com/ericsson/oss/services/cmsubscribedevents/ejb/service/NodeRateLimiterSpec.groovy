@@ -0,0 +1,111 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import java.util.concurrent.TimeUnit
+
+import spock.lang.Specification
+
+/**
+ * This class tests the NodeRateLimiter.
+ */
+class NodeRateLimiterSpec extends Specification {
+
+    static final String NODE_FDN = "SubNetwork=ONRM_ROOT_MO,MeContext=LTE01ERBS,ManagedElement=1,ENodeBFunction=1,EUtranCellFDD=1"
+    static final long START_NANOS = TimeUnit.SECONDS.toNanos(1000L)
+
+    def 'the node is the FDN prefix up to the MeContext, NetworkElement or ManagedElement'() {
+        expect: 'the prefix ending with the first node RDN'
+            NodeRateLimiter.getNode(fdn) == node
+
+        where:
+            fdn                                             | node
+            NODE_FDN                                        | "SubNetwork=ONRM_ROOT_MO,MeContext=LTE01ERBS"
+            "NetworkElement=NR01,CmFunction=1"              | "NetworkElement=NR01"
+            "ManagedElement=RadioNode01,Equipment=1"        | "ManagedElement=RadioNode01"
+            "SubNetwork=A,SubManagedElement=1"              | null
+            "SubNetwork=A"                                  | null
+            null                                            | null
+    }
+
+    def 'a node can send a burst of events, then events at the configured rate'() {
+        given: 'a limit of 10 events per second with bursts of 3'
+            def nodeRateLimiter = new NodeRateLimiter(10.0, 3, 60000L, 10)
+
+        when: 'the node sends 5 events at once'
+            def burst = (1..5).collect { nodeRateLimiter.tryAcquire(NODE_FDN, START_NANOS) }
+
+        then: 'the events after the burst are over the limit'
+            burst == [true, true, true, false, false]
+            nodeRateLimiter.getLimitedEventCount() == 2
+
+        when: '100 ms later, the node sends 2 more events'
+            def later = (1..2).collect { nodeRateLimiter.tryAcquire(NODE_FDN, START_NANOS + TimeUnit.MILLISECONDS.toNanos(100L)) }
+
+        then: 'a single token was refilled'
+            later == [true, false]
+    }
+
+    def 'the limit of a node does not affect the other nodes nor the events without a node'() {
+        given: 'a node which used its single token'
+            def nodeRateLimiter = new NodeRateLimiter(0.0, 1, 60000L, 10)
+            nodeRateLimiter.tryAcquire(NODE_FDN, START_NANOS)
+
+        expect: 'another node and an FDN without a node are within the limit'
+            !nodeRateLimiter.tryAcquire(NODE_FDN, START_NANOS)
+            nodeRateLimiter.tryAcquire("SubNetwork=ONRM_ROOT_MO,MeContext=LTE02ERBS,ManagedElement=1", START_NANOS)
+            nodeRateLimiter.tryAcquire("SubNetwork=ONRM_ROOT_MO", START_NANOS)
+            nodeRateLimiter.tryAcquire(null, START_NANOS)
+    }
+
+    def 'the hot node report lists the nodes with the most events over the limit'() {
+        given: 'a report of 2 nodes and three nodes over the limit'
+            def nodeRateLimiter = new NodeRateLimiter(0.0, 1, 60000L, 2)
+            [LTE01: 4, LTE02: 2, LTE03: 3, LTE04: 1].each { node, events ->
+                events.times { nodeRateLimiter.tryAcquire("MeContext=" + node + ",ManagedElement=1", START_NANOS) }
+            }
+
+        expect: 'the two nodes with the most events over the limit, in decreasing order'
+            nodeRateLimiter.getHotNodes() == ["MeContext=LTE01": 3L, "MeContext=LTE03": 2L]
+            nodeRateLimiter.getLimitedEventCount() == 6
+    }
+
+    def 'a rate below one event per second can be configured'() {
+        given: 'a limit of half an event per second with bursts of 1'
+            System.setProperty(NodeRateLimiter.RATE_LIMIT_PER_SECOND_PROPERTY, "0.5")
+            System.setProperty(NodeRateLimiter.RATE_LIMIT_BURST_PROPERTY, "1")
+            def nodeRateLimiter = NodeRateLimiter.create()
+            nodeRateLimiter.tryAcquire(NODE_FDN, START_NANOS)
+
+        expect: 'the node gets its next token after two seconds'
+            !nodeRateLimiter.tryAcquire(NODE_FDN, START_NANOS + TimeUnit.SECONDS.toNanos(1L))
+            nodeRateLimiter.tryAcquire(NODE_FDN, START_NANOS + TimeUnit.SECONDS.toNanos(2L))
+
+        cleanup:
+            System.clearProperty(NodeRateLimiter.RATE_LIMIT_PER_SECOND_PROPERTY)
+            System.clearProperty(NodeRateLimiter.RATE_LIMIT_BURST_PROPERTY)
+    }
+
+    def 'the buckets of the idle nodes are evicted'() {
+        given: 'two nodes with a bucket'
+            def nodeRateLimiter = new NodeRateLimiter(10.0, 1, 1000L, 10)
+            def startNanos = System.nanoTime()
+            nodeRateLimiter.tryAcquire(NODE_FDN, startNanos)
+            nodeRateLimiter.tryAcquire("MeContext=LTE02ERBS,ManagedElement=1", startNanos)
+
+        when: 'only one of them sends an event after the eviction delay'
+            nodeRateLimiter.tryAcquire(NODE_FDN, startNanos + TimeUnit.SECONDS.toNanos(2L))
+
+        then: 'the bucket of the idle node is removed'
+            nodeRateLimiter.getTrackedNodeCount() == 1
+    }
+}
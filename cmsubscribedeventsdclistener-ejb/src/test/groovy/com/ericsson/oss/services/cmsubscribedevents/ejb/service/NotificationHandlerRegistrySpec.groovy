@@ -0,0 +1,94 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.DpsAttributeChangedEvent
+import com.ericsson.oss.itpf.datalayer.dps.notification.event.DpsDataChangedEvent
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+
+import java.util.function.Consumer
+import spock.lang.Specification
+
+/**
+ * This class tests the NotificationHandlerRegistry.
+ */
+class NotificationHandlerRegistrySpec extends Specification {
+
+    NotificationHandlerRegistry registry = new NotificationHandlerRegistry()
+    List<Serializable> handledByDps = []
+    List<Serializable> handledByAttributeChange = []
+
+    def 'a notification is dispatched to the handler of its superclass when its own class has no handler'() {
+        given: 'a handler for DpsDataChangedEvent'
+            registry.register(DpsDataChangedEvent, { handledByDps.add(it) } as Consumer)
+            def event = new DpsAttributeChangedEvent()
+
+        when: 'a DpsAttributeChangedEvent is dispatched'
+            def dispatched = registry.dispatch(event)
+
+        then: 'the DpsDataChangedEvent handler receives it'
+            dispatched
+            handledByDps == [event]
+    }
+
+    def 'the most specific handler wins and registering a handler refreshes the cached resolution'() {
+        given: 'a handler for DpsDataChangedEvent already resolved for DpsAttributeChangedEvent'
+            registry.register(DpsDataChangedEvent, { handledByDps.add(it) } as Consumer)
+            def event = new DpsAttributeChangedEvent()
+            registry.dispatch(event)
+
+        when: 'a handler for DpsAttributeChangedEvent is registered and the event is dispatched again'
+            registry.register(DpsAttributeChangedEvent, { handledByAttributeChange.add(it) } as Consumer)
+            registry.dispatch(event)
+
+        then: 'the new handler receives it'
+            handledByDps == [event]
+            handledByAttributeChange == [event]
+    }
+
+    def 'a notification without handler is not dispatched'() {
+        given: 'a handler for DpsDataChangedEvent only'
+            registry.register(DpsDataChangedEvent, { handledByDps.add(it) } as Consumer)
+
+        expect: 'NodeNotification is not supported, neither on first nor on cached resolution'
+            !registry.supports(NodeNotification)
+            !registry.dispatch(new NodeNotification())
+            !registry.dispatch(new NodeNotification())
+            handledByDps.isEmpty()
+    }
+
+    def 'a typed dispatch hands the notifications of its class to the handler resolved for it and dispatches the others by class'() {
+        given: 'handlers for DpsDataChangedEvent and NodeNotification, and a dispatch typed for DpsAttributeChangedEvent'
+            List<Serializable> handledByNode = []
+            registry.register(DpsDataChangedEvent, { handledByDps.add(it) } as Consumer)
+            registry.register(NodeNotification, { handledByNode.add(it) } as Consumer)
+            def typedDispatch = registry.createTypedDispatch(DpsAttributeChangedEvent)
+            def event = new DpsAttributeChangedEvent()
+            def nodeNotification = new NodeNotification()
+
+        when: 'a DpsAttributeChangedEvent and a NodeNotification are dispatched'
+            def dispatched = [typedDispatch.test(event), typedDispatch.test(nodeNotification)]
+
+        then: 'each one reaches its handler'
+            dispatched == [true, true]
+            handledByDps == [event]
+            handledByNode == [nodeNotification]
+    }
+
+    def 'a typed dispatch for a class without handler dispatches by class'() {
+        given: 'a dispatch typed for NodeNotification, which has no handler'
+            def typedDispatch = registry.createTypedDispatch(NodeNotification)
+
+        expect: 'the notification is not dispatched'
+            !typedDispatch.test(new NodeNotification())
+    }
+}
@@ -0,0 +1,90 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.function.BiConsumer
+import java.util.function.Function
+import javax.jms.Message
+import javax.jms.ObjectMessage
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * This class tests the PartitionedEventDispatcher.
+ */
+class PartitionedEventDispatcherSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    def 'events for the same FDN are processed in order on the same lane, while every event is reported to the session tracker'() {
+        given: 'a dispatcher with four lanes recording the processing thread and order of each FDN'
+            def processedPerFdn = new ConcurrentHashMap<String, List<Integer>>()
+            def threadsPerFdn = new ConcurrentHashMap<String, Set<String>>()
+            def dispatcher = new PartitionedEventDispatcher(4, 16, { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event ->
+                    processedPerFdn.computeIfAbsent(event.fdn, { new CopyOnWriteArrayList() }).add(message.getIntProperty("sequence"))
+                    threadsPerFdn.computeIfAbsent(event.fdn, { ConcurrentHashMap.newKeySet() }).add(Thread.currentThread().name)
+                } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            def fdns = ["MeContext=ERBS1", "MeContext=ERBS2", "MeContext=ERBS3"]
+            def messages = (0..<10).collectMany { sequence -> fdns.collect { fdn -> createMessage(fdn, sequence) } }
+
+        when: 'ten events per FDN are dispatched'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+
+        then: 'each FDN is processed in order on a single lane'
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 30
+            }
+            fdns.each { fdn ->
+                assert processedPerFdn[fdn] == (0..<10).toList()
+                assert threadsPerFdn[fdn].size() == 1
+            }
+
+        and: 'the lane statistics account for every event'
+            dispatcher.getLaneStatistics().size() == 4
+            dispatcher.getLaneStatistics().sum { it.processedEvents } == 30
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'the lane of an FDN is stable and events without FDN go to the first lane'() {
+        given: 'a dispatcher with eight lanes'
+            def dispatcher = new PartitionedEventDispatcher(8, 16, { null } as Function<Message, Serializable>,
+                { message, event -> } as BiConsumer<Message, Serializable>)
+
+        expect: 'the same FDN always maps to the same lane'
+            dispatcher.laneIndex("MeContext=ERBS1,ManagedElement=1") == dispatcher.laneIndex("MeContext=ERBS1,ManagedElement=1")
+            dispatcher.laneIndex("MeContext=ERBS1,ManagedElement=1") in (0..<8)
+            dispatcher.laneIndex(null) == 0
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def createMessage(String fdn, int sequence) {
+        def nodeNotification = new NodeNotification()
+        nodeNotification.setFdn(fdn)
+        def message = Mock(ObjectMessage)
+        message.getObject() >> nodeNotification
+        message.getIntProperty("sequence") >> sequence
+        return message
+    }
+}
@@ -0,0 +1,327 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+import com.ericsson.oss.mediation.notifications.ComEcimNodeNotification
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.BiConsumer
+import java.util.function.Function
+import javax.jms.Message
+import javax.jms.ObjectMessage
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * This class tests the PriorityLaneDispatcher.
+ */
+class PriorityLaneDispatcherSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    def 'while both lanes have events, the live lane is drained according to its weight and every event is reported to the session tracker'() {
+        given: 'a dispatcher with a single worker, a live weight of 4 and a bulk weight of 1, whose worker is held by a first bulk event'
+            def processed = new CopyOnWriteArrayList<String>()
+            def release = new CountDownLatch(1)
+            def dispatcher = new PriorityLaneDispatcher(1, 16, 4, 1, 60000L, 60000L, { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event ->
+                    if (event == "bulk-0") {
+                        release.await(5, TimeUnit.SECONDS)
+                    }
+                    processed.add(event instanceof NodeNotification ? event.fdn : event)
+                } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            dispatch(dispatcher, tracker, createMessage("bulk-0"))
+            conditions.eventually {
+                assert dispatcher.getLaneDepths() == [live: 0, bulk: 0]
+            }
+
+        when: 'a bulk backlog builds up before four live notifications arrive'
+            (1..5).each { dispatch(dispatcher, tracker, createMessage("bulk-" + it)) }
+            (1..4).each { dispatch(dispatcher, tracker, createMessage(createNodeNotification("live-" + it))) }
+            assert dispatcher.getLaneDepths() == [live: 4, bulk: 5]
+            release.countDown()
+
+        then: 'the live notifications are served four times for each bulk event'
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 10
+            }
+            processed == ["bulk-0", "live-1", "live-2", "bulk-1", "live-3", "live-4", "bulk-2", "bulk-3", "bulk-4", "bulk-5"]
+
+        and: 'the latency of each lane is recorded'
+            dispatcher.getLaneLatencyMillis()["live"].count == 4
+            dispatcher.getLaneLatencyMillis()["bulk"].count == 6
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'the events of one MO are processed in the order they were received, whatever the number of workers'() {
+        given: 'a dispatcher with four workers whose processing takes longer for the first events'
+            def processed = new CopyOnWriteArrayList<NodeNotification>()
+            def dispatcher = new PriorityLaneDispatcher(4, 16, 4, 1, 60000L, 60000L, { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event ->
+                    sleep(event.fdn.endsWith("=1") && processed.size() < 2 ? 50 : 1)
+                    processed.add(event)
+                } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            def notifications = (1..20).collect { createNodeNotification("MeContext=N1,ManagedElement=1,Cell=" + (it % 2 + 1)) }
+
+        when: 'the notifications of two MOs are dispatched alternately'
+            notifications.each { dispatch(dispatcher, tracker, createMessage(it)) }
+
+        then: 'the notifications of each MO are processed in the order they were dispatched'
+            conditions.eventually {
+                assert processed.size() == 20
+            }
+            ["=1", "=2"].each { suffix ->
+                def expected = notifications.findAll { it.fdn.endsWith(suffix) }
+                def actual = processed.findAll { it.fdn.endsWith(suffix) }
+                assert (0..<expected.size()).every { expected[it].is(actual[it]) }
+            }
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'the session thread blocks on a full bulk lane until the worker catches up'() {
+        given: 'a dispatcher with a lane capacity of 1, whose single worker is held by a first bulk event'
+            def release = new CountDownLatch(1)
+            def dispatcher = new PriorityLaneDispatcher(1, 1, 4, 1, 60000L, 60000L, { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event ->
+                    if (event == "bulk-0") {
+                        release.await(5, TimeUnit.SECONDS)
+                    }
+                } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            dispatch(dispatcher, tracker, createMessage("bulk-0"))
+            conditions.eventually {
+                assert dispatcher.getLaneDepths() == [live: 0, bulk: 0]
+            }
+
+        when: 'five bulk events are dispatched by another session thread while the worker is held'
+            def sessionThread = Thread.start {
+                (1..5).each { dispatch(dispatcher, tracker, createMessage("bulk-" + it)) }
+            }
+
+        then: 'the session thread blocks once the partition holds one event'
+            conditions.eventually {
+                assert sessionThread.getState() == Thread.State.WAITING
+            }
+            dispatcher.getLaneDepths() == [live: 0, bulk: 1]
+
+        when: 'the worker is released'
+            release.countDown()
+            sessionThread.join(5000)
+
+        then: 'the session thread dispatches every event and every event is processed'
+            !sessionThread.isAlive()
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 6
+            }
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'node notifications go to the live lane and every other event to the bulk lane'() {
+        expect: 'the lane follows the notification class'
+            PriorityLaneDispatcher.isLiveEvent(event) == live
+
+        where:
+            event                                                                                     | live
+            new NodeNotification()                                                                    | true
+            new ComEcimNodeNotification("ManagedElement=1", 3L, "2023-01-01T00:00:00.000", 1L, false) | true
+            "other event"                                                                             | false
+            null                                                                                      | false
+    }
+
+    def 'events processed later than the objective of their lane are counted as violations'() {
+        given: 'a dispatcher with a live objective of 0 ms whose processing takes 20 ms'
+            def dispatcher = new PriorityLaneDispatcher(2, 16, 4, 1, 0L, 60000L, { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event -> sleep(20) } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+
+        when: 'two live notifications and one bulk event are dispatched'
+            dispatch(dispatcher, tracker, createMessage(createNodeNotification("live-1")))
+            dispatch(dispatcher, tracker, createMessage(createNodeNotification("live-2")))
+            dispatch(dispatcher, tracker, createMessage("bulk-1"))
+
+        then: 'only the live lane reports violations'
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 3
+            }
+            dispatcher.getLaneSloViolations() == [live: 2L, bulk: 0L]
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'after the dispatcher is stopped, the events are processed on the session thread'() {
+        given: 'a stopped dispatcher'
+            def threads = new CopyOnWriteArrayList<String>()
+            def dispatcher = new PriorityLaneDispatcher(1, 16, 4, 1, 1000L, 60000L, { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event -> threads.add(Thread.currentThread().name) } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            dispatcher.stop(1000L)
+
+        when: 'an event is dispatched'
+            dispatch(dispatcher, tracker, createMessage("bulk-1"))
+
+        then: 'it is processed by the caller and reported to the tracker'
+            threads == [Thread.currentThread().name]
+            tracker.getPendingAcknowledgements() == 1
+    }
+
+    def 'with node rate limiting, the events of a node over its limit go to the overflow lane'() {
+        given: 'a dispatcher allowing bursts of 2 events per node without refill, whose single worker is held by a first event'
+            def processed = new CopyOnWriteArrayList<String>()
+            def release = new CountDownLatch(1)
+            def nodeRateLimiter = new NodeRateLimiter(0.0, 2, 60000L, 10)
+            def dispatcher = new PriorityLaneDispatcher(1, 16, 4, 1, 60000L, 60000L, nodeRateLimiter, 1, 60000L,
+                { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event ->
+                    if (event == "bulk-0") {
+                        release.await(5, TimeUnit.SECONDS)
+                    }
+                    processed.add(event instanceof NodeNotification ? event.fdn : event)
+                } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            dispatch(dispatcher, tracker, createMessage("bulk-0"))
+            conditions.eventually {
+                assert dispatcher.getLaneDepths() == [live: 0, bulk: 0, overflow: 0]
+            }
+
+        when: 'a node sends four notifications and another node one'
+            (1..4).each { dispatch(dispatcher, tracker, createMessage(createNodeNotification("MeContext=N1,ManagedElement=1,Cell=" + it))) }
+            dispatch(dispatcher, tracker, createMessage(createNodeNotification("MeContext=N2,ManagedElement=1,Cell=1")))
+
+        then: 'the notifications of the first node over its burst are in the overflow lane'
+            dispatcher.getLaneDepths() == [live: 3, bulk: 0, overflow: 2]
+            nodeRateLimiter.getHotNodes() == ["MeContext=N1": 2L]
+
+        when: 'the worker is released'
+            release.countDown()
+
+        then: 'every event is processed'
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 6
+            }
+            processed.size() == 6
+            dispatcher.getLaneLatencyMillis()["overflow"].count == 2
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'once a node is over its limit, its events stay in the overflow lane until the last of them is processed'() {
+        given: 'a rate limiter letting the first event of the node through, limiting the second and letting the next ones through'
+            def processed = new CopyOnWriteArrayList<String>()
+            def release = new CountDownLatch(1)
+            def nodeRateLimiter = Stub(NodeRateLimiter) {
+                tryAcquire(_, _) >>> [true, false, true, true, true]
+            }
+            def dispatcher = new PriorityLaneDispatcher(1, 16, 4, 1, 60000L, 60000L, nodeRateLimiter, 1, 60000L,
+                { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event ->
+                    release.await(5, TimeUnit.SECONDS)
+                    processed.add(event.fdn)
+                } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+
+        when: 'the node sends four notifications while the worker is held by the first one'
+            (1..4).each { dispatch(dispatcher, tracker, createMessage(createNodeNotification("MeContext=N1,ManagedElement=1,Cell=" + it))) }
+
+        then: 'the notifications after the limited one follow it to the overflow lane'
+            conditions.eventually {
+                assert dispatcher.getLaneDepths() == [live: 0, bulk: 0, overflow: 3]
+            }
+
+        when: 'the worker is released and the node sends another notification once its overflow events are processed'
+            release.countDown()
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 4
+            }
+            dispatch(dispatcher, tracker, createMessage(createNodeNotification("MeContext=N1,ManagedElement=1,Cell=5")))
+
+        then: 'the notifications are processed in order and the node is back in the live lane'
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 5
+            }
+            processed == (1..5).collect { "MeContext=N1,ManagedElement=1,Cell=" + it }
+            dispatcher.getLaneLatencyMillis()["overflow"].count == 3
+            dispatcher.getLaneLatencyMillis()["live"].count == 2
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'the overflow events of a node wait for its events already in the live lane, whatever the weight of the overflow lane'() {
+        given: 'a rate limiter limiting the second notification of the node, and a worker favouring the overflow lane held by a first event'
+            def processed = new CopyOnWriteArrayList<String>()
+            def release = new CountDownLatch(1)
+            def nodeRateLimiter = Stub(NodeRateLimiter) {
+                tryAcquire(_, _) >>> [true, true, false, true]
+            }
+            def dispatcher = new PriorityLaneDispatcher(1, 16, 1, 1, 60000L, 60000L, nodeRateLimiter, 10, 60000L,
+                { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event ->
+                    if (event == "bulk-0") {
+                        release.await(5, TimeUnit.SECONDS)
+                    }
+                    processed.add(event instanceof NodeNotification ? event.fdn : event)
+                } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            dispatch(dispatcher, tracker, createMessage("bulk-0"))
+            conditions.eventually {
+                assert dispatcher.getLaneDepths() == [live: 0, bulk: 0, overflow: 0]
+            }
+
+        when: 'the node sends a notification within its limit, then two over its limit'
+            (1..3).each { dispatch(dispatcher, tracker, createMessage(createNodeNotification("MeContext=N1,ManagedElement=1,Cell=" + it))) }
+
+        then: 'the first notification is in the live lane and the next ones in the overflow lane'
+            dispatcher.getLaneDepths() == [live: 1, bulk: 0, overflow: 2]
+
+        when: 'the worker is released'
+            release.countDown()
+
+        then: 'the notifications are processed in the order they were received'
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 4
+            }
+            processed == ["bulk-0"] + (1..3).collect { "MeContext=N1,ManagedElement=1,Cell=" + it }
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def dispatch(PriorityLaneDispatcher dispatcher, SessionAcknowledgementTracker tracker, Message message) {
+        tracker.messageReceived()
+        dispatcher.dispatch(message, tracker)
+    }
+
+    def createNodeNotification(String fdn) {
+        def nodeNotification = new NodeNotification()
+        nodeNotification.setFdn(fdn)
+        return nodeNotification
+    }
+
+    def createMessage(Serializable event) {
+        def message = Mock(ObjectMessage)
+        message.getObject() >> event
+        return message
+    }
+}
@@ -0,0 +1,105 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+
+import javax.jms.Message
+import spock.lang.Specification
+
+/**
+ * This class tests the RedeliveredMessageFilter.
+ */
+class RedeliveredMessageFilterSpec extends Specification {
+
+    RedeliveredMessageFilter redeliveredMessageFilter = new RedeliveredMessageFilter()
+
+    def 'the redelivery of a forwarded message is a duplicate'() {
+        given: 'a forwarded message'
+            redeliveredMessageFilter.messageForwarded(createMessage("ID:1", false), new NodeNotification())
+
+        expect: 'its redelivery is suppressed'
+            redeliveredMessageFilter.isDuplicate(createMessage("ID:1", true))
+            redeliveredMessageFilter.getSuppressedDuplicateCount() == 1
+    }
+
+    def 'messages which are not flagged as redelivered or were not forwarded are not duplicates'() {
+        given: 'a forwarded message'
+            redeliveredMessageFilter.messageForwarded(createMessage("ID:1", false), new NodeNotification())
+
+        expect: 'the message is processed'
+            !redeliveredMessageFilter.isDuplicate(createMessage(messageId, redelivered))
+            redeliveredMessageFilter.getSuppressedDuplicateCount() == 0
+
+        where:
+            messageId | redelivered
+            "ID:1"    | false
+            "ID:2"    | true
+    }
+
+    def 'messages without JMSMessageID are deduplicated on the FDN and notification timestamp of their event'() {
+        given: 'a forwarded message without JMSMessageID'
+            def timestamp = new Date()
+            redeliveredMessageFilter.messageForwarded(createMessage(null, false), createNodeNotification("MeContext=ERBS1", timestamp))
+
+        expect: 'the message is not looked up by JMSMessageID'
+            !redeliveredMessageFilter.isDuplicate(createMessage(null, true))
+
+        and: 'the redelivery of the same event is suppressed, other events are not'
+            redeliveredMessageFilter.isDuplicateEvent(createMessage(null, true), createNodeNotification("MeContext=ERBS1", timestamp))
+            !redeliveredMessageFilter.isDuplicateEvent(createMessage(null, true), createNodeNotification("MeContext=ERBS2", timestamp))
+            !redeliveredMessageFilter.isDuplicateEvent(createMessage(null, true),
+                createNodeNotification("MeContext=ERBS1", new Date(timestamp.time + 1)))
+    }
+
+    def 'a message received but never forwarded is not a duplicate when it is redelivered'() {
+        given: 'a message which was checked on reception but whose processing never ended'
+            !redeliveredMessageFilter.isDuplicate(createMessage("ID:1", false))
+
+        expect: 'its redelivery is processed'
+            !redeliveredMessageFilter.isDuplicate(createMessage("ID:1", true))
+            redeliveredMessageFilter.getRecordedMessageCount() == 0
+            redeliveredMessageFilter.getSuppressedDuplicateCount() == 0
+    }
+
+    def 'events of messages with a JMSMessageID are not checked again after deserialization'() {
+        expect:
+            !redeliveredMessageFilter.isDuplicateEvent(createMessage("ID:1", true), createNodeNotification("MeContext=ERBS1", new Date()))
+    }
+
+    def 'when deduplication is disabled, redelivered messages are processed'() {
+        given: 'deduplication is disabled'
+            System.setProperty(RedeliveredMessageFilter.DEDUPLICATION_ENABLED_PROPERTY, "false")
+            def disabledFilter = new RedeliveredMessageFilter()
+            disabledFilter.messageForwarded(createMessage("ID:1", false), new NodeNotification())
+
+        expect: 'the redelivery is processed'
+            !disabledFilter.isDuplicate(createMessage("ID:1", true))
+
+        cleanup:
+            System.clearProperty(RedeliveredMessageFilter.DEDUPLICATION_ENABLED_PROPERTY)
+    }
+
+    private Message createMessage(String messageId, boolean redelivered) {
+        def message = Mock(Message)
+        message.getJMSMessageID() >> messageId
+        message.getJMSRedelivered() >> redelivered
+        return message
+    }
+
+    private static NodeNotification createNodeNotification(String fdn, Date timestamp) {
+        def nodeNotification = new NodeNotification()
+        nodeNotification.setFdn(fdn)
+        nodeNotification.setCreationTimestamp(timestamp)
+        return nodeNotification
+    }
+}
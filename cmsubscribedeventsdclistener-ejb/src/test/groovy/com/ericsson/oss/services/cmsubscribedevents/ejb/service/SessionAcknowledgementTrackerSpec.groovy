@@ -0,0 +1,380 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import javax.jms.JMSException
+import javax.jms.Message
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * This class tests the SessionAcknowledgementTracker.
+ */
+class SessionAcknowledgementTrackerSpec extends Specification {
+
+    Message message = Mock(Message)
+
+    @Unroll
+    def 'when #processedCount messages are processed with an acknowledgement count of 10, acknowledge is called #result times'() {
+        given: 'a tracker with an acknowledgement count of 10 and a long maximum delay'
+            def tracker = new SessionAcknowledgementTracker("session-0", 10, 60000L)
+
+        when: 'the messages are processed'
+            processedCount.times {
+                tracker.messageReceived()
+                tracker.messageProcessed(message)
+                tracker.acknowledgeIfDue(System.currentTimeMillis())
+            }
+
+        then: 'the session is acknowledged each time the count is reached'
+            result * message.acknowledge()
+            tracker.getPendingAcknowledgements() == pending
+
+        where:
+            processedCount | result | pending
+            9              | 0      | 9
+            10             | 1      | 0
+            25             | 2      | 5
+    }
+
+    def 'when the maximum delay expires, the pending messages are acknowledged'() {
+        given: 'a tracker with one processed message'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 1000L)
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+
+        when: 'the delay has not expired yet'
+            tracker.acknowledgeIfDue(System.currentTimeMillis())
+
+        then: 'nothing is acknowledged'
+            0 * message.acknowledge()
+            tracker.getPendingAcknowledgements() == 1
+
+        when: 'the delay has expired'
+            tracker.acknowledgeIfDue(System.currentTimeMillis() + 1000L)
+
+        then: 'the pending message is acknowledged'
+            1 * message.acknowledge()
+            tracker.getPendingAcknowledgements() == 0
+    }
+
+    def 'when the maximum delay has expired while a message is in flight, the session thread waits for it before acknowledging'() {
+        given: 'a tracker with one processed message and another one handed over to another thread'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 0L)
+            def inFlightMessage = Mock(Message)
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+            tracker.messageReceived()
+
+        when: 'the in flight message is processed by the other thread while the session thread checks the delay'
+            Thread.start {
+                sleep(200)
+                tracker.messageProcessed(inFlightMessage)
+            }
+            tracker.acknowledgeIfDue(System.currentTimeMillis())
+
+        then: 'the session is acknowledged once, after both messages are processed'
+            1 * inFlightMessage.acknowledge()
+            0 * message.acknowledge()
+            tracker.getPendingAcknowledgements() == 0
+    }
+
+    def 'the timer acknowledges a session receiving no more messages once its maximum delay has expired'() {
+        given: 'a tracker whose session delivered and processed one message'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 1000L)
+            tracker.deliveryStarted()
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+            tracker.acknowledgeIfDue(System.currentTimeMillis())
+            tracker.deliveryEnded()
+
+        when: 'the timer fires before the delay has expired'
+            tracker.acknowledgeIfDelayExpired(System.currentTimeMillis())
+
+        then: 'nothing is acknowledged'
+            0 * message.acknowledge()
+            tracker.getPendingAcknowledgements() == 1
+
+        when: 'the timer fires once the delay has expired'
+            tracker.acknowledgeIfDelayExpired(System.currentTimeMillis() + 1000L)
+
+        then: 'the pending message is acknowledged'
+            1 * message.acknowledge()
+            tracker.getPendingAcknowledgements() == 0
+    }
+
+    def 'the timer does not acknowledge a session while a message is in flight or being delivered'() {
+        given: 'a tracker with one processed message and another one in flight'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 0L)
+            def inFlightMessage = Mock(Message)
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+            tracker.deliveryStarted()
+            tracker.messageReceived()
+
+        when: 'the timer fires while the message is in flight'
+            tracker.acknowledgeIfDelayExpired(System.currentTimeMillis())
+
+        then: 'nothing is acknowledged'
+            0 * message.acknowledge()
+
+        when: 'the timer fires once the message is processed, while its delivery is still in progress'
+            tracker.messageProcessed(inFlightMessage)
+            tracker.acknowledgeIfDelayExpired(System.currentTimeMillis())
+
+        then: 'nothing is acknowledged'
+            0 * inFlightMessage.acknowledge()
+            tracker.getPendingAcknowledgements() == 2
+
+        when: 'the timer fires once the delivery has ended'
+            tracker.deliveryEnded()
+            tracker.acknowledgeIfDelayExpired(System.currentTimeMillis())
+
+        then: 'both messages are acknowledged'
+            1 * inFlightMessage.acknowledge()
+            tracker.getPendingAcknowledgements() == 0
+    }
+
+    def 'when the acknowledgement count is reached while messages are in flight, the acknowledgement waits for them to be processed'() {
+        given: 'a tracker with an acknowledgement count of 2 and two messages in flight'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2, 60000L)
+            def inFlightMessage = Mock(Message)
+            tracker.messageReceived()
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+
+        when: 'the last in flight message is processed by another thread'
+            Thread.start {
+                sleep(200)
+                tracker.messageProcessed(inFlightMessage)
+            }
+            tracker.acknowledgeIfDue(System.currentTimeMillis())
+
+        then: 'the session is acknowledged once, after both messages are processed'
+            1 * inFlightMessage.acknowledge()
+            0 * message.acknowledge()
+            tracker.getPendingAcknowledgements() == 0
+    }
+
+    def 'when there are no pending messages, nothing is acknowledged on delay expiry'() {
+        given: 'a tracker without processed messages'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 0L)
+
+        when: 'the delay has expired'
+            tracker.acknowledgeIfDue(System.currentTimeMillis())
+
+        then: 'nothing is acknowledged'
+            0 * message.acknowledge()
+    }
+
+    def 'when acknowledge fails, the pending count is reset'() {
+        given: 'a tracker with an acknowledgement count of 1'
+            def tracker = new SessionAcknowledgementTracker("session-0", 1, 60000L)
+            message.acknowledge() >> { throw new JMSException("session closed") }
+
+        when: 'a message is processed'
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+            tracker.acknowledgeIfDue(System.currentTimeMillis())
+
+        then: 'no exception is propagated and nothing is pending'
+            noExceptionThrown()
+            tracker.getPendingAcknowledgements() == 0
+    }
+
+    def 'acknowledgePending waits for the in flight messages before acknowledging the session'() {
+        given: 'a tracker with one processed message and one in flight'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            def inFlightMessage = Mock(Message)
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+            tracker.messageReceived()
+
+        when: 'the in flight message is processed by another thread'
+            Thread.start {
+                sleep(200)
+                tracker.messageProcessed(inFlightMessage)
+            }
+            def result = tracker.acknowledgePending(5000L)
+
+        then: 'the session is acknowledged once both messages are processed'
+            result == true
+            1 * inFlightMessage.acknowledge()
+            tracker.getPendingAcknowledgements() == 0
+            tracker.getAcknowledgedMessages() == 2
+    }
+
+    def 'acknowledgePending waits for the delivery in progress to end before acknowledging the session'() {
+        given: 'a tracker whose session is still delivering a processed message'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            tracker.deliveryStarted()
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+
+        when: 'the delivery ends on the session thread while another thread acknowledges the pending messages'
+            Thread.start {
+                sleep(200)
+                tracker.deliveryEnded()
+            }
+            def result = tracker.acknowledgePending(5000L)
+
+        then: 'the session is acknowledged once the delivery has ended'
+            result == true
+            1 * message.acknowledge()
+            tracker.getPendingAcknowledgements() == 0
+    }
+
+    def 'acknowledgePending gives up when messages are still in flight after the timeout'() {
+        given: 'a tracker with one processed message and one in flight'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+            tracker.messageReceived()
+
+        when: 'the pending messages are acknowledged with a short timeout'
+            def result = tracker.acknowledgePending(50L)
+
+        then: 'nothing is acknowledged'
+            result == false
+            0 * message.acknowledge()
+            tracker.getInFlightMessages() == 1
+    }
+
+    def 'once the session is closed, the messages still held by the dispatchers are ignored instead of being acknowledged'() {
+        given: 'a tracker with one processed message and one in flight, whose session thread waits for it to acknowledge the session'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2, 60000L)
+            def inFlightMessage = Mock(Message)
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+            tracker.messageReceived()
+            def sessionThread = Thread.start {
+                tracker.acknowledgeIfDue(System.currentTimeMillis())
+            }
+
+        when: 'the session is closed, and the in flight message is then processed by a dispatcher'
+            sleep(100)
+            tracker.close()
+            sessionThread.join(5000)
+            tracker.messageProcessed(inFlightMessage)
+            tracker.acknowledgeIfDue(System.currentTimeMillis())
+            tracker.acknowledgeIfDelayExpired(System.currentTimeMillis() + 120000L)
+
+        then: 'the session thread is released and nothing is acknowledged on the closed session'
+            !sessionThread.isAlive()
+            0 * message.acknowledge()
+            0 * inFlightMessage.acknowledge()
+            tracker.getPendingAcknowledgements() == 0
+            tracker.getInFlightMessages() == 0
+    }
+
+    def 'a session with a message left for redelivery is recovered instead of being acknowledged'() {
+        given: 'a recoverable tracker with one processed message and one in flight'
+            def recoveries = 0
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L, { recoveries++ } as Runnable)
+            def givenUpMessage = Mock(Message)
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+            tracker.messageReceived()
+
+        when: 'the in flight message is left for redelivery and the session checks its acknowledgement'
+            tracker.messageLeftForRedelivery(givenUpMessage)
+            tracker.acknowledgeIfDue(System.currentTimeMillis())
+
+        then: 'the session is recovered at once and no message is acknowledged'
+            recoveries == 1
+            0 * message.acknowledge()
+            0 * givenUpMessage.acknowledge()
+            tracker.getPendingAcknowledgements() == 0
+            tracker.getInFlightMessages() == 0
+
+        when: 'the next message is processed and acknowledged'
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+            tracker.acknowledgePending(1000L)
+
+        then: 'the session is acknowledged again'
+            recoveries == 1
+            1 * message.acknowledge()
+    }
+
+    def 'the timer recovers an idle session with a message left for redelivery'() {
+        given: 'a recoverable tracker whose only message was left for redelivery'
+            def recoveries = 0
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L, { recoveries++ } as Runnable)
+            tracker.messageReceived()
+            tracker.messageLeftForRedelivery(message)
+
+        when: 'the timer fires before the maximum delay has expired'
+            tracker.acknowledgeIfDelayExpired(System.currentTimeMillis())
+
+        then: 'the session is recovered'
+            recoveries == 1
+            0 * message.acknowledge()
+    }
+
+    def 'a session with a message left for redelivery is not acknowledged when its consumer is removed'() {
+        given: 'a recoverable tracker with one processed message and one left for redelivery'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L, {} as Runnable)
+            tracker.messageReceived()
+            tracker.messageProcessed(message)
+            tracker.messageReceived()
+            tracker.messageLeftForRedelivery(Mock(Message))
+
+        when: 'the pending messages are acknowledged before the session is closed'
+            def result = tracker.acknowledgePending(1000L)
+
+        then: 'nothing is acknowledged, the messages of the session are redelivered once it is closed'
+            result == false
+            0 * message.acknowledge()
+    }
+
+    def 'the busy time only grows while messages are in flight'() {
+        given: 'a tracker which processed one message'
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            tracker.messageReceived()
+            sleep(20)
+            tracker.messageProcessed(message)
+            def busyNanos = tracker.getBusyNanos()
+
+        when: 'the session stays idle'
+            sleep(20)
+
+        then: 'the busy time does not change'
+            busyNanos >= 20000000L
+            tracker.getBusyNanos() == busyNanos
+            tracker.getProcessedMessages() == 1
+
+        when: 'a message is in flight'
+            tracker.messageReceived()
+            sleep(20)
+
+        then: 'the busy time includes the time spent on it'
+            tracker.getBusyNanos() >= busyNanos + 20000000L
+    }
+
+    def 'acknowledgement count and maximum delay are read from JVM properties'() {
+        given: 'the JVM properties are set'
+            System.setProperty(SessionAcknowledgementTracker.ACKNOWLEDGEMENT_COUNT_PROPERTY, "3")
+            System.setProperty(SessionAcknowledgementTracker.ACKNOWLEDGEMENT_MAX_DELAY_PROPERTY, "250")
+
+        when: 'a tracker is created'
+            def tracker = SessionAcknowledgementTracker.create("session-0")
+
+        then: 'the configured values are used'
+            tracker.acknowledgementCount == 3
+            tracker.maxAcknowledgementDelayMillis == 250L
+
+        cleanup:
+            System.clearProperty(SessionAcknowledgementTracker.ACKNOWLEDGEMENT_COUNT_PROPERTY)
+            System.clearProperty(SessionAcknowledgementTracker.ACKNOWLEDGEMENT_MAX_DELAY_PROPERTY)
+    }
+}
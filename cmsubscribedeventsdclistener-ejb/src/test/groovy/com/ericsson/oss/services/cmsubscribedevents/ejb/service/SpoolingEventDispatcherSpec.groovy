@@ -0,0 +1,221 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.BiConsumer
+import java.util.function.Function
+import java.util.function.Predicate
+import javax.jms.Message
+import javax.jms.ObjectMessage
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * This class tests the SpoolingEventDispatcher.
+ */
+class SpoolingEventDispatcherSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+    File directory = File.createTempDir()
+
+    def cleanup() {
+        System.clearProperty(EventDeserializer.ALLOWED_PACKAGES_PROPERTY)
+        directory.deleteDir()
+    }
+
+    def 'spooled events are acknowledged before they are processed, then replayed in order with their trace ID'() {
+        given: 'a dispatcher whose replayer is held by the first event'
+            def replayed = new CopyOnWriteArrayList<List<String>>()
+            def release = new CountDownLatch(1)
+            def dispatcher = createDispatcher({ message, event -> } as BiConsumer<Message, Serializable>,
+                { traceId, event ->
+                    release.await(5, TimeUnit.SECONDS)
+                    replayed.add([traceId, event, Thread.currentThread().name])
+                } as BiConsumer<String, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+
+        when: 'three events are dispatched'
+            (1..3).each { dispatch(dispatcher, tracker, createMessage("ID:" + it, "event-" + it)) }
+
+        then: 'they are reported to the session tracker before any of them is processed'
+            tracker.getPendingAcknowledgements() == 3
+            replayed.isEmpty()
+            dispatcher.getBacklogEvents() == 3
+
+        when: 'the replayer is released'
+            release.countDown()
+
+        then: 'the events are processed by the replayer in the order they were dispatched, with the trace ID of their message'
+            conditions.eventually {
+                assert replayed.size() == 3
+                assert dispatcher.getBacklogEvents() == 0
+            }
+            replayed == (1..3).collect { ["ID:" + it, "event-" + it, "CmDataChangeDivertedQueue-spool-replayer-0"] }
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'events which are not eligible for the spool are processed on the session thread'() {
+        given: 'a dispatcher'
+            def threads = new CopyOnWriteArrayList<String>()
+            def dispatcher = createDispatcher({ message, event -> threads.add(Thread.currentThread().name) } as BiConsumer<Message, Serializable>,
+                { traceId, event -> } as BiConsumer<String, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+
+        when: 'an unsupported event is dispatched'
+            dispatch(dispatcher, tracker, createMessage("ID:1", "unsupported"))
+
+        then: 'it is processed by the caller and reported to the tracker'
+            threads == [Thread.currentThread().name]
+            tracker.getPendingAcknowledgements() == 1
+            dispatcher.getBacklogEvents() == 0
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'the events which were not replayed when the dispatcher stopped are replayed by the next dispatcher'() {
+        given: 'a dispatcher whose replayer is held by the first event'
+            def release = new CountDownLatch(1)
+            def dispatcher = createDispatcher({ message, event -> } as BiConsumer<Message, Serializable>,
+                { traceId, event -> release.await(5, TimeUnit.SECONDS) } as BiConsumer<String, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            (1..3).each { dispatch(dispatcher, tracker, createMessage("ID:" + it, "event-" + it)) }
+
+        when: 'the dispatcher is stopped before the events are replayed'
+            dispatcher.stop(100L)
+
+        and: 'another dispatcher is created on the same spool'
+            def replayed = new CopyOnWriteArrayList<String>()
+            def nextDispatcher = createDispatcher({ message, event -> } as BiConsumer<Message, Serializable>,
+                { traceId, event -> replayed.add(event) } as BiConsumer<String, Serializable>)
+
+        then: 'every event is replayed, including the one being processed when the dispatcher stopped'
+            conditions.eventually {
+                assert replayed == ["event-1", "event-2", "event-3"]
+            }
+
+        cleanup:
+            nextDispatcher.stop(1000L)
+    }
+
+    def 'a spooled event whose processing fails is written to the dead-letter directory and the next events are replayed'() {
+        given: 'a dispatcher whose processor fails on the first event'
+            def replayed = new CopyOnWriteArrayList<String>()
+            def dispatcher = createDispatcher({ message, event -> } as BiConsumer<Message, Serializable>,
+                { traceId, event ->
+                    if (event == "event-1") {
+                        throw new IllegalStateException("processing failed")
+                    }
+                    replayed.add(event)
+                } as BiConsumer<String, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+
+        when: 'two events are dispatched'
+            (1..2).each { dispatch(dispatcher, tracker, createMessage("ID:" + it, "event-" + it)) }
+
+        then: 'the failed event is kept in the dead-letter directory with its trace ID and the other one is processed'
+            conditions.eventually {
+                assert replayed == ["event-2"]
+                assert dispatcher.getBacklogEvents() == 0
+            }
+            dispatcher.getDeadLetteredEvents() == 1
+            def deadLetterFiles = new File(directory, SpoolingEventDispatcher.DEAD_LETTER_DIRECTORY).listFiles()
+            deadLetterFiles.size() == 1
+            def inputStream = new DataInputStream(new ByteArrayInputStream(deadLetterFiles[0].bytes))
+            inputStream.readUTF() == "ID:1"
+            new ObjectInputStream(inputStream).readObject() == "event-1"
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'a spooled event rejected by the guardrails of the deserializer is written to the dead-letter directory without being processed'() {
+        given: 'a dispatcher reading back only the classes of the notifications'
+            System.setProperty(EventDeserializer.ALLOWED_PACKAGES_PROPERTY, "com.ericsson.oss.mediation.")
+            def replayed = new CopyOnWriteArrayList<Serializable>()
+            def dispatcher = createDispatcher({ message, event -> } as BiConsumer<Message, Serializable>,
+                { traceId, event -> replayed.add(event) } as BiConsumer<String, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+
+        when: 'an event of another class is dispatched'
+            dispatch(dispatcher, tracker, createMessage("ID:1", new ArrayList<>(["value"])))
+
+        then: 'it is written to the dead-letter directory and not processed'
+            conditions.eventually {
+                assert dispatcher.getDeadLetteredEvents() == 1
+            }
+            replayed.isEmpty()
+            new File(directory, SpoolingEventDispatcher.DEAD_LETTER_DIRECTORY).listFiles().size() == 1
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'a failed spooled event which cannot be written to the dead-letter directory is left in the spool'() {
+        given: 'a dispatcher whose dead-letter directory cannot be created and whose processor fails'
+            new File(directory, SpoolingEventDispatcher.DEAD_LETTER_DIRECTORY).text = ""
+            def attempts = new CopyOnWriteArrayList<String>()
+            def dispatcher = createDispatcher({ message, event -> } as BiConsumer<Message, Serializable>,
+                { traceId, event ->
+                    attempts.add(event)
+                    throw new IllegalStateException("processing failed")
+                } as BiConsumer<String, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+
+        when: 'two events are dispatched'
+            (1..2).each { dispatch(dispatcher, tracker, createMessage("ID:" + it, "event-" + it)) }
+
+        then: 'the replay stops at the failed event'
+            conditions.eventually {
+                assert attempts == ["event-1"]
+            }
+            dispatcher.getDeadLetteredEvents() == 0
+
+        when: 'the dispatcher is stopped, the directory made writable and another dispatcher created on the same spool'
+            dispatcher.stop(100L)
+            new File(directory, SpoolingEventDispatcher.DEAD_LETTER_DIRECTORY).delete()
+            def replayed = new CopyOnWriteArrayList<String>()
+            def nextDispatcher = createDispatcher({ message, event -> } as BiConsumer<Message, Serializable>,
+                { traceId, event -> replayed.add(event) } as BiConsumer<String, Serializable>)
+
+        then: 'both events are replayed'
+            conditions.eventually {
+                assert replayed == ["event-1", "event-2"]
+            }
+
+        cleanup:
+            nextDispatcher.stop(1000L)
+    }
+
+    def createDispatcher(BiConsumer<Message, Serializable> eventProcessor, BiConsumer<String, Serializable> spooledEventProcessor) {
+        return new SpoolingEventDispatcher(new EventSpool(directory, 4096), 4,
+            { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>, new EventDeserializer(),
+            { it != "unsupported" } as Predicate<Serializable>, eventProcessor, spooledEventProcessor)
+    }
+
+    def dispatch(SpoolingEventDispatcher dispatcher, SessionAcknowledgementTracker tracker, Message message) {
+        tracker.messageReceived()
+        dispatcher.dispatch(message, tracker)
+    }
+
+    def createMessage(String messageId, Serializable event) {
+        def message = Mock(ObjectMessage)
+        message.getObject() >> event
+        message.getJMSMessageID() >> messageId
+        return message
+    }
+}
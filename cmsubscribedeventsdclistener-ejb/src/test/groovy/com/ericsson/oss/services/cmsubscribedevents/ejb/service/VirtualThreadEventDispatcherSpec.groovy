@@ -0,0 +1,176 @@
+/*------------------------------------------------------------------------------
+*******************************************************************************
+* COPYRIGHT Ericsson 2023
+*
+* The copyright to the computer program(s) herein is the property of
+* Ericsson Inc. The programs may be used and/or copied only with written
+* permission from Ericsson Inc. or in accordance with the terms and
+* conditions stipulated in the agreement/contract under which the
+* program(s) have been supplied.
+*******************************************************************************
+*----------------------------------------------------------------------------*/
+package com.ericsson.oss.services.cmsubscribedevents.ejb.service
+
+import com.ericsson.oss.mediation.network.api.notifications.NodeNotification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.BiConsumer
+import java.util.function.Function
+import javax.jms.Message
+import javax.jms.ObjectMessage
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * This class tests the VirtualThreadEventDispatcher.
+ */
+class VirtualThreadEventDispatcherSpec extends Specification {
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    def 'events for the same FDN are processed in order, while at most the configured number of events are processed concurrently'() {
+        given: 'a dispatcher limited to 4 concurrent events, recording the order of each FDN and the highest concurrency'
+            def processedPerFdn = new ConcurrentHashMap<String, List<Integer>>()
+            def concurrentEvents = new AtomicInteger()
+            def maxConcurrentEvents = new AtomicInteger()
+            def dispatcher = new VirtualThreadEventDispatcher(4, true, { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event ->
+                    maxConcurrentEvents.accumulateAndGet(concurrentEvents.incrementAndGet(), { a, b -> Math.max(a, b) })
+                    sleep(5)
+                    processedPerFdn.computeIfAbsent(event.fdn, { new CopyOnWriteArrayList() }).add(message.getIntProperty("sequence"))
+                    concurrentEvents.decrementAndGet()
+                } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            def fdns = (1..8).collect { "MeContext=ERBS" + it }
+            def messages = (0..<10).collectMany { sequence -> fdns.collect { fdn -> createMessage(fdn, sequence) } }
+
+        when: 'ten events per FDN are dispatched'
+            messages.each {
+                tracker.messageReceived()
+                dispatcher.dispatch(it, tracker)
+            }
+
+        then: 'each FDN is processed in order and every event is reported to the session tracker'
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 80
+            }
+            fdns.each { fdn ->
+                assert processedPerFdn[fdn] == (0..<10).toList()
+            }
+
+        and: 'the concurrency never exceeded the limit and nothing is left in flight'
+            maxConcurrentEvents.get() <= 4
+            maxConcurrentEvents.get() > 1
+            dispatcher.getInFlightEvents() == 0
+            dispatcher.getActiveFdnCount() == 0
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'when all permits are taken, the session thread waits for an event to complete'() {
+        given: 'a dispatcher limited to 1 concurrent event, whose first event is held'
+            def release = new CountDownLatch(1)
+            def dispatcher = new VirtualThreadEventDispatcher(1, true, { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event -> release.await(5, TimeUnit.SECONDS) } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            tracker.messageReceived()
+            dispatcher.dispatch(createMessage("MeContext=ERBS1", 0), tracker)
+
+        when: 'a second event is dispatched'
+            def dispatched = new CountDownLatch(1)
+            Thread.start {
+                tracker.messageReceived()
+                dispatcher.dispatch(createMessage("MeContext=ERBS2", 0), tracker)
+                dispatched.countDown()
+            }
+
+        then: 'the dispatch blocks until the first event completes'
+            !dispatched.await(200, TimeUnit.MILLISECONDS)
+            dispatcher.getInFlightEvents() == 1
+
+        when: 'the first event completes'
+            release.countDown()
+
+        then: 'the second event is handed over and processed'
+            dispatched.await(5, TimeUnit.SECONDS)
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 2
+            }
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def 'after the dispatcher is stopped, the events are processed on the session thread'() {
+        given: 'a stopped dispatcher'
+            def threads = new CopyOnWriteArrayList<String>()
+            def dispatcher = new VirtualThreadEventDispatcher(4, false, { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event -> threads.add(Thread.currentThread().name) } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+            dispatcher.stop(1000L)
+
+        when: 'an event is dispatched'
+            tracker.messageReceived()
+            dispatcher.dispatch(createMessage("MeContext=ERBS1", 0), tracker)
+
+        then: 'it is processed by the caller and reported to the tracker'
+            threads == [Thread.currentThread().name]
+            tracker.getPendingAcknowledgements() == 1
+            !dispatcher.isVirtualThreads()
+    }
+
+    def 'virtual threads are used only when the JVM supports them'() {
+        given: 'whether the running JVM has virtual threads'
+            def supported = Thread.methods.any { it.name == "ofVirtual" }
+
+        when: 'the virtual thread executor is created'
+            def executor = VirtualThreadEventDispatcher.createVirtualThreadExecutor()
+
+        then: 'it exists only on such a JVM'
+            (executor != null) == supported
+
+        cleanup:
+            executor?.shutdownNow()
+    }
+
+    def 'in a container, the events are processed on managed platform threads instead of virtual threads'() {
+        given: 'a dispatcher preferring virtual threads, with a managed thread factory'
+            def managedThreadFactory = Mock(ThreadFactory)
+            managedThreadFactory.newThread(_) >> { Runnable runnable -> new Thread(runnable) }
+            def threads = new CopyOnWriteArrayList<String>()
+            def threadFactory = new NamedThreadFactory("CmDataChangeDivertedQueue-virtual", managedThreadFactory)
+            def dispatcher = new VirtualThreadEventDispatcher(4, true, threadFactory,
+                { ((ObjectMessage) it).getObject() } as Function<Message, Serializable>,
+                { message, event -> threads.add(Thread.currentThread().name) } as BiConsumer<Message, Serializable>)
+            def tracker = new SessionAcknowledgementTracker("session-0", 2000, 60000L)
+
+        when: 'an event is dispatched'
+            tracker.messageReceived()
+            dispatcher.dispatch(createMessage("MeContext=ERBS1", 0), tracker)
+
+        then: 'it is processed on a thread of the managed thread factory'
+            conditions.eventually {
+                assert tracker.getPendingAcknowledgements() == 1
+            }
+            threads == ["CmDataChangeDivertedQueue-virtual-0"]
+            !dispatcher.isVirtualThreads()
+
+        cleanup:
+            dispatcher.stop(1000L)
+    }
+
+    def createMessage(String fdn, int sequence) {
+        def nodeNotification = new NodeNotification()
+        nodeNotification.setFdn(fdn)
+        def message = Mock(ObjectMessage)
+        message.getObject() >> nodeNotification
+        message.getIntProperty("sequence") >> sequence
+        return message
+    }
+}